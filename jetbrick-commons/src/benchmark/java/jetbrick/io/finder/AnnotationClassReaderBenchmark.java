@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.io.finder;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import jetbrick.io.IoUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 扫描一个 jar 中的所有 class (默认为 JDK 的 rt.jar)，比较 AnnotationClassReader 优化前后的开销.
+ *
+ * <pre>
+ * mvn -P benchmark -pl jetbrick-commons test-compile exec:exec -Dbenchmark=AnnotationClassReaderBenchmark
+ * mvn -P benchmark -pl jetbrick-commons test-compile exec:exec -Dbenchmark="AnnotationClassReaderBenchmark -p jar=/path/to/app.jar"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class AnnotationClassReaderBenchmark {
+
+    @Param("")
+    public String jar;
+
+    private List<byte[]> classes;
+    private OldAnnotationClassReader oldReader;
+    private AnnotationClassReader newReader;
+
+    @Setup
+    public void setup() throws IOException {
+        String file = jar.length() > 0 ? jar : System.getProperty("java.home") + "/lib/rt.jar";
+        classes = new ArrayList<byte[]>();
+        ZipFile zip = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                if (entry.getName().endsWith(".class")) {
+                    InputStream is = zip.getInputStream(entry);
+                    try {
+                        classes.add(IoUtils.toByteArray(is));
+                    } finally {
+                        IoUtils.closeQuietly(is);
+                    }
+                }
+            }
+        } finally {
+            zip.close();
+        }
+
+        oldReader = new OldAnnotationClassReader();
+        oldReader.addAnnotation(Deprecated.class);
+        oldReader.addAnnotation(FunctionalInterface.class);
+        newReader = new AnnotationClassReader();
+        newReader.addAnnotation(Deprecated.class);
+        newReader.addAnnotation(FunctionalInterface.class);
+    }
+
+    @Benchmark
+    public int oldIsAnnotationed() {
+        int hits = 0;
+        for (byte[] bytes : classes) {
+            if (oldReader.isAnnotationed(new ByteArrayInputStream(bytes))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int newIsAnnotationed() {
+        int hits = 0;
+        for (byte[] bytes : classes) {
+            if (newReader.isAnnotationed(new ByteArrayInputStream(bytes))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int oldGetAnnotationNames() {
+        int hits = 0;
+        for (byte[] bytes : classes) {
+            if (oldReader.getAnnotationNames(new ByteArrayInputStream(bytes)) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int newGetAnnotationNames() {
+        int hits = 0;
+        for (byte[] bytes : classes) {
+            if (newReader.getAnnotationNames(new ByteArrayInputStream(bytes)) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
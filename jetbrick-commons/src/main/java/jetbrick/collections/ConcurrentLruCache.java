@@ -0,0 +1,182 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.collections;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程安全的，有容量上限的 LRU Cache.
+ * <p>
+ * 内部按照 key 的 hash 分成多个 segment，每个 segment 是一个 access-order 的 {@link LinkedHashMap}，
+ * 使用独立的锁，超出容量的时候淘汰最久没有被访问的元素.
+ * 同时提供 hit/miss/eviction 计数，可以根据实际运行的数据来调整容量.
+ * <p>
+ * 注意：不允许 null 的 key 和 value.
+ */
+public class ConcurrentLruCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final int capacity;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ConcurrentLruCache(int capacity) {
+        this(capacity, MAX_SEGMENTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int capacity, int concurrencyLevel) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        }
+        int size = 1;
+        while (size < concurrencyLevel && size < MAX_SEGMENTS && size * 2 <= capacity) {
+            size <<= 1;
+        }
+        this.capacity = capacity;
+        this.segmentMask = size - 1;
+        this.segments = new Segment[size];
+
+        int segmentCapacity = capacity / size;
+        int remainder = capacity % size;
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment<K, V>(segmentCapacity + (i < remainder ? 1 : 0), evictionCount);
+        }
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & segmentMask];
+    }
+
+    public V get(K key) {
+        V value = segmentFor(key).get(key);
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        return segmentFor(key).put(key, value);
+    }
+
+    public V remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentLruCache[size=" + size() + ", capacity=" + capacity + ", hits=" + hitCount.get() + ", misses=" + missCount.get() + ", evictions=" + evictionCount.get() + "]";
+    }
+
+    static final class Segment<K, V> {
+        private final LinkedHashMap<K, V> map;
+
+        public Segment(final int capacity, final AtomicLong evictionCount) {
+            this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() > capacity) {
+                        evictionCount.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public synchronized V get(Object key) {
+            return map.get(key);
+        }
+
+        public synchronized V put(K key, V value) {
+            return map.put(key, value);
+        }
+
+        public synchronized V remove(Object key) {
+            return map.remove(key);
+        }
+
+        public synchronized void clear() {
+            map.clear();
+        }
+
+        public synchronized int size() {
+            return map.size();
+        }
+    }
+}
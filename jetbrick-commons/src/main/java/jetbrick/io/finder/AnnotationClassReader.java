@@ -20,10 +20,8 @@ package jetbrick.io.finder;
 
 import java.io.*;
 import java.lang.annotation.Annotation;
-import java.lang.annotation.ElementType;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import jetbrick.io.IoUtils;
@@ -79,6 +77,9 @@ import org.slf4j.LoggerFactory;
  * VM Specification (Chapter 4)</a> for the real work.
  * </ul>
  * <p>
+ * 为了减少扫描大量 class 文件时的 CPU 和内存开销: class 文件读入一个可以重复使用的 byte[]，
+ * 常量池只记录 UTF8 常量的位置而不解码成 String，annotation 的类型直接和预先编码的 byte[] 比较.
+ * 同一个 AnnotationClassReader 对象不能被多个线程同时使用.
  *
  * @author Guoqiang Chen
  */
@@ -97,6 +98,12 @@ public final class AnnotationClassReader {
     private static final int CP_REF_METHOD = 10;
     private static final int CP_REF_INTERFACE = 11;
     private static final int CP_NAME_AND_TYPE = 12;
+    private static final int CP_METHOD_HANDLE = 15; // Java 7
+    private static final int CP_METHOD_TYPE = 16; // Java 7
+    private static final int CP_DYNAMIC = 17; // Java 11
+    private static final int CP_INVOKE_DYNAMIC = 18; // Java 7
+    private static final int CP_MODULE = 19; // Java 9
+    private static final int CP_PACKAGE = 20; // Java 9
 
     // AnnotationElementValue
     private static final int BYTE = 'B';
@@ -115,8 +122,22 @@ public final class AnnotationClassReader {
     private static final int ANNOTATION = '@';
     private static final int ARRAY = '[';
 
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = toModifiedUtf8("RuntimeVisibleAnnotations");
+    private static final byte[] RUNTIME_INVISIBLE_ANNOTATIONS = toModifiedUtf8("RuntimeInvisibleAnnotations");
+
     private Map<String, Class<? extends Annotation>> annotationMap = new HashMap<String, Class<? extends Annotation>>();
-    private Object[] constantPool;
+    private byte[][] annotationDescriptors = new byte[0][];
+
+    // 重复使用的 class 文件缓冲区
+    private byte[] buffer = new byte[8 * 1024];
+    private int size; // the number of significant bytes read
+    private int pointer; // the "read pointer"
+
+    // 常量池中 UTF8 常量在 buffer 中的位置 (指向 u2 length)，其他类型为 0
+    private int[] constantPool = new int[256];
+
+    private boolean collectAnnotations; // 为 true 时，搜集所有的 annotation
+    private final List<String> annotationNames = new ArrayList<String>(4);
 
     public boolean isAnnotationed(File file) {
         try {
@@ -137,104 +158,150 @@ public final class AnnotationClassReader {
 
     public boolean isAnnotationed(InputStream classInputStream) {
         try {
-            ClassFileDataInput input = new ClassFileDataInput(classInputStream);
-            return readClassFile(input);
+            load(classInputStream);
+            return readClassFile();
         } catch (Exception e) {
             log.warn("UnknownException in parsing class file.", e);
             return false;
+        } catch (ClassFormatError e) {
+            log.warn("Invalid class file.", e);
+            return false;
+        } finally {
+            IoUtils.closeQuietly(classInputStream);
+        }
+    }
+
+    /**
+     * 读取 class 上的所有 annotation 的类名 (只处理 public 非抽象类).
+     *
+     * @return 不符合条件、没有 annotation 或者读取出错返回 null
+     */
+    public List<String> getAnnotationNames(InputStream classInputStream) {
+        collectAnnotations = true;
+        annotationNames.clear();
+        try {
+            load(classInputStream);
+            readClassFile();
+            // 非 public 类或者没有 annotation
+            return annotationNames.isEmpty() ? null : new ArrayList<String>(annotationNames);
+        } catch (Exception e) {
+            log.warn("UnknownException in parsing class file.", e);
+            return null;
+        } catch (ClassFormatError e) {
+            log.warn("Invalid class file.", e);
+            return null;
         } finally {
+            collectAnnotations = false;
             IoUtils.closeQuietly(classInputStream);
         }
     }
 
     public void addAnnotation(Class<? extends Annotation> annoClass) {
-        annotationMap.put('L' + annoClass.getName().replace('.', '/') + ';', annoClass);
+        String descriptor = 'L' + annoClass.getName().replace('.', '/') + ';';
+        if (annotationMap.put(descriptor, annoClass) == null) {
+            byte[][] descriptors = Arrays.copyOf(annotationDescriptors, annotationDescriptors.length + 1);
+            descriptors[annotationDescriptors.length] = toModifiedUtf8(descriptor);
+            annotationDescriptors = descriptors;
+        }
+    }
+
+    /**
+     * 读取整个 class 文件到 buffer 中.
+     */
+    private void load(final InputStream in) throws IOException {
+        pointer = 0;
+        size = 0;
+        int n;
+        do {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            n = in.read(buffer, size, buffer.length - size);
+            if (n > 0) {
+                size += n;
+            }
+        } while (n >= 0);
     }
 
     /**
-     * Inspect the given (Java) class file in streaming mode.
+     * Inspect the given (Java) class file.
      */
-    private boolean readClassFile(final ClassFileDataInput di) throws IOException {
-        if (!readMagicCode(di)) {
+    private boolean readClassFile() throws IOException {
+        if (!readMagicCode()) {
             return false;
         }
-        if (!readVersion(di)) {
+        if (!readVersion()) {
             return false;
         }
-        readConstantPoolEntries(di);
-        if (!readAccessFlags(di)) {
+        readConstantPoolEntries();
+        if (!readAccessFlags()) {
             return false;
         }
-        readThisClass(di);
-        readSuperClass(di);
-        readInterfaces(di);
-        readFields(di);
-        readMethods(di);
-        return readAttributes(di, ElementType.TYPE);
+        skip(4); // this_class, super_class
+        skip(readUnsignedShort() * 2); // interfaces
+        skipMembers(); // fields
+        skipMembers(); // methods
+        return readAttributes();
     }
 
-    private boolean readMagicCode(final ClassFileDataInput di) throws IOException {
-        return di.size() > 4 && di.readInt() == 0xCAFEBABE;
+    private boolean readMagicCode() throws IOException {
+        return size > 4 && readInt() == 0xCAFEBABE;
     }
 
-    private boolean readVersion(final ClassFileDataInput di) throws IOException {
-        // sequence: minor version, major version (argument_index is 1-based)
-        @SuppressWarnings("unused")
-        int minor = di.readUnsignedShort();
-        int major = di.readUnsignedShort();
+    private boolean readVersion() throws IOException {
+        // sequence: minor version, major version
+        skip(2);
+        int major = readUnsignedShort();
         return major >= 49;
     }
 
-    private void readConstantPoolEntries(final DataInput di) throws IOException {
-        final int count = di.readUnsignedShort();
-        constantPool = new Object[count];
+    private void readConstantPoolEntries() throws IOException {
+        final int count = readUnsignedShort();
+        if (constantPool.length < count) {
+            constantPool = new int[Math.max(count, constantPool.length * 2)];
+        }
         for (int i = 1; i < count; ++i) {
-            if (readConstantPoolEntry(di, i)) {
+            final int tag = readUnsignedByte();
+            constantPool[i] = 0;
+            switch (tag) {
+            case CP_UTF8:
+                constantPool[i] = pointer;
+                skip(readUnsignedShort());
+                break;
+            case CP_CLASS:
+            case CP_STRING:
+            case CP_METHOD_TYPE:
+            case CP_MODULE:
+            case CP_PACKAGE:
+                skip(2);
+                break;
+            case CP_METHOD_HANDLE:
+                skip(3);
+                break;
+            case CP_INTEGER:
+            case CP_FLOAT:
+            case CP_REF_FIELD:
+            case CP_REF_METHOD:
+            case CP_REF_INTERFACE:
+            case CP_NAME_AND_TYPE:
+            case CP_DYNAMIC:
+            case CP_INVOKE_DYNAMIC:
+                skip(4);
+                break;
+            case CP_LONG:
+            case CP_DOUBLE:
                 // double slot
-                ++i;
+                skip(8);
+                constantPool[++i] = 0;
+                break;
+            default:
+                throw new ClassFormatError("Unknown tag value for constant pool entry: " + tag);
             }
         }
     }
 
-    /**
-     * Return true if a double slot is read (in case of Double or Long constant).
-     */
-    private boolean readConstantPoolEntry(final DataInput di, final int index) throws IOException {
-        final int tag = di.readUnsignedByte();
-        switch (tag) {
-        case CP_UTF8:
-            constantPool[index] = di.readUTF();
-            return false;
-        case CP_INTEGER:
-            di.skipBytes(4); // readInt()
-            return false;
-        case CP_FLOAT:
-            di.skipBytes(4); // readFloat()
-            return false;
-        case CP_LONG:
-            di.skipBytes(8); // readLong()
-            return true;
-        case CP_DOUBLE:
-            di.skipBytes(8); // readDouble()
-            return true;
-        case CP_CLASS:
-        case CP_STRING:
-            // reference to CP_UTF8 entry. The referenced index can have a higher number!
-            constantPool[index] = di.readUnsignedShort();
-            return false;
-        case CP_REF_FIELD:
-        case CP_REF_METHOD:
-        case CP_REF_INTERFACE:
-        case CP_NAME_AND_TYPE:
-            di.skipBytes(4); // readUnsignedShort() * 2
-            return false;
-        default:
-            throw new ClassFormatError("Unknown tag value for constant pool entry: " + tag);
-        }
-    }
-
-    private boolean readAccessFlags(final DataInput di) throws IOException {
-        int flags = di.readUnsignedShort(); // u2
+    private boolean readAccessFlags() throws IOException {
+        int flags = readUnsignedShort(); // u2
         if (!Modifier.isPublic(flags)) {
             return false;
         }
@@ -244,83 +311,69 @@ public final class AnnotationClassReader {
         return true;
     }
 
-    private void readThisClass(final DataInput di) throws IOException {
-        di.skipBytes(2); // u2
-    }
-
-    private void readSuperClass(final DataInput di) throws IOException {
-        di.skipBytes(2); // u2
-    }
-
-    private void readInterfaces(final DataInput di) throws IOException {
-        final int count = di.readUnsignedShort();
-        di.skipBytes(count * 2); // count * u2
-    }
-
-    private void readFields(final DataInput di) throws IOException {
-        final int count = di.readUnsignedShort();
-        for (int i = 0; i < count; ++i) {
-            // AccessFlags(u2), memberName(u2), memberDescriptor(u2)
-            di.skipBytes(6);
-            readAttributes(di, ElementType.FIELD);
-        }
-    }
-
-    private void readMethods(final DataInput di) throws IOException {
-        final int count = di.readUnsignedShort();
+    /**
+     * 跳过 fields 或者 methods.
+     */
+    private void skipMembers() throws IOException {
+        final int count = readUnsignedShort();
         for (int i = 0; i < count; ++i) {
             // AccessFlags(u2), memberName(u2), memberDescriptor(u2)
-            di.skipBytes(6);
-            readAttributes(di, ElementType.METHOD);
+            skip(6);
+            final int attributes = readUnsignedShort();
+            for (int j = 0; j < attributes; ++j) {
+                skip(2); // name
+                skip(readInt());
+            }
         }
     }
 
-    private boolean readAttributes(DataInput di, ElementType type) throws IOException {
-        final int count = di.readUnsignedShort();
-
+    /**
+     * 读取 class 的 attributes.
+     */
+    private boolean readAttributes() throws IOException {
+        final int count = readUnsignedShort();
         for (int i = 0; i < count; ++i) {
-            final String name = resolveUtf8(di);
+            final int nameIndex = readUnsignedShort();
             // in bytes, use this to skip the attribute info block
-            final int length = di.readInt();
+            final int length = readInt();
+            final int end = pointer + length;
 
-            if (type == ElementType.TYPE && ("RuntimeVisibleAnnotations".equals(name) || "RuntimeInvisibleAnnotations".equals(name))) {
-                if (readAnnotations(di)) {
+            if (utf8Equals(nameIndex, RUNTIME_VISIBLE_ANNOTATIONS) || utf8Equals(nameIndex, RUNTIME_INVISIBLE_ANNOTATIONS)) {
+                if (readAnnotations()) {
                     return true;
                 }
-            } else {
-                di.skipBytes(length);
             }
+            seek(end);
         }
         return false;
     }
 
-    private boolean readAnnotations(DataInput di) throws IOException {
+    private boolean readAnnotations() throws IOException {
         // the number of Runtime(In)VisibleAnnotations
-        final int count = di.readUnsignedShort();
-
+        final int count = readUnsignedShort();
         for (int i = 0; i < count; ++i) {
-            String annotation = readAnnotation(di);
-            if (annotationMap.containsKey(annotation)) {
+            final int typeIndex = readUnsignedShort();
+            if (collectAnnotations) {
+                annotationNames.add(getAnnotationName(typeIndex));
+            } else if (isAnnotationMatched(typeIndex)) {
                 return true;
             }
+            skipAnnotationElements();
         }
         return false;
     }
 
-    private String readAnnotation(final DataInput di) throws IOException {
-        final String annotation = resolveUtf8(di);
+    private void skipAnnotationElements() throws IOException {
         // num_element_value_pairs
-        final int count = di.readUnsignedShort();
-
+        final int count = readUnsignedShort();
         for (int i = 0; i < count; ++i) {
-            di.skipBytes(2);
-            readAnnotationElementValue(di);
+            skip(2); // element_name_index
+            skipAnnotationElementValue();
         }
-        return annotation;
     }
 
-    private void readAnnotationElementValue(final DataInput di) throws IOException {
-        final int tag = di.readUnsignedByte();
+    private void skipAnnotationElementValue() throws IOException {
+        final int tag = readUnsignedByte();
         switch (tag) {
         case BYTE:
         case CHAR:
@@ -331,21 +384,20 @@ public final class AnnotationClassReader {
         case SHORT:
         case BOOLEAN:
         case STRING:
-            di.skipBytes(2);
+        case CLASS:
+            skip(2);
             break;
         case ENUM:
-            di.skipBytes(4); // 2 * u2
-            break;
-        case CLASS:
-            di.skipBytes(2);
+            skip(4); // 2 * u2
             break;
         case ANNOTATION:
-            readAnnotation(di);
+            skip(2); // type_index
+            skipAnnotationElements();
             break;
         case ARRAY:
-            final int count = di.readUnsignedShort();
+            final int count = readUnsignedShort();
             for (int i = 0; i < count; ++i) {
-                readAnnotationElementValue(di);
+                skipAnnotationElementValue();
             }
             break;
         default:
@@ -353,194 +405,122 @@ public final class AnnotationClassReader {
         }
     }
 
-    /**
-     * Look up the String value, identified by the u2 index value from constant pool
-     * (direct or indirect).
-     */
-    private String resolveUtf8(final DataInput di) throws IOException {
-        final int index = di.readUnsignedShort();
-        final Object value = constantPool[index];
-        final String s;
-        if (value instanceof Integer) {
-            s = (String) constantPool[(Integer) value];
-        } else {
-            s = (String) value;
-        }
-        return s;
-    }
-
-    static class ClassFileDataInput implements DataInput {
-        private byte[] buffer;
-        private int size; // the number of significant bytes read
-        private int pointer; // the "read pointer"
-
-        ClassFileDataInput(InputStream is) throws IOException {
-            this.buffer = new byte[8 * 1024]; // default 8K cache
-            load(is);
-        }
-
-        /**
-         * Clear and fill the buffer of this {@code ClassFileBuffer} with the
-         * supplied byte stream.
-         * The read pointer is reset to the start of the byte array.
-         */
-        private void load(final InputStream in) throws IOException {
-            pointer = 0;
-            size = 0;
-            int n;
-            do {
-                n = in.read(buffer, size, buffer.length - size);
-                if (n > 0) {
-                    size += n;
-                }
-                ensureCapacity();
-            } while (n >= 0);
-        }
-
-        /**
-         * Sets the file-pointer offset, measured from the beginning of this file,
-         * at which the next read or write occurs.
-         */
-        public void seek(final int position) throws IOException {
-            if (position < 0) {
-                throw new IllegalArgumentException("position < 0: " + position);
-            }
-            if (position > size) {
-                throw new EOFException();
-            }
-            this.pointer = position;
-        }
-
-        /**
-         * Return the size (in bytes) of this Java ClassFile file.
-         */
-        public int size() {
-            return size;
-        }
-
-        @Override
-        public void readFully(final byte[] bytes) throws IOException {
-            readFully(bytes, 0, bytes.length);
-        }
-
-        @Override
-        public void readFully(final byte[] bytes, final int offset, final int length) throws IOException {
-            if (length < 0 || offset < 0 || offset + length > bytes.length) {
-                throw new IndexOutOfBoundsException();
-            }
-            if (pointer + length > size) {
-                throw new EOFException();
-            }
-            System.arraycopy(buffer, pointer, bytes, offset, length);
-            pointer += length;
-        }
-
-        @Override
-        public int skipBytes(final int n) throws IOException {
-            seek(pointer + n);
-            return n;
-        }
-
-        @Override
-        public byte readByte() throws IOException {
-            if (pointer >= size) {
-                throw new EOFException();
+    private boolean isAnnotationMatched(int typeIndex) throws IOException {
+        for (byte[] descriptor : annotationDescriptors) {
+            if (utf8Equals(typeIndex, descriptor)) {
+                return true;
             }
-            return buffer[pointer++];
         }
+        return false;
+    }
 
-        @Override
-        public boolean readBoolean() throws IOException {
-            return readByte() != 0;
+    /**
+     * 比较常量池中的 UTF8 常量和 bytes 是否相同 (不需要解码).
+     */
+    private boolean utf8Equals(int index, byte[] bytes) throws IOException {
+        final int offset = getUtf8Offset(index);
+        final int length = ((buffer[offset] & 0xff) << 8) | (buffer[offset + 1] & 0xff);
+        if (length != bytes.length) {
+            return false;
         }
-
-        @Override
-        public int readUnsignedByte() throws IOException {
-            if (pointer >= size) {
-                throw new EOFException();
+        final byte[] buf = buffer;
+        for (int i = 0, p = offset + 2; i < length; i++, p++) {
+            if (buf[p] != bytes[i]) {
+                return false;
             }
-            return read();
         }
+        return true;
+    }
 
-        @Override
-        public int readUnsignedShort() throws IOException {
-            if (pointer + 2 > size) {
-                throw new EOFException();
+    /**
+     * 将 annotation 的类型 (Lcom/example/Anno;) 解码成类名 (com.example.Anno).
+     */
+    private String getAnnotationName(int index) throws IOException {
+        final int offset = getUtf8Offset(index);
+        final int length = ((buffer[offset] & 0xff) << 8) | (buffer[offset + 1] & 0xff);
+        if (length < 2 || offset + 2 + length > size) {
+            throw new ClassFormatError("Invalid annotation descriptor.");
+        }
+        final char[] chars = new char[length];
+        int count = 0;
+        int p = offset + 3; // skip 'L'
+        final int end = offset + 2 + length - 1; // skip ';'
+        while (p < end) {
+            int c = buffer[p++] & 0xff;
+            if (c >= 0xe0) {
+                c = ((c & 0x0f) << 12) | ((buffer[p++] & 0x3f) << 6) | (buffer[p++] & 0x3f);
+            } else if (c >= 0x80) {
+                c = ((c & 0x1f) << 6) | (buffer[p++] & 0x3f);
             }
-            return (read() << 8) + read();
-        }
-
-        @Override
-        public short readShort() throws IOException {
-            return (short) readUnsignedShort();
-        }
-
-        @Override
-        public char readChar() throws IOException {
-            return (char) readUnsignedShort();
+            chars[count++] = (c == '/') ? '.' : (char) c;
         }
+        return new String(chars, 0, count);
+    }
 
-        @Override
-        public int readInt() throws IOException {
-            if (pointer + 4 > size) {
-                throw new EOFException();
-            }
-            //@formatter:off
-            return (read() << 24) +
-                   (read() << 16) +
-                   (read() << 8) +
-                    read();
-           //@formatter:on
+    private int getUtf8Offset(int index) throws IOException {
+        final int offset = constantPool[index];
+        if (offset == 0) {
+            throw new ClassFormatError("Not a UTF8 constant pool entry: " + index);
         }
+        return offset;
+    }
 
-        @Override
-        public long readLong() throws IOException {
-            if (pointer + 8 > size) {
-                throw new EOFException();
+    /**
+     * 编码为 class 文件中使用的 modified UTF-8.
+     */
+    private static byte[] toModifiedUtf8(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                out.write(c);
+            } else if (c <= 0x07ff) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            } else {
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
             }
-            //@formatter:off
-            return ((long)read() << 56) +
-                   ((long)read() << 48) +
-                   ((long)read() << 40) +
-                   ((long)read() << 32) +
-                         (read() << 24) +
-                         (read() << 16) +
-                         (read() << 8)  +
-                          read();
-            //@formatter:on
-        }
-
-        @Override
-        public float readFloat() throws IOException {
-            return Float.intBitsToFloat(readInt());
         }
+        return out.toByteArray();
+    }
 
-        @Override
-        public double readDouble() throws IOException {
-            return Double.longBitsToDouble(readLong());
+    private void seek(final int position) throws IOException {
+        if (position < 0 || position > size) {
+            throw new EOFException();
         }
+        pointer = position;
+    }
 
-        @Override
-        @Deprecated
-        public String readLine() throws IOException {
-            throw new UnsupportedOperationException("readLine() is deprecated and not supported");
-        }
+    private void skip(final int n) throws IOException {
+        seek(pointer + n);
+    }
 
-        @Override
-        public String readUTF() throws IOException {
-            return DataInputStream.readUTF(this);
+    private int readUnsignedByte() throws IOException {
+        if (pointer >= size) {
+            throw new EOFException();
         }
+        return buffer[pointer++] & 0xff;
+    }
 
-        private int read() {
-            return buffer[pointer++] & 0xff;
+    private int readUnsignedShort() throws IOException {
+        if (pointer + 2 > size) {
+            throw new EOFException();
         }
+        final byte[] buf = buffer;
+        final int p = pointer;
+        pointer = p + 2;
+        return ((buf[p] & 0xff) << 8) | (buf[p + 1] & 0xff);
+    }
 
-        private void ensureCapacity() {
-            if (size >= buffer.length) {
-                final byte[] newBuffer = new byte[buffer.length * 2];
-                System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
-                buffer = newBuffer;
-            }
+    private int readInt() throws IOException {
+        if (pointer + 4 > size) {
+            throw new EOFException();
         }
+        final byte[] buf = buffer;
+        final int p = pointer;
+        pointer = p + 4;
+        return ((buf[p] & 0xff) << 24) | ((buf[p + 1] & 0xff) << 16) | ((buf[p + 2] & 0xff) << 8) | (buf[p + 3] & 0xff);
     }
 }
@@ -20,13 +20,8 @@ package jetbrick.io.finder;
 
 import java.lang.annotation.Annotation;
 import java.util.*;
-import jetbrick.beans.ClassLoaderUtils;
-import jetbrick.lang.ExceptionUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class ClassFinder {
-    private static final Logger log = LoggerFactory.getLogger(ClassFinder.class);
 
     public static Set<Class<?>> getClasses(Class<? extends Annotation>[] annotations, boolean skiperrors) {
         return getClasses((String[]) null, true, annotations, skiperrors);
@@ -39,42 +34,9 @@ public class ClassFinder {
         return getClasses(pkgs, recursive, annos, skiperrors);
     }
 
-    public static Set<Class<?>> getClasses(String[] packageNames, boolean recursive, Class<? extends Annotation>[] annotations, final boolean skiperrors) {
-        final AnnotationClassReader reader = new AnnotationClassReader();
-        for (Class<? extends Annotation> annotation : annotations) {
-            reader.addAnnotation(annotation);
-        }
-
-        final ClassLoader loader = ClassLoaderUtils.getDefault();
-        final Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
-
-        FileFinder finder = new FileFinder() {
-            @Override
-            public void visitFile(ResourceEntry file) {
-                if (file.isJavaClass()) {
-                    if (reader.isAnnotationed(file.openStream())) {
-                        addClass(file.getQualifiedJavaName());
-                    }
-                }
-            }
-
-            private void addClass(String qualifiedClassName) {
-                try {
-                    Class<?> klass = loader.loadClass(qualifiedClassName);
-                    classes.add(klass);
-                } catch (ClassNotFoundException e) {
-                } catch (Exception e) {
-                    if (skiperrors) {
-                        log.warn("Class load error.", e);
-                    } else {
-                        throw ExceptionUtils.unchecked(e);
-                    }
-                }
-            }
-        };
-
-        finder.lookupClasspath(packageNames, recursive);
-
-        return classes;
+    public static Set<Class<?>> getClasses(String[] packageNames, boolean recursive, Class<? extends Annotation>[] annotations, boolean skiperrors) {
+        // 相同 package 的扫描结果会被缓存，多次查询只扫描一次
+        ClassScanResult result = ClassScanner.scan(packageNames);
+        return result.getClasses(packageNames, recursive, annotations, skiperrors);
     }
 }
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.io.finder;
+
+import java.lang.annotation.Annotation;
+import java.util.*;
+import jetbrick.beans.ClassLoaderUtils;
+import jetbrick.lang.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 一次 classpath 扫描的结果: 所有带 annotation 的 public 非抽象类，以及它们的 annotation 类名.
+ * <p>
+ * 多次查询 (不同的 annotation) 共享同一个扫描结果，不需要重新读取 class 文件.
+ */
+public final class ClassScanResult {
+    private static final Logger log = LoggerFactory.getLogger(ClassScanResult.class);
+
+    // annotation 类名 -> class 类名 (按照扫描的顺序)
+    private final Map<String, List<String>> annotationIndex = new HashMap<String, List<String>>();
+    private final int size;
+
+    ClassScanResult(Collection<Map<String, String[]>> roots) {
+        Set<String> classNames = new HashSet<String>();
+        for (Map<String, String[]> classes : roots) {
+            for (Map.Entry<String, String[]> entry : classes.entrySet()) {
+                String className = entry.getKey();
+                if (!classNames.add(className)) {
+                    continue; // 多个 jar 中的同名 class
+                }
+                for (String annotation : entry.getValue()) {
+                    List<String> list = annotationIndex.get(annotation);
+                    if (list == null) {
+                        list = new ArrayList<String>();
+                        annotationIndex.put(annotation, list);
+                    }
+                    list.add(className);
+                }
+            }
+        }
+        this.size = classNames.size();
+    }
+
+    /**
+     * 带有 annotation 的 class 个数.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查找带有任意一个 annotation 的 class 名称.
+     *
+     * @param packageNames 为 null 表示所有 package
+     */
+    public Set<String> getClassNames(String[] packageNames, boolean recursive, Class<? extends Annotation>[] annotations) {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Class<? extends Annotation> annotation : annotations) {
+            List<String> classNames = annotationIndex.get(annotation.getName());
+            if (classNames == null) {
+                continue;
+            }
+            for (String className : classNames) {
+                if (isInPackages(className, packageNames, recursive)) {
+                    result.add(className);
+                }
+            }
+        }
+        return result;
+    }
+
+    public Set<Class<?>> getClasses(String[] packageNames, boolean recursive, Class<? extends Annotation>[] annotations, boolean skiperrors) {
+        ClassLoader loader = ClassLoaderUtils.getDefault();
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        for (String className : getClassNames(packageNames, recursive, annotations)) {
+            try {
+                classes.add(loader.loadClass(className));
+            } catch (ClassNotFoundException e) {
+            } catch (Exception e) {
+                if (skiperrors) {
+                    log.warn("Class load error.", e);
+                } else {
+                    throw ExceptionUtils.unchecked(e);
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static boolean isInPackages(String className, String[] packageNames, boolean recursive) {
+        if (packageNames == null || packageNames.length == 0) {
+            return true;
+        }
+        int index = className.lastIndexOf('.');
+        String pkg = (index < 0) ? "" : className.substring(0, index);
+        for (String packageName : packageNames) {
+            if (pkg.equals(packageName)) {
+                return true;
+            }
+            if (recursive && pkg.startsWith(packageName) && pkg.charAt(packageName.length()) == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,495 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.io.finder;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import jetbrick.beans.ClassLoaderUtils;
+import jetbrick.beans.ClasspathUtils;
+import jetbrick.io.IoUtils;
+import jetbrick.io.URLUtils;
+import jetbrick.lang.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 并行扫描 classpath 中所有带 annotation 的 class，扫描结果按照 package 缓存，所有的 annotation 查询共享一次扫描.
+ * <p>
+ * 支持索引文件，索引中记录每个 jar/目录的校验值和扫描结果，校验值没有变化的 jar 直接使用索引，不需要解析 class 文件.
+ * jar 的大小和修改时间都没有变化时，不计算校验值；目录总是计算校验值.
+ *
+ * <pre><code>
+ * // 编译期生成索引
+ * java jetbrick.io.finder.ClassScanner /path/to/classfinder.idx com.example
+ *
+ * // 运行期使用索引
+ * -Djetbrick.classfinder.index=/path/to/classfinder.idx
+ * -Djetbrick.classfinder.index.update=true   // 可选，扫描之后更新索引文件
+ * </code></pre>
+ */
+public final class ClassScanner {
+    private static final Logger log = LoggerFactory.getLogger(ClassScanner.class);
+    private static final String INDEX_HEADER = "#jetbrick-classfinder-index 1";
+    private static final String INDEX_FILE = System.getProperty("jetbrick.classfinder.index");
+    private static final boolean INDEX_UPDATE = Boolean.getBoolean("jetbrick.classfinder.index.update");
+    // ClassLoader -> packageNames -> 扫描结果，ClassLoader 被卸载 (比如 webapp 重新部署) 之后自动清除
+    private static final Map<ClassLoader, Map<String, ClassScanResult>> cache = new WeakHashMap<ClassLoader, Map<String, ClassScanResult>>();
+
+    private final Map<String, RootIndex> index;
+    private final List<RootIndex> scanned = new ArrayList<RootIndex>();
+
+    private ClassScanner(Map<String, RootIndex> index) {
+        this.index = index;
+    }
+
+    /**
+     * 扫描指定 package 下面的所有 class (包括子 package)，相同的 ClassLoader 和 packageNames 只扫描一次.
+     *
+     * @param packageNames 为 null 表示整个 classpath
+     */
+    public static ClassScanResult scan(String[] packageNames) {
+        return scan(ClassLoaderUtils.getDefault(), packageNames);
+    }
+
+    public static ClassScanResult scan(ClassLoader loader, String[] packageNames) {
+        String key = getCacheKey(packageNames);
+        synchronized (ClassScanner.class) {
+            Map<String, ClassScanResult> results = cache.get(loader);
+            if (results == null) {
+                results = new HashMap<String, ClassScanResult>();
+                cache.put(loader, results);
+            }
+            ClassScanResult result = results.get(key);
+            if (result == null) {
+                File indexFile = (INDEX_FILE == null) ? null : new File(INDEX_FILE);
+                result = scan(loader, packageNames, indexFile, INDEX_UPDATE);
+                results.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 扫描 (不使用缓存)，使用索引文件中校验值一致的结果.
+     */
+    static ClassScanResult scan(ClassLoader loader, String[] packageNames, File indexFile, boolean updateIndex) {
+        ClassScanner scanner = new ClassScanner(readIndex(indexFile));
+        ClassScanResult result = scanner.doScan(loader, packageNames);
+        if (indexFile != null && updateIndex) {
+            scanner.writeIndex(indexFile);
+        }
+        return result;
+    }
+
+    /**
+     * 重新扫描并生成索引文件 (不使用已有的索引).
+     */
+    public static ClassScanResult writeIndex(File indexFile, String[] packageNames) {
+        ClassScanner scanner = new ClassScanner(Collections.<String, RootIndex> emptyMap());
+        ClassScanResult result = scanner.doScan(ClassLoaderUtils.getDefault(), packageNames);
+        scanner.writeIndex(indexFile);
+        return result;
+    }
+
+    public static void clearCache() {
+        synchronized (ClassScanner.class) {
+            cache.clear();
+        }
+    }
+
+    private static String getCacheKey(String[] packageNames) {
+        if (packageNames == null || packageNames.length == 0) {
+            return "*";
+        }
+        String[] names = packageNames.clone();
+        Arrays.sort(names);
+        return Arrays.toString(names);
+    }
+
+    private ClassScanResult doScan(ClassLoader loader, String[] packageNames) {
+        long start = System.currentTimeMillis();
+        List<Root> roots = getRoots(loader, packageNames);
+
+        List<Future<RootIndex>> futures = new ArrayList<Future<RootIndex>>(roots.size());
+        ExecutorService executor = null;
+        int reused = 0;
+        try {
+            for (final Root root : roots) {
+                RootIndex cached = getIndex(root);
+                if (cached != null) {
+                    reused++;
+                    futures.add(new FutureTaskResult(cached));
+                    continue;
+                }
+                if (executor == null) {
+                    executor = createExecutor(roots.size());
+                }
+                futures.add(executor.submit(new Callable<RootIndex>() {
+                    @Override
+                    public RootIndex call() {
+                        return scanRoot(root);
+                    }
+                }));
+            }
+
+            List<Map<String, String[]>> results = new ArrayList<Map<String, String[]>>(futures.size());
+            for (Future<RootIndex> future : futures) {
+                RootIndex rootIndex = future.get();
+                scanned.add(rootIndex);
+                results.add(rootIndex.classes);
+            }
+            ClassScanResult result = new ClassScanResult(results);
+            log.info("ClassScanner found {} classes in {} roots ({} from index), {} ms", result.size(), roots.size(), reused, System.currentTimeMillis() - start);
+            return result;
+        } catch (ExecutionException e) {
+            throw ExceptionUtils.unchecked(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static ExecutorService createExecutor(int roots) {
+        int threads = Math.max(1, Math.min(roots, Runtime.getRuntime().availableProcessors()));
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jetbrick-classscanner-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static List<Root> getRoots(ClassLoader loader, String[] packageNames) {
+        Map<String, Root> roots = new LinkedHashMap<String, Root>();
+        if (packageNames == null || packageNames.length == 0) {
+            for (URL url : ClasspathUtils.getClasspathURLs(loader)) {
+                Root root = new Root(url, null);
+                roots.put(root.url.toString(), root);
+            }
+        } else {
+            for (String pkg : packageNames) {
+                for (URL url : ClasspathUtils.getClasspathURLs(loader, pkg)) {
+                    Root root = new Root(url, pkg);
+                    roots.put(root.url.toString(), root);
+                }
+            }
+        }
+        return new ArrayList<Root>(roots.values());
+    }
+
+    /**
+     * 校验值一致的话，返回索引中的结果.
+     * <p>
+     * jar 文件的大小和修改时间都没有变化时，直接认为没有变化 (不计算校验值)；重新打包的 jar 的修改时间总会变化.
+     * 目录总是计算校验值 (所有 class 文件的路径、大小和修改时间)，其他协议 (比如 vfs) 的 classpath 不使用索引.
+     */
+    private RootIndex getIndex(Root root) {
+        RootIndex cached = index.get(root.key);
+        if (cached == null || root.file == null) {
+            return null;
+        }
+        if (root.file.isFile() && cached.length == root.file.length() && cached.lastModified == root.file.lastModified()) {
+            return cached; // jar 没有变化，不需要计算校验值
+        }
+        if (cached.checksum == root.getChecksum()) {
+            return cached;
+        }
+        return null;
+    }
+
+    private static RootIndex scanRoot(Root root) {
+        final AnnotationClassReader reader = new AnnotationClassReader();
+        final Map<String, String[]> classes = new LinkedHashMap<String, String[]>();
+
+        FileFinder finder = new FileFinder() {
+            @Override
+            protected void visitFile(ResourceEntry file) {
+                if (file.isJavaClass()) {
+                    List<String> annotations = reader.getAnnotationNames(file.openStream());
+                    if (annotations != null) {
+                        classes.put(file.getQualifiedJavaName(), annotations.toArray(new String[annotations.size()]));
+                    }
+                }
+            }
+        };
+        finder.lookupClasspath(root.url, root.pkg, true);
+
+        RootIndex rootIndex = new RootIndex(root.key, classes);
+        if (root.file != null) {
+            rootIndex.length = root.file.length();
+            rootIndex.lastModified = root.file.lastModified();
+            rootIndex.checksum = root.getChecksum();
+        }
+        return rootIndex;
+    }
+
+    private static Map<String, RootIndex> readIndex(File file) {
+        if (file == null || !file.isFile()) {
+            return Collections.emptyMap();
+        }
+        Map<String, RootIndex> index = new HashMap<String, RootIndex>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "utf-8"));
+            String line = reader.readLine();
+            if (!INDEX_HEADER.equals(line)) {
+                log.warn("Invalid class index file: {}", file);
+                return Collections.emptyMap();
+            }
+            RootIndex current = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] items = line.split("\t");
+                if (line.charAt(0) == '@') {
+                    // @key length lastModified checksum
+                    current = new RootIndex(items[0].substring(1), new LinkedHashMap<String, String[]>());
+                    current.length = Long.parseLong(items[1]);
+                    current.lastModified = Long.parseLong(items[2]);
+                    current.checksum = Long.parseLong(items[3]);
+                    index.put(current.key, current);
+                } else if (current != null) {
+                    // className annotation,annotation
+                    current.classes.put(items[0], items[1].split(","));
+                }
+            }
+            log.info("Loaded class index file: {}", file);
+            return index;
+        } catch (Exception e) {
+            log.warn("Failed to read class index file: " + file, e);
+            return Collections.emptyMap();
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    private void writeIndex(File file) {
+        Writer writer = null;
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "utf-8"));
+            writer.write(INDEX_HEADER);
+            writer.write('\n');
+            for (RootIndex rootIndex : scanned) {
+                if (rootIndex.checksum == 0) {
+                    continue; // vfs 等不支持索引
+                }
+                writer.write('@' + rootIndex.key + '\t' + rootIndex.length + '\t' + rootIndex.lastModified + '\t' + rootIndex.checksum + '\n');
+                for (Map.Entry<String, String[]> entry : rootIndex.classes.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    String[] annotations = entry.getValue();
+                    for (int i = 0; i < annotations.length; i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        writer.write(annotations[i]);
+                    }
+                    writer.write('\n');
+                }
+            }
+            log.info("Written class index file: {}", file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            IoUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * 编译期生成索引文件.
+     *
+     * @param args 索引文件，package 名称 ...
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java jetbrick.io.finder.ClassScanner <index-file> [package ...]");
+            System.exit(1);
+        }
+        String[] packageNames = Arrays.copyOfRange(args, 1, args.length);
+        ClassScanResult result = writeIndex(new File(args[0]), packageNames.length == 0 ? null : packageNames);
+        System.out.println("Found " + result.size() + " classes, index written to " + args[0]);
+    }
+
+    // 一个 classpath 根目录或者 jar (或者其中的一个 package)
+    static final class Root {
+        final URL url;
+        final String pkg;
+        final File file; // jar 文件或者目录，其他类型为 null
+        final String key;
+
+        Root(URL url, String pkg) {
+            this.url = url;
+            this.pkg = pkg;
+
+            String protocol = url.getProtocol();
+            File f = null;
+            if (URLUtils.FILE_PROTOCOL.equals(protocol) || URLUtils.JAR_PROTOCOL.equals(protocol)) {
+                f = URLUtils.toFileObject(url);
+            }
+            this.file = f;
+
+            // 索引的 key 不使用绝对路径，编译期生成的索引在部署之后路径会发生变化
+            String name = (f == null) ? url.toString() : f.getName();
+            this.key = name + '!' + (pkg == null ? "" : pkg);
+        }
+
+        /**
+         * jar: 计算 zip 目录区的 CRC (其中包含了每个文件的 CRC)，不需要读取整个 jar.
+         * 目录: 计算所有 class 文件的路径、大小和修改时间的 CRC.
+         */
+        long getChecksum() {
+            CRC32 crc = new CRC32();
+            try {
+                if (file.isFile()) {
+                    updateZipChecksum(file, crc);
+                } else if (file.isDirectory()) {
+                    updateDirChecksum(file, "", crc);
+                } else {
+                    return 0;
+                }
+            } catch (IOException e) {
+                return 0;
+            }
+            // 0 表示不支持索引
+            return crc.getValue() == 0 ? 1 : crc.getValue();
+        }
+
+        private static void updateZipChecksum(File file, CRC32 crc) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                long length = raf.length();
+                // End of central directory record: 最少 22 字节，注释最长 65535 字节
+                int tailSize = (int) Math.min(length, 22 + 65535);
+                byte[] tail = new byte[tailSize];
+                raf.seek(length - tailSize);
+                raf.readFully(tail);
+                for (int i = tailSize - 22; i >= 0; i--) {
+                    if (tail[i] == 0x50 && tail[i + 1] == 0x4b && tail[i + 2] == 0x05 && tail[i + 3] == 0x06) {
+                        long cdSize = readInt(tail, i + 12);
+                        long cdOffset = readInt(tail, i + 16);
+                        if (cdOffset + cdSize <= length) {
+                            byte[] cd = new byte[(int) cdSize];
+                            raf.seek(cdOffset);
+                            raf.readFully(cd);
+                            crc.update(cd);
+                            return;
+                        }
+                        break;
+                    }
+                }
+                throw new IOException("Invalid zip file: " + file);
+            } finally {
+                raf.close();
+            }
+        }
+
+        private static void updateLong(CRC32 crc, long value) {
+            for (int i = 0; i < 8; i++) {
+                crc.update((int) (value >>> (i * 8)));
+            }
+        }
+
+        private static long readInt(byte[] b, int offset) {
+            return (b[offset] & 0xFFL) | (b[offset + 1] & 0xFFL) << 8 | (b[offset + 2] & 0xFFL) << 16 | (b[offset + 3] & 0xFFL) << 24;
+        }
+
+        private static void updateDirChecksum(File dir, String path, CRC32 crc) throws IOException {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files);
+            for (File f : files) {
+                String name = path + '/' + f.getName();
+                if (f.isDirectory()) {
+                    updateDirChecksum(f, name, crc);
+                } else if (name.endsWith(".class")) {
+                    crc.update(name.getBytes("utf-8"));
+                    updateLong(crc, f.length());
+                    updateLong(crc, f.lastModified());
+                }
+            }
+        }
+    }
+
+    // 一个 Root 的扫描结果
+    static final class RootIndex {
+        final String key;
+        final Map<String, String[]> classes;
+        long length;
+        long lastModified;
+        long checksum;
+
+        RootIndex(String key, Map<String, String[]> classes) {
+            this.key = key;
+            this.classes = classes;
+        }
+    }
+
+    // 直接使用索引的结果
+    static final class FutureTaskResult implements Future<RootIndex> {
+        private final RootIndex value;
+
+        FutureTaskResult(RootIndex value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        @Override
+        public RootIndex get() {
+            return value;
+        }
+
+        @Override
+        public RootIndex get(long timeout, TimeUnit unit) {
+            return value;
+        }
+    }
+}
@@ -69,6 +69,15 @@ public abstract class FileFinder {
         }
     }
 
+    /**
+     * 查找一个 classpath URL (目录或者 jar) 下面的文件，url 一般由 ClasspathUtils.getClasspathURLs() 返回.
+     *
+     * @param packageName url 对应的 package，null 表示 url 是 classpath 的根目录
+     */
+    public void lookupClasspath(URL url, String packageName, boolean recursive) {
+        doGetClasspathResources(Collections.singletonList(url), packageName, recursive);
+    }
+
     public void lookupZipFile(File zipFile, String entryName, boolean recursive) {
         Validate.notNull(zipFile);
 
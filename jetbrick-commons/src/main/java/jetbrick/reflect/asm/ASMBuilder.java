@@ -24,7 +24,10 @@ import java.util.List;
 import jetbrick.asm.*;
 import jetbrick.reflect.*;
 
-final class ASMBuilder {
+/**
+ * 字节码生成工具，生成的类继承自 MagicAccessorImpl，并实现指定的接口.
+ */
+public final class ASMBuilder {
     private static final String SUN_MAGIC_ACCESSOR_KLASS = "sun/reflect/MagicAccessorImpl";
     private static final String FIELD_EXPECTED_CONSTRUCTOR_ARGUMENT_LENGTHS = "ctors";
     private static final String FIELD_EXPECTED_METHOD_ARGUMENT_LENGTHS = "methods";
@@ -152,6 +155,36 @@ final class ASMBuilder {
         mv.visitEnd();
     }
 
+    /**
+     * 生成带参数的构造函数，参数依次保存到对应的 private final 字段中.
+     */
+    public void insertConstructor(String[] fieldNames, Class<?>[] fieldTypes) {
+        StringBuilder desc = new StringBuilder(64);
+        desc.append('(');
+        for (int i = 0; i < fieldNames.length; i++) {
+            String fieldDesc = Type.getDescriptor(fieldTypes[i]);
+            cw.visitField(ACC_PRIVATE + ACC_FINAL + ACC_SYNTHETIC, fieldNames[i], fieldDesc, null, null).visitEnd();
+            desc.append(fieldDesc);
+        }
+        desc.append(")V");
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "<init>", desc.toString(), null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, SUN_MAGIC_ACCESSOR_KLASS, "<init>", "()V", false);
+        int slot = 1;
+        for (int i = 0; i < fieldNames.length; i++) {
+            Type type = Type.getType(fieldTypes[i]);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+            mv.visitFieldInsn(PUTFIELD, generatedKlassNameInternal, fieldNames[i], type.getDescriptor());
+            slot += type.getSize();
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
     public void insertNewInstance() {
         MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "newInstance", "()Ljava/lang/Object;", null, null);
         mv.visitCode();
@@ -379,7 +412,7 @@ final class ASMBuilder {
         mv.visitInsn(ATHROW);
     }
 
-    private static void insertBox(MethodVisitor mv, Type type) {
+    public static void insertBox(MethodVisitor mv, Type type) {
         switch (type.getSort()) {
         case Type.VOID:
             mv.visitInsn(ACONST_NULL);
@@ -411,7 +444,7 @@ final class ASMBuilder {
         }
     }
 
-    private static void insertUnbox(MethodVisitor mv, Type type) {
+    public static void insertUnbox(MethodVisitor mv, Type type) {
         switch (type.getSort()) {
         case Type.BOOLEAN:
             mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
@@ -457,6 +490,18 @@ final class ASMBuilder {
         }
     }
 
+    public ClassWriter getClassWriter() {
+        return cw;
+    }
+
+    public String getGeneratedKlassNameInternal() {
+        return generatedKlassNameInternal;
+    }
+
+    public String getDelegateKlassNameInternal() {
+        return delegateKlassNameInternal;
+    }
+
     public byte[] asByteCode() {
         cw.visitEnd();
         return cw.toByteArray();
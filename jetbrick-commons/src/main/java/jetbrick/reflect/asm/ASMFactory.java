@@ -54,15 +54,7 @@ public final class ASMFactory {
                 generatedKlass = loader.loadClass(generatedKlassName);
             } catch (ClassNotFoundException e) {
                 byte[] byteCode = ASMBuilder.create(generatedKlassName, delegateKlass);
-                if (ASM_DEBUG_ENABLED) {
-                    File dir = new File(System.getProperty("java.io.tmpdir"));
-                    File file = new File(dir, generatedKlassName.replace('.', '/') + ".class");
-                    file.getParentFile().mkdirs();
-
-                    LoggerFactory.getLogger(ASMFactory.class).info("ASMFactory generated {}", file);
-                    IoUtils.write(byteCode, file);
-                }
-                generatedKlass = loader.defineClass(generatedKlassName, byteCode, delegateType.getProtectionDomain());
+                generatedKlass = defineClass(delegateType, generatedKlassName, byteCode);
             }
         }
 
@@ -72,4 +64,23 @@ public final class ASMFactory {
             throw new RuntimeException("Error constructing access class: " + generatedKlassName, e);
         }
     }
+
+    /**
+     * 使用和 delegateType 关联的 ClassLoader 定义一个由 {@link ASMBuilder} 生成的 Class.
+     */
+    public static Class<?> defineClass(Class<?> delegateType, String generatedKlassName, byte[] byteCode) {
+        if (ASM_DEBUG_ENABLED) {
+            File dir = new File(System.getProperty("java.io.tmpdir"));
+            File file = new File(dir, generatedKlassName.replace('.', '/') + ".class");
+            file.getParentFile().mkdirs();
+
+            LoggerFactory.getLogger(ASMFactory.class).info("ASMFactory generated {}", file);
+            IoUtils.write(byteCode, file);
+        }
+
+        ASMClassLoader loader = ASMClassLoader.get(delegateType);
+        synchronized (loader) {
+            return loader.defineClass(generatedKlassName, byteCode, delegateType.getProtectionDomain());
+        }
+    }
 }
@@ -19,6 +19,7 @@
 package jetbrick.web.servlet;
 
 import java.io.UnsupportedEncodingException;
+import java.util.Collection;
 import javax.servlet.http.HttpServletResponse;
 
 public final class ResponseUtils {
@@ -43,4 +44,22 @@ public final class ResponseUtils {
         } catch (UnsupportedEncodingException e) {
         }
     }
+
+    /**
+     * 添加 Vary 头，如果已经存在相同的值 (包括 "*")，那么不重复添加.
+     */
+    public static void addVaryHeader(HttpServletResponse response, String name) {
+        Collection<String> values = response.getHeaders("Vary");
+        if (values != null) {
+            for (String value : values) {
+                for (String token : value.split(",")) {
+                    token = token.trim();
+                    if (token.equals("*") || token.equalsIgnoreCase(name)) {
+                        return;
+                    }
+                }
+            }
+        }
+        response.addHeader("Vary", name);
+    }
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.io.finder;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnnotationClassReaderTest {
+
+    /**
+     * fixture/Java8Bean.class.bin 是使用 javac 1.8 编译的 class (测试代码只能使用 Java 6 的语法)，源码如下:
+     *
+     * <pre>
+     * &#64;Fixture(longValue = 1234567890123L, doubleValue = 3.14159, nested = &#64;Fixture.Nested({ "a", "b" }), values = { 1, 2, 3 }, type = String.class, policy = RetentionPolicy.RUNTIME)
+     * &#64;Deprecated
+     * public class Java8Bean {
+     *     public static final long LONG = 1234567890123L;
+     *     public static final double DOUBLE = 2.71828;
+     *
+     *     private final Runnable task = () -&gt; System.out.println(System.nanoTime() + 9876543210L);
+     *
+     *     public Supplier&lt;String&gt; supplier() {
+     *         return String::new;
+     *     }
+     * }
+     * </pre>
+     *
+     * 常量池中包含 Long, Double, InvokeDynamic, MethodHandle, MethodType，&#64;Fixture 中包含嵌套的 annotation 和数组.
+     */
+    private static InputStream openJava8Bean() {
+        return AnnotationClassReaderTest.class.getResourceAsStream("fixture/Java8Bean.class.bin");
+    }
+
+    private static InputStream open(Class<?> klass) {
+        return klass.getResourceAsStream('/' + klass.getName().replace('.', '/') + ".class");
+    }
+
+    @Test
+    public void isAnnotationed() {
+        AnnotationClassReader reader = new AnnotationClassReader();
+        reader.addAnnotation(Deprecated.class);
+        Assert.assertTrue(reader.isAnnotationed(open(ClassScannerTest.DeprecatedBean.class)));
+        Assert.assertFalse(reader.isAnnotationed(open(AnnotationClassReaderTest.class)));
+        // 重复使用同一个 reader
+        Assert.assertTrue(reader.isAnnotationed(open(ClassScannerTest.DeprecatedBean.class)));
+    }
+
+    @Test
+    public void getAnnotationNames() {
+        AnnotationClassReader reader = new AnnotationClassReader();
+        Assert.assertEquals(Arrays.asList(Deprecated.class.getName()), reader.getAnnotationNames(open(ClassScannerTest.DeprecatedBean.class)));
+        Assert.assertNull(reader.getAnnotationNames(open(AnnotationClassReaderTest.class)));
+        Assert.assertNull(reader.getAnnotationNames(open(Runnable.class))); // interface
+    }
+
+    @Test
+    public void java8ClassFile() {
+        AnnotationClassReader reader = new AnnotationClassReader();
+        // @Deprecated 在 @Fixture 后面，必须正确跳过 @Fixture 中的所有元素
+        Assert.assertEquals(Arrays.asList("jetbrick.io.finder.fixture.Fixture", Deprecated.class.getName()), reader.getAnnotationNames(openJava8Bean()));
+
+        reader.addAnnotation(Deprecated.class);
+        Assert.assertTrue(reader.isAnnotationed(openJava8Bean()));
+        Assert.assertTrue(reader.isAnnotationed(open(ClassScannerTest.DeprecatedBean.class)));
+    }
+}
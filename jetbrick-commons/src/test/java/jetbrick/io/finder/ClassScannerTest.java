@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.io.finder;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.util.Set;
+import jetbrick.io.IoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("unchecked")
+public class ClassScannerTest {
+
+    @Deprecated
+    public static class DeprecatedBean {
+    }
+
+    @Deprecated
+    static class HiddenBean {
+    }
+
+    private static final String[] PACKAGES = { "jetbrick.io.finder" };
+    private static final Class<? extends Annotation>[] ANNOTATIONS = new Class[] { Deprecated.class };
+
+    @Test
+    public void scan() {
+        ClassScanResult result = ClassScanner.scan(PACKAGES);
+        Set<Class<?>> classes = result.getClasses(PACKAGES, true, ANNOTATIONS, false);
+        Assert.assertTrue(classes.contains(DeprecatedBean.class));
+        Assert.assertFalse(classes.contains(HiddenBean.class)); // 非 public
+        Assert.assertSame(result, ClassScanner.scan(PACKAGES));
+
+        Assert.assertTrue(result.getClassNames(new String[] { "jetbrick.io" }, false, ANNOTATIONS).isEmpty());
+        Assert.assertFalse(result.getClassNames(new String[] { "jetbrick.io" }, true, ANNOTATIONS).isEmpty());
+        Assert.assertEquals(classes, ClassFinder.getClasses(PACKAGES, true, ANNOTATIONS, false));
+    }
+
+    @Test
+    public void cacheByClassLoader() {
+        ClassLoader loader = ClassScannerTest.class.getClassLoader();
+        ClassScanResult result = ClassScanner.scan(loader, PACKAGES);
+        Assert.assertSame(result, ClassScanner.scan(loader, new String[] { "jetbrick.io.finder" }));
+
+        // 不同的 ClassLoader (比如不同的 webapp) 不能共享扫描结果
+        ClassLoader child = new java.net.URLClassLoader(new java.net.URL[0], loader);
+        ClassScanResult childResult = ClassScanner.scan(child, PACKAGES);
+        Assert.assertNotSame(result, childResult);
+        Assert.assertEquals(result.size(), childResult.size());
+        Assert.assertSame(childResult, ClassScanner.scan(child, PACKAGES));
+    }
+
+    @Test
+    public void index() throws Exception {
+        File file = File.createTempFile("classfinder", ".idx");
+        try {
+            ClassScanResult result = ClassScanner.writeIndex(file, PACKAGES);
+            String content = IoUtils.toString(file, "utf-8");
+            Assert.assertTrue(content.contains(DeprecatedBean.class.getName() + "\tjava.lang.Deprecated"));
+
+            ClassScanResult indexed = ClassScanner.scan(getClass().getClassLoader(), PACKAGES, file, false);
+            Assert.assertEquals(result.size(), indexed.size());
+            Assert.assertEquals(result.getClassNames(PACKAGES, true, ANNOTATIONS), indexed.getClassNames(PACKAGES, true, ANNOTATIONS));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void jarChecksum() {
+        ClassScanner.Root root = new ClassScanner.Root(Test.class.getResource("/org/junit"), "org.junit");
+        Assert.assertNotNull(root.file);
+        Assert.assertTrue(root.file.isFile());
+        long checksum = root.getChecksum();
+        Assert.assertTrue(checksum != 0);
+        Assert.assertEquals(checksum, root.getChecksum());
+        Assert.assertEquals(root.file.getName() + "!org.junit", root.key);
+    }
+}
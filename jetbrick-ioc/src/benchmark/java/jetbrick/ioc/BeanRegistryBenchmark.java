@@ -0,0 +1,86 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import jetbrick.io.config.Configuration;
+import jetbrick.ioc.objects.BeanCreatorBenchmark.Dao;
+import jetbrick.ioc.objects.BeanCreatorBenchmark.Prototype;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 比较 MutableIoc 冻结 (BeanRegistry) 前后按名字/Class 查找 Bean 的开销.
+ *
+ * <pre>
+ * mvn -P benchmark -pl jetbrick-ioc test-compile exec:exec -Dbenchmark=BeanRegistryBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanRegistryBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean frozen;
+
+    private MutableIoc ioc;
+
+    @Setup
+    public void setup() {
+        ioc = new MutableIoc();
+        ioc.addConfig("app.name", "demo");
+        ioc.addBean(Dao.class);
+        for (int i = 0; i < 200; i++) {
+            ioc.addBean("filler.bean" + i, new Object());
+        }
+        Properties properties = new Properties();
+        properties.put("timeout", "1500");
+        ioc.addBean("proto", Prototype.class, new Configuration(properties), false);
+        if (frozen) {
+            ioc.freeze();
+        }
+    }
+
+    // 只有查找的开销
+    @Benchmark
+    public Object getBeanByName() {
+        return ioc.getBean("filler.bean100");
+    }
+
+    // 查找并创建 prototype Bean (冻结之后 @Inject 直接引用 IocObject)
+    @Benchmark
+    public Object getPrototype() {
+        return ioc.getBean("proto");
+    }
+
+    @Benchmark
+    public Object getBeanByClass() {
+        return ioc.getBean(Dao.class);
+    }
+
+    // 找不到的 Class 不会被缓存
+    @Benchmark
+    public Object getMissingBean() {
+        return ioc.getBean(String.class);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc.objects;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import jetbrick.io.config.Configuration;
+import jetbrick.ioc.MutableIoc;
+import jetbrick.ioc.annotations.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 比较 prototype Bean 使用 BeanCreator (compiled) 和反射创建的开销 (getBean 的吞吐量).
+ *
+ * <pre>
+ * mvn -P benchmark -pl jetbrick-ioc test-compile exec:exec -Dbenchmark=BeanCreatorBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanCreatorBenchmark {
+
+    public static class Dao {
+    }
+
+    // 构造函数注入、字段注入、@Config、属性注入和 @IocInit 都有
+    public static class Prototype {
+        private final Dao ctorDao;
+        @Inject
+        private Dao dao;
+        @Config(value = "app.name", defaultValue = "x")
+        private String name;
+        @Config(value = "app.size", defaultValue = "7")
+        private int size;
+        @Config(value = "app.list", required = false)
+        private List<Integer> list;
+        private long timeout;
+        private int inits;
+
+        @Inject
+        public Prototype(@Inject Dao dao) {
+            this.ctorDao = dao;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @IocInit
+        private void init() {
+            inits++;
+        }
+    }
+
+    // 注册 Dao 和一个 prototype Bean "proto"
+    public static MutableIoc createIoc(boolean compiled) {
+        MutableIoc ioc = new MutableIoc();
+        ioc.addConfig("app.name", "demo");
+        ioc.addBean(Dao.class);
+        Properties properties = new Properties();
+        properties.put("timeout", "1500");
+        ClassInstanceObject object = new ClassInstanceObject(ioc, Prototype.class, new Configuration(properties), compiled);
+        ioc.addBean("proto", object);
+        ioc.getBean("proto");
+        if (object.isCompiled() != compiled) {
+            throw new IllegalStateException("BeanCreator is not generated for " + Prototype.class.getName());
+        }
+        return ioc;
+    }
+
+    @Param({ "true", "false" })
+    public boolean compiled;
+
+    private MutableIoc ioc;
+
+    @Setup
+    public void setup() {
+        ioc = createIoc(compiled);
+    }
+
+    @Benchmark
+    public Object getPrototype() {
+        return ioc.getBean("proto");
+    }
+}
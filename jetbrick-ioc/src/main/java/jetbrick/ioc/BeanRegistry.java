@@ -0,0 +1,162 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc;
+
+import java.util.Map;
+import jetbrick.ioc.objects.IocObject;
+
+/**
+ * {@link MutableIoc} 冻结之后的只读 Bean 注册表.
+ *
+ * 按名字查找使用开放寻址的数组 (String 的 hashCode 已经被缓存)，按 Class 查找使用 identity hash，
+ * 第一次查找时根据 Class 名字解析并以 copy-on-write 的方式缓存起来，之后不再需要 getName() 和字符串比较.
+ * 找不到的 Class 不缓存 (任意 Class 都可以用来查找，缓存下来会无限增长)，所以 Class 表的大小不会超过 Bean 的个数.
+ */
+final class BeanRegistry {
+    private final String[] names;
+    private final int[] hashes;
+    private final IocObject[] objects;
+    private final int mask;
+    private final int size;
+
+    private volatile ClassTable classTable = new ClassTable(16);
+
+    public BeanRegistry(Map<String, IocObject> pool) {
+        int capacity = 16;
+        while (capacity < pool.size() * 2) {
+            capacity <<= 1;
+        }
+        names = new String[capacity];
+        hashes = new int[capacity];
+        objects = new IocObject[capacity];
+        mask = capacity - 1;
+        size = pool.size();
+
+        for (Map.Entry<String, IocObject> entry : pool.entrySet()) {
+            String name = entry.getKey();
+            int hash = hash(name.hashCode());
+            int i = hash & mask;
+            while (names[i] != null) {
+                i = (i + 1) & mask;
+            }
+            names[i] = name;
+            hashes[i] = hash;
+            objects[i] = entry.getValue();
+        }
+    }
+
+    public IocObject get(String name) {
+        int hash = hash(name.hashCode());
+        int i = hash & mask;
+        String key;
+        while ((key = names[i]) != null) {
+            if (hashes[i] == hash && key.equals(name)) {
+                return objects[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public IocObject get(Class<?> type) {
+        IocObject object = classTable.get(type);
+        if (object == null) {
+            object = get(type.getName());
+            if (object != null) {
+                synchronized (this) {
+                    classTable = classTable.with(type, object);
+                }
+            }
+        }
+        return object;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 测试用，已经缓存的 Class 个数
+    int getClassTableSize() {
+        return classTable.count;
+    }
+
+    private static int hash(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // 只读的 Class -> IocObject 表，每次增加都会复制一份新的
+    static final class ClassTable {
+        final Class<?>[] keys;
+        final IocObject[] values;
+        final int count;
+
+        ClassTable(int capacity) {
+            keys = new Class<?>[capacity];
+            values = new IocObject[capacity];
+            count = 0;
+        }
+
+        private ClassTable(ClassTable table, int capacity) {
+            keys = new Class<?>[capacity];
+            values = new IocObject[capacity];
+            for (int i = 0; i < table.keys.length; i++) {
+                if (table.keys[i] != null) {
+                    put(table.keys[i], table.values[i]);
+                }
+            }
+            count = table.count + 1;
+        }
+
+        IocObject get(Class<?> type) {
+            int mask = keys.length - 1;
+            int i = hash(System.identityHashCode(type)) & mask;
+            Class<?> key;
+            while ((key = keys[i]) != null) {
+                if (key == type) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        ClassTable with(Class<?> type, IocObject object) {
+            if (get(type) != null) {
+                return this; // 其他线程已经放进去了
+            }
+            int capacity = keys.length;
+            if ((count + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+            ClassTable table = new ClassTable(this, capacity);
+            table.put(type, object);
+            return table;
+        }
+
+        private void put(Class<?> type, IocObject object) {
+            int mask = keys.length - 1;
+            int i = hash(System.identityHashCode(type)) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = type;
+            values[i] = object;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package jetbrick.ioc;
 
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import jetbrick.io.config.Configuration;
 import jetbrick.ioc.loaders.IocConfiguration;
 import jetbrick.ioc.loaders.IocLoader;
@@ -30,8 +31,39 @@ import org.slf4j.LoggerFactory;
 
 public final class MutableIoc implements Ioc {
     private final Logger log = LoggerFactory.getLogger(Ioc.class);
-    private final Map<String, IocObject> pool = new HashMap<String, IocObject>();
+    private final Map<String, IocObject> pool = new ConcurrentHashMap<String, IocObject>();
     private final IocConfiguration config = new IocConfiguration(this);
+    private volatile BeanRegistry registry; // freeze() 之后不再为 null
+
+    /**
+     * 加载完成之后冻结 Ioc，之后不能再添加 Bean.
+     *
+     * 冻结之后按名字/Class 查找 Bean 都使用只读的 {@link BeanRegistry}，
+     * 并且 @Inject 等注入器会直接引用对应的 {@link IocObject}，不再每次按名字查找.
+     */
+    public synchronized void freeze() {
+        if (registry == null) {
+            registry = new BeanRegistry(pool);
+            log.debug("Ioc frozen with {} beans", registry.size());
+        }
+    }
+
+    public boolean isFrozen() {
+        return registry != null;
+    }
+
+    /**
+     * 启动时初始化所有的 singleton Bean (会先冻结 Ioc)，避免第一次请求时才初始化.
+     *
+     * 按照 Bean 之间的依赖关系，在 threads 个线程中并行初始化互不依赖的 singleton，
+     * 返回每个 Bean 的初始化耗时 (ms)，按耗时从大到小排序.
+     *
+     * @param threads 并行初始化的线程数，<= 0 表示使用 CPU 核数
+     */
+    public Map<String, Long> initializeSingletons(int threads) {
+        freeze();
+        return new SingletonInitializer(pool).initialize(threads);
+    }
 
     public void load(IocLoader loader) {
         loader.load(this);
@@ -66,9 +98,7 @@ public final class MutableIoc implements Ioc {
 
         log.debug("addBean: {}", name);
 
-        if (pool.put(name, object) != null) {
-            log.warn("Duplicated Bean: {}", name);
-        }
+        doAddBean(name, object);
     }
 
     // 注册 @IocBean 标注的对象
@@ -91,12 +121,24 @@ public final class MutableIoc implements Ioc {
 
         log.debug("addBean: {}", name, beanClass.getName());
 
-        IocObject iocObject = doGetIocObject(beanClass, properties, singleton);
-        if (pool.put(name, iocObject) != null) {
+        checkNotFrozen();
+        doAddBean(name, doGetIocObject(beanClass, properties, singleton));
+    }
+
+    // 和 freeze() 互斥，避免 BeanRegistry 创建之后还有 Bean 加入 pool
+    private synchronized void doAddBean(String name, IocObject object) {
+        checkNotFrozen();
+        if (pool.put(name, object) != null) {
             log.warn("Duplicated Bean: {}", name);
         }
     }
 
+    private void checkNotFrozen() {
+        if (registry != null) {
+            throw new IllegalStateException("Ioc is frozen, cannot add bean any more.");
+        }
+    }
+
     private IocObject doGetIocObject(Class<?> beanClass, Configuration properties, boolean singleton) {
         if (IocFactory.class.isAssignableFrom(beanClass)) {
             if (singleton) {
@@ -118,19 +160,35 @@ public final class MutableIoc implements Ioc {
     @SuppressWarnings("unchecked")
     public <T> T getBean(Class<T> beanClass) {
         Validate.notNull(beanClass);
-        return (T) getBean(beanClass.getName());
+        IocObject iocObject = getIocObject(beanClass);
+        if (iocObject == null) {
+            return null;
+        }
+        return (T) iocObject.getObject();
     }
 
     // 获取一个 Bean
     @Override
     public Object getBean(String name) {
-        IocObject iocObject = pool.get(name);
+        IocObject iocObject = getIocObject(name);
         if (iocObject == null) {
             return null;
         }
         return iocObject.getObject();
     }
 
+    // 获取 Bean 对应的 IocObject，找不到返回 null
+    public IocObject getIocObject(String name) {
+        BeanRegistry r = registry;
+        return (r != null) ? r.get(name) : pool.get(name);
+    }
+
+    // 获取 Bean 对应的 IocObject，找不到返回 null
+    public IocObject getIocObject(Class<?> beanClass) {
+        BeanRegistry r = registry;
+        return (r != null) ? r.get(beanClass) : pool.get(beanClass.getName());
+    }
+
     @Override
     public <T> T getConfig(String name, Class<T> type) {
         return config.getValue(name, type);
@@ -0,0 +1,272 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc;
+
+import java.lang.annotation.Annotation;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.ioc.annotations.Inject;
+import jetbrick.ioc.annotations.InjectParameterWith;
+import jetbrick.ioc.objects.*;
+import jetbrick.lang.ExceptionUtils;
+import jetbrick.lang.annotations.ValueConstants;
+import jetbrick.reflect.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 启动时并行初始化所有的 singleton Bean.
+ *
+ * 根据 @Inject 标注的字段、@Inject 构造函数的参数建立 Bean 之间的依赖关系 (@Config 的值来自配置文件，不产生依赖)，
+ * 先检查循环依赖，然后按照拓扑顺序，在固定大小的线程池中并行初始化互不依赖的 singleton.
+ */
+final class SingletonInitializer {
+    private static final Logger log = LoggerFactory.getLogger(SingletonInitializer.class);
+
+    private final Map<String, Node> nodes = new TreeMap<String, Node>();
+
+    public SingletonInitializer(Map<String, IocObject> pool) {
+        for (Map.Entry<String, IocObject> entry : pool.entrySet()) {
+            nodes.put(entry.getKey(), new Node(entry.getKey(), entry.getValue()));
+        }
+        for (Node node : nodes.values()) {
+            Class<?> beanClass = getBeanClass(node.object);
+            if (beanClass == null) {
+                continue;
+            }
+            for (String name : getDependencyNames(KlassInfo.create(beanClass))) {
+                Node dependency = nodes.get(name);
+                if (dependency != null && !node.dependencies.contains(dependency)) {
+                    node.dependencies.add(dependency);
+                    dependency.dependents.add(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * 初始化所有的 singleton，返回每个 Bean 的初始化耗时 (ms)，按耗时从大到小排序.
+     */
+    public Map<String, Long> initialize(int threads) {
+        checkCycles();
+
+        List<Node> singletons = new ArrayList<Node>();
+        for (Node node : nodes.values()) {
+            node.pending = node.dependencies.size();
+            if (node.object instanceof SingletonObject) {
+                singletons.add(node);
+            }
+        }
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        threads = Math.max(1, Math.min(threads, singletons.size()));
+
+        long start = System.nanoTime();
+        ExecutorService executor = createExecutor(threads);
+        try {
+            CompletionService<Node> completion = new ExecutorCompletionService<Node>(executor);
+            Deque<Node> ready = new ArrayDeque<Node>();
+            for (Node node : nodes.values()) {
+                if (node.pending == 0) {
+                    ready.add(node);
+                }
+            }
+
+            int remaining = nodes.size();
+            int running = 0;
+            while (remaining > 0) {
+                while (!ready.isEmpty()) {
+                    Node node = ready.poll();
+                    if (node.object instanceof SingletonObject) {
+                        completion.submit(new InitializeTask(node));
+                        running++;
+                    } else {
+                        // prototype 和用户提供的对象不需要初始化，只用于传递依赖顺序
+                        remaining--;
+                        complete(node, ready);
+                    }
+                }
+                if (running == 0) {
+                    break;
+                }
+                Node node = completion.take().get();
+                running--;
+                remaining--;
+                complete(node, ready);
+            }
+        } catch (ExecutionException e) {
+            throw ExceptionUtils.unchecked(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 按耗时从大到小排序
+        Collections.sort(singletons, new Comparator<Node>() {
+            @Override
+            public int compare(Node o1, Node o2) {
+                return o1.elapsed < o2.elapsed ? 1 : (o1.elapsed == o2.elapsed ? 0 : -1);
+            }
+        });
+        Map<String, Long> timings = new LinkedHashMap<String, Long>();
+        for (Node node : singletons) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(node.elapsed);
+            timings.put(node.name, millis);
+            log.info("Initialized singleton bean {} in {} ms", node.name, millis);
+        }
+        log.info("Initialized {} singleton beans with {} threads, {} ms", singletons.size(), threads, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return timings;
+    }
+
+    private void complete(Node node, Deque<Node> ready) {
+        for (Node dependent : node.dependents) {
+            if (--dependent.pending == 0) {
+                ready.add(dependent);
+            }
+        }
+    }
+
+    // 深度优先遍历，发现循环依赖时给出完整的依赖路径
+    private void checkCycles() {
+        Map<Node, Integer> states = new HashMap<Node, Integer>();
+        List<Node> path = new ArrayList<Node>();
+        for (Node node : nodes.values()) {
+            visit(node, states, path);
+        }
+    }
+
+    private void visit(Node node, Map<Node, Integer> states, List<Node> path) {
+        Integer state = states.get(node);
+        if (state != null) {
+            if (state == 1) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = path.indexOf(node); i < path.size(); i++) {
+                    sb.append(path.get(i).name).append(" -> ");
+                }
+                throw new IllegalStateException("Cycle dependencies on bean detected: " + sb.append(node.name));
+            }
+            return;
+        }
+        states.put(node, 1);
+        path.add(node);
+        for (Node dependency : node.dependencies) {
+            visit(dependency, states, path);
+        }
+        path.remove(path.size() - 1);
+        states.put(node, 2);
+    }
+
+    private static Class<?> getBeanClass(IocObject object) {
+        if (object instanceof ClassSingletonObject) {
+            return ((ClassSingletonObject) object).getBeanClass();
+        }
+        if (object instanceof ClassInstanceObject) {
+            return ((ClassInstanceObject) object).getBeanClass();
+        }
+        if (object instanceof FactorySingletonObject) {
+            return ((FactorySingletonObject) object).getFactoryClass();
+        }
+        if (object instanceof FactoryInstanceObject) {
+            return ((FactoryInstanceObject) object).getFactoryClass();
+        }
+        return null;
+    }
+
+    // 和 InjectFieldInjector/InjectParameterInjector/DefaultParameterInjector 使用相同的 Bean 名字
+    private static List<String> getDependencyNames(KlassInfo klass) {
+        List<String> names = new ArrayList<String>();
+        for (FieldInfo field : klass.getFields()) {
+            Inject inject = field.getAnnotation(Inject.class);
+            if (inject != null) {
+                names.add(ValueConstants.defaultValue(inject.value(), field.getRawType(klass).getName()));
+            }
+        }
+        for (ConstructorInfo ctor : klass.getDeclaredConstructors()) {
+            if (ctor.getAnnotation(Inject.class) == null) {
+                continue;
+            }
+            for (ParameterInfo parameter : ctor.getParameters()) {
+                Annotation with = null;
+                for (Annotation annotation : parameter.getAnnotations()) {
+                    if (annotation.annotationType().isAnnotationPresent(InjectParameterWith.class)) {
+                        with = annotation;
+                        break;
+                    }
+                }
+                if (with == null) {
+                    names.add(parameter.getRawType(klass).getName());
+                } else if (with instanceof Inject) {
+                    names.add(ValueConstants.defaultValue(((Inject) with).value(), parameter.getRawType(klass).getName()));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jetbrick-ioc-init-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    static final class Node {
+        final String name;
+        final IocObject object;
+        final List<Node> dependencies = new ArrayList<Node>(4);
+        final List<Node> dependents = new ArrayList<Node>(4);
+        int pending;
+        long elapsed;
+
+        Node(String name, IocObject object) {
+            this.name = name;
+            this.object = object;
+        }
+    }
+
+    static final class InitializeTask implements Callable<Node> {
+        private final Node node;
+
+        InitializeTask(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public Node call() {
+            long start = System.nanoTime();
+            try {
+                node.object.getObject();
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Cannot initialize singleton bean: " + node.name, e);
+            }
+            node.elapsed = System.nanoTime() - start;
+            return node;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc.injectors;
+
+import jetbrick.ioc.Ioc;
+import jetbrick.ioc.MutableIoc;
+import jetbrick.ioc.objects.IocObject;
+
+/**
+ * 按名字引用一个 Bean.
+ *
+ * Ioc 冻结之前每次都按名字查找 (Bean 可能还没有被添加)；冻结之后第一次查找到的
+ * {@link IocObject} 会被缓存下来，以后直接调用 {@link IocObject#getObject()}.
+ */
+final class BeanReference {
+    private static final IocObject NOT_FOUND = new IocObject() {
+        @Override
+        public Object getObject() {
+            return null;
+        }
+    };
+
+    private final Ioc ioc;
+    private final String name;
+    private volatile IocObject object;
+
+    public BeanReference(Ioc ioc, String name) {
+        this.ioc = ioc;
+        this.name = name;
+    }
+
+    public Object getObject() {
+        IocObject obj = object;
+        if (obj != null) {
+            return obj.getObject();
+        }
+        if (ioc instanceof MutableIoc) {
+            MutableIoc mutableIoc = (MutableIoc) ioc;
+            if (mutableIoc.isFrozen()) {
+                obj = mutableIoc.getIocObject(name);
+                object = (obj == null) ? NOT_FOUND : obj;
+                return object.getObject();
+            }
+        }
+        return ioc.getBean(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+}
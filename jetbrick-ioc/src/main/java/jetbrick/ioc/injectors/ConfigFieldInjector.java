@@ -27,7 +27,7 @@ import jetbrick.lang.annotations.ValueConstants;
 import jetbrick.reflect.FieldInfo;
 
 // 注入 @Config 标注的字段
-public class ConfigFieldInjector implements FieldInjector {
+public class ConfigFieldInjector implements FieldValueInjector {
     private FieldInfo field;
     private boolean required;
     private Object value;
@@ -58,9 +58,19 @@ public class ConfigFieldInjector implements FieldInjector {
 
     @Override
     public void set(Object object) throws Exception {
+        field.set(object, getValue());
+    }
+
+    @Override
+    public FieldInfo getField() {
+        return field;
+    }
+
+    @Override
+    public Object getValue() throws Exception {
         if (value == null && required) {
             throw new IllegalStateException("Can't inject field: " + field);
         }
-        field.set(object, value);
+        return value;
     }
 }
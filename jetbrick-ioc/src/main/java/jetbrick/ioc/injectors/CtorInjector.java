@@ -31,6 +31,14 @@ public class CtorInjector {
         this.parameters = parameters;
     }
 
+    public ConstructorInfo getConstructor() {
+        return ctor;
+    }
+
+    public ParameterInjector[] getParameters() {
+        return parameters;
+    }
+
     public Object newInstance() throws Exception {
         Object[] paramObjects = ArrayUtils.EMPTY_OBJECT_ARRAY;
         int length = parameters.length;
@@ -18,25 +18,22 @@
  */
 package jetbrick.ioc.injectors;
 
-import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.IocConstants;
 
 /**
  * 注入没有任何标注的参数(默认是  <code>@Inject</code>，然后根据类型名注入)
  */
 public class DefaultParameterInjector implements ParameterInjector {
-    private Ioc ioc;
-    private String name;
+    private BeanReference bean;
 
     @Override
     public void initialize(ParameterContext ctx) {
-        this.ioc = ctx.getIoc();
-        this.name = ctx.getRawParameterTypeName();
+        this.bean = new BeanReference(ctx.getIoc(), ctx.getRawParameterTypeName());
     }
 
     @Override
     public Object getObject() throws Exception {
-        Object value = ioc.getBean(name);
+        Object value = bean.getObject();
         if (value == null && IocConstants.REQUIRED) {
             throw new IllegalStateException("Can't inject parameter.");
         }
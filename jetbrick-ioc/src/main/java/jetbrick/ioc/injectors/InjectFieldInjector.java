@@ -19,16 +19,14 @@
 package jetbrick.ioc.injectors;
 
 import java.lang.annotation.Annotation;
-import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.Inject;
 import jetbrick.lang.Validate;
 import jetbrick.lang.annotations.ValueConstants;
 import jetbrick.reflect.FieldInfo;
 
 //注入 @Inject 标注的字段
-public class InjectFieldInjector implements FieldInjector {
-    private Ioc ioc;
-    private String name;
+public class InjectFieldInjector implements FieldValueInjector {
+    private BeanReference bean;
     private FieldInfo field;
     private boolean required;
 
@@ -38,18 +36,27 @@ public class InjectFieldInjector implements FieldInjector {
         Validate.isInstanceOf(Inject.class, annotation);
 
         Inject inject = (Inject) annotation;
-        this.ioc = ctx.getIoc();
         this.field = ctx.getField();
-        this.name = ValueConstants.defaultValue(inject.value(), ctx.getRawFieldTypeName()); // 默认是字段类型名
+        this.bean = new BeanReference(ctx.getIoc(), ValueConstants.defaultValue(inject.value(), ctx.getRawFieldTypeName())); // 默认是字段类型名
         this.required = inject.required();
     }
 
     @Override
     public void set(Object object) throws Exception {
-        Object value = ioc.getBean(name);
+        field.set(object, getValue());
+    }
+
+    @Override
+    public FieldInfo getField() {
+        return field;
+    }
+
+    @Override
+    public Object getValue() throws Exception {
+        Object value = bean.getObject();
         if (value == null && required) {
-            throw new IllegalStateException("Can't inject bean: " + name + " for field: " + field);
+            throw new IllegalStateException("Can't inject bean: " + bean.getName() + " for field: " + field);
         }
-        field.set(object, value);
+        return value;
     }
 }
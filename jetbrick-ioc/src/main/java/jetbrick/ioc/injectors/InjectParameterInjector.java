@@ -19,15 +19,13 @@
 package jetbrick.ioc.injectors;
 
 import java.lang.annotation.Annotation;
-import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.Inject;
 import jetbrick.lang.Validate;
 import jetbrick.lang.annotations.ValueConstants;
 
 //注入 @Inject 标注的参数
 public class InjectParameterInjector implements ParameterInjector {
-    private Ioc ioc;
-    private String name;
+    private BeanReference bean;
     private boolean required;
 
     @Override
@@ -36,14 +34,13 @@ public class InjectParameterInjector implements ParameterInjector {
         Validate.isInstanceOf(Inject.class, annotation);
 
         Inject inject = (Inject) annotation;
-        this.ioc = ctx.getIoc();
         this.required = inject.required();
-        this.name = ValueConstants.defaultValue(inject.value(), ctx.getRawParameterTypeName()); // ，默认参数类型名
+        this.bean = new BeanReference(ctx.getIoc(), ValueConstants.defaultValue(inject.value(), ctx.getRawParameterTypeName())); // ，默认参数类型名
     }
 
     @Override
     public Object getObject() throws Exception {
-        Object value = ioc.getBean(name);
+        Object value = bean.getObject();
         if (value == null && required) {
             throw new IllegalStateException("Can't inject parameter");
         }
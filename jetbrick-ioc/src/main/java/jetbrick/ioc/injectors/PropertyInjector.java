@@ -30,6 +30,14 @@ public class PropertyInjector {
         this.value = value;
     }
 
+    public PropertyInfo getProperty() {
+        return prop;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
     public void set(Object object) throws Exception {
         prop.set(object, value);
     }
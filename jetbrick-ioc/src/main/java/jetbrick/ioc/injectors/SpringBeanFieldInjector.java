@@ -29,7 +29,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
 //注入 @SpringBean 标注的字段
-public class SpringBeanFieldInjector implements FieldInjector {
+public class SpringBeanFieldInjector implements FieldValueInjector {
     private ApplicationContext appctx;
     private String name;
     private FieldInfo field;
@@ -67,10 +67,20 @@ public class SpringBeanFieldInjector implements FieldInjector {
 
     @Override
     public void set(Object object) throws Exception {
+        field.set(object, getValue());
+    }
+
+    @Override
+    public FieldInfo getField() {
+        return field;
+    }
+
+    @Override
+    public Object getValue() throws Exception {
         Object value = appctx.getBean(name);
         if (value == null && required) {
             throw new IllegalStateException("Can't inject bean: " + name + " for field: " + field);
         }
-        field.set(object, value);
+        return value;
     }
 }
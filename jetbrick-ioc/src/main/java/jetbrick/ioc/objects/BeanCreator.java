@@ -0,0 +1,30 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc.objects;
+
+/**
+ * 编译模式下，由 {@link BeanCreatorBuilder} 为每个 Bean 生成的创建器.
+ *
+ * 生成的代码直接调用构造函数、setter、字段赋值以及 @IocInit 函数，不再经过反射.
+ */
+public interface BeanCreator {
+
+    public Object newInstance() throws Exception;
+
+}
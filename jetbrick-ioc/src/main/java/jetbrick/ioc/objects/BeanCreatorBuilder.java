@@ -0,0 +1,245 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc.objects;
+
+import static jetbrick.asm.Opcodes.*;
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.asm.Label;
+import jetbrick.asm.MethodVisitor;
+import jetbrick.asm.Type;
+import jetbrick.ioc.injectors.*;
+import jetbrick.reflect.FieldInfo;
+import jetbrick.reflect.asm.ASMBuilder;
+import jetbrick.reflect.asm.ASMFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 为每个 Bean 生成一个 {@link BeanCreator} 的实现类，相当于：
+ *
+ * <pre>
+ * public Object newInstance() throws Exception {
+ *     UserService bean = new UserService((UserDao) p0.getObject());
+ *     bean.setTimeout(((Number) v0).intValue());
+ *     bean.cache = (Cache) f0.getValue();
+ *     f1.set(bean); // 自定义的 FieldInjector
+ *     try {
+ *         bean.init();
+ *     } catch (Throwable e) {
+ *         throw new InvocationTargetException(e);
+ *     }
+ *     return bean;
+ * }
+ * </pre>
+ */
+final class BeanCreatorBuilder {
+    private static final Logger log = LoggerFactory.getLogger(BeanCreatorBuilder.class);
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final String PARAMETER_INJECTOR_NAME = Type.getInternalName(ParameterInjector.class);
+    private static final String FIELD_INJECTOR_NAME = Type.getInternalName(FieldInjector.class);
+    private static final String FIELD_VALUE_INJECTOR_NAME = Type.getInternalName(FieldValueInjector.class);
+
+    /**
+     * 生成 BeanCreator，如果无法生成 (比如 Bean 不是 public 的)，那么返回 null.
+     */
+    public static BeanCreator create(Class<?> beanClass, CtorInjector ctorInjector, List<PropertyInjector> propertyInjectors, List<FieldInjector> fieldInjectors, Method initializeMethod) {
+        if (!Modifier.isPublic(beanClass.getModifiers())) {
+            return null;
+        }
+        if (ctorInjector == null) {
+            // 和 Class.newInstance() 保持一致，只支持 public 的默认构造函数
+            try {
+                if (!Modifier.isPublic(beanClass.getDeclaredConstructor().getModifiers())) {
+                    return null;
+                }
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        String generatedKlassName = BeanCreator.class.getPackage().getName() + ".delegate." + beanClass.getName().replace('.', '_') + "_" + SEQUENCE.incrementAndGet();
+        List<Object> args = new ArrayList<Object>();
+        Class<?> generatedKlass;
+        try {
+            byte[] byteCode = build(generatedKlassName, beanClass, ctorInjector, propertyInjectors, fieldInjectors, initializeMethod, args);
+            generatedKlass = ASMFactory.defineClass(beanClass, generatedKlassName, byteCode);
+        } catch (LinkageError e) {
+            // 字节码校验失败，或者参数/字段引用的类在 ClassLoader 中不可见
+            log.warn("Cannot define BeanCreator for " + beanClass.getName() + ", use reflection instead.", e);
+            return null;
+        } catch (RuntimeException e) {
+            log.warn("Cannot generate BeanCreator for " + beanClass.getName() + ", use reflection instead.", e);
+            return null;
+        }
+
+        try {
+            return (BeanCreator) generatedKlass.getConstructors()[0].newInstance(args.toArray());
+        } catch (Exception e) {
+            log.warn("Cannot create BeanCreator for " + beanClass.getName() + ", use reflection instead.", e);
+            return null;
+        }
+    }
+
+    private static byte[] build(String generatedKlassName, Class<?> beanClass, CtorInjector ctorInjector, List<PropertyInjector> propertyInjectors, List<FieldInjector> fieldInjectors, Method initializeMethod, List<Object> args) {
+        ASMBuilder builder = new ASMBuilder(generatedKlassName, beanClass.getName(), BeanCreator.class);
+        String generatedKlassNameInternal = builder.getGeneratedKlassNameInternal();
+        String delegateKlassNameInternal = builder.getDelegateKlassNameInternal();
+
+        // 构造函数参数 p0, p1, ... / 属性值 v0, v1, ... / 字段注入器 f0, f1, ...
+        // 生成类的所有字段都通过构造函数传入
+        List<String> argNames = new ArrayList<String>();
+        List<Class<?>> argTypes = new ArrayList<Class<?>>();
+        ParameterInjector[] parameters = (ctorInjector == null) ? ParameterInjector.EMPTY_ARRAY : ctorInjector.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            argNames.add("p" + i);
+            argTypes.add(ParameterInjector.class);
+            args.add(parameters[i]);
+        }
+        for (int i = 0; i < propertyInjectors.size(); i++) {
+            argNames.add("v" + i);
+            argTypes.add(Object.class);
+            args.add(propertyInjectors.get(i).getValue());
+        }
+        for (int i = 0; i < fieldInjectors.size(); i++) {
+            FieldInjector injector = fieldInjectors.get(i);
+            argNames.add("f" + i);
+            argTypes.add(isDirectField(injector) ? FieldValueInjector.class : FieldInjector.class);
+            args.add(injector);
+        }
+        builder.insertConstructor(argNames.toArray(new String[argNames.size()]), argTypes.toArray(new Class<?>[argTypes.size()]));
+
+        // public Object newInstance() throws Exception
+        MethodVisitor mv = builder.getClassWriter().visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "newInstance", "()Ljava/lang/Object;", null, new String[] { "java/lang/Exception" });
+        mv.visitCode();
+
+        // 构造函数
+        mv.visitTypeInsn(NEW, delegateKlassNameInternal);
+        mv.visitInsn(DUP);
+        if (ctorInjector == null) {
+            mv.visitMethodInsn(INVOKESPECIAL, delegateKlassNameInternal, "<init>", "()V", false);
+        } else {
+            Constructor<?> ctor = ctorInjector.getConstructor().getConstructor();
+            Class<?>[] parameterTypes = ctor.getParameterTypes();
+            for (int i = 0; i < parameters.length; i++) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, generatedKlassNameInternal, "p" + i, "L" + PARAMETER_INJECTOR_NAME + ";");
+                mv.visitMethodInsn(INVOKEINTERFACE, PARAMETER_INJECTOR_NAME, "getObject", "()Ljava/lang/Object;", true);
+                ASMBuilder.insertUnbox(mv, Type.getType(parameterTypes[i]));
+            }
+            mv.visitMethodInsn(INVOKESPECIAL, delegateKlassNameInternal, "<init>", Type.getConstructorDescriptor(ctor), false);
+        }
+        mv.visitVarInsn(ASTORE, 1);
+
+        // 配置文件中的属性
+        for (int i = 0; i < propertyInjectors.size(); i++) {
+            Method setter = propertyInjectors.get(i).getProperty().getSetter().getMethod();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, generatedKlassNameInternal, "v" + i, "Ljava/lang/Object;");
+            ASMBuilder.insertUnbox(mv, Type.getType(setter.getParameterTypes()[0]));
+            insertInvoke(mv, setter);
+        }
+
+        // @Inject/@Config 等标注的字段
+        for (int i = 0; i < fieldInjectors.size(); i++) {
+            FieldInjector injector = fieldInjectors.get(i);
+            if (isDirectField(injector)) {
+                Field field = ((FieldValueInjector) injector).getField().getField();
+                Type type = Type.getType(field.getType());
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, generatedKlassNameInternal, "f" + i, "L" + FIELD_VALUE_INJECTOR_NAME + ";");
+                mv.visitMethodInsn(INVOKEINTERFACE, FIELD_VALUE_INJECTOR_NAME, "getValue", "()Ljava/lang/Object;", true);
+                ASMBuilder.insertUnbox(mv, type);
+                mv.visitFieldInsn(PUTFIELD, Type.getInternalName(field.getDeclaringClass()), field.getName(), type.getDescriptor());
+            } else {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, generatedKlassNameInternal, "f" + i, "L" + FIELD_INJECTOR_NAME + ";");
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKEINTERFACE, FIELD_INJECTOR_NAME, "set", "(Ljava/lang/Object;)V", true);
+            }
+        }
+
+        // @IocInit 标注的函数
+        // 反射调用 Method.invoke() 会把异常包装成 InvocationTargetException，这里保持一致
+        if (initializeMethod != null) {
+            Label start = new Label();
+            Label end = new Label();
+            Label handler = new Label();
+            mv.visitTryCatchBlock(start, end, handler, "java/lang/Throwable");
+            mv.visitLabel(start);
+            if (!Modifier.isStatic(initializeMethod.getModifiers())) {
+                mv.visitVarInsn(ALOAD, 1);
+            }
+            insertInvoke(mv, initializeMethod);
+            mv.visitLabel(end);
+            Label done = new Label();
+            mv.visitJumpInsn(GOTO, done);
+
+            // throw new InvocationTargetException(e);
+            mv.visitLabel(handler);
+            mv.visitVarInsn(ASTORE, 2);
+            mv.visitTypeInsn(NEW, "java/lang/reflect/InvocationTargetException");
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/reflect/InvocationTargetException", "<init>", "(Ljava/lang/Throwable;)V", false);
+            mv.visitInsn(ATHROW);
+            mv.visitLabel(done);
+        }
+
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        return builder.asByteCode();
+    }
+
+    // static/final 字段以及自定义的 FieldInjector 仍然交给 injector.set() 处理
+    private static boolean isDirectField(FieldInjector injector) {
+        if (injector instanceof FieldValueInjector) {
+            FieldInfo field = ((FieldValueInjector) injector).getField();
+            return !field.isStatic() && !field.isFinal();
+        }
+        return false;
+    }
+
+    // 调用之前，对象 (非 static) 和参数已经在栈上，调用之后丢弃返回值
+    private static void insertInvoke(MethodVisitor mv, Method method) {
+        int modifiers = method.getModifiers();
+        String owner = Type.getInternalName(method.getDeclaringClass());
+        String desc = Type.getMethodDescriptor(method);
+        if (Modifier.isStatic(modifiers)) {
+            mv.visitMethodInsn(INVOKESTATIC, owner, method.getName(), desc, false);
+        } else if (Modifier.isPrivate(modifiers)) {
+            mv.visitMethodInsn(INVOKESPECIAL, owner, method.getName(), desc, false);
+        } else {
+            mv.visitMethodInsn(INVOKEVIRTUAL, owner, method.getName(), desc, false);
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType != Void.TYPE) {
+            // 链式 setter
+            mv.visitInsn(returnType == Long.TYPE || returnType == Double.TYPE ? POP2 : POP);
+        }
+    }
+}
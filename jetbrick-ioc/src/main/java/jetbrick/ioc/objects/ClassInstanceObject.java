@@ -26,20 +26,39 @@ import jetbrick.ioc.injectors.*;
 import jetbrick.reflect.KlassInfo;
 
 public class ClassInstanceObject extends InstanceObject {
+    // -Djetbrick.ioc.compiled=true 时，为每个 prototype Bean 生成 BeanCreator，不再通过反射创建对象
+    private static final boolean COMPILED_ENABLED = Boolean.getBoolean("jetbrick.ioc.compiled");
+
     private final Class<?> beanClass;
+    private final boolean compiled;
     private Configuration properties;
 
     private CtorInjector ctorInjector;
     private List<FieldInjector> fieldInjectors;
     private List<PropertyInjector> propertyInjectors;
     private Method initializeMethod;
+    private BeanCreator creator;
 
     public ClassInstanceObject(Ioc ioc, Class<?> beanClass, Configuration properties) {
+        this(ioc, beanClass, properties, COMPILED_ENABLED);
+    }
+
+    // 测试用，指定是否生成 BeanCreator
+    ClassInstanceObject(Ioc ioc, Class<?> beanClass, Configuration properties, boolean compiled) {
         super(ioc);
         this.beanClass = beanClass;
+        this.compiled = compiled;
         this.properties = properties;
     }
 
+    boolean isCompiled() {
+        return creator != null;
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
     @Override
     protected void initialize() {
         KlassInfo klass = KlassInfo.create(beanClass);
@@ -48,10 +67,18 @@ public class ClassInstanceObject extends InstanceObject {
         propertyInjectors = IocObjectUtils.doGetPropertyInjectors(ioc, klass, properties);
         initializeMethod = IocObjectUtils.doGetInitializeMethod(klass);
         properties = null;
+
+        if (compiled) {
+            creator = BeanCreatorBuilder.create(beanClass, ctorInjector, propertyInjectors, fieldInjectors, initializeMethod);
+        }
     }
 
     @Override
     protected Object doGetObject() throws Exception {
+        if (creator != null) {
+            return creator.newInstance();
+        }
+
         Object object;
         if (ctorInjector == null) {
             object = beanClass.newInstance();
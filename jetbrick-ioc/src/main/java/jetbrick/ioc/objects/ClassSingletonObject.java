@@ -35,6 +35,15 @@ public class ClassSingletonObject extends SingletonObject {
         this.properties = properties;
     }
 
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    @Override
+    public String toString() {
+        return beanClass.getName();
+    }
+
     @Override
     protected Object doGetObject() throws Exception {
         KlassInfo klass = KlassInfo.create(beanClass);
@@ -33,6 +33,10 @@ public class FactoryInstanceObject extends InstanceObject {
         this.properties = properties;
     }
 
+    public Class<?> getFactoryClass() {
+        return factoryClass;
+    }
+
     @Override
     protected void initialize() throws Exception {
         IocObject factoryCreator = new ClassSingletonObject(ioc, factoryClass, properties);
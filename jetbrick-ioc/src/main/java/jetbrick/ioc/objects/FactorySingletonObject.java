@@ -32,6 +32,15 @@ public class FactorySingletonObject extends SingletonObject {
         this.properties = properties;
     }
 
+    public Class<?> getFactoryClass() {
+        return factoryClass;
+    }
+
+    @Override
+    public String toString() {
+        return factoryClass.getName();
+    }
+
     @Override
     protected Object doGetObject() throws Exception {
         IocObject factoryCreator = new ClassSingletonObject(ioc, factoryClass, properties);
@@ -18,33 +18,26 @@
  */
 package jetbrick.ioc.objects;
 
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import jetbrick.ioc.Ioc;
 import jetbrick.lang.ExceptionUtils;
-import jetbrick.lang.concurrent.ConcurrentInitializer;
-import jetbrick.lang.concurrent.LazyInitializer;
 
 // 单例模式
 public abstract class SingletonObject implements IocObject {
-    protected final Ioc ioc;
-
-    private final ConcurrentInitializer<Object> object = new LazyInitializer<Object>() {
-        private boolean initializing = false;
-
+    // 当前线程正在初始化的 singleton (用于检测循环依赖，并给出依赖路径)
+    private static final ThreadLocal<List<SingletonObject>> initializingStack = new ThreadLocal<List<SingletonObject>>() {
         @Override
-        protected Object initialize() {
-            if (initializing) {
-                throw new IllegalStateException("Cycle dependencies on singleton bean detected: " + toString());
-            }
-            try {
-                initializing = true;
-                return doGetObject();
-            } catch (Exception e) {
-                throw ExceptionUtils.unchecked(e);
-            } finally {
-                initializing = false;
-            }
+        protected List<SingletonObject> initialValue() {
+            return new ArrayList<SingletonObject>();
         }
     };
+    // 正在等待其他线程初始化完成的 singleton (用于检测多线程初始化时的循环依赖)
+    private static final Map<Thread, SingletonObject> waiting = new ConcurrentHashMap<Thread, SingletonObject>();
+
+    protected final Ioc ioc;
+    private volatile Object object;
+    private volatile Thread initializingThread;
 
     public SingletonObject(Ioc ioc) {
         this.ioc = ioc;
@@ -52,7 +45,73 @@ public abstract class SingletonObject implements IocObject {
 
     @Override
     public Object getObject() {
-        return object.get();
+        Object result = object;
+        if (result == null) {
+            result = initialize();
+        }
+        return result;
+    }
+
+    private Object initialize() {
+        Thread current = Thread.currentThread();
+        List<SingletonObject> stack = initializingStack.get();
+        if (initializingThread == current) {
+            throw new IllegalStateException("Cycle dependencies on singleton bean detected: " + getCyclePath(stack));
+        }
+
+        // 先登记等待关系，再检查是否形成环，保证同时等待的两个线程至少有一个能检测到
+        waiting.put(current, this);
+        try {
+            checkCrossThreadCycle(current);
+            synchronized (this) {
+                waiting.remove(current);
+
+                Object result = object;
+                if (result == null) {
+                    initializingThread = current;
+                    stack.add(this);
+                    try {
+                        object = (result = doGetObject());
+                    } catch (Exception e) {
+                        throw ExceptionUtils.unchecked(e);
+                    } finally {
+                        stack.remove(stack.size() - 1);
+                        initializingThread = null;
+                    }
+                }
+                return result;
+            }
+        } finally {
+            waiting.remove(current);
+        }
+    }
+
+    private String getCyclePath(List<SingletonObject> stack) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = stack.indexOf(this); i < stack.size(); i++) {
+            sb.append(stack.get(i)).append(" -> ");
+        }
+        return sb.append(this).toString();
+    }
+
+    // 沿着 "等待的 singleton -> 正在初始化它的线程 -> 该线程等待的 singleton" 查找，回到当前线程说明存在循环依赖
+    private void checkCrossThreadCycle(Thread current) {
+        StringBuilder path = null;
+        SingletonObject target = this;
+        for (int i = 0; target != null && i <= waiting.size(); i++) {
+            Thread owner = target.initializingThread;
+            if (owner == null) {
+                return;
+            }
+            if (path == null) {
+                path = new StringBuilder();
+            }
+            path.append(target).append(" (").append(owner.getName()).append(") -> ");
+            if (owner == current) {
+                throw new IllegalStateException("Cycle dependencies on singleton bean detected across threads: " + path.append(this));
+            }
+            target = waiting.get(owner);
+        }
     }
 
     protected abstract Object doGetObject() throws Exception;
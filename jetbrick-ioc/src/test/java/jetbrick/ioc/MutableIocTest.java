@@ -0,0 +1,79 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc;
+
+import java.util.HashMap;
+import java.util.Map;
+import jetbrick.ioc.objects.IocObject;
+import jetbrick.ioc.objects.ValueObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MutableIocTest {
+
+    public static class Service {
+    }
+
+    @Test
+    public void addBeanAfterFreeze() {
+        MutableIoc ioc = new MutableIoc();
+        ioc.addBean(Service.class);
+        ioc.freeze();
+        Assert.assertTrue(ioc.isFrozen());
+        Assert.assertNotNull(ioc.getBean(Service.class));
+
+        try {
+            ioc.addBean("other", new Object());
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        try {
+            ioc.addBean(Service.class, null, false);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        Assert.assertNull(ioc.getBean("other"));
+        Assert.assertSame(ioc.getBean(Service.class), ioc.getBean(Service.class.getName()));
+    }
+
+    @Test
+    public void registryClassTable() {
+        Map<String, IocObject> pool = new HashMap<String, IocObject>();
+        for (int i = 0; i < 100; i++) {
+            pool.put("bean" + i, new ValueObject(i));
+        }
+        pool.put(Service.class.getName(), new ValueObject(new Service()));
+        BeanRegistry registry = new BeanRegistry(pool);
+
+        Assert.assertEquals(101, registry.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, registry.get("bean" + i).getObject());
+        }
+        Assert.assertNull(registry.get("bean100"));
+
+        // 找到的 Class 会被缓存，找不到的不缓存
+        IocObject object = registry.get(Service.class);
+        Assert.assertSame(pool.get(Service.class.getName()), object);
+        Assert.assertSame(object, registry.get(Service.class));
+        Assert.assertNull(registry.get(String.class));
+        Assert.assertNull(registry.get(Integer.class));
+        Assert.assertNull(registry.get(String.class));
+        Assert.assertEquals(1, registry.getClassTableSize());
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.ioc.annotations.Inject;
+import jetbrick.ioc.annotations.IocInit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SingletonInitializerTest {
+    static final List<String> ORDER = Collections.synchronizedList(new ArrayList<String>());
+
+    public static class Dao {
+        @IocInit
+        public void init() throws InterruptedException {
+            Thread.sleep(20);
+            ORDER.add("dao");
+        }
+    }
+
+    public static class Cache {
+        @IocInit
+        public void init() {
+            ORDER.add("cache");
+        }
+    }
+
+    // prototype，本身不初始化，但是依赖关系要传递下去
+    public static class Helper {
+        @Inject
+        public Dao dao;
+    }
+
+    public static class Service {
+        @Inject
+        public Cache cache;
+
+        @Inject
+        public Service(Helper helper) {
+            ORDER.add("service");
+        }
+    }
+
+    public static class Controller {
+        @Inject
+        public Service service;
+
+        @IocInit
+        public void init() {
+            ORDER.add("controller");
+        }
+    }
+
+    public static class BrokenBean {
+        public BrokenBean() {
+            throw new IllegalArgumentException("broken");
+        }
+    }
+
+    public static class BrokenDependent {
+        static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Inject
+        public BrokenDependent(BrokenBean broken) {
+            COUNT.incrementAndGet();
+        }
+    }
+
+    public static class CycleA {
+        @Inject
+        public CycleB b;
+    }
+
+    public static class CycleB {
+        @Inject
+        public CycleA a;
+    }
+
+    public static class SlowBean {
+        static final AtomicInteger COUNT = new AtomicInteger();
+
+        public SlowBean() throws InterruptedException {
+            COUNT.incrementAndGet();
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    public void dependencyOrder() {
+        MutableIoc ioc = new MutableIoc();
+        ioc.addBean(Controller.class);
+        ioc.addBean(Service.class);
+        ioc.addBean(Helper.class, null, false);
+        ioc.addBean(Cache.class);
+        ioc.addBean(Dao.class);
+
+        ORDER.clear();
+        Map<String, Long> timings = ioc.initializeSingletons(4);
+        Assert.assertTrue(ioc.isFrozen());
+        Assert.assertEquals(4, timings.size());
+        Assert.assertFalse(timings.containsKey(Helper.class.getName()));
+
+        // Service 构造时会创建 Helper，所以 Dao 必须先初始化完成
+        Assert.assertEquals(4, ORDER.size());
+        Assert.assertTrue(ORDER.indexOf("dao") < ORDER.indexOf("service"));
+        Assert.assertTrue(ORDER.indexOf("cache") < ORDER.indexOf("service"));
+        Assert.assertEquals("controller", ORDER.get(3));
+    }
+
+    @Test
+    public void exceptionPropagation() {
+        MutableIoc ioc = new MutableIoc();
+        ioc.addBean(BrokenDependent.class);
+        ioc.addBean(BrokenBean.class);
+        try {
+            ioc.initializeSingletons(2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Cannot initialize singleton bean: " + BrokenBean.class.getName(), e.getMessage());
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+            Assert.assertEquals("broken", e.getCause().getMessage());
+        }
+        // 依赖失败的 Bean 不会再被初始化
+        Assert.assertEquals(0, BrokenDependent.COUNT.get());
+    }
+
+    @Test
+    public void cycleDetected() {
+        MutableIoc ioc = new MutableIoc();
+        ioc.addBean(CycleA.class);
+        ioc.addBean(CycleB.class);
+        try {
+            ioc.initializeSingletons(2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            String path = CycleA.class.getName() + " -> " + CycleB.class.getName() + " -> " + CycleA.class.getName();
+            Assert.assertEquals("Cycle dependencies on bean detected: " + path, e.getMessage());
+        }
+    }
+
+    // 启动时初始化和请求线程的 getBean() 同时进行，只能创建一个对象
+    @Test
+    public void concurrentGetObject() throws Exception {
+        final MutableIoc ioc = new MutableIoc();
+        ioc.addBean(SlowBean.class);
+        ioc.freeze();
+        SlowBean.COUNT.set(0);
+
+        int threads = 8;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        startLatch.await();
+                        return ioc.getBean(SlowBean.class);
+                    }
+                }));
+            }
+            startLatch.countDown();
+            ioc.initializeSingletons(1);
+
+            Object bean = ioc.getBean(SlowBean.class);
+            Assert.assertTrue(bean instanceof SlowBean);
+            for (Future<Object> future : futures) {
+                Assert.assertSame(bean, future.get());
+            }
+            Assert.assertEquals(1, SlowBean.COUNT.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.ioc.objects;
+
+import java.io.IOException;
+import jetbrick.io.config.Configuration;
+import jetbrick.ioc.MutableIoc;
+import jetbrick.ioc.annotations.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+// 生成的 BeanCreator 和反射创建的 Bean 必须一致 (包括抛出的异常)
+public class BeanCreatorTest {
+
+    public static class Dependency {
+    }
+
+    public static class FullBean {
+        private final Dependency dependency;
+        private final String name;
+        private int timeout;
+        private long size;
+        @Inject
+        public Dependency field;
+        @Inject
+        private Dependency privateField;
+        @Config(value = "bean.port", defaultValue = "8080")
+        protected int port;
+        private int initialized;
+
+        @Inject
+        public FullBean(Dependency dependency, @Config(value = "bean.name", defaultValue = "full") String name) {
+            this.dependency = dependency;
+            this.name = name;
+        }
+
+        public void setTimeout(int timeout) {
+            this.timeout = timeout;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        @IocInit
+        private void init() {
+            initialized++;
+        }
+
+        String describe() {
+            return (dependency != null) + "," + name + "," + timeout + "," + size + "," + (field != null) + "," + (privateField != null) + "," + port + "," + initialized;
+        }
+    }
+
+    public static class CheckedCtorBean {
+        public CheckedCtorBean() throws IOException {
+            throw new IOException("ctor");
+        }
+    }
+
+    public static class RuntimeCtorBean {
+        @Inject
+        public RuntimeCtorBean(Dependency dependency) {
+            throw new IllegalStateException("ctor");
+        }
+    }
+
+    public static class InitErrorBean {
+        @IocInit
+        public void init() throws IOException {
+            throw new IOException("init");
+        }
+    }
+
+    public static class SetterErrorBean {
+        public void setTimeout(int timeout) {
+            throw new IllegalArgumentException("setter");
+        }
+    }
+
+    static class HiddenBean {
+        @Inject
+        Dependency dependency;
+    }
+
+    public static class HiddenCtorBean {
+        @Inject
+        HiddenCtorBean(Dependency dependency) {
+        }
+    }
+
+    private static MutableIoc createIoc() {
+        MutableIoc ioc = new MutableIoc();
+        ioc.addBean(Dependency.class);
+        return ioc;
+    }
+
+    private static ClassInstanceObject create(Class<?> beanClass, Configuration properties, boolean compiled) {
+        return new ClassInstanceObject(createIoc(), beanClass, properties, compiled);
+    }
+
+    private static Object[] getBoth(Class<?> beanClass, Configuration properties, boolean generated) {
+        ClassInstanceObject reflection = create(beanClass, properties, false);
+        ClassInstanceObject compiled = create(beanClass, properties, true);
+        Object[] results = { reflection.getObject(), compiled.getObject() };
+        Assert.assertFalse(reflection.isCompiled());
+        Assert.assertEquals(generated, compiled.isCompiled());
+        return results;
+    }
+
+    // 异常的类型、消息以及 cause 链必须一致
+    private static void assertSameException(Object expected, Object actual) {
+        Assert.assertTrue(String.valueOf(expected), expected instanceof Throwable);
+        Throwable e1 = (Throwable) expected;
+        Throwable e2 = (Throwable) actual;
+        while (e1 != null) {
+            Assert.assertNotNull(e2);
+            Assert.assertEquals(e1.getClass(), e2.getClass());
+            Assert.assertEquals(e1.getMessage(), e2.getMessage());
+            e1 = e1.getCause();
+            e2 = e2.getCause();
+        }
+        Assert.assertNull(e2);
+    }
+
+    @Test
+    public void fullBean() {
+        Configuration properties = new Configuration();
+        properties.put("timeout", "30");
+        properties.put("size", "1099511627776");
+        Object[] beans = getBoth(FullBean.class, properties, true);
+        Assert.assertEquals("true,full,30,1099511627776,true,true,8080,1", ((FullBean) beans[0]).describe());
+        Assert.assertEquals(((FullBean) beans[0]).describe(), ((FullBean) beans[1]).describe());
+    }
+
+    @Test
+    public void ctorExceptions() {
+        Object[] results = getBoth(CheckedCtorBean.class, null, true);
+        assertSameException(results[0], results[1]);
+
+        results = getBoth(RuntimeCtorBean.class, null, true);
+        assertSameException(results[0], results[1]);
+    }
+
+    @Test
+    public void methodExceptions() {
+        Object[] results = getBoth(InitErrorBean.class, null, true);
+        assertSameException(results[0], results[1]);
+
+        Configuration properties = new Configuration();
+        properties.put("timeout", "30");
+        results = getBoth(SetterErrorBean.class, properties, true);
+        assertSameException(results[0], results[1]);
+    }
+
+    @Test
+    public void nonPublic() {
+        // 非 public 的类使用反射
+        Object[] beans = getBoth(HiddenBean.class, null, false);
+        Assert.assertNotNull(((HiddenBean) beans[1]).dependency);
+
+        // 非 public 的 @Inject 构造函数和反射一样可以访问
+        beans = getBoth(HiddenCtorBean.class, null, true);
+        Assert.assertTrue(beans[0] instanceof HiddenCtorBean);
+        Assert.assertTrue(beans[1] instanceof HiddenCtorBean);
+    }
+}
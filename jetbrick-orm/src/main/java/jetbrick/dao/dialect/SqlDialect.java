@@ -86,6 +86,13 @@ public abstract class SqlDialect {
         return false;
     }
 
+    /**
+     * 一条语句插入多行时，getGeneratedKeys() 是否返回所有行的自增主键 (比如 SQL Server 只返回最后一行)
+     */
+    public boolean supportsMultiRowGeneratedKeys() {
+        return false;
+    }
+
     /**
      * 哪些数据库字段运行指定长度.
      * @param type 具体的数据库字段类型
@@ -228,6 +235,118 @@ public abstract class SqlDialect {
         return null;
     }
 
+    /**
+     * 生成 keyset (seek) 分页sql，性能和第几页无关
+     * @param sql 已经包含 seek 条件的sql (不包含 order by)
+     * @param orderBy 排序字段 (不包含 order by 关键字)
+     * @param limit 返回的限制大小
+     * @return 如果不支持 limit，返回不带 limit 的 sql (由 ResultSetHandler 限制读取的行数)
+     */
+    public String sql_seekpage(String sql, String orderBy, int limit) {
+        String seek_sql = sql + " order by " + orderBy;
+        String page_sql = sql_pagelist(seek_sql, 0, limit);
+        return (page_sql == null) ? seek_sql : page_sql;
+    }
+
+    /**
+     * 估算 sql 返回记录数的 sql (比如 MySQL 的 explain)，结果集第一行的 rows 字段为估算的记录数
+     * @return 如果不支持，返回 null
+     */
+    public String sql_count_estimate(String sql) {
+        return null;
+    }
+
+    /**
+     * 生成批量插入的 sql，一条语句插入多行: insert into t (a, b) values (?, ?), (?, ?)
+     * @param table 表名
+     * @param columns 字段名
+     * @param rows 行数
+     * @return 如果不支持一条语句插入多行 (rows &gt; 1)，返回 null
+     */
+    public String sql_batch_insert(String table, String[] columns, int rows) {
+        StringBuilder sb = new StringBuilder(64 + rows * columns.length * 3);
+        sb.append("insert into ").append(getIdentifier(table)).append(" (");
+        append_columns(sb, columns, null);
+        sb.append(") values ");
+        append_values(sb, columns.length, rows);
+        return sb.toString();
+    }
+
+    /**
+     * 生成批量 insert or update 的 sql，根据 keyColumns (主键或者唯一索引) 判断记录是否已经存在
+     * @param table 表名
+     * @param columns 字段名 (包含 keyColumns)
+     * @param keyColumns 主键字段
+     * @param rows 行数
+     * @return 如果不支持，返回 null (rows &gt; 1 时返回 null，表示只支持单行)
+     */
+    public String sql_batch_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        return null;
+    }
+
+    /**
+     * 一条批量 sql 中允许的最大行数 (受限于数据库允许的参数个数)
+     */
+    public int getMaxBatchRows(int columnCount) {
+        return Math.max(1, Math.min(1000, 32767 / columnCount));
+    }
+
+    // a, b, c 或者 prefix.a, prefix.b, prefix.c
+    protected void append_columns(StringBuilder sb, String[] columns, String prefix) {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            if (prefix != null) {
+                sb.append(prefix).append('.');
+            }
+            sb.append(getIdentifier(columns[i]));
+        }
+    }
+
+    // (?, ?), (?, ?)
+    protected void append_values(StringBuilder sb, int columnCount, int rows) {
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('(');
+            for (int j = 0; j < columnCount; j++) {
+                if (j > 0) {
+                    sb.append(", ");
+                }
+                sb.append('?');
+            }
+            sb.append(')');
+        }
+    }
+
+    // 不在 keyColumns 中的字段
+    protected String[] get_update_columns(String[] columns, String[] keyColumns) {
+        List<String> keys = Arrays.asList(keyColumns);
+        List<String> updates = new ArrayList<String>(columns.length);
+        for (String column : columns) {
+            boolean found = false;
+            for (String key : keys) {
+                if (key.equalsIgnoreCase(column)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                updates.add(column);
+            }
+        }
+        return updates.toArray(new String[updates.size()]);
+    }
+
+    /**
+     * 流式读取大结果集时使用的 fetchSize (Statement.setFetchSize).
+     */
+    public int getStreamingFetchSize() {
+        return 1000;
+    }
+
     private static void init_sql92_reservedWords() {
         iso_reservedWords.add("ABSOLUTE");
         iso_reservedWords.add("ACTION");
@@ -62,6 +62,18 @@ public class H2Dialect extends SqlDialect {
         return String.format("alter table %s drop column %s;", getIdentifier(table), getIdentifier(column));
     }
 
+    @Override
+    public String sql_batch_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder sb = new StringBuilder(64 + rows * columns.length * 3);
+        sb.append("merge into ").append(getIdentifier(table)).append(" (");
+        append_columns(sb, columns, null);
+        sb.append(") key (");
+        append_columns(sb, keyColumns, null);
+        sb.append(") values ");
+        append_values(sb, columns.length, rows);
+        return sb.toString();
+    }
+
     @Override
     public String sql_pagelist(String sql, int offset, int limit) {
         sql = sql + " limit " + limit;
@@ -77,11 +77,50 @@ public class MySqlDialect extends SqlDialect {
         }
     }
 
+    @Override
+    public String sql_batch_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        // 根据主键或者唯一索引判断，keyColumns 只用于排除不需要更新的字段
+        StringBuilder sb = new StringBuilder(sql_batch_insert(table, columns, rows));
+        sb.append(" on duplicate key update ");
+        String[] updateColumns = get_update_columns(columns, keyColumns);
+        if (updateColumns.length == 0) {
+            updateColumns = new String[] { columns[0] };
+        }
+        for (int i = 0; i < updateColumns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String column = getIdentifier(updateColumns[i]);
+            sb.append(column).append(" = values(").append(column).append(')');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String sql_count_estimate(String sql) {
+        return "explain " + sql;
+    }
+
+    /**
+     * MySQL Connector/J 只有在 fetchSize = Integer.MIN_VALUE 的时候才会逐行读取，否则会读取全部结果到内存中.
+     * 注意：流式读取完成 (或者关闭 ResultSet) 之前，同一个连接上不能执行其他的语句.
+     */
+    @Override
+    public int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
     @Override
     public boolean supportsColumnPosition() {
         return true;
     }
 
+    @Override
+    public boolean supportsMultiRowGeneratedKeys() {
+        // Connector/J 根据 LAST_INSERT_ID() 和 auto_increment_increment 计算出所有行的主键
+        return true;
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.MySQLDialect";
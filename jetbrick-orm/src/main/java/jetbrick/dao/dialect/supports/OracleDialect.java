@@ -69,6 +69,59 @@ public class OracleDialect extends SqlDialect {
         return sql;
     }
 
+    @Override
+    public String sql_seekpage(String sql, String orderBy, int limit) {
+        // 不能使用 sql_pagelist，多出来的 row 字段会被映射到 bean 上
+        return "select * from (" + sql + " order by " + orderBy + ") where ROWNUM <= " + limit;
+    }
+
+    @Override
+    public String sql_batch_insert(String table, String[] columns, int rows) {
+        // Oracle 不支持 values (...), (...)，使用 JDBC batch
+        return (rows == 1) ? super.sql_batch_insert(table, columns, rows) : null;
+    }
+
+    @Override
+    public String sql_batch_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        if (rows != 1) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("merge into ").append(getIdentifier(table)).append(" t using (select ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("? ").append(getIdentifier(columns[i]));
+        }
+        sb.append(" from dual) s on (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            String key = getIdentifier(keyColumns[i]);
+            sb.append("t.").append(key).append(" = s.").append(key);
+        }
+        sb.append(')');
+        String[] updateColumns = get_update_columns(columns, keyColumns);
+        if (updateColumns.length > 0) {
+            sb.append(" when matched then update set ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                String column = getIdentifier(updateColumns[i]);
+                sb.append("t.").append(column).append(" = s.").append(column);
+            }
+        }
+        sb.append(" when not matched then insert (");
+        append_columns(sb, columns, null);
+        sb.append(") values (");
+        append_columns(sb, columns, "s");
+        sb.append(')');
+        return sb.toString();
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.OracleDialect";
@@ -90,6 +90,60 @@ public class SqlServerDialect extends SqlDialect {
         return sql;
     }
 
+    @Override
+    public String sql_seekpage(String sql, String orderBy, int limit) {
+        // 子查询中不允许使用 order by，所以直接在原始 sql 上加 top 和 order by
+        sql = sql.trim();
+        String lower_sql = sql.toLowerCase();
+        if (lower_sql.startsWith("select ") && !lower_sql.startsWith("select distinct ")) {
+            return "select top " + limit + sql.substring(6) + " order by " + orderBy;
+        }
+        return "select top " + limit + " * from (" + sql + ") as temp order by " + orderBy;
+    }
+
+    @Override
+    public String sql_batch_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder sb = new StringBuilder(128 + rows * columns.length * 3);
+        sb.append("merge into ").append(getIdentifier(table)).append(" as t using (values ");
+        append_values(sb, columns.length, rows);
+        sb.append(") as s (");
+        append_columns(sb, columns, null);
+        sb.append(") on (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            String key = getIdentifier(keyColumns[i]);
+            sb.append("t.").append(key).append(" = s.").append(key);
+        }
+        sb.append(')');
+        String[] updateColumns = get_update_columns(columns, keyColumns);
+        if (updateColumns.length > 0) {
+            sb.append(" when matched then update set ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                String column = getIdentifier(updateColumns[i]);
+                sb.append("t.").append(column).append(" = s.").append(column);
+            }
+        }
+        sb.append(" when not matched then insert (");
+        append_columns(sb, columns, null);
+        sb.append(") values (");
+        append_columns(sb, columns, "s");
+        sb.append(");"); // merge 语句必须以分号结束
+        return sb.toString();
+    }
+
+    /**
+     * SQL Server 一条语句最多 2100 个参数，values 最多 1000 行
+     */
+    @Override
+    public int getMaxBatchRows(int columnCount) {
+        return Math.max(1, Math.min(1000, 2000 / columnCount));
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.SQLServerDialect";
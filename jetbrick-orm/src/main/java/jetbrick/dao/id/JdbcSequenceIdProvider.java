@@ -21,7 +21,7 @@ package jetbrick.dao.id;
 import java.sql.*;
 import javax.sql.DataSource;
 
-public class JdbcSequenceIdProvider implements SequenceIdProvider {
+public class JdbcSequenceIdProvider implements SegmentSequenceIdProvider {
 
     private static final String TABLE_NAME = "_SEQUANCE_";
     private final DataSource dataSource;
@@ -42,6 +42,11 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
         return new SequenceId(this, name, begin);
     }
 
+    @Override
+    public SequenceId create(String name, long begin, int segmentSize) {
+        return new SequenceId(this, name, begin, segmentSize);
+    }
+
     private void confirmTableExists() {
         Connection conn = null;
         try {
@@ -53,7 +58,7 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
 
             if (!found) {
                 Statement stmt = conn.createStatement();
-                String sql = "create table " + TABLE_NAME + " (name varchar(50) not null, next_val long not null, primary key(name))";
+                String sql = "create table " + TABLE_NAME + " (name varchar(50) not null, next_val bigint not null, primary key(name))";
                 stmt.execute(sql);
                 stmt.close();
             }
@@ -85,7 +90,13 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
             ps.setString(1, name);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
-                value = rs.getInt(1);
+                long next_val = rs.getLong(1);
+                if (next_val > Integer.MAX_VALUE) {
+                    rs.close();
+                    ps.close();
+                    throw new IllegalStateException("Sequence " + name + " is out of int range: " + next_val);
+                }
+                value = (int) next_val;
             }
             rs.close();
             ps.close();
@@ -104,7 +115,7 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
             conn = dataSource.getConnection();
             String sql = "update " + TABLE_NAME + " set next_val=? where name=?";
             PreparedStatement ps = conn.prepareStatement(sql);
-            ps.setInt(1, value);
+            ps.setLong(1, value);
             ps.setString(2, name);
             int updated = ps.executeUpdate();
             ps.close();
@@ -113,7 +124,7 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
                 sql = "insert into " + TABLE_NAME + " (name, next_val) values (?,?)";
                 ps = conn.prepareStatement(sql);
                 ps.setString(1, name);
-                ps.setInt(2, value);
+                ps.setLong(2, value);
                 ps.executeUpdate();
                 ps.close();
             }
@@ -123,4 +134,82 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
             close(conn);
         }
     }
+
+    /**
+     * 使用 compare-and-set 的方式更新 next_val (保存的是已经预留的最大 ID)，多个节点并发预留时失败的一方重试.
+     */
+    @Override
+    public long reserve(String name, long begin, int size) {
+        Connection conn = null;
+        PreparedStatement select = null;
+        PreparedStatement update = null;
+        PreparedStatement insert = null;
+        boolean autoCommit = true;
+        try {
+            conn = dataSource.getConnection();
+            // 每一条语句都需要立即提交
+            autoCommit = conn.getAutoCommit();
+            if (!autoCommit) {
+                conn.setAutoCommit(true);
+            }
+            SQLException insertError = null;
+            select = conn.prepareStatement("select next_val from " + TABLE_NAME + " where name=?");
+            update = conn.prepareStatement("update " + TABLE_NAME + " set next_val=? where name=? and next_val=?");
+            while (true) {
+                select.setString(1, name);
+                ResultSet rs = select.executeQuery();
+                boolean found = rs.next();
+                long last = found ? rs.getLong(1) : 0;
+                rs.close();
+
+                if (found) {
+                    long start = Math.max(last + 1, begin);
+                    update.setLong(1, start + size - 1);
+                    update.setString(2, name);
+                    update.setLong(3, last);
+                    if (update.executeUpdate() == 1) {
+                        return start;
+                    }
+                } else {
+                    if (insertError != null) {
+                        throw insertError; // 不是主键冲突
+                    }
+                    if (insert == null) {
+                        insert = conn.prepareStatement("insert into " + TABLE_NAME + " (name, next_val) values (?,?)");
+                    }
+                    insert.setString(1, name);
+                    insert.setLong(2, begin + size - 1);
+                    try {
+                        insert.executeUpdate();
+                        return begin;
+                    } catch (SQLException e) {
+                        // 其他节点已经插入 (主键冲突)，重新读取
+                        insertError = e;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            closeQuietly(insert);
+            closeQuietly(update);
+            closeQuietly(select);
+            if (!autoCommit) {
+                try {
+                    conn.setAutoCommit(false);
+                } catch (SQLException e) {
+                }
+            }
+            close(conn);
+        }
+    }
+
+    private void closeQuietly(Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
 }
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.id;
+
+/**
+ * 支持原子地预留号段的 {@link SequenceIdProvider}，{@link SequenceId} 优先使用 {@link #reserve(String, long, int)}.
+ * <p>
+ * 只实现了 {@link SequenceIdProvider} 的 provider 使用 load/store 预留号段 (只支持 int 范围，并且不支持多个节点共享).
+ */
+public interface SegmentSequenceIdProvider extends SequenceIdProvider {
+
+    /**
+     * @param begin 第一个 ID
+     * @param segmentSize 每次从数据库中预留的 ID 个数
+     */
+    public SequenceId create(String name, long begin, int segmentSize);
+
+    /**
+     * 原子地预留一段 ID (多个节点可以共享同一个 sequence).
+     *
+     * @param begin sequence 不存在时的第一个 ID
+     * @param size 预留的个数
+     * @return 预留的第一个 ID，预留的范围是 [value, value + size)
+     */
+    public long reserve(String name, long begin, int size);
+
+}
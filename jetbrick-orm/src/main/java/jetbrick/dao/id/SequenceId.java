@@ -18,44 +18,168 @@
  */
 package jetbrick.dao.id;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于号段的 ID 生成器.
+ * <p>
+ * 每次从 {@link SequenceIdProvider} 中预留 segmentSize 个 ID，在号段内使用 CAS 分配 (无锁)。
+ * 当前号段剩余不足 1/5 时，在后台线程中预留下一个号段 (双缓冲)，号段切换时一般不需要等待数据库.
+ * <p>
+ * provider 不是 {@link SegmentSequenceIdProvider} 的时候，使用 load/store 预留号段.
+ */
 public class SequenceId {
+    private static final Logger log = LoggerFactory.getLogger(SequenceId.class);
     public static final int NOT_FOUND = 0;
-    private static final int CACHE_SIZE = 50;
+    public static final int DEFAULT_SEGMENT_SIZE = 50;
+
+    // 后台预留号段的线程
+    private static final ExecutorService prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "jetbrick-sequence-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private final SequenceIdProvider provider;
     private final String name;
-    private final int beginValue;
-    private int value;
+    private final long beginValue;
+    private final int segmentSize;
+    private final AtomicReference<Segment> current = new AtomicReference<Segment>();
+    private volatile Future<Segment> prefetch;
 
     protected SequenceId(SequenceIdProvider provider, String name, int beginValue) {
+        this(provider, name, beginValue, DEFAULT_SEGMENT_SIZE);
+    }
+
+    protected SequenceId(SequenceIdProvider provider, String name, long beginValue, int segmentSize) {
         this.provider = provider;
         this.name = name;
         this.beginValue = beginValue;
-        this.value = -1;
+        this.segmentSize = segmentSize;
 
         if (beginValue <= 0) {
             throw new IllegalArgumentException("begin value must be great than zero.");
         }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segment size must be great than zero.");
+        }
     }
 
     public String getName() {
         return name;
     }
 
-    public synchronized int nextVal() {
-        if (value < 0) {
-            value = provider.load(name);
-            if (value <= NOT_FOUND) {
-                value = beginValue - 1;
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int nextVal() {
+        long value = nextLongVal();
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Sequence " + name + " is out of int range, use nextLongVal() instead.");
+        }
+        return (int) value;
+    }
+
+    public long nextLongVal() {
+        while (true) {
+            Segment segment = current.get();
+            if (segment != null) {
+                long value = segment.next.getAndIncrement();
+                if (value <= segment.end) {
+                    if (value == segment.prefetchAt) {
+                        startPrefetch();
+                    }
+                    return value;
+                }
+            }
+            switchSegment(segment);
+        }
+    }
+
+    /**
+     * 当前号段已经用完，切换到下一个号段 (只有一个线程真正执行切换).
+     */
+    private synchronized void switchSegment(Segment exhausted) {
+        if (current.get() != exhausted) {
+            return; // 其他线程已经切换
+        }
+
+        Segment segment = null;
+        Future<Segment> future = prefetch;
+        if (future != null) {
+            prefetch = null;
+            try {
+                segment = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                // 后台预留失败，在当前线程中重试
+                log.warn("Prefetch sequence " + name + " failed, retry it.", e.getCause());
+            }
+        }
+        if (segment == null) {
+            segment = reserve();
+        }
+        current.set(segment);
+    }
+
+    private void startPrefetch() {
+        synchronized (this) {
+            if (prefetch != null) {
+                return;
             }
-            provider.store(name, value + CACHE_SIZE);
+            prefetch = prefetchExecutor.submit(new Callable<Segment>() {
+                @Override
+                public Segment call() {
+                    return reserve();
+                }
+            });
         }
+    }
 
-        value++;
+    private Segment reserve() {
+        long start;
+        if (provider instanceof SegmentSequenceIdProvider) {
+            start = ((SegmentSequenceIdProvider) provider).reserve(name, beginValue, segmentSize);
+        } else {
+            start = reserveByStore();
+        }
+        return new Segment(start, start + segmentSize - 1, segmentSize);
+    }
 
-        if (value % CACHE_SIZE == 0) {
-            provider.store(name, value + CACHE_SIZE);
+    // 兼容只实现了 load/store 的 provider: store 保存的是已经预留的最大 ID
+    private long reserveByStore() {
+        // load/store 不是原子的，同一个 provider 上的 sequence 串行预留 (不能锁 this，切换号段时会等待后台预留)
+        synchronized (provider) {
+            long last = provider.load(name);
+            long start = (last <= NOT_FOUND) ? beginValue : Math.max(last + 1, beginValue);
+            long end = start + segmentSize - 1;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Sequence " + name + " is out of int range, use SegmentSequenceIdProvider instead.");
+            }
+            provider.store(name, (int) end);
+            return start;
         }
+    }
 
-        return value;
+    static final class Segment {
+        final AtomicLong next;
+        final long end; // 包含
+        final long prefetchAt; // 分配到这个值的时候，开始预留下一个号段
+
+        Segment(long start, long end, int size) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = end - size / 5;
+        }
     }
 }
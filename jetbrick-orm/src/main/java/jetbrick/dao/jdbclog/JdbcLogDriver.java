@@ -176,6 +176,9 @@ public final class JdbcLogDriver implements Driver {
         log.info("JdbcLogDriver.connect = {}", driver.getClass());
 
         Connection conn = driver.connect(connectionUrl, info);
+        if (JdbcProfiler.isEnabled()) {
+            return JdbcProfiler.wrap(conn);
+        }
         return JdbcLogConnection.getInstance(conn);
     }
 
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.sql.DataSource;
+import jetbrick.lang.JSONUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 低开销的 JDBC 性能统计和慢查询记录.
+ *
+ * <ul>
+ * <li>按照 SQL 模板统计执行次数、错误数、耗时分布、返回行数</li>
+ * <li>统计连接的持有时间 (从获取到 close)</li>
+ * <li>执行时间超过阈值时输出慢查询日志 (包括参数)，参数只有在慢查询时才会被格式化</li>
+ * </ul>
+ *
+ * 使用静态生成的 Wrapper 类，而不是 JdbcLogXXX 使用的动态代理.
+ *
+ * <pre><code>
+ * -Djetbrick.jdbclog.profile=true        // JdbcLogDriver 返回带统计的 Connection
+ * -Djetbrick.jdbclog.slow.millis=1000    // 慢查询阈值
+ *
+ * DataSource ds = JdbcProfiler.wrap(dataSource);   // 或者直接包装连接池
+ * List&lt;SqlStats.Snapshot&gt; stats = JdbcProfiler.snapshot();
+ * </code></pre>
+ */
+public final class JdbcProfiler {
+    private static final Logger log = LoggerFactory.getLogger(JdbcProfiler.class);
+    private static final int MAX_SQL_COUNT = Integer.getInteger("jetbrick.jdbclog.profile.max.sql", 1000);
+    private static final ConcurrentMap<String, SqlStats> sqlStatsMap = new ConcurrentHashMap<String, SqlStats>();
+    private static final SqlStats otherSqlStats = new SqlStats("<others>");
+    private static final SqlStats connectionStats = new SqlStats("<connection>");
+
+    private static volatile boolean enabled = Boolean.getBoolean("jetbrick.jdbclog.profile");
+    private static volatile long slowThresholdNanos = Long.getLong("jetbrick.jdbclog.slow.millis", 1000L) * 1000000L;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        JdbcProfiler.enabled = enabled;
+    }
+
+    public static long getSlowThresholdMillis() {
+        return slowThresholdNanos / 1000000L;
+    }
+
+    public static void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = millis * 1000000L;
+    }
+
+    public static Connection wrap(Connection conn) {
+        if (conn == null || conn instanceof ProfileConnection) {
+            return conn;
+        }
+        return new ProfileConnection(conn);
+    }
+
+    public static DataSource wrap(DataSource ds) {
+        if (ds == null || ds instanceof ProfileDataSource) {
+            return ds;
+        }
+        return new ProfileDataSource(ds);
+    }
+
+    /**
+     * 获取 SQL 模板对应的统计对象，超过 MAX_SQL_COUNT 后统一记入 "&lt;others&gt;".
+     */
+    static SqlStats getSqlStats(String sql) {
+        if (sql == null) {
+            return otherSqlStats;
+        }
+        SqlStats stats = sqlStatsMap.get(sql);
+        if (stats == null) {
+            if (sqlStatsMap.size() >= MAX_SQL_COUNT) {
+                return otherSqlStats;
+            }
+            stats = new SqlStats(sql);
+            SqlStats old = sqlStatsMap.putIfAbsent(sql, stats);
+            if (old != null) {
+                stats = old;
+            }
+        }
+        return stats;
+    }
+
+    static void recordExecute(SqlStats stats, long nanos, boolean error, Object[] parameters, int parameterCount) {
+        stats.record(nanos, error);
+        if (nanos >= slowThresholdNanos) {
+            if (parameters == null) {
+                log.warn("Slow SQL ({} ms): {}", nanos / 1000000L, formatSql(stats.getSql()));
+            } else {
+                log.warn("Slow SQL ({} ms): {}, Parameters: {}", nanos / 1000000L, formatSql(stats.getSql()), formatParameters(parameters, parameterCount));
+            }
+        }
+    }
+
+    static void recordConnection(long holdNanos) {
+        connectionStats.record(holdNanos, false);
+    }
+
+    private static String formatSql(String sql) {
+        return sql.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+    }
+
+    private static String formatParameters(Object[] parameters, int parameterCount) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append('[');
+        for (int i = 0; i < parameterCount; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            Object value = parameters[i];
+            if (value instanceof String) {
+                sb.append('\'').append(value).append('\'');
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * 所有 SQL 模板的统计快照，按照总耗时倒序排列.
+     */
+    public static List<SqlStats.Snapshot> snapshot() {
+        List<SqlStats.Snapshot> list = new ArrayList<SqlStats.Snapshot>(sqlStatsMap.size() + 1);
+        for (SqlStats stats : sqlStatsMap.values()) {
+            list.add(stats.snapshot());
+        }
+        SqlStats.Snapshot others = otherSqlStats.snapshot();
+        if (others.getCount() > 0) {
+            list.add(others);
+        }
+        Collections.sort(list, new Comparator<SqlStats.Snapshot>() {
+            @Override
+            public int compare(SqlStats.Snapshot o1, SqlStats.Snapshot o2) {
+                return Double.compare(o2.getTotalMillis(), o1.getTotalMillis());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * 连接持有时间的统计快照 (count 为已经关闭的连接数).
+     */
+    public static SqlStats.Snapshot getConnectionSnapshot() {
+        return connectionStats.snapshot();
+    }
+
+    public static String toJSONString() {
+        List<Map<String, Object>> sqls = new ArrayList<Map<String, Object>>();
+        for (SqlStats.Snapshot snapshot : snapshot()) {
+            sqls.add(snapshot.toMap());
+        }
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("slowThresholdMillis", getSlowThresholdMillis());
+        map.put("connection", connectionStats.snapshot().toMap());
+        map.put("sqls", sqls);
+        return JSONUtils.toJSONString(map);
+    }
+
+    public static void reset() {
+        sqlStatsMap.clear();
+        otherSqlStats.reset();
+        connectionStats.reset();
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Arrays;
+import jetbrick.dao.orm.utils.PreparedStatementWrapper;
+
+/**
+ * 统计 PreparedStatement 的执行耗时.
+ *
+ * 常用的 setXXX() 参数只保存引用，只有在出现慢查询时才会格式化输出; 其他类型的参数 (Stream/Blob 等) 不记录.
+ */
+final class ProfilePreparedStatement extends PreparedStatementWrapper {
+    private final Connection conn;
+    private final SqlStats stats;
+    private Object[] parameters = new Object[8];
+    private int parameterCount;
+
+    ProfilePreparedStatement(PreparedStatement ps, Connection conn, String sql) {
+        this.ps = ps;
+        this.conn = conn;
+        this.stats = JdbcProfiler.getSqlStats(sql);
+    }
+
+    private void end(long start, boolean error) {
+        JdbcProfiler.recordExecute(stats, System.nanoTime() - start, error, parameters, parameterCount);
+    }
+
+    private void addParameter(int parameterIndex, Object value) {
+        if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length * 2));
+        }
+        parameters[parameterIndex - 1] = value;
+        if (parameterIndex > parameterCount) {
+            parameterCount = parameterIndex;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return conn;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            ResultSet rs = ps.executeQuery();
+            error = false;
+            return ProfileResultSet.wrap(rs, stats);
+        } finally {
+            end(start, error);
+        }
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int result = ps.executeUpdate();
+            error = false;
+            return result;
+        } finally {
+            end(start, error);
+        }
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = ps.execute();
+            error = false;
+            return result;
+        } finally {
+            end(start, error);
+        }
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int[] result = ps.executeBatch();
+            error = false;
+            return result;
+        } finally {
+            end(start, error);
+        }
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return ProfileResultSet.wrap(ps.getResultSet(), stats);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        Arrays.fill(parameters, 0, parameterCount, null);
+        parameterCount = 0;
+        ps.clearParameters();
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        addParameter(parameterIndex, null);
+        ps.setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        addParameter(parameterIndex, x);
+        ps.setObject(parameterIndex, x, targetSqlType);
+    }
+}
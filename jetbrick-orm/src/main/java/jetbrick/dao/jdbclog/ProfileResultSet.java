@@ -0,0 +1,68 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import jetbrick.dao.orm.utils.ResultSetWrapper;
+
+/**
+ * 统计读取的行数，在 ResultSet 读取完毕或者关闭时计入 SqlStats.
+ */
+final class ProfileResultSet extends ResultSetWrapper {
+    private final SqlStats stats;
+    private long rows;
+    private boolean recorded;
+
+    static ResultSet wrap(ResultSet rs, SqlStats stats) {
+        if (rs == null || rs instanceof ProfileResultSet) {
+            return rs;
+        }
+        return new ProfileResultSet(rs, stats);
+    }
+
+    private ProfileResultSet(ResultSet rs, SqlStats stats) {
+        this.rs = rs;
+        this.stats = stats;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        boolean hasNext = rs.next();
+        if (hasNext) {
+            rows++;
+        } else {
+            recordRows();
+        }
+        return hasNext;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        recordRows();
+        rs.close();
+    }
+
+    private void recordRows() {
+        if (!recorded) {
+            recorded = true;
+            stats.addRows(rows);
+        }
+    }
+}
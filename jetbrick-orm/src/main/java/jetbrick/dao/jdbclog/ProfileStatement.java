@@ -0,0 +1,212 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.sql.*;
+import jetbrick.dao.orm.utils.StatementWrapper;
+
+/**
+ * 统计 Statement 的执行耗时 (按照 SQL 文本分组).
+ */
+final class ProfileStatement extends StatementWrapper {
+    private final Connection conn;
+    private SqlStats lastStats;
+    private String batchSql;
+
+    ProfileStatement(Statement stmt, Connection conn) {
+        this.stmt = stmt;
+        this.conn = conn;
+    }
+
+    private SqlStats begin(String sql) {
+        lastStats = JdbcProfiler.getSqlStats(sql);
+        return lastStats;
+    }
+
+    private void end(SqlStats stats, long start, boolean error) {
+        JdbcProfiler.recordExecute(stats, System.nanoTime() - start, error, null, 0);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return conn;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+            error = false;
+            return ProfileResultSet.wrap(rs, stats);
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int result = stmt.executeUpdate(sql);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int result = stmt.executeUpdate(sql, autoGeneratedKeys);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int result = stmt.executeUpdate(sql, columnIndexes);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int result = stmt.executeUpdate(sql, columnNames);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = stmt.execute(sql);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = stmt.execute(sql, autoGeneratedKeys);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = stmt.execute(sql, columnIndexes);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        SqlStats stats = begin(sql);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            boolean result = stmt.execute(sql, columnNames);
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        ResultSet rs = stmt.getResultSet();
+        return lastStats == null ? rs : ProfileResultSet.wrap(rs, lastStats);
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        // 批处理按照第一条 SQL 分组统计
+        if (batchSql == null) {
+            batchSql = sql;
+        }
+        stmt.addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        batchSql = null;
+        stmt.clearBatch();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        SqlStats stats = begin(batchSql);
+        batchSql = null;
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            int[] result = stmt.executeBatch();
+            error = false;
+            return result;
+        } finally {
+            end(stats, start, error);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个 SQL 模板的执行统计 (次数，错误数，耗时，行数，耗时分布).
+ *
+ * 所有计数器都是无锁的原子变量，直方图采用固定的毫秒分桶，记录一次只需要几次原子加法.
+ */
+public final class SqlStats {
+    // 直方图分桶的上界 (毫秒)，最后一个桶存放超过 5000ms 的所有记录
+    private static final long[] BUCKET_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+    private static final long[] BUCKET_NANOS = new long[BUCKET_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            BUCKET_NANOS[i] = BUCKET_MILLIS[i] * 1000000L;
+        }
+    }
+
+    private final String sql;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+
+    public SqlStats(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public void record(long nanos, boolean error) {
+        count.incrementAndGet();
+        if (error) {
+            errors.incrementAndGet();
+        }
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+            max = maxNanos.get();
+        }
+        histogram.incrementAndGet(getBucketIndex(nanos));
+    }
+
+    public void addRows(long n) {
+        if (n > 0) {
+            rows.addAndGet(n);
+        }
+    }
+
+    public void reset() {
+        count.set(0);
+        errors.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        rows.set(0);
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] buckets = new long[histogram.length()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = histogram.get(i);
+        }
+        return new Snapshot(sql, count.get(), errors.get(), totalNanos.get(), maxNanos.get(), rows.get(), buckets);
+    }
+
+    private static int getBucketIndex(long nanos) {
+        for (int i = 0; i < BUCKET_NANOS.length; i++) {
+            if (nanos <= BUCKET_NANOS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_NANOS.length;
+    }
+
+    /**
+     * 直方图各个分桶的上界 (毫秒)，最后一个桶没有上界.
+     */
+    public static long[] getBucketMillis() {
+        return BUCKET_MILLIS.clone();
+    }
+
+    /**
+     * 某一时刻的统计快照 (不可变).
+     */
+    public static final class Snapshot {
+        private final String sql;
+        private final long count;
+        private final long errors;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long rows;
+        private final long[] histogram;
+
+        Snapshot(String sql, long count, long errors, long totalNanos, long maxNanos, long rows, long[] histogram) {
+            this.sql = sql;
+            this.count = count;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.rows = rows;
+            this.histogram = histogram;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1000000.0;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1000000.0;
+        }
+
+        public double getAvgMillis() {
+            return count == 0 ? 0 : totalNanos / 1000000.0 / count;
+        }
+
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        /**
+         * 根据直方图估算百分位耗时 (返回所在分桶的上界，最后一个桶返回最大值).
+         *
+         * @param percentile 0 - 100
+         */
+        public double getPercentileMillis(double percentile) {
+            long total = 0;
+            for (long n : histogram) {
+                total += n;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(total * percentile / 100.0);
+            long sum = 0;
+            for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+                sum += histogram[i];
+                if (sum >= threshold) {
+                    return Math.min(BUCKET_MILLIS[i], getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("sql", sql);
+            map.put("count", count);
+            map.put("errors", errors);
+            map.put("rows", rows);
+            map.put("totalMillis", getTotalMillis());
+            map.put("avgMillis", getAvgMillis());
+            map.put("maxMillis", getMaxMillis());
+            map.put("p50Millis", getPercentileMillis(50));
+            map.put("p95Millis", getPercentileMillis(95));
+            map.put("p99Millis", getPercentileMillis(99));
+
+            Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+                buckets.put("le" + BUCKET_MILLIS[i], histogram[i]);
+            }
+            buckets.put("inf", histogram[BUCKET_MILLIS.length]);
+            map.put("histogram", buckets);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, errors=%d, rows=%d, avg=%.3fms, max=%.3fms, p95=%.0fms, sql=%s", count, errors, rows, getAvgMillis(), getMaxMillis(), getPercentileMillis(95), sql);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+
+/**
+ * {@link BatchWriter} 的执行结果.
+ */
+public final class BatchResult {
+    private final long rows;
+    private final long affectedRows;
+    private final int statements;
+    private final long elapsedNanos;
+    private final List<Object> generatedKeys;
+
+    BatchResult(long rows, long affectedRows, int statements, long elapsedNanos, List<Object> generatedKeys) {
+        this.rows = rows;
+        this.affectedRows = affectedRows;
+        this.statements = statements;
+        this.elapsedNanos = elapsedNanos;
+        this.generatedKeys = generatedKeys;
+    }
+
+    /**
+     * 写入的行数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 数据库返回的影响行数 (MySQL 的 upsert 中，更新的记录算作 2 行；不确定的时候不计算在内)
+     */
+    public long getAffectedRows() {
+        return affectedRows;
+    }
+
+    /**
+     * 和数据库交互的次数 (执行的语句或者 JDBC batch 数)
+     */
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000L;
+    }
+
+    /**
+     * 每秒写入的行数
+     */
+    public double getRowsPerSecond() {
+        return (elapsedNanos == 0) ? 0 : rows * 1000000000.0 / elapsedNanos;
+    }
+
+    /**
+     * 自动生成的主键 (需要设置 {@link BatchWriter#setReturnGeneratedKeys(boolean)})，具体返回多少依赖于 JDBC 驱动
+     */
+    public List<Object> getGeneratedKeys() {
+        return generatedKeys;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult(rows=%d, affectedRows=%d, statements=%d, elapsed=%dms, rows/s=%.1f)", rows, affectedRows, statements, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.sql.*;
+import java.util.*;
+import jetbrick.dao.DbException;
+import jetbrick.dao.dialect.SqlDialect;
+import jetbrick.dao.orm.utils.DbUtils;
+import jetbrick.lang.IdentifiedNameUtils;
+import jetbrick.lang.Validate;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.reflect.PropertyInfo;
+
+/**
+ * 批量写入 (insert 或者 upsert)，按照 chunkSize 分批，尽量使用一条语句写入多行 (insert ... values (...), (...))，减少和数据库的交互次数.
+ * <p>
+ * 数据库不支持多行语句的时候 (比如 Oracle)，使用 JDBC batch. 每一行可以是 Object[] (顺序和 columns 一致) 或者 bean (属性名为 column 的驼峰形式).
+ * <p>
+ * 不在事务中时每一批单独提交，见 {@link #write(Collection)}.
+ *
+ * <pre>
+ * BatchWriter writer = dbHelper.createBatchWriter("users", "id", "name", "age");
+ * writer.setUpsertKeys("id");
+ * BatchResult result = writer.write(users);
+ * </pre>
+ */
+public final class BatchWriter {
+    private final DbHelper dbHelper;
+    private final SqlDialect dialect;
+    private final String table;
+    private final String[] columns;
+    private String[] upsertKeys;
+    private int chunkSize = 1000;
+    private boolean returnGeneratedKeys;
+
+    // 最近使用的 bean 的属性
+    private Class<?> beanClass;
+    private PropertyInfo[] properties;
+
+    BatchWriter(DbHelper dbHelper, String table, String[] columns) {
+        Validate.notNull(table, "table is null.");
+        Validate.isTrue(columns != null && columns.length > 0, "columns is empty.");
+
+        this.dbHelper = dbHelper;
+        this.dialect = dbHelper.getDialect();
+        this.table = table;
+        this.columns = columns;
+    }
+
+    /**
+     * 每一批写入的行数 (默认 1000)，实际使用的大小还受限于 {@link SqlDialect#getMaxBatchRows(int)}
+     */
+    public void setChunkSize(int chunkSize) {
+        Validate.isTrue(chunkSize > 0, "chunkSize must be greater than 0.");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 使用 upsert (insert or update)，keyColumns 为主键或者唯一索引的字段
+     */
+    public void setUpsertKeys(String... keyColumns) {
+        this.upsertKeys = (keyColumns == null || keyColumns.length == 0) ? null : keyColumns;
+    }
+
+    /**
+     * 返回自增主键。如果数据库不支持一条语句插入多行时返回所有行的主键 ({@link SqlDialect#supportsMultiRowGeneratedKeys()})，
+     * 那么逐行执行 insert. 不支持和 upsert 一起使用.
+     */
+    public void setReturnGeneratedKeys(boolean returnGeneratedKeys) {
+        this.returnGeneratedKeys = returnGeneratedKeys;
+    }
+
+    /**
+     * 写入所有的行.
+     * <p>
+     * 注意：不在事务中时，每一批都会自动提交。如果中间某一批失败，之前的批次已经写入数据库
+     * (抛出的 DbException 中 writtenRows 为已经提交的行数)。需要全部成功或者全部失败的话，请在事务中调用.
+     */
+    public BatchResult write(Collection<?> rows) {
+        Validate.notNull(rows, "rows is null.");
+        if (returnGeneratedKeys && upsertKeys != null) {
+            throw new DbException("returnGeneratedKeys is not supported by upsert.");
+        }
+
+        long start = System.nanoTime();
+        int size = Math.min(chunkSize, dialect.getMaxBatchRows(columns.length));
+        String sql = getSql(size);
+        boolean multiRows = (size > 1 && sql != null);
+        if (multiRows && returnGeneratedKeys && !dialect.supportsMultiRowGeneratedKeys()) {
+            multiRows = false; // 只能拿到最后一行的主键
+        }
+        if (!multiRows) {
+            // 不支持多行语句，使用 JDBC batch (需要返回主键时逐行执行)
+            sql = getSql(1);
+            if (sql == null) {
+                throw new DbException("Upsert is not supported by " + dialect.getName());
+            }
+        }
+
+        List<Object> generatedKeys = returnGeneratedKeys ? new ArrayList<Object>(rows.size()) : null;
+        long affectedRows = 0;
+        int statements = 0;
+        int writtenRows = 0;
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        String current_sql = null;
+        try {
+            conn = dbHelper.getConnection();
+            Iterator<?> it = rows.iterator();
+            Object[] values = new Object[columns.length];
+            int remaining = rows.size();
+            while (remaining > 0) {
+                int chunk = Math.min(size, remaining);
+                remaining -= chunk;
+
+                if (multiRows) {
+                    // 最后一批的行数不同，需要重新生成 sql
+                    String chunk_sql = (chunk == size) ? sql : getSql(chunk);
+                    if (chunk_sql != current_sql) {
+                        DbUtils.closeQuietly(ps);
+                        ps = prepareStatement(conn, chunk_sql);
+                        current_sql = chunk_sql;
+                    }
+                    int index = 1;
+                    for (int i = 0; i < chunk; i++) {
+                        getValues(it.next(), values);
+                        for (Object value : values) {
+                            ps.setObject(index++, value);
+                        }
+                    }
+                    affectedRows += Math.max(0, ps.executeUpdate());
+                    statements++;
+                    readGeneratedKeys(ps, generatedKeys);
+                } else if (returnGeneratedKeys) {
+                    if (ps == null) {
+                        ps = prepareStatement(conn, sql);
+                    }
+                    for (int i = 0; i < chunk; i++) {
+                        getValues(it.next(), values);
+                        for (int j = 0; j < values.length; j++) {
+                            ps.setObject(j + 1, values[j]);
+                        }
+                        affectedRows += Math.max(0, ps.executeUpdate());
+                        statements++;
+                        readGeneratedKeys(ps, generatedKeys);
+                    }
+                } else {
+                    if (ps == null) {
+                        ps = prepareStatement(conn, sql);
+                    }
+                    for (int i = 0; i < chunk; i++) {
+                        getValues(it.next(), values);
+                        for (int j = 0; j < values.length; j++) {
+                            ps.setObject(j + 1, values[j]);
+                        }
+                        ps.addBatch();
+                    }
+                    for (int count : ps.executeBatch()) {
+                        if (count > 0) {
+                            affectedRows += count; // 忽略 SUCCESS_NO_INFO
+                        }
+                    }
+                    statements++;
+                }
+                writtenRows += chunk;
+            }
+        } catch (SQLException e) {
+            throw new DbException(e).set("sql", current_sql == null ? sql : current_sql).set("writtenRows", writtenRows);
+        } finally {
+            DbUtils.closeQuietly(ps);
+            dbHelper.closeConnection(conn);
+            dbHelper.markWrite(sql);
+        }
+
+        return new BatchResult(rows.size(), affectedRows, statements, System.nanoTime() - start, generatedKeys);
+    }
+
+    private void readGeneratedKeys(PreparedStatement ps, List<Object> generatedKeys) throws SQLException {
+        if (generatedKeys == null) {
+            return;
+        }
+        ResultSet rs = ps.getGeneratedKeys();
+        try {
+            while (rs.next()) {
+                generatedKeys.add(rs.getObject(1));
+            }
+        } finally {
+            DbUtils.closeQuietly(rs);
+        }
+    }
+
+    private String getSql(int rows) {
+        if (upsertKeys == null) {
+            return dialect.sql_batch_insert(table, columns, rows);
+        } else {
+            return dialect.sql_batch_upsert(table, columns, upsertKeys, rows);
+        }
+    }
+
+    private PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+        if (returnGeneratedKeys) {
+            return conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        }
+        return conn.prepareStatement(sql);
+    }
+
+    private void getValues(Object row, Object[] values) {
+        if (row instanceof Object[]) {
+            Object[] array = (Object[]) row;
+            if (array.length != values.length) {
+                throw new DbException("The length of row is not equal to columns.length: " + array.length);
+            }
+            System.arraycopy(array, 0, values, 0, values.length);
+        } else {
+            if (row.getClass() != beanClass) {
+                KlassInfo klass = KlassInfo.create(row.getClass());
+                PropertyInfo[] props = new PropertyInfo[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    String name = IdentifiedNameUtils.toCamelCase(columns[i]);
+                    props[i] = klass.getProperty(name);
+                    if (props[i] == null || !props[i].readable()) {
+                        throw new DbException("Can't find readable property '" + name + "' in " + klass.getName());
+                    }
+                }
+                properties = props;
+                beanClass = row.getClass();
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = properties[i].get(row);
+            }
+        }
+    }
+}
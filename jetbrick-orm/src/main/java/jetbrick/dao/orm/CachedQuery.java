@@ -0,0 +1,157 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+import jetbrick.dao.orm.routing.ReplicaRouter;
+import jetbrick.lang.Validate;
+
+/**
+ * 使用 {@link QueryCache} 的查询，通过 {@link DbHelper#cached(String...)} 获取.
+ * <p>
+ * 返回的结果都是缓存的副本，可以随意修改.
+ */
+@SuppressWarnings("unchecked")
+public final class CachedQuery {
+    private final DbHelper dbHelper;
+    private final String[] tables;
+
+    CachedQuery(DbHelper dbHelper, String[] tables) {
+        Validate.notEmpty(tables, "tables is empty.");
+
+        this.dbHelper = dbHelper;
+        this.tables = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            this.tables[i] = tables[i].toLowerCase();
+        }
+    }
+
+    public <T> List<T> queryAsList(Class<T> beanClass, String sql, Object... parameters) {
+        QueryCache cache = getQueryCache();
+        if (cache == null) {
+            return dbHelper.queryAsList(beanClass, sql, parameters);
+        }
+        QueryCache.Key key = new QueryCache.Key(new Kind("list", beanClass), sql, parameters);
+        Object value = cache.get(key);
+        if (value != null) {
+            return QueryCache.isNullValue(value) ? null : (List<T>) value;
+        }
+        long[] versions = cache.getVersions(tables);
+        boolean primary = isReadPrimary(cache);
+        List<T> result;
+        try {
+            dbHelper.setReadPrimary(primary);
+            result = dbHelper.queryAsList(beanClass, sql, parameters);
+        } finally {
+            dbHelper.setReadPrimary(false);
+        }
+        cache.put(key, result, tables, versions);
+        return result;
+    }
+
+    public <T> T queryAsObject(Class<T> beanClass, String sql, Object... parameters) {
+        QueryCache cache = getQueryCache();
+        if (cache == null) {
+            return dbHelper.queryAsObject(beanClass, sql, parameters);
+        }
+        QueryCache.Key key = new QueryCache.Key(new Kind("object", beanClass), sql, parameters);
+        Object value = cache.get(key);
+        if (value != null) {
+            return QueryCache.isNullValue(value) ? null : (T) value;
+        }
+        long[] versions = cache.getVersions(tables);
+        boolean primary = isReadPrimary(cache);
+        T result;
+        try {
+            dbHelper.setReadPrimary(primary);
+            result = dbHelper.queryAsObject(beanClass, sql, parameters);
+        } finally {
+            dbHelper.setReadPrimary(false);
+        }
+        cache.put(key, result, tables, versions);
+        return result;
+    }
+
+    public Integer queryAsInt(String sql, Object... parameters) {
+        return queryAsObject(Integer.class, sql, parameters);
+    }
+
+    public Long queryAsLong(String sql, Object... parameters) {
+        return queryAsObject(Long.class, sql, parameters);
+    }
+
+    public String queryAsString(String sql, Object... parameters) {
+        return queryAsObject(String.class, sql, parameters);
+    }
+
+    public Boolean queryAsBoolean(String sql, Object... parameters) {
+        return queryAsObject(Boolean.class, sql, parameters);
+    }
+
+    public Date queryAsDate(String sql, Object... parameters) {
+        return queryAsObject(Date.class, sql, parameters);
+    }
+
+    public Map<String, Object> queryAsMap(String sql, Object... parameters) {
+        return queryAsObject(Map.class, sql, parameters);
+    }
+
+    // 事务中可能读到未提交的数据，不能使用缓存
+    private QueryCache getQueryCache() {
+        QueryCache cache = dbHelper.getQueryCache();
+        if (cache == null || dbHelper.isInTransaction()) {
+            return null;
+        }
+        return cache;
+    }
+
+    // 表刚刚被修改过，从库可能还没有同步，从主库读取之后再放入缓存
+    private boolean isReadPrimary(QueryCache cache) {
+        ReplicaRouter router = dbHelper.getReplicaRouter();
+        if (router == null || router.getStickyMillis() <= 0) {
+            return false;
+        }
+        return System.currentTimeMillis() - cache.getLastInvalidateTime(tables) < router.getStickyMillis();
+    }
+
+    // 区分同一个 SQL 的不同查询方式
+    static final class Kind {
+        private final String method;
+        private final Class<?> type;
+
+        Kind(String method, Class<?> type) {
+            this.method = method;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return method.hashCode() * 31 + type.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Kind)) {
+                return false;
+            }
+            Kind other = (Kind) obj;
+            return method.equals(other.method) && type == other.type;
+        }
+    }
+}
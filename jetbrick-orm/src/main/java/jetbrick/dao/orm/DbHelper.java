@@ -27,25 +27,46 @@ import jetbrick.dao.TransactionException;
 import jetbrick.dao.dialect.SqlDialect;
 import jetbrick.dao.orm.handlers.*;
 import jetbrick.dao.orm.mappers.*;
+import jetbrick.dao.orm.routing.ReplicaDataSource;
+import jetbrick.dao.orm.routing.ReplicaRouter;
 import jetbrick.dao.orm.tx.*;
-import jetbrick.dao.orm.utils.DbUtils;
-import jetbrick.dao.orm.utils.PreparedStatementCreator;
+import jetbrick.dao.orm.utils.*;
 import jetbrick.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * 数据库操作。单例使用
+ * <p>
+ * 如果配置了从库，不在事务中的查询会分配到从库，写操作和事务始终使用主库.
  */
 @SuppressWarnings("unchecked")
 public class DbHelper {
+    private static final Logger log = LoggerFactory.getLogger(DbHelper.class);
     private static final boolean ALLOW_NESTED_TRANSACTION = System.getProperty("jetbrick.orm.transaction.nested.disabled") == null;
 
     // 当前线程(事务)
     private final ThreadLocal<JdbcTransaction> transationHandler = new ThreadLocal<JdbcTransaction>();
+    // 当前事务中修改过的表，事务结束时清除查询缓存
+    private final ThreadLocal<Set<String>> transactionWriteTables = new ThreadLocal<Set<String>>();
+    // 当前线程的查询强制使用主库 (比如刚刚被修改的表的查询缓存)
+    private final ThreadLocal<Boolean> readPrimary = new ThreadLocal<Boolean>();
     private final DataSource dataSource;
+    private final ReplicaRouter replicaRouter; // 没有从库时为 null
     private final SqlDialect dialect;
+    private volatile QueryCache queryCache;
 
     public DbHelper(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * @param dataSource 主库
+     * @param replicas 从库 (只读)
+     */
+    public DbHelper(DataSource dataSource, List<DataSource> replicas) {
         this.dataSource = dataSource;
+        this.replicaRouter = (replicas == null || replicas.isEmpty()) ? null : new ReplicaRouter(replicas);
         this.dialect = doGetDialet();
     }
 
@@ -53,6 +74,32 @@ public class DbHelper {
         return dataSource;
     }
 
+    /**
+     * 读写分离的路由规则，可以设置从库的选择策略等，没有从库返回 null.
+     */
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * 设置查询结果的缓存，null 表示不使用缓存.
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * 使用查询缓存，tables 为查询所依赖的表，这些表被修改之后缓存失效.
+     * 事务中或者没有设置 QueryCache 时直接查询数据库.
+     */
+    public CachedQuery cached(String... tables) {
+        return new CachedQuery(this, tables);
+    }
+
     /**
      * 启动一个事务(默认支持子事务)
      */
@@ -64,7 +111,16 @@ public class DbHelper {
             throw new TransactionException("Can't begin a nested transaction.");
         }
         try {
-            JdbcTransaction tx = new JdbcTransaction(dataSource.getConnection(), transationHandler);
+            JdbcTransaction tx = new JdbcTransaction(dataSource.getConnection(), transationHandler) {
+                @Override
+                public void close() {
+                    try {
+                        super.close();
+                    } finally {
+                        afterTransaction();
+                    }
+                }
+            };
             transationHandler.set(tx);
             return tx;
         } catch (SQLException e) {
@@ -75,7 +131,7 @@ public class DbHelper {
     /**
      * 获取一个当前线程的连接(事务中)，如果没有，则新建一个。
      */
-    private Connection getConnection() {
+    Connection getConnection() {
         JdbcTransaction tx = transationHandler.get();
         try {
             if (tx == null) {
@@ -88,10 +144,94 @@ public class DbHelper {
         }
     }
 
+    /**
+     * 获取一个用于查询的连接: 在事务中或者当前线程刚刚写入过，使用主库，否则使用从库.
+     */
+    Connection getReadConnection() {
+        if (replicaRouter == null || transationHandler.get() != null || readPrimary.get() != null || replicaRouter.isSticky()) {
+            return getConnection();
+        }
+        ReplicaDataSource replica = replicaRouter.select();
+        if (replica == null) {
+            return getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            log.warn("Can't get connection from replica, use primary instead.", e);
+            return getConnection();
+        }
+    }
+
+    /**
+     * 设置当前线程的查询是否强制使用主库，必须在 finally 中恢复为 false.
+     */
+    void setReadPrimary(boolean primary) {
+        if (primary) {
+            readPrimary.set(Boolean.TRUE);
+        } else {
+            readPrimary.remove();
+        }
+    }
+
+    boolean isInTransaction() {
+        return transationHandler.get() != null;
+    }
+
+    /**
+     * 记录当前线程的写操作: 读写分离时，之后的一段时间内继续读主库; 清除相关表的查询缓存.
+     *
+     * @param sql 无法识别表名 (或者为 null) 时清除全部查询缓存
+     */
+    void markWrite(String sql) {
+        if (replicaRouter != null) {
+            replicaRouter.markWrite();
+        }
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            String table = cache.getWriteTable(sql);
+            cache.invalidateTable(table);
+            if (transationHandler.get() != null) {
+                // 事务提交之前其他线程可能又缓存了旧数据，事务结束时需要再清除一次
+                Set<String> tables = transactionWriteTables.get();
+                if (tables == null) {
+                    tables = new HashSet<String>();
+                    transactionWriteTables.set(tables);
+                }
+                tables.add(table);
+            }
+        }
+    }
+
+    // 事务结束之后才能确定写入的时间
+    private void afterTransaction() {
+        if (replicaRouter != null) {
+            replicaRouter.markWrite();
+        }
+        Set<String> tables = transactionWriteTables.get();
+        if (tables != null) {
+            transactionWriteTables.remove();
+            QueryCache cache = queryCache;
+            if (cache != null) {
+                for (String table : tables) {
+                    cache.invalidateTable(table);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取当前事务中的 PreparedStatement 缓存，不在事务中返回 null.
+     */
+    private PreparedStatementCache getStatementCache() {
+        JdbcTransaction tx = transationHandler.get();
+        return (tx == null) ? null : tx.getStatementCache();
+    }
+
     /**
      * 释放一个连接，如果 Connection 不在事务中，则关闭它，否则不处理。
      */
-    private void closeConnection(Connection conn) {
+    void closeConnection(Connection conn) {
         if (transationHandler.get() == null) {
             // not in transaction
             DbUtils.closeQuietly(conn);
@@ -195,25 +335,210 @@ public class DbHelper {
         return pagelist;
     }
 
+    public <T> SeekPage<T> queryAsSeekPage(Class<T> beanClass, String[] orderColumns, Object[] lastKey, int pageSize, String sql, Object... parameters) {
+        return queryAsSeekPage(beanClass, orderColumns, lastKey, pageSize, SeekPage.COUNT_NONE, sql, parameters);
+    }
+
+    public <T> SeekPage<T> queryAsSeekPage(Class<T> beanClass, String[] orderColumns, Object[] lastKey, int pageSize, int countMode, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        RowMapper<T> rowMapper = getRowMapper(beanClass);
+        return queryAsSeekPage(rowMapper, orderColumns, lastKey, pageSize, countMode, sql, parameters);
+    }
+
+    public <T> SeekPage<T> queryAsSeekPage(RowMapper<T> rowMapper, String[] orderColumns, Object[] lastKey, int pageSize, String sql, Object... parameters) {
+        return queryAsSeekPage(rowMapper, orderColumns, lastKey, pageSize, SeekPage.COUNT_NONE, sql, parameters);
+    }
+
+    /**
+     * keyset (seek) 分页：使用上一页最后一行的排序字段值作为条件，不使用 offset，查询时间和第几页无关.
+     *
+     * seek 条件直接加入到 sql 的 where 子句中，以便使用索引。如果 sql 的最外层包含 group by, having, union 等子句，
+     * 那么使用派生表 (select * from (sql) where ...)，这时 MySQL 5.7 之前的版本不能使用索引.
+     *
+     * @param orderColumns 排序字段，可以带 asc/desc，组合起来必须唯一 (比如最后加上主键)，并且不能为 null.
+     *        字段必须能直接用在 where 子句中 (表字段，可以带表别名，比如 u.id，不能是 select 中的别名)，
+     *        并且 sql 必须返回同名的字段 (去掉表别名)
+     * @param lastKey 上一页的 {@link SeekPage#getLastKey()}，第一页为 null
+     * @param countMode {@link SeekPage#COUNT_NONE}, {@link SeekPage#COUNT_EXACT}, {@link SeekPage#COUNT_ESTIMATE}
+     * @param sql 原始sql (不包含 order by)
+     * @param parameters 只支持 ? 参数，lastKey 会被追加到参数的后面
+     */
+    public <T> SeekPage<T> queryAsSeekPage(RowMapper<T> rowMapper, String[] orderColumns, Object[] lastKey, int pageSize, int countMode, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+        Validate.notNull(sql, "sql is null.");
+        Validate.isTrue(orderColumns != null && orderColumns.length > 0, "orderColumns is empty.");
+        Validate.isTrue(pageSize > 0, "pageSize must be greater than 0.");
+
+        int size = orderColumns.length;
+        String[] columns = new String[size];
+        boolean[] descending = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            String column = orderColumns[i].trim();
+            String lowerColumn = column.toLowerCase();
+            if (lowerColumn.endsWith(" desc")) {
+                column = column.substring(0, column.length() - 5).trim();
+                descending[i] = true;
+            } else if (lowerColumn.endsWith(" asc")) {
+                column = column.substring(0, column.length() - 4).trim();
+            }
+            columns[i] = column;
+        }
+
+        String seek_sql = sql;
+        if (DbUtils.get_sql_seek_where(sql, "1 = 1") == null) {
+            // 不能直接加入 where 子句，使用派生表，字段使用 sql 返回的字段名
+            for (int i = 0; i < size; i++) {
+                columns[i] = DbUtils.get_sql_column_label(columns[i]);
+            }
+            seek_sql = "select * from (" + sql + ") seek_t";
+        }
+
+        StringBuilder orderBy = new StringBuilder(64);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append(columns[i]);
+            if (descending[i]) {
+                orderBy.append(" desc");
+            }
+        }
+
+        Object[] seek_parameters = (parameters == null) ? new Object[0] : parameters;
+        if (lastKey != null && lastKey.length > 0) {
+            Validate.isTrue(lastKey.length == size, "lastKey.length is not equal to orderColumns.length.");
+            seek_sql = DbUtils.get_sql_seek_where(seek_sql, DbUtils.get_sql_seek_condition(columns, descending));
+
+            // (a > ?) or (a = ? and b > ?) ...
+            int length = seek_parameters.length;
+            seek_parameters = Arrays.copyOf(seek_parameters, length + size * (size + 1) / 2);
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j <= i; j++) {
+                    seek_parameters[length++] = lastKey[j];
+                }
+            }
+        }
+
+        // 多读取一行，用于判断是否还有下一页
+        seek_sql = dialect.sql_seekpage(seek_sql, orderBy.toString(), pageSize + 1);
+        SeekPage<T> page = query(new SeekPageHandler<T>(rowMapper, columns, pageSize), seek_sql, seek_parameters);
+
+        if (countMode == SeekPage.COUNT_EXACT) {
+            String count_sql = DbUtils.get_sql_select_count(sql);
+            page.setTotalCount(queryAsLong(count_sql, parameters));
+        } else if (countMode == SeekPage.COUNT_ESTIMATE) {
+            page.setTotalCount(queryAsEstimatedCount(sql, parameters));
+        }
+        return page;
+    }
+
+    /**
+     * 使用数据库的执行计划估算记录数，不支持的数据库返回 -1
+     */
+    public long queryAsEstimatedCount(String sql, Object... parameters) {
+        String estimate_sql = dialect.sql_count_estimate(sql);
+        if (estimate_sql == null) {
+            return -1;
+        }
+        ResultSetHandler<Long> rsh = new ResultSetHandler<Long>() {
+            @Override
+            public Long handle(ResultSet rs) throws SQLException {
+                return rs.next() ? rs.getLong("rows") : -1L;
+            }
+        };
+        return query(rsh, estimate_sql, parameters);
+    }
+
+    /**
+     * 流式查询，逐行调用 callback，内存占用和结果集的大小无关.
+     *
+     * @return 处理的行数
+     */
+    public <T> long forEach(RowMapper<T> rowMapper, RowCallback<T> callback, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+        Validate.notNull(callback, "callback is null.");
+
+        ResultSetHandler<Long> rsh = new RowCallbackHandler<T>(rowMapper, callback);
+        return doQuery(rsh, dialect.getStreamingFetchSize(), sql, parameters);
+    }
+
+    public <T> long forEach(Class<T> beanClass, RowCallback<T> callback, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        RowMapper<T> rowMapper = getRowMapper(beanClass);
+        return forEach(rowMapper, callback, sql, parameters);
+    }
+
+    /**
+     * 流式查询，返回一个逐行读取的 Iterator，使用完毕之后必须调用 close().
+     */
+    public <T> ResultIterator<T> queryAsIterator(RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+        Validate.notNull(sql, "sql is null.");
+
+        boolean closeConnection = (transationHandler.get() == null);
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try {
+            conn = getReadConnection();
+            ps = PreparedStatementCreator.createStreamingPreparedStatement(conn, sql, dialect.getStreamingFetchSize(), parameters);
+            rs = ps.executeQuery();
+            return new ResultIterator<T>(conn, closeConnection, ps, rs, rowMapper);
+        } catch (SQLException e) {
+            DbUtils.closeQuietly(rs);
+            DbUtils.closeQuietly(ps);
+            closeConnection(conn);
+            throw new DbException(e).set("sql", sql).set("parameters", parameters);
+        }
+    }
+
+    public <T> ResultIterator<T> queryAsIterator(Class<T> beanClass, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        RowMapper<T> rowMapper = getRowMapper(beanClass);
+        return queryAsIterator(rowMapper, sql, parameters);
+    }
+
     public <T> T query(ResultSetHandler<T> rsh, String sql, Object... parameters) {
+        return doQuery(rsh, 0, sql, parameters);
+    }
+
+    /**
+     * @param fetchSize 0 表示普通查询，否则使用流式读取
+     */
+    private <T> T doQuery(ResultSetHandler<T> rsh, int fetchSize, String sql, Object... parameters) {
         Validate.notNull(rsh, "rsh is null.");
         Validate.notNull(sql, "sql is null.");
 
         Connection conn = null;
+        PreparedStatementCache cache = (fetchSize == 0) ? getStatementCache() : null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         T result = null;
 
         try {
-            conn = getConnection();
-            ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            conn = getReadConnection();
+            if (cache != null) {
+                ps = PreparedStatementCreator.createPreparedStatement(cache, sql, parameters);
+            } else if (fetchSize == 0) {
+                ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            } else {
+                ps = PreparedStatementCreator.createStreamingPreparedStatement(conn, sql, fetchSize, parameters);
+            }
             rs = ps.executeQuery();
             result = rsh.handle(rs);
         } catch (SQLException e) {
             throw new DbException(e).set("sql", sql).set("parameters", parameters);
         } finally {
             DbUtils.closeQuietly(rs);
-            DbUtils.closeQuietly(ps);
+            if (cache == null) {
+                DbUtils.closeQuietly(ps);
+            } else {
+                cache.release(ps);
+            }
             closeConnection(conn);
         }
 
@@ -224,18 +549,28 @@ public class DbHelper {
         Validate.notNull(sql, "sql is null.");
 
         Connection conn = null;
+        PreparedStatementCache cache = getStatementCache();
         PreparedStatement ps = null;
         int rows = 0;
 
         try {
             conn = getConnection();
-            ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            if (cache != null) {
+                ps = PreparedStatementCreator.createPreparedStatement(cache, sql, parameters);
+            } else {
+                ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            }
             rows = ps.executeUpdate();
         } catch (SQLException e) {
             throw new DbException(e).set("sql", sql).set("parameters", parameters);
         } finally {
-            DbUtils.closeQuietly(ps);
+            if (cache == null) {
+                DbUtils.closeQuietly(ps);
+            } else {
+                cache.release(ps);
+            }
             closeConnection(conn);
+            markWrite(sql);
         }
 
         return rows;
@@ -263,11 +598,19 @@ public class DbHelper {
         } finally {
             DbUtils.closeQuietly(ps);
             closeConnection(conn);
+            markWrite(sql);
         }
 
         return rows;
     }
 
+    /**
+     * 创建一个批量写入 (insert/upsert) 的 BatchWriter.
+     */
+    public BatchWriter createBatchWriter(String table, String... columns) {
+        return new BatchWriter(this, table, columns);
+    }
+
     public void execute(ConnectionCallback callback) {
         Connection conn = null;
         try {
@@ -277,6 +620,7 @@ public class DbHelper {
             throw new DbException(e);
         } finally {
             closeConnection(conn);
+            markWrite(null);
         }
     }
 
@@ -0,0 +1,351 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jetbrick.collections.CaseInsensitiveHashMap;
+import jetbrick.collections.ConcurrentLruCache;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.reflect.PropertyInfo;
+
+/**
+ * 查询结果的二级缓存 (按照 SQL + 参数缓存).
+ * <p>
+ * 每个缓存项记录所依赖的表 (tag) 在查询之前的版本号，表被修改之后版本号递增，原来的缓存项自动失效，
+ * 不需要遍历整个缓存. 缓存中保存的是结果的副本，每次命中也返回一个新的副本，调用者修改结果不会影响缓存.
+ *
+ * <pre><code>
+ * dbHelper.setQueryCache(new QueryCache(10000, 60 * 1000));
+ * List&lt;Dict&gt; list = dbHelper.cached("dict").queryAsList(Dict.class, "select * from dict where type=?", type);
+ * </code></pre>
+ *
+ * DbHelper 执行 insert/update/delete/merge 时会自动根据 SQL 中的表名清除缓存 (事务中的修改在事务结束时再清除一次)，
+ * 无法识别表名的 SQL 会清除全部缓存.
+ * <p>
+ * 读写分离时，表被修改之后的 {@link jetbrick.dao.orm.routing.ReplicaRouter#getStickyMillis()} 时间内，未命中的查询从主库读取，
+ * 避免把从库中的旧数据放入缓存 (只能感知当前进程中的修改).
+ */
+public final class QueryCache {
+    private static final Pattern WRITE_TABLE_PATTERN = Pattern.compile("^\\s*(?:insert\\s+(?:ignore\\s+)?into|replace\\s+into|merge\\s+into|update|delete\\s+from|delete|truncate\\s+table)\\s+([\\w\\.\\\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+    private static final String ALL_TABLES = "*";
+    private static final Object NULL = new Object();
+
+    private final ConcurrentLruCache<Key, Entry> cache;
+    private final long ttlMillis;
+    private final ConcurrentMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong globalVersion = new AtomicLong();
+    private final ConcurrentMap<String, Long> tableInvalidateTimes = new ConcurrentHashMap<String, Long>();
+    private volatile long globalInvalidateTime;
+    private final ConcurrentLruCache<String, String> writeTableCache = new ConcurrentLruCache<String, String>(512);
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity 最多缓存的查询个数
+     * @param ttlMillis 缓存的有效时间，0 表示不过期
+     */
+    public QueryCache(int capacity, long ttlMillis) {
+        this.cache = new ConcurrentLruCache<Key, Entry>(capacity);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 清除依赖这些表的缓存.
+     */
+    public void invalidate(String... tables) {
+        for (String table : tables) {
+            invalidateTable(table);
+        }
+    }
+
+    /**
+     * 清除全部缓存.
+     */
+    public void invalidateAll() {
+        globalInvalidateTime = System.currentTimeMillis();
+        globalVersion.incrementAndGet();
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * 返回缓存结果的副本，没有缓存或者已经失效返回 null. 缓存的 null 值返回 {@link #isNullValue} 为 true 的对象.
+     */
+    Object get(Key key) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (!entry.isValid(this)) {
+            cache.remove(key);
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.value == NULL ? NULL : copy(entry.value);
+    }
+
+    static boolean isNullValue(Object value) {
+        return value == NULL;
+    }
+
+    /**
+     * 在执行查询之前获取表的版本号，防止查询期间的修改被缓存.
+     *
+     * @param tables 小写的表名
+     */
+    long[] getVersions(String[] tables) {
+        long[] versions = new long[tables.length + 1];
+        versions[0] = globalVersion.get();
+        for (int i = 0; i < tables.length; i++) {
+            versions[i + 1] = getTableVersion(tables[i]).get();
+        }
+        return versions;
+    }
+
+    void put(Key key, Object value, String[] tables, long[] versions) {
+        long expireTime = (ttlMillis > 0) ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        cache.put(key, new Entry(value == null ? NULL : copy(value), tables, versions, expireTime));
+    }
+
+    /**
+     * 从 insert/update/delete 等 SQL 中找到被修改的表，无法识别返回 "*" (表示全部).
+     */
+    static String getWriteTable(String sql, ConcurrentLruCache<String, String> cache) {
+        String table = cache.get(sql);
+        if (table == null) {
+            Matcher matcher = WRITE_TABLE_PATTERN.matcher(sql);
+            if (matcher.find()) {
+                table = matcher.group(1);
+                int index = table.lastIndexOf('.');
+                if (index >= 0) {
+                    table = table.substring(index + 1);
+                }
+                table = table.replace("\"", "").replace("`", "").replace("[", "").replace("]", "");
+            } else {
+                table = ALL_TABLES;
+            }
+            cache.put(sql, table);
+        }
+        return table;
+    }
+
+    String getWriteTable(String sql) {
+        return (sql == null) ? ALL_TABLES : getWriteTable(sql, writeTableCache);
+    }
+
+    /**
+     * 根据 getWriteTable() 返回的表名清除缓存.
+     */
+    void invalidateTable(String table) {
+        if (ALL_TABLES.equals(table)) {
+            invalidateAll();
+        } else {
+            String name = table.toLowerCase();
+            tableInvalidateTimes.put(name, System.currentTimeMillis());
+            getTableVersion(name).incrementAndGet();
+        }
+    }
+
+    /**
+     * 这些表最近一次被清除缓存的时间 (读写分离时，这之后的一段时间内从库可能还是旧数据).
+     *
+     * @param tables 小写的表名
+     */
+    long getLastInvalidateTime(String[] tables) {
+        long time = globalInvalidateTime;
+        for (String table : tables) {
+            Long value = tableInvalidateTimes.get(table);
+            if (value != null && value.longValue() > time) {
+                time = value.longValue();
+            }
+        }
+        return time;
+    }
+
+    private AtomicLong getTableVersion(String name) {
+        AtomicLong version = tableVersions.get(name);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong old = tableVersions.putIfAbsent(name, version);
+            if (old != null) {
+                version = old;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 复制查询结果: 不可变对象直接返回，集合、数组、Date 和 JavaBean 复制一份.
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof Double || value instanceof Float || value instanceof BigDecimal || value instanceof BigInteger) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof Object[]) {
+            Object[] array = ((Object[]) value).clone();
+            for (int i = 0; i < array.length; i++) {
+                array[i] = copy(array[i]);
+            }
+            return array;
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> result = new ArrayList<Object>(list.size());
+            for (Object item : list) {
+                result.add(copy(item));
+            }
+            return result;
+        }
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            Map<String, Object> result;
+            if (map instanceof CaseInsensitiveHashMap) {
+                result = new CaseInsensitiveHashMap<Object>(map.size());
+            } else {
+                result = new LinkedHashMap<String, Object>(map.size());
+            }
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                result.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return result;
+        }
+        if (value.getClass().getName().startsWith("java.")) {
+            // 其他的 JDK 类型 (UUID, Blob 等) 不复制
+            return value;
+        }
+        if (value.getClass().isArray()) {
+            // 基本类型的数组
+            int length = java.lang.reflect.Array.getLength(value);
+            Object array = java.lang.reflect.Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, array, 0, length);
+            return array;
+        }
+
+        // JavaBean
+        KlassInfo klass = KlassInfo.create(value.getClass());
+        Object bean = klass.newInstance();
+        for (PropertyInfo prop : klass.getProperties()) {
+            if (prop.readable() && prop.writable()) {
+                prop.set(bean, copy(prop.get(value)));
+            }
+        }
+        return bean;
+    }
+
+    static final class Key {
+        private final Object type;
+        private final String sql;
+        private final Object[] parameters;
+        private final int hash;
+
+        Key(Object type, String sql, Object[] parameters) {
+            this.type = type;
+            this.sql = sql;
+            this.parameters = (parameters == null) ? null : parameters.clone();
+            this.hash = (type.hashCode() * 31 + sql.hashCode()) * 31 + Arrays.deepHashCode(this.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && type.equals(other.type) && sql.equals(other.sql) && Arrays.deepEquals(parameters, other.parameters);
+        }
+    }
+
+    static final class Entry {
+        final Object value;
+        final String[] tables;
+        final long[] versions;
+        final long expireTime;
+
+        Entry(Object value, String[] tables, long[] versions, long expireTime) {
+            this.value = value;
+            this.tables = tables;
+            this.versions = versions;
+            this.expireTime = expireTime;
+        }
+
+        boolean isValid(QueryCache cache) {
+            if (expireTime < System.currentTimeMillis()) {
+                return false;
+            }
+            if (versions[0] != cache.globalVersion.get()) {
+                return false;
+            }
+            for (int i = 0; i < tables.length; i++) {
+                if (versions[i + 1] != cache.getTableVersion(tables[i]).get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
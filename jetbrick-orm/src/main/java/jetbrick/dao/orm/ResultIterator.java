@@ -0,0 +1,103 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import jetbrick.dao.DbException;
+import jetbrick.dao.orm.utils.DbUtils;
+
+/**
+ * 流式查询的结果，每次只读取一行数据.
+ * <p>
+ * 读取完最后一行之后会自动关闭，提前结束的话必须调用 {@link #close()} 释放 ResultSet 和 Connection.
+ */
+public final class ResultIterator<T> implements Iterator<T>, Closeable {
+    private final Connection conn;
+    private final boolean closeConnection; // 不在事务中的连接需要关闭
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final RowMapper<T> rowMapper;
+    private Boolean hasNext; // null 表示还没有调用 rs.next()
+    private boolean closed;
+
+    ResultIterator(Connection conn, boolean closeConnection, PreparedStatement ps, ResultSet rs, RowMapper<T> rowMapper) {
+        this.conn = conn;
+        this.closeConnection = closeConnection;
+        this.ps = ps;
+        this.rs = rs;
+        this.rowMapper = rowMapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (hasNext == null) {
+            try {
+                hasNext = rs.next();
+            } catch (SQLException e) {
+                close();
+                throw new DbException(e);
+            }
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNext = null;
+        try {
+            return rowMapper.handle(rs);
+        } catch (SQLException e) {
+            close();
+            throw new DbException(e);
+        } catch (RuntimeException e) {
+            close(); // RowMapper 出错的时候也要释放资源
+            throw e;
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        DbUtils.closeQuietly(rs);
+        DbUtils.closeQuietly(ps);
+        if (closeConnection) {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+}
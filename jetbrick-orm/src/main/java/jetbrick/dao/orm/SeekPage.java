@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+import jetbrick.lang.JSONUtils;
+
+/**
+ * keyset (seek) 分页的结果，使用上一页最后一行的排序字段值定位下一页.
+ */
+public final class SeekPage<T> {
+    /**
+     * 不计算总记录数
+     */
+    public static final int COUNT_NONE = 0;
+    /**
+     * 使用 select count(*) 计算总记录数
+     */
+    public static final int COUNT_EXACT = 1;
+    /**
+     * 使用数据库的执行计划估算总记录数 (比如 MySQL 的 explain)，不支持的数据库返回 -1
+     */
+    public static final int COUNT_ESTIMATE = 2;
+
+    private final int pageSize;
+    private List<T> items;
+    private Object[] lastKey;
+    private boolean hasNext;
+    private long totalCount = -1;
+
+    public SeekPage(int pageSize) {
+        this.pageSize = pageSize;
+        this.items = Collections.emptyList();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * 当前页记录
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    /**
+     * 当前页最后一行的排序字段值，用于查询下一页. 如果当前页为空，返回 null.
+     */
+    public Object[] getLastKey() {
+        return lastKey;
+    }
+
+    public void setLastKey(Object[] lastKey) {
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * 是否还有下一页
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * 总记录数 (精确或者估算)，-1 表示没有计算
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public String toJSONString() {
+        Map<String, Object> json = new HashMap<String, Object>();
+        json.put("pageSize", pageSize);
+        json.put("items", items);
+        json.put("lastKey", lastKey);
+        json.put("hasNext", hasNext);
+        json.put("totalCount", totalCount);
+        return JSONUtils.toJSONString(json);
+    }
+
+    @Override
+    public String toString() {
+        return toJSONString();
+    }
+}
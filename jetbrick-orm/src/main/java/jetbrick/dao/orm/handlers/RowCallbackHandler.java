@@ -0,0 +1,47 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.handlers;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import jetbrick.dao.orm.*;
+
+/**
+ * 逐行调用 RowCallback，不保存任何数据，返回处理的行数.
+ */
+public class RowCallbackHandler<T> implements ResultSetHandler<Long> {
+
+    private RowMapper<T> mapper;
+    private RowCallback<T> callback;
+
+    public RowCallbackHandler(RowMapper<T> mapper, RowCallback<T> callback) {
+        this.mapper = mapper;
+        this.callback = callback;
+    }
+
+    @Override
+    public Long handle(ResultSet rs) throws SQLException {
+        long rows = 0;
+        while (rs.next()) {
+            callback.execute(mapper.handle(rs));
+            rows++;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.handlers;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import jetbrick.dao.orm.*;
+import jetbrick.dao.orm.utils.DbUtils;
+
+/**
+ * keyset (seek) 分页，最多读取 pageSize + 1 行，多出来的一行用于判断是否还有下一页.
+ */
+public class SeekPageHandler<T> implements ResultSetHandler<SeekPage<T>> {
+
+    private RowMapper<T> mapper;
+    private String[] keyColumns;
+    private int pageSize;
+
+    public SeekPageHandler(RowMapper<T> mapper, String[] keyColumns, int pageSize) {
+        this.mapper = mapper;
+        this.keyColumns = new String[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            this.keyColumns[i] = DbUtils.get_sql_column_label(keyColumns[i]);
+        }
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public SeekPage<T> handle(ResultSet rs) throws SQLException {
+        SeekPage<T> page = new SeekPage<T>(pageSize);
+        List<T> rows = new ArrayList<T>(pageSize);
+        Object[] key = new Object[keyColumns.length];
+        while (rs.next()) {
+            if (rows.size() >= pageSize) {
+                page.setHasNext(true);
+                break;
+            }
+            rows.add(mapper.handle(rs));
+            for (int i = 0; i < key.length; i++) {
+                key[i] = rs.getObject(keyColumns[i]);
+            }
+        }
+        if (!rows.isEmpty()) {
+            page.setLastKey(key);
+        }
+        page.setItems(rows);
+        return page;
+    }
+}
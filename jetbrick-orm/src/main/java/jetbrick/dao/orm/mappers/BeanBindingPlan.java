@@ -0,0 +1,410 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Arrays;
+import jetbrick.collections.ConcurrentLruCache;
+import jetbrick.lang.IdentifiedNameUtils;
+import jetbrick.reflect.*;
+import jetbrick.typecast.Convertor;
+import jetbrick.typecast.TypeCastUtils;
+
+/**
+ * 预先编译的 column -> property 绑定计划.
+ * <p>
+ * 对于同一个 Bean 和同一组 column label/type，只解析一次：查找 setter，确定使用 rs.getInt()/getLong()/getString() 等哪一个方法读取，
+ * 以及需要使用的 Convertor，然后生成一个 {@link RowBinder} 直接调用 setter (无法生成的时候使用反射)，
+ * 每一行数据不再需要访问 ResultSetMetaData，也不需要对基本类型进行装箱.
+ * <p>
+ * 只有 column 的 SQL 类型和 property 的类型完全对应的时候 (比如 INTEGER -> int)，才直接调用 rs.getInt() 等方法，
+ * 其他情况 (比如 CHAR 'Y'/'N' -> boolean) 和原来一样，使用 rs.getObject() + TypeCastUtils 转换.
+ * 和原来一样，NULL 不能赋值给基本类型的 property (抛出 SQLException).
+ */
+public final class BeanBindingPlan {
+    private static final ConcurrentLruCache<Key, BeanBindingPlan> cache = new ConcurrentLruCache<Key, BeanBindingPlan>(512);
+
+    private final KlassInfo klass;
+    private final RowBinder binder;
+
+    private BeanBindingPlan(KlassInfo klass, RowBinder binder) {
+        this.klass = klass;
+        this.binder = binder;
+    }
+
+    /**
+     * 获取 ResultSet 对应的绑定计划，每个 ResultSet 只需要调用一次.
+     */
+    public static BeanBindingPlan lookup(KlassInfo klass, ResultSetMetaData rsmd) throws SQLException {
+        int cols = rsmd.getColumnCount();
+        String[] labels = new String[cols];
+        int[] sqlTypes = new int[cols];
+        for (int i = 1; i <= cols; i++) {
+            String columnName = rsmd.getColumnLabel(i);
+            if (columnName == null || columnName.length() == 0) {
+                columnName = rsmd.getColumnName(i);
+            }
+            labels[i - 1] = columnName;
+            sqlTypes[i - 1] = rsmd.getColumnType(i);
+        }
+
+        Key key = new Key(klass.getType(), labels, sqlTypes);
+        BeanBindingPlan plan = cache.get(key);
+        if (plan == null) {
+            plan = create(klass, labels, sqlTypes);
+            cache.put(key, plan);
+        }
+        return plan;
+    }
+
+    private static BeanBindingPlan create(KlassInfo klass, String[] labels, int[] sqlTypes) throws SQLException {
+        Column[] columns = new Column[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            String propertyName = IdentifiedNameUtils.toCamelCase(labels[i]);
+            PropertyInfo property = klass.getProperty(propertyName);
+            if (property == null || !property.writable()) {
+                throw new SQLException("Can't find writable property '" + propertyName + "' for column '" + labels[i] + "' in " + klass.getName());
+            }
+            columns[i] = new Column(i + 1, property.getSetter(), sqlTypes[i]);
+        }
+
+        RowBinder binder = RowBinderBuilder.create(klass.getType(), columns);
+        if (binder == null) {
+            binder = new ReflectionRowBinder(columns);
+        }
+        return new BeanBindingPlan(klass, binder);
+    }
+
+    public Object handle(ResultSet rs) throws SQLException {
+        try {
+            Object bean = klass.newInstance();
+            binder.bind(bean, rs);
+            return bean;
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Can't set bean property.", e);
+        }
+    }
+
+    public RowBinder getBinder() {
+        return binder;
+    }
+
+    // 清空所有缓存的绑定计划 (比如 Bean 的定义发生了变化)
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    //----- 供生成的 RowBinder 调用，基本类型不能为 null，包装类型需要判断 null -------------------------
+    public static int getIntNotNull(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        if (value == 0 && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    public static long getLongNotNull(ResultSet rs, int index) throws SQLException {
+        long value = rs.getLong(index);
+        if (value == 0 && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    public static short getShortNotNull(ResultSet rs, int index) throws SQLException {
+        short value = rs.getShort(index);
+        if (value == 0 && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    public static byte getByteNotNull(ResultSet rs, int index) throws SQLException {
+        byte value = rs.getByte(index);
+        if (value == 0 && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    public static double getDoubleNotNull(ResultSet rs, int index) throws SQLException {
+        double value = rs.getDouble(index);
+        if (value == 0 && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    public static float getFloatNotNull(ResultSet rs, int index) throws SQLException {
+        float value = rs.getFloat(index);
+        if (value == 0 && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    public static boolean getBooleanNotNull(ResultSet rs, int index) throws SQLException {
+        boolean value = rs.getBoolean(index);
+        if (!value && rs.wasNull()) {
+            throw nullToPrimitive(rs, index);
+        }
+        return value;
+    }
+
+    private static SQLException nullToPrimitive(ResultSet rs, int index) throws SQLException {
+        String label = rs.getMetaData().getColumnLabel(index);
+        return new SQLException("Can't set bean property: column '" + label + "' is NULL, but the property is primitive.");
+    }
+
+    public static Integer getIntegerOrNull(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        return (value == 0 && rs.wasNull()) ? null : Integer.valueOf(value);
+    }
+
+    public static Long getLongOrNull(ResultSet rs, int index) throws SQLException {
+        long value = rs.getLong(index);
+        return (value == 0 && rs.wasNull()) ? null : Long.valueOf(value);
+    }
+
+    public static Short getShortOrNull(ResultSet rs, int index) throws SQLException {
+        short value = rs.getShort(index);
+        return (value == 0 && rs.wasNull()) ? null : Short.valueOf(value);
+    }
+
+    public static Byte getByteOrNull(ResultSet rs, int index) throws SQLException {
+        byte value = rs.getByte(index);
+        return (value == 0 && rs.wasNull()) ? null : Byte.valueOf(value);
+    }
+
+    public static Double getDoubleOrNull(ResultSet rs, int index) throws SQLException {
+        double value = rs.getDouble(index);
+        return (value == 0 && rs.wasNull()) ? null : Double.valueOf(value);
+    }
+
+    public static Float getFloatOrNull(ResultSet rs, int index) throws SQLException {
+        float value = rs.getFloat(index);
+        return (value == 0 && rs.wasNull()) ? null : Float.valueOf(value);
+    }
+
+    public static Boolean getBooleanOrNull(ResultSet rs, int index) throws SQLException {
+        boolean value = rs.getBoolean(index);
+        return (!value && rs.wasNull()) ? null : Boolean.valueOf(value);
+    }
+
+    /**
+     * 一个 column 的绑定信息.
+     */
+    public static final class Column {
+        // 读取方式
+        static final int KIND_OBJECT = 0; // rs.getObject() + Convertor
+        static final int KIND_RESULTSET = 1; // 直接调用 ResultSet 的方法
+        static final int KIND_STATIC = 2; // 调用 BeanBindingPlan 的 getXXXNotNull()/getXXXOrNull()
+
+        final int index;
+        final MethodInfo setter;
+        final Class<?> type;
+        final int kind;
+        final String methodName; // KIND_RESULTSET/KIND_STATIC 使用的方法
+        private final Convertor<?> convertor;
+
+        Column(int index, MethodInfo setter, int sqlType) {
+            this.index = index;
+            this.setter = setter;
+            this.type = setter.getParameterTypes()[0];
+            this.convertor = TypeCastUtils.lookup(type);
+
+            String name = null;
+            if (isExactType(sqlType, type)) {
+                name = getResultSetMethodName(type);
+            }
+            if (name != null) {
+                this.kind = KIND_RESULTSET;
+                this.methodName = name;
+            } else if (isExactType(sqlType, type) && (name = getStaticMethodName(type)) != null) {
+                this.kind = KIND_STATIC;
+                this.methodName = name;
+            } else {
+                this.kind = KIND_OBJECT;
+                this.methodName = null;
+            }
+        }
+
+        // 读取当前行的值 (反射方式使用)
+        Object read(ResultSet rs) throws SQLException {
+            if (kind == KIND_OBJECT) {
+                Object value = convert(rs.getObject(index));
+                if (value == null && type.isPrimitive()) {
+                    throw nullToPrimitive(rs, index);
+                }
+                return value;
+            }
+            Class<?> t = type;
+            if (t == String.class) return rs.getString(index);
+            if (t == Integer.TYPE) return getIntNotNull(rs, index);
+            if (t == Long.TYPE) return getLongNotNull(rs, index);
+            if (t == Short.TYPE) return getShortNotNull(rs, index);
+            if (t == Byte.TYPE) return getByteNotNull(rs, index);
+            if (t == Double.TYPE) return getDoubleNotNull(rs, index);
+            if (t == Float.TYPE) return getFloatNotNull(rs, index);
+            if (t == Boolean.TYPE) return getBooleanNotNull(rs, index);
+            if (t == BigDecimal.class) return rs.getBigDecimal(index);
+            if (t == Timestamp.class || t == java.util.Date.class) return rs.getTimestamp(index);
+            if (t == Date.class) return rs.getDate(index);
+            if (t == Time.class) return rs.getTime(index);
+            if (t == byte[].class) return rs.getBytes(index);
+            if (t == Integer.class) return getIntegerOrNull(rs, index);
+            if (t == Long.class) return getLongOrNull(rs, index);
+            if (t == Short.class) return getShortOrNull(rs, index);
+            if (t == Byte.class) return getByteOrNull(rs, index);
+            if (t == Double.class) return getDoubleOrNull(rs, index);
+            if (t == Float.class) return getFloatOrNull(rs, index);
+            return getBooleanOrNull(rs, index);
+        }
+
+        /**
+         * 转换成 setter 需要的类型 (供生成的 RowBinder 调用).
+         */
+        public Object convert(Object value) {
+            if (value == null || type.isInstance(value)) {
+                return value;
+            }
+            if (convertor != null) {
+                return convertor.convert(value);
+            }
+            return TypeCastUtils.convert(value, type);
+        }
+
+        /**
+         * SQL 类型和 Java 类型是否完全对应，这个时候 rs.getXXX() 和 getObject() + TypeCastUtils 的结果相同.
+         */
+        static boolean isExactType(int sqlType, Class<?> type) {
+            switch (sqlType) {
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return type == Integer.TYPE || type == Long.TYPE || type == Short.TYPE || type == Byte.TYPE || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return type == Double.TYPE || type == Float.TYPE || type == Double.class || type == Float.class;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return type == BigDecimal.class;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return type == Boolean.TYPE || type == Boolean.class;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return type == String.class;
+            case Types.TIMESTAMP:
+                return type == Timestamp.class || type == java.util.Date.class;
+            case Types.DATE:
+                return type == Date.class;
+            case Types.TIME:
+                return type == Time.class;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return type == byte[].class;
+            default:
+                return false;
+            }
+        }
+
+        static String getResultSetMethodName(Class<?> type) {
+            if (type == String.class) return "getString";
+            if (type == BigDecimal.class) return "getBigDecimal";
+            if (type == Timestamp.class || type == java.util.Date.class) return "getTimestamp";
+            if (type == Date.class) return "getDate";
+            if (type == Time.class) return "getTime";
+            if (type == byte[].class) return "getBytes";
+            return null;
+        }
+
+        static String getStaticMethodName(Class<?> type) {
+            if (type == Integer.TYPE) return "getIntNotNull";
+            if (type == Long.TYPE) return "getLongNotNull";
+            if (type == Short.TYPE) return "getShortNotNull";
+            if (type == Byte.TYPE) return "getByteNotNull";
+            if (type == Double.TYPE) return "getDoubleNotNull";
+            if (type == Float.TYPE) return "getFloatNotNull";
+            if (type == Boolean.TYPE) return "getBooleanNotNull";
+            if (type == Integer.class) return "getIntegerOrNull";
+            if (type == Long.class) return "getLongOrNull";
+            if (type == Short.class) return "getShortOrNull";
+            if (type == Byte.class) return "getByteOrNull";
+            if (type == Double.class) return "getDoubleOrNull";
+            if (type == Float.class) return "getFloatOrNull";
+            if (type == Boolean.class) return "getBooleanOrNull";
+            return null;
+        }
+    }
+
+    // 无法生成 RowBinder 的时候 (比如 Bean 不是 public 的)，使用反射
+    static final class ReflectionRowBinder implements RowBinder {
+        private final Column[] columns;
+
+        ReflectionRowBinder(Column[] columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public void bind(Object bean, ResultSet rs) throws SQLException {
+            for (Column column : columns) {
+                column.setter.invoke(bean, column.read(rs));
+            }
+        }
+    }
+
+    static final class Key {
+        private final Class<?> type;
+        private final String[] labels;
+        private final int[] sqlTypes;
+        private final int hash;
+
+        Key(Class<?> type, String[] labels, int[] sqlTypes) {
+            this.type = type;
+            this.labels = labels;
+            this.sqlTypes = sqlTypes;
+            this.hash = (type.hashCode() * 31 + Arrays.hashCode(labels)) * 31 + Arrays.hashCode(sqlTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return type == other.type && Arrays.equals(labels, other.labels) && Arrays.equals(sqlTypes, other.sqlTypes);
+        }
+    }
+}
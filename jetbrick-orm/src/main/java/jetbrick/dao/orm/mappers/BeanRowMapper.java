@@ -18,46 +18,43 @@
  */
 package jetbrick.dao.orm.mappers;
 
-import java.sql.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import jetbrick.dao.orm.RowMapper;
-import jetbrick.lang.IdentifiedNameUtils;
 import jetbrick.reflect.KlassInfo;
-import jetbrick.reflect.PropertyInfo;
-import jetbrick.typecast.TypeCastUtils;
 
+/**
+ * 将 ResultSet 的每一行转换成 bean.
+ * <p>
+ * column 和 property 的对应关系使用 {@link BeanBindingPlan} 对每个 ResultSet 只解析一次，每一行数据直接调用生成好的 {@link RowBinder}.
+ */
 public class BeanRowMapper<T> implements RowMapper<T> {
-    private KlassInfo klass;
+    private final KlassInfo klass;
+    private volatile Binding binding;
 
     public BeanRowMapper(Class<T> beanClass) {
         this.klass = KlassInfo.create(beanClass);
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public T handle(ResultSet rs) throws SQLException {
-        try {
-            @SuppressWarnings("unchecked")
-            T bean = (T) klass.newInstance();
-
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int cols = rsmd.getColumnCount();
-            for (int i = 1; i <= cols; i++) {
-                String columnName = rsmd.getColumnLabel(i);
-                if (columnName == null || columnName.length() == 0) {
-                    columnName = rsmd.getColumnName(i);
-                }
-
-                String propertyName = IdentifiedNameUtils.toCamelCase(columnName);
-                Object value = rs.getObject(i);
+        Binding b = binding;
+        if (b == null || b.rs != rs) {
+            b = new Binding(rs, BeanBindingPlan.lookup(klass, rs.getMetaData()));
+            binding = b;
+        }
+        return (T) b.plan.handle(rs);
+    }
 
-                PropertyInfo property = klass.getProperty(propertyName);
-                value = TypeCastUtils.convert(value, property.getType());
-                property.set(bean, value);
-            }
-            return bean;
+    // 当前 ResultSet 使用的绑定计划
+    static final class Binding {
+        final ResultSet rs;
+        final BeanBindingPlan plan;
 
-        } catch (Exception e) {
-            throw new SQLException("Can't set bean property.", e);
+        Binding(ResultSet rs, BeanBindingPlan plan) {
+            this.rs = rs;
+            this.plan = plan;
         }
     }
-
 }
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 将 ResultSet 的当前行绑定到 bean 中，由 {@link BeanBindingPlan} 针对每一种 ResultSet 结构生成.
+ */
+public interface RowBinder {
+
+    public void bind(Object bean, ResultSet rs) throws SQLException;
+
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import static jetbrick.asm.Opcodes.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.asm.MethodVisitor;
+import jetbrick.asm.Type;
+import jetbrick.dao.orm.mappers.BeanBindingPlan.Column;
+import jetbrick.reflect.asm.ASMBuilder;
+import jetbrick.reflect.asm.ASMFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 为每个 Bean + ResultSet 结构生成一个 {@link RowBinder} 的实现类，相当于：
+ *
+ * <pre>
+ * public void bind(Object bean, ResultSet rs) {
+ *     User user = (User) bean;
+ *     user.setId(BeanBindingPlan.getIntNotNull(rs, 1));
+ *     user.setName(rs.getString(2));
+ *     user.setAge(BeanBindingPlan.getIntegerOrNull(rs, 3));
+ *     user.setStatus((Status) c3.convert(rs.getObject(4)));
+ * }
+ * </pre>
+ *
+ * 生成的类只和 Bean 以及每个 column 的 setter/读取方式有关 (和 column label 无关)，
+ * 所以按照 signature 缓存生成的类，并且永远不会清除 (BeanBindingPlan 的 LRU 缓存淘汰之后，不会重复生成新的类).
+ */
+final class RowBinderBuilder {
+    private static final Logger log = LoggerFactory.getLogger(RowBinderBuilder.class);
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final String RESULTSET_NAME = Type.getInternalName(ResultSet.class);
+    private static final String RESULTSET_DESC = Type.getDescriptor(ResultSet.class);
+    private static final String PLAN_NAME = Type.getInternalName(BeanBindingPlan.class);
+    private static final String COLUMN_NAME = Type.getInternalName(Column.class);
+    private static final Class<?> FAILED = Void.class; // 无法生成的时候缓存这个标记，避免重复生成
+    private static final ConcurrentHashMap<KlassKey, Class<?>> klasses = new ConcurrentHashMap<KlassKey, Class<?>>();
+
+    /**
+     * 生成 RowBinder，如果无法生成 (比如 Bean 或者 setter 不是 public 的)，那么返回 null.
+     */
+    public static RowBinder create(Class<?> beanClass, Column[] columns) {
+        if (!Modifier.isPublic(beanClass.getModifiers())) {
+            return null;
+        }
+        for (Column column : columns) {
+            if (!Modifier.isPublic(column.setter.getMethod().getModifiers())) {
+                return null;
+            }
+        }
+
+        KlassKey key = new KlassKey(beanClass, getSignature(columns));
+        Class<?> generatedKlass = klasses.get(key);
+        if (generatedKlass == null) {
+            synchronized (klasses) {
+                generatedKlass = klasses.get(key);
+                if (generatedKlass == null) {
+                    generatedKlass = defineClass(beanClass, columns);
+                    klasses.put(key, generatedKlass);
+                }
+            }
+        }
+        if (generatedKlass == FAILED) {
+            return null;
+        }
+
+        try {
+            return (RowBinder) generatedKlass.getConstructors()[0].newInstance((Object[]) columns);
+        } catch (Exception e) {
+            log.warn("Cannot create RowBinder for " + beanClass.getName() + ", use reflection instead.", e);
+            return null;
+        }
+    }
+
+    private static Class<?> defineClass(Class<?> beanClass, Column[] columns) {
+        String generatedKlassName = RowBinder.class.getPackage().getName() + ".delegate." + beanClass.getName().replace('.', '_') + "_" + SEQUENCE.incrementAndGet();
+        try {
+            byte[] byteCode = build(generatedKlassName, beanClass, columns);
+            return ASMFactory.defineClass(beanClass, generatedKlassName, byteCode);
+        } catch (LinkageError e) {
+            // 字节码校验失败，或者 setter 引用的类在 ClassLoader 中不可见
+            log.warn("Cannot define RowBinder for " + beanClass.getName() + ", use reflection instead.", e);
+            return FAILED;
+        } catch (RuntimeException e) {
+            log.warn("Cannot generate RowBinder for " + beanClass.getName() + ", use reflection instead.", e);
+            return FAILED;
+        }
+    }
+
+    // 生成的代码只和每个 column 的 setter 和读取方式有关 (column 的位置就是数组的下标)
+    private static String getSignature(Column[] columns) {
+        StringBuilder sb = new StringBuilder(128);
+        for (Column column : columns) {
+            Method setter = column.setter.getMethod();
+            sb.append('\n').append(setter.getName()).append(Type.getMethodDescriptor(setter));
+            sb.append(':').append(column.kind).append(':').append(column.methodName);
+        }
+        return sb.toString();
+    }
+
+    // 已经生成的类的个数
+    static int getGeneratedCount() {
+        return klasses.size();
+    }
+
+    private static byte[] build(String generatedKlassName, Class<?> beanClass, Column[] columns) {
+        ASMBuilder builder = new ASMBuilder(generatedKlassName, beanClass.getName(), RowBinder.class);
+        String generatedKlassNameInternal = builder.getGeneratedKlassNameInternal();
+        String delegateKlassNameInternal = builder.getDelegateKlassNameInternal();
+
+        // public <init>(Column c0, Column c1, ...)
+        String[] fieldNames = new String[columns.length];
+        Class<?>[] fieldTypes = new Class<?>[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fieldNames[i] = "c" + i;
+            fieldTypes[i] = Column.class;
+        }
+        builder.insertConstructor(fieldNames, fieldTypes);
+
+        // public void bind(Object bean, ResultSet rs)
+        MethodVisitor mv = builder.getClassWriter().visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "bind", "(Ljava/lang/Object;" + RESULTSET_DESC + ")V", null, new String[] { "java/sql/SQLException" });
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, delegateKlassNameInternal);
+        mv.visitVarInsn(ASTORE, 3);
+
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            Type type = Type.getType(column.type);
+
+            mv.visitVarInsn(ALOAD, 3);
+            switch (column.kind) {
+            case Column.KIND_RESULTSET:
+                mv.visitVarInsn(ALOAD, 2);
+                insertInt(mv, column.index);
+                mv.visitMethodInsn(INVOKEINTERFACE, RESULTSET_NAME, column.methodName, "(I)" + getResultSetReturnDesc(column.type), true);
+                break;
+            case Column.KIND_STATIC:
+                mv.visitVarInsn(ALOAD, 2);
+                insertInt(mv, column.index);
+                mv.visitMethodInsn(INVOKESTATIC, PLAN_NAME, column.methodName, "(" + RESULTSET_DESC + "I)" + type.getDescriptor(), false);
+                break;
+            default:
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, generatedKlassNameInternal, fieldNames[i], "L" + COLUMN_NAME + ";");
+                mv.visitVarInsn(ALOAD, 2);
+                insertInt(mv, column.index);
+                mv.visitMethodInsn(INVOKEINTERFACE, RESULTSET_NAME, "getObject", "(I)Ljava/lang/Object;", true);
+                mv.visitMethodInsn(INVOKEVIRTUAL, COLUMN_NAME, "convert", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                ASMBuilder.insertUnbox(mv, type);
+                break;
+            }
+
+            Method setter = column.setter.getMethod();
+            mv.visitMethodInsn(INVOKEVIRTUAL, delegateKlassNameInternal, setter.getName(), Type.getMethodDescriptor(setter), false);
+            Class<?> returnType = setter.getReturnType();
+            if (returnType != Void.TYPE) {
+                // 链式 setter
+                mv.visitInsn(returnType == Long.TYPE || returnType == Double.TYPE ? POP2 : POP);
+            }
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        return builder.asByteCode();
+    }
+
+    // java.util.Date 使用 getTimestamp() 读取
+    private static String getResultSetReturnDesc(Class<?> type) {
+        if (type == java.util.Date.class) {
+            return "Ljava/sql/Timestamp;";
+        }
+        return Type.getDescriptor(type);
+    }
+
+    private static void insertInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(Integer.valueOf(value));
+        }
+    }
+
+    static final class KlassKey {
+        private final Class<?> beanClass;
+        private final String signature;
+
+        KlassKey(Class<?> beanClass, String signature) {
+            this.beanClass = beanClass;
+            this.signature = signature;
+        }
+
+        @Override
+        public int hashCode() {
+            return beanClass.hashCode() * 31 + signature.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof KlassKey)) {
+                return false;
+            }
+            KlassKey other = (KlassKey) obj;
+            return beanClass == other.beanClass && signature.equals(other.signature);
+        }
+    }
+}
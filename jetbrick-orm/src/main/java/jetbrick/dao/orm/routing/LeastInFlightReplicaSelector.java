@@ -0,0 +1,46 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.routing;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 选择当前正在使用的连接数最少的从库，连接数相同时轮询.
+ */
+public final class LeastInFlightReplicaSelector implements ReplicaSelector {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+        int size = replicas.size();
+        int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+        ReplicaDataSource best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ReplicaDataSource replica = replicas.get((offset + i) % size);
+            int inFlight = replica.getInFlight();
+            if (inFlight < bestInFlight) {
+                best = replica;
+                bestInFlight = inFlight;
+            }
+        }
+        return best;
+    }
+}
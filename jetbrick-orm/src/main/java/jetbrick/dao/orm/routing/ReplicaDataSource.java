@@ -0,0 +1,91 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import jetbrick.dao.orm.utils.ConnectionWrapper;
+
+/**
+ * 一个从库，记录当前正在使用的连接数.
+ */
+public final class ReplicaDataSource {
+    private final DataSource dataSource;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean available = true;
+
+    public ReplicaDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * 当前已经获取但是还没有 close 的连接数.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * 设置为不可用之后不再分配新的读请求 (比如从库复制延迟过大或者宕机).
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public Connection getConnection() throws SQLException {
+        inFlight.incrementAndGet();
+        try {
+            return new ReplicaConnection(dataSource.getConnection());
+        } catch (SQLException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    // close 时减少 inFlight 计数
+    final class ReplicaConnection extends ConnectionWrapper {
+        private boolean closed;
+
+        ReplicaConnection(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                inFlight.decrementAndGet();
+            }
+            conn.close();
+        }
+    }
+}
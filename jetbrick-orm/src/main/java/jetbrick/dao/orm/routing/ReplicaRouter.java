@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.routing;
+
+import java.util.*;
+import javax.sql.DataSource;
+import jetbrick.lang.Validate;
+
+/**
+ * 读写分离的路由规则.
+ * <p>
+ * 读请求分配到可用的从库; 当前线程写入之后的 stickyMillis 时间内 (一般设置为从库的最大复制延迟)，
+ * 读请求继续使用主库，保证能读到自己刚写入的数据.
+ */
+public final class ReplicaRouter {
+    private final List<ReplicaDataSource> replicas;
+    private final ThreadLocal<long[]> lastWriteTime = new ThreadLocal<long[]>();
+    private volatile ReplicaSelector selector = new RoundRobinReplicaSelector();
+    private volatile long stickyMillis = 1000;
+
+    public ReplicaRouter(List<DataSource> replicas) {
+        Validate.notEmpty(replicas, "replicas is empty.");
+
+        List<ReplicaDataSource> list = new ArrayList<ReplicaDataSource>(replicas.size());
+        for (DataSource ds : replicas) {
+            list.add(new ReplicaDataSource(ds));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+    }
+
+    public List<ReplicaDataSource> getReplicas() {
+        return replicas;
+    }
+
+    public ReplicaSelector getSelector() {
+        return selector;
+    }
+
+    public void setSelector(ReplicaSelector selector) {
+        Validate.notNull(selector, "selector is null.");
+        this.selector = selector;
+    }
+
+    public long getStickyMillis() {
+        return stickyMillis;
+    }
+
+    /**
+     * 写入之后继续读主库的时间，0 表示不需要.
+     */
+    public void setStickyMillis(long stickyMillis) {
+        this.stickyMillis = stickyMillis;
+    }
+
+    /**
+     * 记录当前线程的写操作.
+     */
+    public void markWrite() {
+        long[] time = lastWriteTime.get();
+        if (time == null) {
+            time = new long[1];
+            lastWriteTime.set(time);
+        }
+        time[0] = System.currentTimeMillis();
+    }
+
+    /**
+     * 当前线程是否需要继续读主库.
+     */
+    public boolean isSticky() {
+        long[] time = lastWriteTime.get();
+        if (time == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - time[0] < stickyMillis) {
+            return true;
+        }
+        lastWriteTime.remove();
+        return false;
+    }
+
+    /**
+     * 选择一个可用的从库，没有可用的从库返回 null.
+     */
+    public ReplicaDataSource select() {
+        List<ReplicaDataSource> candidates = replicas;
+        for (ReplicaDataSource replica : replicas) {
+            if (!replica.isAvailable()) {
+                candidates = new ArrayList<ReplicaDataSource>(replicas.size());
+                for (ReplicaDataSource r : replicas) {
+                    if (r.isAvailable()) {
+                        candidates.add(r);
+                    }
+                }
+                break;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return selector.select(candidates);
+    }
+}
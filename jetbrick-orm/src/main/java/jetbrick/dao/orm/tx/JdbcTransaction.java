@@ -22,17 +22,23 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import jetbrick.dao.TransactionException;
 import jetbrick.dao.orm.utils.DbUtils;
+import jetbrick.dao.orm.utils.PreparedStatementCache;
 
 /**
  * Jdbc 事务对象
  */
 public class JdbcTransaction implements Transaction {
+    // 事务中缓存的 PreparedStatement 个数，0 表示不缓存
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("jetbrick.orm.transaction.statement.cache.size", 32);
+
     private final Connection conn;
     private final ThreadLocal<JdbcTransaction> transationHandler;
+    private final PreparedStatementCache statementCache;
 
     public JdbcTransaction(Connection conn, ThreadLocal<JdbcTransaction> transationHandler) {
         this.conn = conn;
         this.transationHandler = transationHandler;
+        this.statementCache = (STATEMENT_CACHE_SIZE > 0) ? new PreparedStatementCache(conn, STATEMENT_CACHE_SIZE) : null;
 
         try {
             if (conn.getAutoCommit()) {
@@ -47,6 +53,13 @@ public class JdbcTransaction implements Transaction {
         return conn;
     }
 
+    /**
+     * 事务中 (包括子事务) 共享的 PreparedStatement 缓存，事务结束时关闭. 如果禁用，返回 null.
+     */
+    public PreparedStatementCache getStatementCache() {
+        return statementCache;
+    }
+
     /**
      * 提交一个事务
      */
@@ -88,6 +101,9 @@ public class JdbcTransaction implements Transaction {
             if (conn.isClosed()) {
                 throw new TransactionException("the connection is closed in transaction.");
             }
+            if (statementCache != null) {
+                statementCache.close();
+            }
             DbUtils.closeQuietly(conn);
         } catch (SQLException e) {
             throw new TransactionException(e);
@@ -19,12 +19,16 @@
 package jetbrick.dao.orm.utils;
 
 import java.sql.*;
+import java.util.*;
 import java.util.regex.Pattern;
 import javax.sql.DataSource;
 import jetbrick.dao.dialect.SqlDialect;
 import jetbrick.lang.ExceptionUtils;
 
 public final class DbUtils {
+    // seek 条件不能直接加入到 where 子句中的关键字
+    private static final Set<String> SEEK_UNSUPPORTED_WORDS = new HashSet<String>(Arrays.asList("group", "having", "union", "intersect", "except", "minus", "order", "limit", "offset", "fetch", "top", "for"));
+
     public static void closeQuietly(Connection conn) {
         try {
             if (conn != null) conn.close();
@@ -101,4 +105,85 @@ public final class DbUtils {
         count_sql = "select count(*) " + count_sql;
         return count_sql;
     }
+
+    // 生成 keyset (seek) 分页的条件: (a > ?) or (a = ? and b > ?) ...
+    public static String get_sql_seek_condition(String[] columns, boolean[] descending) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append('(');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(" or ");
+            }
+            sb.append('(');
+            for (int j = 0; j < i; j++) {
+                sb.append(columns[j]).append(" = ? and ");
+            }
+            sb.append(columns[i]).append(descending[i] ? " < ?" : " > ?");
+            sb.append(')');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * 将 keyset (seek) 分页的条件直接加入到 sql 最外层的 where 子句中，不使用派生表 (MySQL 5.7 之前派生表会被物化，无法使用索引).
+     * <p>
+     * 最外层包含 group by, having, union, order by, limit 等子句时，where 条件和 seek 的语义不一致，返回 null.
+     */
+    public static String get_sql_seek_where(String sql, String condition) {
+        int where_pos = -1;
+        int selects = 0;
+        int depth = 0;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                if (end == -1) {
+                    return null;
+                }
+                i = end + 1;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                if (depth == 0 && (start == 0 || sql.charAt(start - 1) != '.')) {
+                    String word = sql.substring(start, i).toLowerCase();
+                    if ("select".equals(word)) {
+                        if (++selects > 1) {
+                            return null;
+                        }
+                    } else if ("where".equals(word)) {
+                        where_pos = start;
+                    } else if (SEEK_UNSUPPORTED_WORDS.contains(word)) {
+                        return null;
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+
+        if (where_pos == -1) {
+            return sql + " where " + condition;
+        }
+        String where = sql.substring(where_pos + 5).trim();
+        return sql.substring(0, where_pos) + "where " + condition + " and (" + where + ")";
+    }
+
+    /**
+     * 获取 seek 排序字段在 ResultSet 中的字段名 (去掉表别名，比如 u.id 返回 id).
+     */
+    public static String get_sql_column_label(String column) {
+        int pos = column.lastIndexOf('.');
+        return (pos == -1) ? column : column.substring(pos + 1);
+    }
 }
@@ -25,6 +25,7 @@ import java.net.URL;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import jetbrick.collections.ConcurrentLruCache;
 
 /**
  * This class wraps around a {@link PreparedStatement} and allows the programmer to set parameters by name instead
@@ -53,11 +54,10 @@ import java.util.*;
  * </code></pre>
  */
 public class NamedParameterStatement extends PreparedStatementWrapper {
-    private static final HashMap<String, Map<String, List<Integer>>> nameIndexCache = new HashMap<String, Map<String, List<Integer>>>();
-    private static final HashMap<String, String> parsedSqlCache = new HashMap<String, String>();
+    // 解析后的 SQL 缓存，动态拼接的 SQL 不会导致无限增长
+    private static final ConcurrentLruCache<String, ParsedSql> parsedSqlCache = new ConcurrentLruCache<String, ParsedSql>(Integer.getInteger("jetbrick.orm.namedsql.cache.size", 1024));
 
-    private final String parsedSql;
-    private final Map<String, List<Integer>> nameIndexMap;
+    private final ParsedSql parsedSql;
 
     /**
      * Creates a NamedParameterStatement. Wraps a call to
@@ -67,17 +67,18 @@ public class NamedParameterStatement extends PreparedStatementWrapper {
      * @throws SQLException if the statement could not be created
      */
     public NamedParameterStatement(Connection conn, String sql) throws SQLException {
-        if (nameIndexCache.containsKey(sql)) {
-            nameIndexMap = nameIndexCache.get(sql);
-            parsedSql = parsedSqlCache.get(sql);
-        } else {
-            nameIndexMap = new HashMap<String, List<Integer>>();
-            parsedSql = parseNamedSql(sql, nameIndexMap);
+        parsedSql = getParsedSql(sql);
+        ps = conn.prepareStatement(parsedSql.sql);
+    }
 
-            nameIndexCache.put(sql, nameIndexMap);
-            parsedSqlCache.put(sql, parsedSql);
+    static ParsedSql getParsedSql(String sql) {
+        ParsedSql parsed = parsedSqlCache.get(sql);
+        if (parsed == null) {
+            // 并发情况下可能重复解析，但是结果是一样的
+            parsed = parseNamedSql(sql);
+            parsedSqlCache.put(sql, parsed);
         }
-        ps = conn.prepareStatement(parsedSql);
+        return parsed;
     }
 
     /**
@@ -86,8 +87,8 @@ public class NamedParameterStatement extends PreparedStatementWrapper {
      * @return parameter indexes
      * @throws IllegalArgumentException if the parameter does not exist
      */
-    private List<Integer> getIndexes(String name) {
-        List<Integer> indexes = nameIndexMap.get(name);
+    private int[] getIndexes(String name) {
+        int[] indexes = parsedSql.nameIndexMap.get(name);
         if (indexes == null) {
             throw new IllegalArgumentException("Parameter not found: " + name);
         }
@@ -95,16 +96,17 @@ public class NamedParameterStatement extends PreparedStatementWrapper {
     }
 
     /**
-     * Parses a sql with named parameters. The parameter-index mappings 
-     * are put into the map, and the parsed sql is returned.
+     * Parses a sql with named parameters. The parameter-index mappings
+     * and the parsed sql are returned.
      * @param sql    sql with named parameters
      * @return the parsed sql
      */
-    private static String parseNamedSql(String sql, Map<String, List<Integer>> nameIndexMap) {
+    private static ParsedSql parseNamedSql(String sql) {
         // I was originally using regular expressions, but they didn't work well for ignoring
         // parameter-like strings inside quotes.
+        Map<String, List<Integer>> nameIndexMap = new HashMap<String, List<Integer>>();
         int length = sql.length();
-        StringBuffer parsedSql = new StringBuffer(length);
+        StringBuilder parsedSql = new StringBuilder(length);
         boolean inSingleQuote = false;
         boolean inDoubleQuote = false;
         int index = 1;
@@ -133,7 +135,7 @@ public class NamedParameterStatement extends PreparedStatementWrapper {
                     i += name.length(); // skip past the end if the parameter
                     List<Integer> indexList = nameIndexMap.get(name);
                     if (indexList == null) {
-                        indexList = new LinkedList<Integer>();
+                        indexList = new ArrayList<Integer>(2);
                         nameIndexMap.put(name, indexList);
                     }
                     indexList.add(index);
@@ -143,282 +145,331 @@ public class NamedParameterStatement extends PreparedStatementWrapper {
             parsedSql.append(c);
         }
 
-        return parsedSql.toString();
+        Map<String, int[]> indexes = new HashMap<String, int[]>(nameIndexMap.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : nameIndexMap.entrySet()) {
+            List<Integer> indexList = entry.getValue();
+            int[] values = new int[indexList.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = indexList.get(i);
+            }
+            indexes.put(entry.getKey(), values);
+        }
+        return new ParsedSql(parsedSql.toString(), indexes);
+    }
+
+    /**
+     * 解析缓存中的 SQL 个数.
+     */
+    public static int getParseCacheSize() {
+        return parsedSqlCache.size();
+    }
+
+    /**
+     * 解析缓存的命中率.
+     */
+    public static double getParseCacheHitRate() {
+        return parsedSqlCache.getHitRate();
+    }
+
+    public static long getParseCacheHitCount() {
+        return parsedSqlCache.getHitCount();
+    }
+
+    public static long getParseCacheMissCount() {
+        return parsedSqlCache.getMissCount();
+    }
+
+    public static void clearParseCache() {
+        parsedSqlCache.clear();
+        parsedSqlCache.resetStats();
+    }
+
+    /**
+     * 解析后的 SQL (不可变)，可以在多个线程之间共享.
+     */
+    static final class ParsedSql {
+        final String sql;
+        final Map<String, int[]> nameIndexMap;
+
+        ParsedSql(String sql, Map<String, int[]> nameIndexMap) {
+            this.sql = sql;
+            this.nameIndexMap = nameIndexMap;
+        }
     }
 
     public void setArray(String name, Array value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setArray(index, value);
         }
     }
 
     public void setAsciiStream(String name, InputStream value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setAsciiStream(index, value);
         }
     }
 
     public void setAsciiStream(String name, InputStream value, int length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setAsciiStream(index, value, length);
         }
     }
 
     public void setBigDecimal(String name, BigDecimal value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBigDecimal(index, value);
         }
     }
 
     public void setBinaryStream(String name, InputStream value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBinaryStream(index, value);
         }
     }
 
     public void setBinaryStream(String name, InputStream value, int length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBinaryStream(index, value, length);
         }
     }
 
     public void setBinaryStream(String name, InputStream value, long length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBinaryStream(index, value, length);
         }
     }
 
     public void setBlob(String name, Blob value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBlob(index, value);
         }
     }
 
     public void setBlob(String name, InputStream value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBlob(index, value);
         }
     }
 
     public void setBlob(String name, InputStream value, long length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBlob(index, value, length);
         }
     }
 
     public void setBoolean(String name, boolean value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBoolean(index, value);
         }
     }
 
     public void setByte(String name, byte value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setByte(index, value);
         }
     }
 
     public void setBytes(String name, byte[] value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setBytes(index, value);
         }
     }
 
     public void setCharacterStream(String name, Reader value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setCharacterStream(index, value);
         }
     }
 
     public void setCharacterStream(String name, Reader value, int length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setCharacterStream(index, value, length);
         }
     }
 
     public void setCharacterStream(String name, Reader value, long length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setCharacterStream(index, value, length);
         }
     }
 
     public void setClob(String name, Clob value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setClob(index, value);
         }
     }
 
     public void setClob(String name, Reader value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setClob(index, value);
         }
     }
 
     public void setClob(String name, Reader value, long length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setClob(index, value, length);
         }
     }
 
     public void setDate(String name, Date value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setDate(index, value);
         }
     }
 
     public void setDate(String name, Date value, Calendar cal) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setDate(index, value, cal);
         }
     }
 
     public void setDouble(String name, double value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setDouble(index, value);
         }
     }
 
     public void setFloat(String name, float value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setFloat(index, value);
         }
     }
 
     public void setInt(String name, int value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setInt(index, value);
         }
     }
 
     public void setLong(String name, long value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setLong(index, value);
         }
     }
 
     public void setNCharacterStream(String name, Reader value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNCharacterStream(index, value);
         }
     }
 
     public void setNCharacterStream(String name, Reader value, long length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNCharacterStream(index, value, length);
         }
     }
 
     public void setNClob(String name, NClob value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNClob(index, value);
         }
     }
 
     public void setNClob(String name, Reader value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNClob(index, value);
         }
     }
 
     public void setNClob(String name, Reader value, long length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNClob(index, value, length);
         }
     }
 
     public void setNString(String name, String value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNString(index, value);
         }
     }
 
     public void setNull(String name, int sqlType) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setNull(index, sqlType);
         }
     }
 
     public void setObject(String name, Object value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setObject(index, value);
         }
     }
 
     public void setObject(String name, Object value, int targetSqlType) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setObject(index, value, targetSqlType);
         }
     }
 
     public void setObject(String name, Object value, int targetSqlType, int scaleOrLength) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setObject(index, value, targetSqlType, scaleOrLength);
         }
     }
 
     public void setRef(String name, Ref value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setRef(index, value);
         }
     }
 
     public void setRowId(String name, RowId value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setRowId(index, value);
         }
     }
 
     public void setShort(String name, short value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setShort(index, value);
         }
     }
 
     public void setSQLXML(String name, SQLXML value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setSQLXML(index, value);
         }
     }
 
     public void setString(String name, String value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setString(index, value);
         }
     }
 
     public void setTime(String name, Time value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setTime(index, value);
         }
     }
 
     public void setTime(String name, Time value, Calendar cal) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setTime(index, value, cal);
         }
     }
 
     public void setTimestamp(String name, Timestamp value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setTimestamp(index, value);
         }
     }
 
     public void setTimestamp(String name, Timestamp value, Calendar cal) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setTimestamp(index, value, cal);
         }
     }
 
     @SuppressWarnings("deprecation")
     public void setUnicodeStream(String name, InputStream value, int length) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setUnicodeStream(index, value, length);
         }
     }
 
     public void setURL(String name, URL value) throws SQLException {
-        for (Integer index : getIndexes(name)) {
+        for (int index : getIndexes(name)) {
             ps.setURL(index, value);
         }
     }
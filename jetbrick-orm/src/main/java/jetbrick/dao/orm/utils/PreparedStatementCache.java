@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 一个 Connection 上的 PreparedStatement 缓存 (LRU)，事务中重复执行相同的 SQL 时复用 PreparedStatement.
+ * <p>
+ * 非线程安全，和事务一样只能在一个线程中使用。超出容量的 PreparedStatement 会被关闭，其余的在 {@link #close()} 时关闭.
+ * <p>
+ * 每次 {@link #prepareStatement(String)} 之后必须调用 {@link #release(PreparedStatement)}.
+ * 如果相同 SQL 的 PreparedStatement 还在使用中 (比如在 ResultSetHandler 中嵌套执行相同的查询)，
+ * 那么返回一个新的不缓存的 PreparedStatement，避免关闭外层还在读取的 ResultSet.
+ */
+public class PreparedStatementCache {
+    private final Connection conn;
+    private final LinkedHashMap<String, Entry> cache;
+    private final List<Entry> inUse = new ArrayList<Entry>(4); // 正在使用的缓存，一般只有很少的几个
+    private int hitCount;
+    private int missCount;
+
+    public PreparedStatementCache(Connection conn, final int capacity) {
+        this.conn = conn;
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > capacity) {
+                    Entry entry = eldest.getValue();
+                    if (entry.inUse) {
+                        entry.evicted = true; // 使用完成后再关闭
+                    } else {
+                        DbUtils.closeQuietly(entry.ps);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Connection getConnection() {
+        return conn;
+    }
+
+    /**
+     * 获取 PreparedStatement，调用者不能关闭返回的 PreparedStatement，使用完成后必须调用 {@link #release(PreparedStatement)}.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        Entry entry = cache.get(sql);
+        if (entry != null) {
+            if (entry.inUse) {
+                // 嵌套执行，不能复用还在使用中的 PreparedStatement
+                return conn.prepareStatement(sql);
+            }
+            hitCount++;
+            entry.ps.clearParameters();
+        } else {
+            missCount++;
+            entry = new Entry(conn.prepareStatement(sql));
+            cache.put(sql, entry);
+        }
+        entry.inUse = true;
+        inUse.add(entry);
+        return entry.ps;
+    }
+
+    /**
+     * 使用完成，放回缓存 (不在缓存中的 PreparedStatement 会被关闭).
+     */
+    public void release(PreparedStatement ps) {
+        if (ps == null) {
+            return;
+        }
+        for (int i = inUse.size() - 1; i >= 0; i--) {
+            Entry entry = inUse.get(i);
+            if (entry.ps == ps) {
+                inUse.remove(i);
+                entry.inUse = false;
+                if (entry.evicted) {
+                    DbUtils.closeQuietly(ps);
+                }
+                return;
+            }
+        }
+        DbUtils.closeQuietly(ps);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
+    public void close() {
+        for (Entry entry : cache.values()) {
+            DbUtils.closeQuietly(entry.ps);
+        }
+        for (Entry entry : inUse) {
+            if (entry.evicted) {
+                DbUtils.closeQuietly(entry.ps);
+            }
+        }
+        cache.clear();
+        inUse.clear();
+    }
+
+    static final class Entry {
+        final PreparedStatement ps;
+        boolean inUse;
+        boolean evicted; // 已经从缓存中移除，但是还在使用中
+
+        Entry(PreparedStatement ps) {
+            this.ps = ps;
+        }
+    }
+}
@@ -20,37 +20,59 @@ package jetbrick.dao.orm.utils;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import jetbrick.beans.ClassUtils;
+import jetbrick.collections.ConcurrentLruCache;
 import jetbrick.collections.iterators.ArrayIterator;
-import jetbrick.lang.StringUtils;
 import jetbrick.reflect.BeanMap;
 
 public class PreparedStatementCreator {
     private static final Pattern namedParameterPattern = Pattern.compile("\\:([a-zA-Z0-9_]+)");
+    private static final ConcurrentLruCache<String, NamedSql> namedSqlCache = new ConcurrentLruCache<String, NamedSql>(512);
 
-    @SuppressWarnings("unchecked")
     public static PreparedStatement createPreparedStatement(Connection conn, String sql, Object... parameters) throws SQLException {
+        return createPreparedStatement(conn, null, sql, 0, parameters);
+    }
+
+    /**
+     * 从 PreparedStatementCache 中获取 PreparedStatement (事务中使用)，使用完成后调用 {@link PreparedStatementCache#release(PreparedStatement)}.
+     */
+    public static PreparedStatement createPreparedStatement(PreparedStatementCache cache, String sql, Object... parameters) throws SQLException {
+        return createPreparedStatement(cache.getConnection(), cache, sql, 0, parameters);
+    }
+
+    /**
+     * 创建一个用于流式读取的 PreparedStatement (TYPE_FORWARD_ONLY, CONCUR_READ_ONLY)，并设置 fetchSize.
+     *
+     * @param fetchSize 参考 {@link jetbrick.dao.dialect.SqlDialect#getStreamingFetchSize()}
+     */
+    public static PreparedStatement createStreamingPreparedStatement(Connection conn, String sql, int fetchSize, Object... parameters) throws SQLException {
+        return createPreparedStatement(conn, null, sql, fetchSize, parameters);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PreparedStatement createPreparedStatement(Connection conn, PreparedStatementCache cache, String sql, int fetchSize, Object[] parameters) throws SQLException {
         if (parameters == null) {
-            return createByIterator(conn, sql, null);
+            return createByIterator(conn, cache, sql, fetchSize, null);
         }
 
         if (parameters.length == 1) {
             Object value = parameters[0];
             Class<?> clazz = value.getClass();
-            if (ClassUtils.isAssignable(clazz, Map.class)) {
-                return createByMap(conn, sql, (Map<String, ?>) value);
-            } else if (ClassUtils.isAssignable(clazz, Collection.class)) {
-                return createByIterator(conn, sql, new ArrayIterator(parameters));
+            if (ClassUtils.isAssignable(Map.class, clazz)) {
+                return createByMap(conn, cache, sql, fetchSize, (Map<String, ?>) value);
+            } else if (ClassUtils.isAssignable(Collection.class, clazz)) {
+                return createByIterator(conn, cache, sql, fetchSize, new ArrayIterator(parameters));
             } else if (clazz.isPrimitive() || clazz.getName().startsWith("java.")) {
-                return createByIterator(conn, sql, new ArrayIterator(parameters));
+                return createByIterator(conn, cache, sql, fetchSize, new ArrayIterator(parameters));
             } else {
                 Map<String, Object> beanMap = new BeanMap(value);
-                return createByMap(conn, sql, beanMap);
+                return createByMap(conn, cache, sql, fetchSize, beanMap);
             }
         } else {
-            return createByIterator(conn, sql, new ArrayIterator(parameters));
+            return createByIterator(conn, cache, sql, fetchSize, new ArrayIterator(parameters));
         }
     }
 
@@ -58,17 +80,40 @@ public class PreparedStatementCreator {
      * Support ? as parameter
      */
     protected static PreparedStatement createByIterator(Connection conn, String sql, Iterator<?> parameters) throws SQLException {
-        PreparedStatement ps = conn.prepareStatement(sql);
+        return createByIterator(conn, null, sql, 0, parameters);
+    }
+
+    protected static PreparedStatement createByIterator(Connection conn, PreparedStatementCache cache, String sql, int fetchSize, Iterator<?> parameters) throws SQLException {
+        PreparedStatement ps;
+        if (fetchSize != 0) {
+            // 流式读取
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+        } else if (cache != null) {
+            ps = cache.prepareStatement(sql);
+        } else {
+            ps = conn.prepareStatement(sql);
+        }
         if (parameters != null) {
-            int index = 1;
-            while (parameters.hasNext()) {
-                Object parameter = parameters.next();
-                if (parameter == null) {
-                    ps.setObject(index, null);
+            try {
+                int index = 1;
+                while (parameters.hasNext()) {
+                    Object parameter = parameters.next();
+                    if (parameter == null) {
+                        ps.setObject(index, null);
+                    } else {
+                        ps.setObject(index, parameter);
+                    }
+                    index++;
+                }
+            } catch (SQLException e) {
+                // 调用者拿不到 ps，在这里释放
+                if (cache != null && fetchSize == 0) {
+                    cache.release(ps);
                 } else {
-                    ps.setObject(index, parameter);
+                    DbUtils.closeQuietly(ps);
                 }
-                index++;
+                throw e;
             }
         }
         return ps;
@@ -78,46 +123,136 @@ public class PreparedStatementCreator {
      * Support :name as parameter, and Array or Collection type
      */
     protected static PreparedStatement createByMap(Connection conn, String sql, Map<String, ?> parameters) throws SQLException {
-        StringBuffer sb = new StringBuffer();
-        List<Object> params = new ArrayList<Object>();
+        return createByMap(conn, null, sql, 0, parameters);
+    }
 
-        Matcher m = namedParameterPattern.matcher(sql);
-        while (m.find()) {
-            String key = m.group(1);
-            Object value = parameters.get(key);
+    protected static PreparedStatement createByMap(Connection conn, PreparedStatementCache cache, String sql, int fetchSize, Map<String, ?> parameters) throws SQLException {
+        NamedSql namedSql = namedSqlCache.get(sql);
+        if (namedSql == null) {
+            namedSql = new NamedSql(sql);
+            namedSqlCache.put(sql, namedSql);
+        }
+
+        String[] names = namedSql.names;
+        int[] arity = null; // null 表示所有的参数都是单个值
+        List<Object> params = new ArrayList<Object>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Object value = parameters.get(names[i]);
+            int count = 1;
             if (value == null) {
                 params.add(null);
-                m.appendReplacement(sb, "?");
             } else if (value instanceof Object[]) {
                 Object[] array = (Object[]) value;
                 if (array.length == 0) {
                     params.add(null);
-                    m.appendReplacement(sb, "?");
                 } else {
                     for (Object one : array) {
                         params.add(one);
                     }
-                    m.appendReplacement(sb, StringUtils.repeat("?", ",", array.length));
+                    count = array.length;
                 }
             } else if (value instanceof Collection) {
                 Collection<?> collection = (Collection<?>) value;
                 if (collection.size() == 0) {
                     params.add(null);
-                    m.appendReplacement(sb, "?");
                 } else {
                     for (Object one : collection) {
                         params.add(one);
                     }
-                    m.appendReplacement(sb, StringUtils.repeat("?", ",", collection.size()));
+                    count = collection.size();
                 }
             } else {
                 params.add(value);
-                m.appendReplacement(sb, "?");
+            }
+            if (count != 1) {
+                if (arity == null) {
+                    arity = new int[names.length];
+                    Arrays.fill(arity, 1);
+                }
+                arity[i] = count;
             }
         }
-        m.appendTail(sb);
 
-        return createByIterator(conn, sb.toString(), params.iterator());
+        return createByIterator(conn, cache, namedSql.getSql(arity), fetchSize, params.iterator());
     }
 
+    /**
+     * 预先解析好的 :name 参数 SQL，转换后的 SQL 根据 Array/Collection 参数的个数进行缓存.
+     */
+    static final class NamedSql {
+        private static final int MAX_EXPANDED_SQL = 64;
+
+        final String[] names;
+        private final String[] fragments; // fragments.length = names.length + 1
+        private final String sql; // 全部是单个值的时候
+        private final Map<Arity, String> expandedSqlMap = new ConcurrentHashMap<Arity, String>();
+
+        NamedSql(String sql) {
+            List<String> names = new ArrayList<String>();
+            List<String> fragments = new ArrayList<String>();
+            Matcher m = namedParameterPattern.matcher(sql);
+            int last = 0;
+            while (m.find()) {
+                fragments.add(sql.substring(last, m.start()));
+                names.add(m.group(1));
+                last = m.end();
+            }
+            fragments.add(sql.substring(last));
+
+            this.names = names.toArray(new String[names.size()]);
+            this.fragments = fragments.toArray(new String[fragments.size()]);
+            this.sql = build(null);
+        }
+
+        String getSql(int[] arity) {
+            if (arity == null) {
+                return sql;
+            }
+            Arity key = new Arity(arity);
+            String expandedSql = expandedSqlMap.get(key);
+            if (expandedSql == null) {
+                expandedSql = build(arity);
+                if (expandedSqlMap.size() < MAX_EXPANDED_SQL) {
+                    expandedSqlMap.put(key, expandedSql);
+                }
+            }
+            return expandedSql;
+        }
+
+        private String build(int[] arity) {
+            StringBuilder sb = new StringBuilder(fragments[0].length() * 2 + 16);
+            for (int i = 0; i < names.length; i++) {
+                sb.append(fragments[i]);
+                int count = (arity == null) ? 1 : arity[i];
+                for (int j = 0; j < count; j++) {
+                    if (j > 0) {
+                        sb.append(',');
+                    }
+                    sb.append('?');
+                }
+            }
+            sb.append(fragments[names.length]);
+            return sb.toString();
+        }
+    }
+
+    static final class Arity {
+        private final int[] values;
+        private final int hash;
+
+        Arity(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Arity) && Arrays.equals(values, ((Arity) obj).values);
+        }
+    }
 }
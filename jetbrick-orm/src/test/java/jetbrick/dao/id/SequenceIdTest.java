@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.id;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequenceIdTest {
+
+    @Test
+    public void nextVal() {
+        MemorySequenceIdProvider provider = new MemorySequenceIdProvider();
+        SequenceId seq = provider.create("user", 100, 10);
+        for (int i = 0; i < 35; i++) {
+            Assert.assertEquals(100 + i, seq.nextLongVal());
+        }
+        Assert.assertTrue(provider.reserveCount.get() >= 4);
+    }
+
+    @Test
+    public void concurrentNextVal() throws Exception {
+        final MemorySequenceIdProvider provider = new MemorySequenceIdProvider();
+        final SequenceId seq = provider.create("order", 1, 100);
+
+        final int threads = 16;
+        final int loops = 5000;
+        final long[][] results = new long[threads][loops];
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final long[] values = results[t];
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < loops; i++) {
+                            values[i] = seq.nextLongVal();
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        Assert.assertEquals(0, errors.get());
+
+        // 不能重复，并且只能来自已经预留的号段
+        long max = provider.value.get();
+        boolean[] used = new boolean[(int) max + 1];
+        for (long[] values : results) {
+            long last = 0;
+            for (long value : values) {
+                Assert.assertTrue(value > last); // 单个线程内递增
+                Assert.assertTrue(value <= max);
+                Assert.assertFalse("duplicate id: " + value, used[(int) value]);
+                used[(int) value] = true;
+                last = value;
+            }
+        }
+    }
+
+    @Test
+    public void loadStoreProvider() {
+        // 只实现了 load/store 的 provider
+        final AtomicInteger stored = new AtomicInteger();
+        SequenceIdProvider provider = new SequenceIdProvider() {
+            @Override
+            public SequenceId create(String name) {
+                return new SequenceId(this, name, 1);
+            }
+
+            @Override
+            public SequenceId create(String name, int begin) {
+                return new SequenceId(this, name, begin);
+            }
+
+            @Override
+            public int load(String name) {
+                return stored.get();
+            }
+
+            @Override
+            public void store(String name, int value) {
+                stored.set(value);
+            }
+        };
+
+        stored.set(120);
+        SequenceId seq = provider.create("legacy", 100);
+        for (int i = 0; i < 120; i++) {
+            Assert.assertEquals(121 + i, seq.nextVal());
+        }
+        // 保存的是已经预留的最大 ID (可能已经预取了下一个号段)
+        Assert.assertTrue(stored.get() >= 240);
+        Assert.assertEquals(0, (stored.get() - 120) % SequenceId.DEFAULT_SEGMENT_SIZE);
+    }
+
+    // 模拟数据库，预留号段时有一定的延迟
+    static class MemorySequenceIdProvider implements SegmentSequenceIdProvider {
+        final AtomicLong value = new AtomicLong();
+        final AtomicInteger reserveCount = new AtomicInteger();
+
+        @Override
+        public SequenceId create(String name) {
+            return new SequenceId(this, name, 1);
+        }
+
+        @Override
+        public SequenceId create(String name, int begin) {
+            return new SequenceId(this, name, begin);
+        }
+
+        @Override
+        public SequenceId create(String name, long begin, int segmentSize) {
+            return new SequenceId(this, name, begin, segmentSize);
+        }
+
+        @Override
+        public int load(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void store(String name, int value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long reserve(String name, long begin, int size) {
+            reserveCount.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            while (true) {
+                long last = value.get();
+                long start = Math.max(last + 1, begin);
+                if (value.compareAndSet(last, start + size - 1)) {
+                    return start;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JdbcProfilerTest {
+
+    // 模拟的 Connection: executeQuery 返回 3 行数据
+    private static Connection createConnection() {
+        final InvocationHandler rsHandler = new InvocationHandler() {
+            private int rows = 3;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("next".equals(method.getName())) {
+                    return rows-- > 0;
+                }
+                return null;
+            }
+        };
+        final InvocationHandler psHandler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("executeQuery".equals(name)) {
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultSet.class }, rsHandler);
+                }
+                if ("executeUpdate".equals(name)) {
+                    throw new SQLException("mock error");
+                }
+                return null;
+            }
+        };
+        InvocationHandler connHandler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("prepareStatement".equals(method.getName())) {
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { PreparedStatement.class }, psHandler);
+                }
+                return null;
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(JdbcProfilerTest.class.getClassLoader(), new Class[] { Connection.class }, connHandler);
+    }
+
+    @Test
+    public void profile() throws SQLException {
+        JdbcProfiler.reset();
+
+        Connection conn = JdbcProfiler.wrap(createConnection());
+        PreparedStatement ps = conn.prepareStatement("select * from users where id=?");
+        ps.setInt(1, 100);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+        }
+        rs.close();
+        ps.close();
+
+        ps = conn.prepareStatement("update users set name=?");
+        ps.setString(1, "jetbrick");
+        try {
+            ps.executeUpdate();
+            Assert.fail();
+        } catch (SQLException e) {
+        }
+        conn.close();
+
+        SqlStats.Snapshot query = null;
+        SqlStats.Snapshot update = null;
+        for (SqlStats.Snapshot snapshot : JdbcProfiler.snapshot()) {
+            if (snapshot.getSql().startsWith("select")) {
+                query = snapshot;
+            } else if (snapshot.getSql().startsWith("update")) {
+                update = snapshot;
+            }
+        }
+        Assert.assertNotNull(query);
+        Assert.assertEquals(1, query.getCount());
+        Assert.assertEquals(0, query.getErrors());
+        Assert.assertEquals(3, query.getRows());
+        Assert.assertNotNull(update);
+        Assert.assertEquals(1, update.getErrors());
+        Assert.assertEquals(1, JdbcProfiler.getConnectionSnapshot().getCount());
+        Assert.assertTrue(JdbcProfiler.toJSONString().contains("select * from users where id=?"));
+    }
+
+    @Test
+    public void histogram() {
+        SqlStats stats = new SqlStats("test");
+        for (int i = 1; i <= 100; i++) {
+            stats.record(i * 1000000L, false);
+        }
+        SqlStats.Snapshot snapshot = stats.snapshot();
+        Assert.assertEquals(100, snapshot.getCount());
+        Assert.assertEquals(100.0, snapshot.getMaxMillis(), 0.001);
+        Assert.assertEquals(50.0, snapshot.getPercentileMillis(50), 0.001);
+        Assert.assertEquals(100.0, snapshot.getPercentileMillis(99), 0.001);
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import javax.sql.DataSource;
+import jetbrick.dao.DbException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchWriterTest {
+
+    // 记录执行的 sql，第 failAt 次执行时抛出异常
+    static final class MockDatabase {
+        final String productName;
+        final List<String> executed = new ArrayList<String>();
+        int failAt = -1;
+        long nextKey = 1;
+
+        MockDatabase(String productName) {
+            this.productName = productName;
+        }
+
+        DataSource createDataSource() {
+            return (DataSource) proxy(DataSource.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return "getConnection".equals(method.getName()) ? createConnection() : null;
+                }
+            });
+        }
+
+        Connection createConnection() {
+            return (Connection) proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("prepareStatement".equals(name)) {
+                        return createPreparedStatement((String) args[0]);
+                    }
+                    if ("getMetaData".equals(name)) {
+                        return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                return "getDatabaseProductName".equals(method.getName()) ? productName : null;
+                            }
+                        });
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        PreparedStatement createPreparedStatement(final String sql) {
+            final int[] rows = new int[] { 0, 1 }; // batch 行数，最近一次执行的行数
+            return (PreparedStatement) proxy(PreparedStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("addBatch".equals(name)) {
+                        rows[0]++;
+                        return null;
+                    }
+                    if ("executeUpdate".equals(name) || "executeBatch".equals(name)) {
+                        if (executed.size() == failAt) {
+                            throw new SQLException("mock failure");
+                        }
+                        executed.add(sql);
+                        if ("executeUpdate".equals(name)) {
+                            int count = countValues(sql);
+                            rows[1] = count;
+                            return count;
+                        }
+                        int[] counts = new int[rows[0]];
+                        Arrays.fill(counts, 1);
+                        rows[1] = rows[0];
+                        rows[0] = 0;
+                        return counts;
+                    }
+                    if ("getGeneratedKeys".equals(name)) {
+                        // 和 SQL Server/H2 一样，多行语句只返回最后一行的主键
+                        nextKey += rows[1];
+                        return createKeyResultSet(nextKey - 1);
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        ResultSet createKeyResultSet(final long key) {
+            final boolean[] read = new boolean[1];
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        boolean next = !read[0];
+                        read[0] = true;
+                        return next;
+                    }
+                    if ("getObject".equals(name)) {
+                        return key;
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+    }
+
+    static int countValues(String sql) {
+        int count = 0;
+        for (int pos = sql.indexOf("(?"); pos != -1; pos = sql.indexOf("(?", pos + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(BatchWriterTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+
+    static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        }
+        if (type == Integer.TYPE) {
+            return 0;
+        }
+        if (type == Long.TYPE) {
+            return 0L;
+        }
+        return null;
+    }
+
+    static List<Object[]> createRows(int count) {
+        List<Object[]> rows = new ArrayList<Object[]>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[] { "user" + i, i });
+        }
+        return rows;
+    }
+
+    @Test
+    public void chunks() {
+        MockDatabase db = new MockDatabase("MySQL");
+        BatchWriter writer = new DbHelper(db.createDataSource()).createBatchWriter("users", "name", "age");
+        writer.setChunkSize(2);
+
+        BatchResult result = writer.write(createRows(5));
+        Assert.assertEquals(3, result.getStatements());
+        Assert.assertEquals(5, result.getAffectedRows());
+        Assert.assertEquals(2, countValues(db.executed.get(0)));
+        Assert.assertEquals(1, countValues(db.executed.get(2)));
+    }
+
+    @Test
+    public void generatedKeys() {
+        // MySQL 一条多行语句可以返回所有行的主键
+        MockDatabase db = new MockDatabase("MySQL");
+        BatchWriter writer = new DbHelper(db.createDataSource()).createBatchWriter("users", "name", "age");
+        writer.setChunkSize(2);
+        writer.setReturnGeneratedKeys(true);
+        Assert.assertEquals(3, writer.write(createRows(5)).getStatements());
+
+        // H2 只返回最后一行的主键，需要逐行执行
+        db = new MockDatabase("H2");
+        writer = new DbHelper(db.createDataSource()).createBatchWriter("users", "name", "age");
+        writer.setChunkSize(2);
+        writer.setReturnGeneratedKeys(true);
+        BatchResult result = writer.write(createRows(5));
+        Assert.assertEquals(5, result.getStatements());
+        Assert.assertEquals(Arrays.<Object> asList(1L, 2L, 3L, 4L, 5L), result.getGeneratedKeys());
+        for (String sql : db.executed) {
+            Assert.assertEquals(1, countValues(sql));
+        }
+    }
+
+    @Test(expected = DbException.class)
+    public void generatedKeysWithUpsert() {
+        MockDatabase db = new MockDatabase("MySQL");
+        BatchWriter writer = new DbHelper(db.createDataSource()).createBatchWriter("users", "name", "age");
+        writer.setUpsertKeys("name");
+        writer.setReturnGeneratedKeys(true);
+        writer.write(createRows(1));
+    }
+
+    @Test
+    public void failure() {
+        // 不在事务中，每一批自动提交，失败时报告已经写入的行数
+        MockDatabase db = new MockDatabase("MySQL");
+        db.failAt = 1;
+        BatchWriter writer = new DbHelper(db.createDataSource()).createBatchWriter("users", "name", "age");
+        writer.setChunkSize(2);
+        try {
+            writer.write(createRows(5));
+            Assert.fail();
+        } catch (DbException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("writtenRows"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("2"));
+        }
+        Assert.assertEquals(1, db.executed.size());
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+import javax.sql.DataSource;
+import jetbrick.collections.ConcurrentLruCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+@SuppressWarnings("unchecked")
+public class QueryCacheTest {
+
+    public static class Dict {
+        private int id;
+        private String name;
+        private Date updated;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Date getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(Date updated) {
+            this.updated = updated;
+        }
+    }
+
+    @Test
+    public void copy() {
+        Dict dict = new Dict();
+        dict.setId(1);
+        dict.setName("a");
+        dict.setUpdated(new Date(1000));
+        List<Dict> list = new ArrayList<Dict>();
+        list.add(dict);
+
+        QueryCache cache = new QueryCache(100, 0);
+        String[] tables = { "dict" };
+        QueryCache.Key key = new QueryCache.Key("list", "select * from dict", new Object[0]);
+        cache.put(key, list, tables, cache.getVersions(tables));
+
+        // 修改原始结果和返回结果都不影响缓存
+        dict.setName("b");
+        List<Dict> cached = (List<Dict>) cache.get(key);
+        Assert.assertEquals("a", cached.get(0).getName());
+        cached.get(0).getUpdated().setTime(2000);
+        cached.clear();
+
+        cached = (List<Dict>) cache.get(key);
+        Assert.assertEquals(1, cached.size());
+        Assert.assertEquals(1000, cached.get(0).getUpdated().getTime());
+        Assert.assertNotSame(cached.get(0), ((List<Dict>) cache.get(key)).get(0));
+    }
+
+    @Test
+    public void invalidate() {
+        QueryCache cache = new QueryCache(100, 0);
+        String[] dictTables = { "dict" };
+        String[] userTables = { "users", "dict" };
+        QueryCache.Key k1 = new QueryCache.Key("object", "select name from dict where id=?", new Object[] { 1 });
+        QueryCache.Key k2 = new QueryCache.Key("object", "select count(*) from users, dict", null);
+        cache.put(k1, "a", dictTables, cache.getVersions(dictTables));
+        cache.put(k2, 10L, userTables, cache.getVersions(userTables));
+
+        Assert.assertEquals("a", cache.get(new QueryCache.Key("object", "select name from dict where id=?", new Object[] { 1 })));
+        Assert.assertNull(cache.get(new QueryCache.Key("object", "select name from dict where id=?", new Object[] { 2 })));
+
+        cache.invalidate("USERS");
+        Assert.assertEquals("a", cache.get(k1));
+        Assert.assertNull(cache.get(k2));
+
+        // 查询期间表被修改，结果不能被缓存
+        long[] versions = cache.getVersions(dictTables);
+        cache.invalidateTable(cache.getWriteTable("update dict set name=? where id=?"));
+        Assert.assertNull(cache.get(k1));
+        cache.put(k1, "old", dictTables, versions);
+        Assert.assertNull(cache.get(k1));
+
+        cache.put(k1, null, dictTables, cache.getVersions(dictTables));
+        Assert.assertTrue(QueryCache.isNullValue(cache.get(k1)));
+        cache.invalidateTable(cache.getWriteTable("{call proc()}"));
+        Assert.assertNull(cache.get(k1));
+    }
+
+    @Test
+    public void expire() throws Exception {
+        QueryCache cache = new QueryCache(100, 50);
+        String[] tables = { "dict" };
+        QueryCache.Key key = new QueryCache.Key("object", "select 1", null);
+        cache.put(key, 1, tables, cache.getVersions(tables));
+        Assert.assertEquals(1, cache.get(key));
+        Thread.sleep(100);
+        Assert.assertNull(cache.get(key));
+    }
+
+    @Test
+    public void writeTable() {
+        ConcurrentLruCache<String, String> c = new ConcurrentLruCache<String, String>(16);
+        Assert.assertEquals("dict", QueryCache.getWriteTable("insert into dict (id) values (?)", c));
+        Assert.assertEquals("dict", QueryCache.getWriteTable(" INSERT IGNORE INTO `db`.`dict` values (?)", c));
+        Assert.assertEquals("dict", QueryCache.getWriteTable("update dict set a=?", c));
+        Assert.assertEquals("Dict", QueryCache.getWriteTable("delete from \"Dict\" where id=?", c));
+        Assert.assertEquals("dict", QueryCache.getWriteTable("merge into [dbo].[dict] using", c));
+        Assert.assertEquals("*", QueryCache.getWriteTable("create table x (id int)", c));
+    }
+
+    @Test
+    public void readPrimaryAfterInvalidate() throws Exception {
+        final List<String> reads = new ArrayList<String>();
+        List<DataSource> replicas = Collections.singletonList(createDataSource("replica", reads));
+        DbHelper dao = new DbHelper(createDataSource("primary", reads), replicas);
+        dao.getReplicaRouter().setStickyMillis(100);
+        dao.setQueryCache(new QueryCache(100, 0));
+
+        Assert.assertEquals(Long.valueOf(1), dao.cached("dict").queryAsLong("select count(*) from dict"));
+        Assert.assertEquals("replica", reads.get(reads.size() - 1));
+
+        // 其他线程 (或者直接) 修改了表，从库可能还是旧数据，未命中时从主库读取
+        dao.getQueryCache().invalidate("dict");
+        reads.clear();
+        Assert.assertEquals(Long.valueOf(1), dao.cached("dict").queryAsLong("select count(*) from dict"));
+        Assert.assertEquals(Arrays.asList("primary"), reads);
+        dao.cached("dict").queryAsLong("select count(*) from dict");
+        Assert.assertEquals(1, reads.size()); // 命中缓存
+
+        // 其他表不受影响
+        dao.cached("users").queryAsLong("select count(*) from users");
+        Assert.assertEquals("replica", reads.get(reads.size() - 1));
+
+        // 超过 stickyMillis 之后从从库读取
+        Thread.sleep(150);
+        dao.cached("dict").queryAsLong("select count(*) from dict where id > ?", 0);
+        Assert.assertEquals("replica", reads.get(reads.size() - 1));
+    }
+
+    // 每次查询记录使用的数据源，返回一行一列: 1
+    private static DataSource createDataSource(final String name, final List<String> reads) {
+        final InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String methodName = method.getName();
+                if ("getDatabaseProductName".equals(methodName)) {
+                    return "MySQL";
+                }
+                if ("executeQuery".equals(methodName)) {
+                    reads.add(name);
+                    return proxy(ResultSet.class, new MockResultSet());
+                }
+                if ("getMetaData".equals(methodName)) {
+                    return proxy(DatabaseMetaData.class, this);
+                }
+                if ("prepareStatement".equals(methodName)) {
+                    return proxy(PreparedStatement.class, this);
+                }
+                if ("getConnection".equals(methodName)) {
+                    return proxy(Connection.class, this);
+                }
+                return defaultValue(method);
+            }
+        };
+        return (DataSource) proxy(DataSource.class, handler);
+    }
+
+    static final class MockResultSet implements InvocationHandler {
+        private int row;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("next".equals(name)) {
+                return ++row == 1;
+            }
+            if ("getObject".equals(name)) {
+                return 1L;
+            }
+            if ("getMetaData".equals(name)) {
+                return proxy(ResultSetMetaData.class, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getColumnCount".equals(method.getName())) {
+                            return 1;
+                        }
+                        if ("getColumnType".equals(method.getName())) {
+                            return Types.BIGINT;
+                        }
+                        return "getColumnLabel".equals(method.getName()) ? "count" : defaultValue(method);
+                    }
+                });
+            }
+            if (method.getReturnType() == Long.TYPE) {
+                return 1L;
+            }
+            if (method.getReturnType() == Integer.TYPE) {
+                return 1;
+            }
+            return defaultValue(method);
+        }
+    }
+
+    static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(QueryCacheTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+
+    static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        }
+        if (type == Integer.TYPE) {
+            return 0;
+        }
+        if (type == Long.TYPE) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import javax.sql.DataSource;
+import jetbrick.dao.orm.tx.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+// 流式查询 (forEach/queryAsIterator) 必须在所有情况下释放 ResultSet、PreparedStatement 和 Connection
+public class ResultIteratorTest {
+
+    // 记录创建的 JDBC 对象是否已经关闭
+    static final class Resource {
+        boolean closed;
+        int resultSetType;
+        int resultSetConcurrency;
+        int fetchSize;
+    }
+
+    static final class MockDatabase {
+        final String productName;
+        final int rows;
+        final List<Resource> connections = new ArrayList<Resource>();
+        Resource statement; // 最近一次创建的 PreparedStatement
+        Resource resultSet; // 最近一次创建的 ResultSet
+
+        MockDatabase(String productName, int rows) {
+            this.productName = productName;
+            this.rows = rows;
+        }
+
+        // 最近一次创建的 Connection
+        Resource connection() {
+            return connections.get(connections.size() - 1);
+        }
+
+        DataSource createDataSource() {
+            return (DataSource) proxy(DataSource.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return "getConnection".equals(method.getName()) ? createConnection() : null;
+                }
+            });
+        }
+
+        Connection createConnection() {
+            final Resource resource = new Resource();
+            connections.add(resource);
+            return (Connection) proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("prepareStatement".equals(name)) {
+                        statement = new Resource();
+                        if (args.length == 3) {
+                            statement.resultSetType = (Integer) args[1];
+                            statement.resultSetConcurrency = (Integer) args[2];
+                        }
+                        return createPreparedStatement(statement);
+                    }
+                    if ("getMetaData".equals(name)) {
+                        return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                return "getDatabaseProductName".equals(method.getName()) ? productName : null;
+                            }
+                        });
+                    }
+                    if ("close".equals(name)) {
+                        resource.closed = true;
+                        return null;
+                    }
+                    return BatchWriterTest.defaultValue(method);
+                }
+            });
+        }
+
+        PreparedStatement createPreparedStatement(final Resource resource) {
+            return (PreparedStatement) proxy(PreparedStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("setFetchSize".equals(name)) {
+                        resource.fetchSize = (Integer) args[0];
+                        return null;
+                    }
+                    if ("executeQuery".equals(name)) {
+                        resultSet = new Resource();
+                        return createResultSet(resultSet);
+                    }
+                    if ("close".equals(name)) {
+                        resource.closed = true;
+                        return null;
+                    }
+                    return BatchWriterTest.defaultValue(method);
+                }
+            });
+        }
+
+        // 第 i 行的数据为 i (从 1 开始)
+        ResultSet createResultSet(final Resource resource) {
+            final int[] row = new int[1];
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        if (resource.closed) {
+                            throw new SQLException("ResultSet is closed");
+                        }
+                        return ++row[0] <= rows;
+                    }
+                    if ("getInt".equals(name)) {
+                        return row[0];
+                    }
+                    if ("close".equals(name)) {
+                        resource.closed = true;
+                        return null;
+                    }
+                    return BatchWriterTest.defaultValue(method);
+                }
+            });
+        }
+
+        void assertClosed(boolean connectionClosed) {
+            Assert.assertTrue(resultSet.closed);
+            Assert.assertTrue(statement.closed);
+            Assert.assertEquals(connectionClosed, connection().closed);
+        }
+    }
+
+    static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(ResultIteratorTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+
+    static final RowMapper<Integer> INT_MAPPER = new RowMapper<Integer>() {
+        @Override
+        public Integer handle(ResultSet rs) throws SQLException {
+            return rs.getInt(1);
+        }
+    };
+
+    @Test
+    public void autoClose() {
+        MockDatabase db = new MockDatabase("H2", 3);
+        ResultIterator<Integer> it = new DbHelper(db.createDataSource()).queryAsIterator(INT_MAPPER, "select id from users");
+
+        List<Integer> values = new ArrayList<Integer>();
+        while (it.hasNext()) {
+            Assert.assertFalse(db.statement.closed);
+            values.add(it.next());
+        }
+        Assert.assertEquals(Arrays.asList(1, 2, 3), values);
+        db.assertClosed(true); // 读取完最后一行之后自动关闭
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void closeEarly() {
+        MockDatabase db = new MockDatabase("H2", 100);
+        ResultIterator<Integer> it = new DbHelper(db.createDataSource()).queryAsIterator(INT_MAPPER, "select id from users");
+
+        Assert.assertEquals(Integer.valueOf(1), it.next());
+        Assert.assertEquals(Integer.valueOf(2), it.next());
+        Assert.assertFalse(db.resultSet.closed);
+
+        it.close();
+        db.assertClosed(true);
+        Assert.assertFalse(it.hasNext());
+        it.close(); // 重复调用没有问题
+    }
+
+    @Test
+    public void rowMapperError() {
+        MockDatabase db = new MockDatabase("H2", 3);
+        RowMapper<Integer> mapper = new RowMapper<Integer>() {
+            @Override
+            public Integer handle(ResultSet rs) throws SQLException {
+                throw new IllegalStateException("bad row");
+            }
+        };
+        ResultIterator<Integer> it = new DbHelper(db.createDataSource()).queryAsIterator(mapper, "select id from users");
+        try {
+            it.next();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("bad row", e.getMessage());
+        }
+        db.assertClosed(true);
+    }
+
+    @Test
+    public void inTransaction() {
+        MockDatabase db = new MockDatabase("H2", 2);
+        DbHelper dao = new DbHelper(db.createDataSource());
+        Transaction tx = dao.transaction();
+        try {
+            ResultIterator<Integer> it = dao.queryAsIterator(INT_MAPPER, "select id from users");
+            while (it.hasNext()) {
+                it.next();
+            }
+            db.assertClosed(false); // 事务中的连接不能关闭
+            tx.commit();
+        } finally {
+            tx.close();
+        }
+        Assert.assertTrue(db.connection().closed);
+    }
+
+    @Test
+    public void streamingStatement() {
+        // MySQL 需要 Integer.MIN_VALUE 才会逐行读取
+        MockDatabase db = new MockDatabase("MySQL", 1);
+        DbHelper dao = new DbHelper(db.createDataSource());
+        dao.queryAsIterator(INT_MAPPER, "select id from users").close();
+        Assert.assertEquals(ResultSet.TYPE_FORWARD_ONLY, db.statement.resultSetType);
+        Assert.assertEquals(ResultSet.CONCUR_READ_ONLY, db.statement.resultSetConcurrency);
+        Assert.assertEquals(Integer.MIN_VALUE, db.statement.fetchSize);
+
+        final List<Integer> values = new ArrayList<Integer>();
+        dao.forEach(INT_MAPPER, new RowCallback<Integer>() {
+            @Override
+            public void execute(Integer row) {
+                values.add(row);
+            }
+        }, "select id from users");
+        Assert.assertEquals(Arrays.asList(1), values);
+        Assert.assertEquals(ResultSet.TYPE_FORWARD_ONLY, db.statement.resultSetType);
+        Assert.assertEquals(ResultSet.CONCUR_READ_ONLY, db.statement.resultSetConcurrency);
+        Assert.assertEquals(Integer.MIN_VALUE, db.statement.fetchSize);
+        db.assertClosed(true);
+
+        // 其他数据库使用 SqlDialect 的默认值
+        db = new MockDatabase("H2", 1);
+        dao = new DbHelper(db.createDataSource());
+        dao.queryAsIterator(INT_MAPPER, "select id from users").close();
+        Assert.assertEquals(dao.getDialect().getStreamingFetchSize(), db.statement.fetchSize);
+    }
+
+    @Test
+    public void forEachCallbackError() {
+        MockDatabase db = new MockDatabase("H2", 10);
+        try {
+            new DbHelper(db.createDataSource()).forEach(INT_MAPPER, new RowCallback<Integer>() {
+                @Override
+                public void execute(Integer row) {
+                    if (row == 3) {
+                        throw new IllegalStateException("stop");
+                    }
+                }
+            }, "select id from users");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("stop", e.getMessage());
+        }
+        db.assertClosed(true);
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BeanRowMapperTest {
+
+    public static class User {
+        private int id;
+        private String name;
+        private Integer age;
+        private boolean enabled;
+        private Long score;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Long getScore() {
+            return score;
+        }
+
+        public void setScore(Long score) {
+            this.score = score;
+        }
+    }
+
+    // 不是 public 的，使用反射绑定
+    static class HiddenUser {
+        private int id;
+        private boolean enabled;
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    @Test
+    public void testExactTypes() throws SQLException {
+        ResultSet rs = resultSet(new String[] { "ID", "NAME", "AGE", "ENABLED", "SCORE" }, new int[] { Types.INTEGER, Types.VARCHAR, Types.INTEGER, Types.BOOLEAN, Types.BIGINT }, new Object[] { 1, "jetbrick", null, true, 100L });
+        User user = new BeanRowMapper<User>(User.class).handle(rs);
+        Assert.assertEquals(1, user.getId());
+        Assert.assertEquals("jetbrick", user.getName());
+        Assert.assertNull(user.getAge());
+        Assert.assertTrue(user.isEnabled());
+        Assert.assertEquals(Long.valueOf(100), user.getScore());
+    }
+
+    @Test
+    public void testConvertedTypes() throws SQLException {
+        // CHAR 'Y'/'N' -> boolean, DECIMAL -> int/Integer/Long 仍然使用 TypeCastUtils 转换
+        String[] labels = { "ID", "AGE", "ENABLED", "SCORE" };
+        int[] types = { Types.DECIMAL, Types.VARCHAR, Types.CHAR, Types.NUMERIC };
+        User user = new BeanRowMapper<User>(User.class).handle(resultSet(labels, types, new Object[] { new java.math.BigDecimal("7"), "18", "Y", new java.math.BigDecimal("9") }));
+        Assert.assertEquals(7, user.getId());
+        Assert.assertEquals(Integer.valueOf(18), user.getAge());
+        Assert.assertTrue(user.isEnabled());
+        Assert.assertEquals(Long.valueOf(9), user.getScore());
+
+        HiddenUser hidden = new BeanRowMapper<HiddenUser>(HiddenUser.class).handle(resultSet(new String[] { "ID", "ENABLED" }, new int[] { Types.INTEGER, Types.CHAR }, new Object[] { 3, "Y" }));
+        Assert.assertEquals(3, hidden.id);
+        Assert.assertTrue(hidden.enabled);
+    }
+
+    @Test
+    public void testNullToPrimitive() {
+        // 和原来一样，NULL 不能赋值给基本类型 (无论是直接读取还是转换，生成的还是反射的)
+        assertNullRejected(User.class, Types.INTEGER);
+        assertNullRejected(User.class, Types.DECIMAL);
+        assertNullRejected(HiddenUser.class, Types.INTEGER);
+        assertNullRejected(HiddenUser.class, Types.DECIMAL);
+    }
+
+    @Test
+    public void testGeneratedClassesReused() throws SQLException {
+        String[] labels = { "ID", "NAME" };
+        int[] types = { Types.INTEGER, Types.VARCHAR };
+        new BeanRowMapper<User>(User.class).handle(resultSet(labels, types, new Object[] { 1, "a" }));
+        int count = RowBinderBuilder.getGeneratedCount();
+        Assert.assertTrue(count > 0);
+
+        // 绑定计划被淘汰 (或者 column label 不同) 之后，不会为同样的 setter 重复生成新的类
+        for (int i = 0; i < 100; i++) {
+            BeanBindingPlan.clearCache();
+            User user = new BeanRowMapper<User>(User.class).handle(resultSet(new String[] { "ID", i % 2 == 0 ? "NAME" : "name" }, types, new Object[] { i, "b" }));
+            Assert.assertEquals(i, user.getId());
+        }
+        Assert.assertEquals(count, RowBinderBuilder.getGeneratedCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertNullRejected(Class<?> beanClass, int sqlType) {
+        try {
+            new BeanRowMapper<Object>((Class<Object>) beanClass).handle(resultSet(new String[] { "ID" }, new int[] { sqlType }, new Object[] { null }));
+            Assert.fail(beanClass.getSimpleName() + ", sqlType=" + sqlType);
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    // 只有一行数据的 ResultSet，getXXX() 的行为和一般的 JDBC 驱动一致
+    private static ResultSet resultSet(final String[] labels, final int[] types, final Object[] values) {
+        final ResultSetMetaData rsmd = (ResultSetMetaData) Proxy.newProxyInstance(BeanRowMapperTest.class.getClassLoader(), new Class[] { ResultSetMetaData.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getColumnCount")) {
+                    return labels.length;
+                }
+                if (name.equals("getColumnLabel") || name.equals("getColumnName")) {
+                    return labels[(Integer) args[0] - 1];
+                }
+                if (name.equals("getColumnType")) {
+                    return types[(Integer) args[0] - 1];
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+        return (ResultSet) Proxy.newProxyInstance(BeanRowMapperTest.class.getClassLoader(), new Class[] { ResultSet.class }, new InvocationHandler() {
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getMetaData")) {
+                    return rsmd;
+                }
+                if (name.equals("wasNull")) {
+                    return wasNull;
+                }
+                if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                }
+                Object value = values[(Integer) args[0] - 1];
+                wasNull = (value == null);
+                Class<?> type = method.getReturnType();
+                if (name.equals("getObject") || name.equals("getString")) {
+                    return value == null ? null : (name.equals("getString") ? value.toString() : value);
+                }
+                if (type == Boolean.TYPE) {
+                    return value instanceof Boolean ? value : false;
+                }
+                if (type.isPrimitive()) {
+                    Number number = (value == null) ? 0 : (Number) value;
+                    if (type == Integer.TYPE) return number.intValue();
+                    if (type == Long.TYPE) return number.longValue();
+                    if (type == Short.TYPE) return number.shortValue();
+                    if (type == Byte.TYPE) return number.byteValue();
+                    if (type == Double.TYPE) return number.doubleValue();
+                    return number.floatValue();
+                }
+                return value;
+            }
+        });
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.routing;
+
+import java.lang.reflect.*;
+import java.sql.Connection;
+import java.util.*;
+import javax.sql.DataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReplicaRouterTest {
+
+    private static DataSource createDataSource() {
+        final Connection conn = (Connection) Proxy.newProxyInstance(ReplicaRouterTest.class.getClassLoader(), new Class[] { Connection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return null;
+            }
+        });
+        return (DataSource) Proxy.newProxyInstance(ReplicaRouterTest.class.getClassLoader(), new Class[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getConnection".equals(method.getName())) {
+                    return conn;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static ReplicaRouter createRouter(int count) {
+        List<DataSource> replicas = new ArrayList<DataSource>();
+        for (int i = 0; i < count; i++) {
+            replicas.add(createDataSource());
+        }
+        return new ReplicaRouter(replicas);
+    }
+
+    @Test
+    public void roundRobin() {
+        ReplicaRouter router = createRouter(3);
+        List<ReplicaDataSource> replicas = router.getReplicas();
+        for (int i = 0; i < 6; i++) {
+            Assert.assertSame(replicas.get(i % 3), router.select());
+        }
+
+        replicas.get(1).setAvailable(false);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertNotSame(replicas.get(1), router.select());
+        }
+
+        replicas.get(0).setAvailable(false);
+        replicas.get(2).setAvailable(false);
+        Assert.assertNull(router.select());
+    }
+
+    @Test
+    public void leastInFlight() throws Exception {
+        ReplicaRouter router = createRouter(2);
+        router.setSelector(new LeastInFlightReplicaSelector());
+
+        ReplicaDataSource first = router.select();
+        Connection c1 = first.getConnection();
+        Assert.assertEquals(1, first.getInFlight());
+
+        ReplicaDataSource second = router.select();
+        Assert.assertNotSame(first, second);
+        Connection c2 = second.getConnection();
+        Connection c3 = second.getConnection();
+        Assert.assertSame(first, router.select());
+
+        c2.close();
+        c3.close();
+        c3.close(); // 重复 close 不能重复计数
+        Assert.assertEquals(0, second.getInFlight());
+        Assert.assertSame(second, router.select());
+
+        c1.close();
+        Assert.assertEquals(0, first.getInFlight());
+    }
+
+    @Test
+    public void sticky() throws Exception {
+        ReplicaRouter router = createRouter(1);
+        router.setStickyMillis(200);
+        Assert.assertFalse(router.isSticky());
+
+        router.markWrite();
+        Assert.assertTrue(router.isSticky());
+
+        // 其他线程不受影响
+        final boolean[] result = new boolean[1];
+        final ReplicaRouter r = router;
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                result[0] = r.isSticky();
+            }
+        };
+        t.start();
+        t.join();
+        Assert.assertFalse(result[0]);
+
+        Thread.sleep(300);
+        Assert.assertFalse(router.isSticky());
+    }
+}
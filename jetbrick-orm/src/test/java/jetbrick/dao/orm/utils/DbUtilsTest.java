@@ -0,0 +1,54 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import jetbrick.dao.dialect.SqlDialect;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DbUtilsTest {
+
+    @Test
+    public void seekWhere() {
+        String condition = "((u.id > ?))";
+        Assert.assertEquals("select u.* from users u where ((u.id > ?))", DbUtils.get_sql_seek_where("select u.* from users u", condition));
+        Assert.assertEquals("select u.* from users u where ((u.id > ?)) and (u.type = ? or u.type = ?)", DbUtils.get_sql_seek_where("select u.* from users u where u.type = ? or u.type = ?", condition));
+        // 子查询和字符串中的关键字
+        Assert.assertEquals("select * from users u where ((u.id > ?)) and (u.name <> 'group by' and exists (select 1 from roles r where r.uid = u.id group by r.uid))", DbUtils.get_sql_seek_where("select * from users u where u.name <> 'group by' and exists (select 1 from roles r where r.uid = u.id group by r.uid)", condition));
+
+        Assert.assertNull(DbUtils.get_sql_seek_where("select type, count(*) from users group by type", condition));
+        Assert.assertNull(DbUtils.get_sql_seek_where("select id from users union select id from roles", condition));
+        Assert.assertNull(DbUtils.get_sql_seek_where("select id from users order by id", condition));
+    }
+
+    @Test
+    public void seekpage() {
+        String sql = "select * from users u where ((u.id > ?))";
+        Assert.assertEquals(sql + " order by u.id limit 11", SqlDialect.getDialect("mysql").sql_seekpage(sql, "u.id", 11));
+        Assert.assertEquals(sql + " order by u.id limit 11", SqlDialect.getDialect("h2").sql_seekpage(sql, "u.id", 11));
+        Assert.assertEquals("select * from (" + sql + " order by u.id) where ROWNUM <= 11", SqlDialect.getDialect("oracle").sql_seekpage(sql, "u.id", 11));
+        Assert.assertEquals("select top 11 * from users u where ((u.id > ?)) order by u.id", SqlDialect.getDialect("Microsoft SQL Server").sql_seekpage(sql, "u.id", 11));
+    }
+
+    @Test
+    public void columnLabel() {
+        Assert.assertEquals("id", DbUtils.get_sql_column_label("u.id"));
+        Assert.assertEquals("id", DbUtils.get_sql_column_label("id"));
+    }
+}
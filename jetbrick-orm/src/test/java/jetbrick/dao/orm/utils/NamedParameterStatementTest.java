@@ -0,0 +1,83 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.dao.orm.utils.NamedParameterStatement.ParsedSql;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NamedParameterStatementTest {
+
+    @Test
+    public void parse() {
+        ParsedSql parsed = NamedParameterStatement.getParsedSql("select * from t where a=:a or b=:b or c=:a and d=':x' and e=\":y\"");
+        Assert.assertEquals("select * from t where a=? or b=? or c=? and d=':x' and e=\":y\"", parsed.sql);
+        Assert.assertArrayEquals(new int[] { 1, 3 }, parsed.nameIndexMap.get("a"));
+        Assert.assertArrayEquals(new int[] { 2 }, parsed.nameIndexMap.get("b"));
+        Assert.assertNull(parsed.nameIndexMap.get("x"));
+        Assert.assertSame(parsed, NamedParameterStatement.getParsedSql("select * from t where a=:a or b=:b or c=:a and d=':x' and e=\":y\""));
+    }
+
+    @Test
+    public void concurrentParse() throws Exception {
+        NamedParameterStatement.clearParseCache();
+
+        final int threads = 16;
+        final int loops = 20000;
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < loops; i++) {
+                            // 动态拼接的 SQL 超出缓存大小，同时存在大量重复的 SQL
+                            int n = (i * 31 + seed) % 3000;
+                            ParsedSql parsed = NamedParameterStatement.getParsedSql("select * from t" + n + " where id=:id and name=:name or id=:id");
+                            if (!parsed.sql.equals("select * from t" + n + " where id=? and name=? or id=?")) {
+                                errors.incrementAndGet();
+                            }
+                            int[] id = parsed.nameIndexMap.get("id");
+                            int[] name = parsed.nameIndexMap.get("name");
+                            if (id == null || id.length != 2 || id[0] != 1 || id[1] != 3 || name == null || name.length != 1 || name[0] != 2) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        Assert.assertEquals(0, errors.get());
+        Assert.assertTrue(NamedParameterStatement.getParseCacheSize() <= 1024);
+        Assert.assertEquals((long) threads * loops, NamedParameterStatement.getParseCacheHitCount() + NamedParameterStatement.getParseCacheMissCount());
+        Assert.assertTrue(NamedParameterStatement.getParseCacheHitRate() > 0);
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import javax.sql.DataSource;
+import jetbrick.dao.orm.*;
+import jetbrick.dao.orm.tx.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PreparedStatementCacheTest {
+
+    // 模拟 JDBC 驱动的行为: 同一个 PreparedStatement 再次 executeQuery 时关闭之前的 ResultSet
+    static final class MockDatabase {
+        final List<PreparedStatement> prepared = new ArrayList<PreparedStatement>();
+        final Set<Object> closed = new HashSet<Object>();
+
+        Connection createConnection() {
+            return (Connection) proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("prepareStatement".equals(name)) {
+                        PreparedStatement ps = createPreparedStatement();
+                        prepared.add(ps);
+                        return ps;
+                    }
+                    if ("getMetaData".equals(name)) {
+                        return proxy(DatabaseMetaData.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                return "getDatabaseProductName".equals(method.getName()) ? "MySQL" : null;
+                            }
+                        });
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        DataSource createDataSource() {
+            final Connection conn = createConnection();
+            return (DataSource) proxy(DataSource.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    return "getConnection".equals(method.getName()) ? conn : null;
+                }
+            });
+        }
+
+        PreparedStatement createPreparedStatement() {
+            final ResultSet[] current = new ResultSet[1];
+            return (PreparedStatement) proxy(PreparedStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("executeQuery".equals(name)) {
+                        if (current[0] != null) {
+                            closed.add(current[0]);
+                        }
+                        current[0] = createResultSet(2);
+                        return current[0];
+                    }
+                    if ("close".equals(name)) {
+                        closed.add(proxy);
+                        return null;
+                    }
+                    if ("isClosed".equals(name)) {
+                        return closed.contains(proxy);
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        ResultSet createResultSet(final int rows) {
+            final int[] index = new int[1];
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        if (closed.contains(proxy)) {
+                            throw new SQLException("ResultSet is closed.");
+                        }
+                        return ++index[0] <= rows;
+                    }
+                    if ("close".equals(name)) {
+                        closed.add(proxy);
+                        return null;
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+    }
+
+    static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(PreparedStatementCacheTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+
+    static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        }
+        if (type == Integer.TYPE) {
+            return 0;
+        }
+        if (type == Long.TYPE) {
+            return 0L;
+        }
+        return null;
+    }
+
+    @Test
+    public void nested() throws SQLException {
+        MockDatabase db = new MockDatabase();
+        PreparedStatementCache cache = new PreparedStatementCache(db.createConnection(), 4);
+
+        PreparedStatement ps1 = cache.prepareStatement("select 1");
+        PreparedStatement ps2 = cache.prepareStatement("select 1"); // 外层还在使用
+        Assert.assertNotSame(ps1, ps2);
+        Assert.assertEquals(1, cache.size());
+
+        cache.release(ps2);
+        Assert.assertTrue(db.closed.contains(ps2));
+        cache.release(ps1);
+        Assert.assertFalse(db.closed.contains(ps1));
+
+        Assert.assertSame(ps1, cache.prepareStatement("select 1"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        cache.release(ps1);
+
+        cache.close();
+        Assert.assertTrue(db.closed.contains(ps1));
+    }
+
+    @Test
+    public void evictInUse() throws SQLException {
+        MockDatabase db = new MockDatabase();
+        PreparedStatementCache cache = new PreparedStatementCache(db.createConnection(), 1);
+
+        PreparedStatement ps1 = cache.prepareStatement("select 1");
+        PreparedStatement ps2 = cache.prepareStatement("select 2"); // 淘汰 ps1
+        Assert.assertFalse(db.closed.contains(ps1));
+
+        cache.release(ps1);
+        Assert.assertTrue(db.closed.contains(ps1));
+        cache.release(ps2);
+        Assert.assertFalse(db.closed.contains(ps2));
+        Assert.assertSame(ps2, cache.prepareStatement("select 2"));
+        cache.release(ps2);
+
+        // 使用中被淘汰，在 close() 时关闭
+        PreparedStatement ps3 = cache.prepareStatement("select 3");
+        cache.prepareStatement("select 4");
+        cache.close();
+        Assert.assertTrue(db.closed.contains(ps2));
+        Assert.assertTrue(db.closed.contains(ps3));
+    }
+
+    @Test
+    public void nestedQueryInTransaction() {
+        MockDatabase db = new MockDatabase();
+        final DbHelper dao = new DbHelper(db.createDataSource());
+        final String sql = "select * from users";
+        final List<Integer> counts = new ArrayList<Integer>();
+        final ResultSetHandler<Integer> counter = new ResultSetHandler<Integer>() {
+            @Override
+            public Integer handle(ResultSet rs) throws SQLException {
+                int rows = 0;
+                while (rs.next()) {
+                    rows++;
+                }
+                return rows;
+            }
+        };
+
+        Transaction tx = dao.transaction();
+        try {
+            int rows = dao.query(new ResultSetHandler<Integer>() {
+                @Override
+                public Integer handle(ResultSet rs) throws SQLException {
+                    int rows = 0;
+                    while (rs.next()) {
+                        rows++;
+                        counts.add(dao.query(counter, sql)); // 嵌套执行相同的 SQL
+                    }
+                    return rows;
+                }
+            }, sql);
+            Assert.assertEquals(2, rows);
+            Assert.assertEquals(Arrays.asList(2, 2), counts);
+        } finally {
+            tx.close();
+        }
+        for (PreparedStatement ps : db.prepared) {
+            Assert.assertTrue(db.closed.contains(ps));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.action.annotations.ArgumentGetter;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 比较 ASM 生成的 ActionInvoker 和反射调用 Action 方法的开销.
+ *
+ * <pre>
+ * mvn -P benchmark -pl jetbrick-webmvc test-compile exec:exec -Dbenchmark=ActionInvokerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionInvokerBenchmark {
+
+    public static class SampleController {
+        public String show(String name, int page, long id) {
+            return name;
+        }
+    }
+
+    static class ConstantArgumentGetter implements ArgumentGetter<Object> {
+        private final Object value;
+
+        ConstantArgumentGetter(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object get(RequestContext ctx) {
+            return value;
+        }
+    }
+
+    private final SampleController controller = new SampleController();
+    private ActionMethodInjector generated;
+    private ActionMethodInjector reflection;
+
+    @Setup
+    public void setup() throws Exception {
+        Method method = SampleController.class.getMethod("show", String.class, int.class, long.class);
+        ArgumentGetter<?>[] getters = new ArgumentGetter[] { new ConstantArgumentGetter("jetbrick"), new ConstantArgumentGetter(1), new ConstantArgumentGetter(100L) };
+        ActionInvoker invoker = ActionInvokerBuilder.create(SampleController.class, method, getters);
+        if (invoker == null) {
+            throw new IllegalStateException("ActionInvoker is not generated");
+        }
+        generated = new ActionMethodInjector(method, getters, invoker);
+        reflection = new ActionMethodInjector(method, getters, null);
+    }
+
+    @Benchmark
+    public Object generated() throws Exception {
+        return generated.invoke(controller, null);
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return reflection.invoke(controller, null);
+    }
+}
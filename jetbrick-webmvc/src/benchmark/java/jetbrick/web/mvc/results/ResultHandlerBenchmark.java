@@ -0,0 +1,104 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import java.util.concurrent.TimeUnit;
+import jetbrick.web.mvc.*;
+import jetbrick.web.mvc.config.WebConfig;
+import org.openjdk.jmh.annotations.*;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * ResultHandlerResolver 查找 ResultHandler，以及 ObjectResultHandler/MimetypeUtils 的开销.
+ *
+ * <pre>
+ * mvn -P benchmark -pl jetbrick-webmvc test-compile exec:exec -Dbenchmark=ResultHandlerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultHandlerBenchmark {
+
+    // 没有直接注册的子类，需要按照父类查找
+    public static class MyJson extends JSONObject {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private ResultHandlerResolver resolver;
+    private ResultHandler<Object> objectHandler;
+    private MockResponse response;
+    private RequestContext ctx;
+    private MyJson json;
+    private int counter;
+
+    @Setup
+    public void setup() {
+        WebConfig config = WebTestUtils.getWebConfig();
+        resolver = config.getResultHandlerResolver();
+        objectHandler = resolver.lookup(Object.class);
+        response = new MockResponse();
+        ctx = WebTestUtils.createRequestContext(new MockRequest(), response);
+        json = new MyJson();
+        json.put("id", 1);
+    }
+
+    @Benchmark
+    public Object lookupSubclass() {
+        return resolver.lookup(MyJson.class);
+    }
+
+    @Benchmark
+    public Object handleJsonSubclass() throws Exception {
+        objectHandler.handle(ctx, json);
+        return reset();
+    }
+
+    @Benchmark
+    public Object handleHtmlView() throws Exception {
+        objectHandler.handle(ctx, "html:hello");
+        return reset();
+    }
+
+    @Benchmark
+    public String contentTypeCached() {
+        return MimetypeUtils.getContentType("application/json", "utf-8");
+    }
+
+    // 对比：每次拼接字符串
+    @Benchmark
+    public String contentTypeConcat() {
+        return "application/json" + "; charset=" + getEncoding();
+    }
+
+    // 避免字符串拼接被编译器优化成常量
+    private String getEncoding() {
+        return ((counter++) & 1) == 0 ? "utf-8" : "UTF-8";
+    }
+
+    // 避免 MockResponse 的 body 无限增长
+    private Object reset() throws Exception {
+        String body = response.getBodyAsString();
+        response.body.reset();
+        return body;
+    }
+}
@@ -20,6 +20,7 @@ package jetbrick.web.mvc;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +32,7 @@ import jetbrick.web.mvc.config.WebConfigBuilder;
 import jetbrick.web.mvc.interceptor.Interceptor;
 import jetbrick.web.mvc.interceptor.InterceptorChainImpl;
 import jetbrick.web.mvc.plugin.Plugin;
+import jetbrick.web.mvc.results.GzipUtils;
 import jetbrick.web.mvc.results.ResultHandler;
 import jetbrick.web.servlet.RequestUtils;
 import jetbrick.web.servlet.ResponseUtils;
@@ -46,6 +48,8 @@ public final class DispatcherFilter implements Filter {
     private ResultHandlerResolver resultHandlerResolver;
     private ExceptionHandler exceptionHandler;
     private String encoding;
+    private boolean leanDispatch;
+    private ThreadLocal<DispatchState> dispatchStates;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -60,12 +64,7 @@ public final class DispatcherFilter implements Filter {
         WebContext.setServletContext(filterConfig.getServletContext());
 
         try {
-            config = WebConfigBuilder.build(filterConfig);
-            encoding = config.getHttpEncoding();
-            bypassUrls = config.getBypassRequestUrls();
-            router = config.getRouter();
-            resultHandlerResolver = config.getResultHandlerResolver();
-            exceptionHandler = config.getExceptionHandler();
+            initialize(WebConfigBuilder.build(filterConfig));
 
             log.info("router = {}", router.getClass().getName());
             log.info("exception.handler = {}", exceptionHandler == null ? null : exceptionHandler.getClass().getName());
@@ -87,10 +86,31 @@ public final class DispatcherFilter implements Filter {
         }
 
         log.info("development = {}", config.isDevelopment());
+        log.info("dispatch.lean = {}", leanDispatch);
         log.info("web.root = {}", config.getWebroot());
         log.info("DispatcherFilter loaded successfully.");
     }
 
+    // 从 WebConfig 中获取 doFilter() 需要的组件 (测试的时候不经过 init() 直接调用)
+    void initialize(WebConfig config) {
+        this.config = config;
+        encoding = config.getHttpEncoding();
+        bypassUrls = config.getBypassRequestUrls();
+        router = config.getRouter();
+        resultHandlerResolver = config.getResultHandlerResolver();
+        exceptionHandler = config.getExceptionHandler();
+        leanDispatch = config.isLeanDispatch();
+        if (leanDispatch) {
+            final List<Interceptor> interceptors = config.getInterceptors();
+            dispatchStates = new ThreadLocal<DispatchState>() {
+                @Override
+                protected DispatchState initialValue() {
+                    return new DispatchState(interceptors);
+                }
+            };
+        }
+    }
+
     @Override
     public void destroy() {
         log.info("DispatcherFilter destroy...");
@@ -102,6 +122,7 @@ public final class DispatcherFilter implements Filter {
             log.info("destroy plugin: {}", plugin.getClass().getName());
             plugin.destory();
         }
+        GzipUtils.destroy();
         log.info("DispatcherFilter exit.");
     }
 
@@ -124,21 +145,36 @@ public final class DispatcherFilter implements Filter {
         }
 
         RequestContext ctx = null;
+        DispatchState state = null;
+        InterceptorChainImpl interceptorChain = null;
+        boolean success = false;
         try {
             HttpMethod httpMethod = HttpMethod.valueOf(request.getMethod());
             RouteInfo route = router.lookup(request, path, httpMethod);
-            ctx = new RequestContext(request, response, path, httpMethod, route);
 
-            List<Interceptor> interceptors = config.getInterceptors();
-            InterceptorChainImpl interceptorChain = new InterceptorChainImpl(interceptors, ctx);
+            if (leanDispatch && (state = dispatchStates.get()).acquire()) {
+                // 复用当前线程的 RequestContext 和 InterceptorChain
+                ctx = state.ctx;
+                ctx.initialize(request, response, path, httpMethod, route);
+                interceptorChain = state.chain;
+                interceptorChain.reset(ctx);
+            } else {
+                state = null; // 嵌套调用 (比如 forward) 的时候，不能复用
+                ctx = new RequestContext(request, response, path, httpMethod, route);
+                interceptorChain = new InterceptorChainImpl(config.getInterceptors(), ctx);
+            }
             interceptorChain.invoke();
 
-            ResultInfo result = interceptorChain.getResult();
-            if (result != null) {
-                ResultHandler<Object> handler = resultHandlerResolver.lookup(result.getResultClass());
-                handler.handle(ctx, result.getResultObject());
+            if (interceptorChain.isExecuted()) {
+                ResultHandler<Object> handler = resultHandlerResolver.lookup(interceptorChain.getResultClass());
+                handler.handle(ctx, interceptorChain.getResultObject());
             }
+            interceptorChain.afterRender();
+            success = true;
         } catch (Exception e) {
+            if (interceptorChain != null) {
+                interceptorChain.afterRender(e); // 出错的时候，RenderInterceptor 需要恢复原始的 response
+            }
             request.setAttribute(ExceptionHandler.KEY_IN_REQUEST, e);
 
             if (exceptionHandler != null) {
@@ -157,7 +193,45 @@ public final class DispatcherFilter implements Filter {
             }
             throw new ServletException(e);
         } finally {
+            if (ctx != null && !success) ctx.completeAsyncOnError();
             if (ctx != null) ctx.destory();
+            if (state != null) state.release();
+        }
+    }
+
+    // 每个线程一份，用于 lean dispatch 模式下复用对象.
+    // 注意：这种模式下，请求结束后不能再持有 RequestContext 的引用 (包括子线程，异步请求除外).
+    static final class DispatchState {
+        // 异步请求结束之后交还回来的 RequestContext
+        private final AtomicReference<RequestContext> spare = new AtomicReference<RequestContext>();
+        RequestContext ctx;
+        final InterceptorChainImpl chain;
+        private boolean inUse;
+
+        public DispatchState(List<Interceptor> interceptors) {
+            this.ctx = new RequestContext();
+            this.chain = new InterceptorChainImpl(interceptors, ctx);
+        }
+
+        public boolean acquire() {
+            if (inUse) {
+                return false;
+            }
+            inUse = true;
+            return true;
+        }
+
+        public void release() {
+            chain.reset(null); // 异步请求不会再使用 InterceptorChain
+            if (ctx.isAsyncStarted()) {
+                // 异步请求还在其他线程中使用这个 RequestContext，结束之后才会放入 spare
+                ctx.recycleAfterAsync(spare);
+                RequestContext next = spare.getAndSet(null);
+                ctx = (next != null) ? next : new RequestContext();
+            } else {
+                ctx.recycle();
+            }
+            inUse = false;
         }
     }
 }
@@ -19,8 +19,11 @@
 package jetbrick.web.mvc;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
-import javax.servlet.ServletContext;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.*;
 import javax.servlet.http.*;
 import jetbrick.ioc.Ioc;
 import jetbrick.reflect.MethodInfo;
@@ -32,13 +35,24 @@ import jetbrick.web.servlet.RequestIntrospectUtils;
 
 public class RequestContext {
     private final static ThreadLocal<RequestContext> threadContext = new InheritableThreadLocal<RequestContext>();
-    private final HttpServletResponse response;
-    private final HttpServletRequest request;
-    private final String pathInfo;
-    private final HttpMethod httpMethod;
-    private final RouteInfo routeInfo;
+    private HttpServletResponse response;
+    private HttpServletRequest request;
+    private String pathInfo;
+    private HttpMethod httpMethod;
+    private RouteInfo routeInfo;
+    private AsyncContext asyncContext;
+    private AsyncRecycler asyncRecycler;
+    private boolean asyncHandled;
 
     protected RequestContext(HttpServletRequest request, HttpServletResponse response, String pathInfo, HttpMethod httpMethod, RouteInfo routeInfo) {
+        initialize(request, response, pathInfo, httpMethod, routeInfo);
+    }
+
+    // 用于复用的空对象，使用前必须调用 initialize()
+    protected RequestContext() {
+    }
+
+    protected void initialize(HttpServletRequest request, HttpServletResponse response, String pathInfo, HttpMethod httpMethod, RouteInfo routeInfo) {
         this.request = FileUploaderUtils.asRequest(request);// support multipart request
         this.response = response;
         this.pathInfo = pathInfo;
@@ -52,10 +66,73 @@ public class RequestContext {
         threadContext.remove();
     }
 
+    // 释放所有的引用，以便下一次复用
+    protected void recycle() {
+        this.request = null;
+        this.response = null;
+        this.pathInfo = null;
+        this.httpMethod = null;
+        this.routeInfo = null;
+        this.asyncContext = null;
+        this.asyncRecycler = null;
+        this.asyncHandled = false;
+    }
+
+    // 异步请求结束之后 (可能早于或者晚于本方法的调用)，recycle 并放入 pool，以便 lean dispatch 模式下复用
+    protected void recycleAfterAsync(AtomicReference<RequestContext> pool) {
+        asyncRecycler.release(pool);
+    }
+
     public static RequestContext getCurrent() {
         return threadContext.get();
     }
 
+    //----- async --------------------------------------------
+    public boolean isAsyncStarted() {
+        return asyncContext != null;
+    }
+
+    // 启动异步请求 (需要配置 async-supported)，重复调用返回同一个 AsyncContext
+    public AsyncContext startAsync() {
+        if (asyncContext == null) {
+            asyncContext = request.startAsync(request, response);
+            asyncRecycler = new AsyncRecycler();
+            asyncContext.addListener(asyncRecycler);
+        }
+        return asyncContext;
+    }
+
+    // 异步请求已经交给 DeferredResult 等处理，由它们负责结束异步请求
+    public void setAsyncHandled() {
+        this.asyncHandled = true;
+    }
+
+    // 请求出错的时候，如果异步请求已经启动但是没有人负责结束，那么在这里结束，否则要一直等到超时
+    protected void completeAsyncOnError() {
+        if (asyncContext != null && !asyncHandled) {
+            asyncContext.complete();
+        }
+    }
+
+    // 在当前线程中绑定 RequestContext 并执行 task，完成后结束异步请求
+    public void dispatchAsync(Runnable task) {
+        if (asyncContext == null) {
+            throw new IllegalStateException("Async request is not started");
+        }
+        RequestContext old = threadContext.get();
+        threadContext.set(this);
+        try {
+            task.run();
+        } finally {
+            if (old == null) {
+                threadContext.remove();
+            } else {
+                threadContext.set(old);
+            }
+            asyncContext.complete();
+        }
+    }
+
     //----- servlet ------------------------------------------
     public HttpServletRequest getRequest() {
         return request;
@@ -65,6 +142,11 @@ public class RequestContext {
         return response;
     }
 
+    // 替换 response，比如需要缓存输出内容的 Interceptor
+    public void setResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
     public HttpSession getSession() {
         return request.getSession();
     }
@@ -173,6 +255,20 @@ public class RequestContext {
         return Collections.emptyList();
     }
 
+    /**
+     * 直接从 request 中流式读取每一个 part (需要配置 web.upload.lazy = true)，
+     * 必须在访问任何参数或者文件之前调用，非 multipart 请求返回 null.
+     */
+    public Iterator<StreamingPart> getPartIterator() {
+        if (request instanceof LazyMultipartRequest) {
+            return ((LazyMultipartRequest) request).getPartIterator();
+        }
+        if (request instanceof MultipartRequest) {
+            throw new IllegalStateException("The multipart request has been already parsed, set web.upload.lazy = true to enable streaming.");
+        }
+        return null;
+    }
+
     public String getPathVariable(String name) {
         return routeInfo.getPathVariable(name);
     }
@@ -214,4 +310,43 @@ public class RequestContext {
         ResultHandler<Object> handler = resolver.lookup(resultClass);
         handler.handle(this, result);
     }
+
+    // 异步请求完成 (onComplete) 并且 DispatcherFilter 已经释放 (release) 之后，才能复用 RequestContext
+    private final class AsyncRecycler implements AsyncListener {
+        private static final int COMPLETED = 1;
+        private static final int RELEASED = 2;
+        private final AtomicInteger state = new AtomicInteger();
+        private volatile AtomicReference<RequestContext> pool;
+
+        void release(AtomicReference<RequestContext> pool) {
+            this.pool = pool;
+            if (state.addAndGet(RELEASED) == (COMPLETED | RELEASED)) {
+                recycleToPool();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            if (state.addAndGet(COMPLETED) == (COMPLETED | RELEASED)) {
+                recycleToPool();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+
+        private void recycleToPool() {
+            recycle();
+            pool.compareAndSet(null, RequestContext.this);
+        }
+    }
 }
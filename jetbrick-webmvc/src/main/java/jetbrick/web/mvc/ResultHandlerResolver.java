@@ -20,6 +20,8 @@ package jetbrick.web.mvc;
 
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jetbrick.beans.ClassLoaderUtils;
 import jetbrick.beans.ClassUtils;
 import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.*;
@@ -33,6 +35,8 @@ import com.google.gson.JsonElement;
  */
 public class ResultHandlerResolver {
     private final Map<Class<?>, ResultHandler<?>> mapping = new IdentityHashMap<Class<?>, ResultHandler<?>>();
+    // 缓存 lookup() 的结果 (包括子类)，避免每次都遍历 mapping
+    private final ConcurrentHashMap<Class<?>, ResultHandler<?>> cache = new ConcurrentHashMap<Class<?>, ResultHandler<?>>();
 
     @Inject
     private Ioc ioc;
@@ -46,6 +50,7 @@ public class ResultHandlerResolver {
         register(RawText.class, RawTextResultHandler.class);
         register(RawData.class, RawDataResultHandler.class);
         register(RawDownload.class, RawDownloadResultHandler.class);
+        register(DeferredResult.class, DeferredResultHandler.class);
 
         if (ClassUtils.available("com.alibaba.fastjson.JSONAware")) {
             register(JSONAware.class, FastjsonResultHandler.class);
@@ -53,6 +58,12 @@ public class ResultHandlerResolver {
         if (ClassUtils.available("com.google.gson.JsonElement")) {
             register(JsonElement.class, GsonResultHandler.class);
         }
+        if (ClassUtils.available("java.util.concurrent.CompletionStage")) {
+            // JDK8+ 才有 CompletionStage，按照类名注册，不在这里引用 JDK8 的类型
+            Class<?> resultClass = ClassLoaderUtils.loadClass("java.util.concurrent.CompletionStage");
+            Class<?> resultHandlerClass = ClassLoaderUtils.loadClass("jetbrick.web.mvc.results.CompletionStageResultHandler");
+            register(resultClass, resultHandlerClass);
+        }
     }
 
     public void register(Class<?> resultClass, Class<?> resultHandlerClass) {
@@ -60,10 +71,21 @@ public class ResultHandlerResolver {
 
         ResultHandler<?> resultHandler = (ResultHandler<?>) ioc.injectClass(resultHandlerClass);
         mapping.put(resultClass, resultHandler);
+        cache.clear();
     }
 
     @SuppressWarnings("unchecked")
     public ResultHandler<Object> lookup(Class<?> resultClass) {
+        ResultHandler<Object> result = (ResultHandler<Object>) cache.get(resultClass);
+        if (result == null) {
+            result = doLookup(resultClass);
+            cache.putIfAbsent(resultClass, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResultHandler<Object> doLookup(Class<?> resultClass) {
         ResultHandler<Object> result = (ResultHandler<Object>) mapping.get(resultClass);
         if (result == null) {
             // Special code for Object.class as result
@@ -95,6 +117,7 @@ public class ResultHandlerResolver {
             Class<?> targetClass = entry.getKey();
             if (targetClass != Object.class && targetClass.isAssignableFrom(resultClass)) {
                 mapping.put(resultClass, entry.getValue()); // 发现后关联
+                cache.clear();
                 return true;
             }
         }
@@ -18,29 +18,31 @@
  */
 package jetbrick.web.mvc.action;
 
-import jetbrick.lang.concurrent.ConcurrentInitializer;
-import jetbrick.lang.concurrent.LazyInitializer;
+import jetbrick.beans.ClassLoaderUtils;
 import jetbrick.reflect.MethodInfo;
 import jetbrick.web.mvc.RequestContext;
 import jetbrick.web.mvc.ResultInfo;
+import jetbrick.web.mvc.results.DeferredResult;
 import jetbrick.web.mvc.router.UrlTemplate;
 
 public final class ActionInfo {
+    // JDK8+ 才有 CompletionStage
+    private static final Class<?> COMPLETION_STAGE_CLASS = ClassLoaderUtils.loadClass("java.util.concurrent.CompletionStage");
+
     private final ControllerInfo controller;
     private final MethodInfo method;
     private final UrlTemplate urlTemplate;
-
-    private final ConcurrentInitializer<ActionMethodInjector> methodInjector = new LazyInitializer<ActionMethodInjector>() {
-        @Override
-        protected ActionMethodInjector initialize() {
-            return ActionMethodInjector.create(method, controller.getType());
-        }
-    };
+    private final Class<?> resultClass;
+    private final boolean async;
+    private final ActionMethodInjector methodInjector;
 
     public ActionInfo(ControllerInfo controller, MethodInfo method, String url) {
         this.controller = controller;
         this.method = method;
         this.urlTemplate = new UrlTemplate(url);
+        this.resultClass = method.getRawReturnType(controller.getType());
+        this.async = isAsyncResultClass(resultClass);
+        this.methodInjector = ActionMethodInjector.create(method, controller.getType()); // 注册的时候就生成 ActionInvoker
     }
 
     // 和实际的 URL 进行匹配，并返回成功匹配的参数(pathVariables)
@@ -49,10 +51,23 @@ public final class ActionInfo {
     }
 
     public ResultInfo execute(RequestContext ctx) throws Exception {
+        return new ResultInfo(resultClass, invoke(ctx));
+    }
+
+    // 执行 Action，直接返回结果对象 (结果的类型由 getResultClass() 获得)
+    public Object invoke(RequestContext ctx) throws Exception {
         Object object = controller.getObject();
-        Object result = methodInjector.get().invoke(object, ctx);
+        return methodInjector.invoke(object, ctx);
+    }
 
-        return new ResultInfo(method.getRawReturnType(controller.getType()), result);
+    // Action 声明的返回值类型，注册的时候就已经确定
+    public Class<?> getResultClass() {
+        return resultClass;
+    }
+
+    // 返回值是否为 DeferredResult/CompletionStage (异步执行)
+    public boolean isAsync() {
+        return async;
     }
 
     public MethodInfo getMethod() {
@@ -62,4 +77,11 @@ public final class ActionInfo {
     public Class<?> getControllerClass() {
         return controller.getType();
     }
+
+    private static boolean isAsyncResultClass(Class<?> resultClass) {
+        if (DeferredResult.class.isAssignableFrom(resultClass)) {
+            return true;
+        }
+        return COMPLETION_STAGE_CLASS != null && COMPLETION_STAGE_CLASS.isAssignableFrom(resultClass);
+    }
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import static jetbrick.asm.Opcodes.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.asm.Label;
+import jetbrick.asm.MethodVisitor;
+import jetbrick.asm.Type;
+import jetbrick.reflect.asm.ASMBuilder;
+import jetbrick.reflect.asm.ASMFactory;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.action.annotations.ArgumentGetter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 为每个 Action 生成一个 {@link ActionInvoker} 的实现类，相当于：
+ *
+ * <pre>
+ * public Object invoke(Object action, RequestContext ctx) {
+ *     return ((UserController) action).edit((Long) g0.get(ctx), (String) g1.get(ctx));
+ * }
+ * </pre>
+ *
+ * 基本类型的参数会先检查是否为 null，和反射调用一样抛出 IllegalArgumentException.
+ */
+final class ActionInvokerBuilder {
+    private static final Logger log = LoggerFactory.getLogger(ActionInvokerBuilder.class);
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final String ARGUMENT_GETTER_NAME = Type.getInternalName(ArgumentGetter.class);
+    private static final String REQUEST_CONTEXT_DESC = Type.getDescriptor(RequestContext.class);
+
+    /**
+     * 生成 ActionInvoker，如果无法生成 (比如 Action 不是 public 的)，那么返回 null.
+     */
+    public static ActionInvoker create(Class<?> declaringClass, Method method, ArgumentGetter<?>[] getters) {
+        if (!Modifier.isPublic(declaringClass.getModifiers()) || !Modifier.isPublic(method.getModifiers())) {
+            log.debug("ActionInvoker is not generated for non-public action {}, use reflection instead.", method);
+            return null;
+        }
+
+        String generatedKlassName = ActionInvoker.class.getPackage().getName() + ".delegate." + declaringClass.getName().replace('.', '_') + "_" + method.getName() + "_" + SEQUENCE.incrementAndGet();
+        try {
+            byte[] byteCode = build(generatedKlassName, declaringClass, method, getters.length);
+            Class<?> generatedKlass = ASMFactory.defineClass(declaringClass, generatedKlassName, byteCode);
+            return (ActionInvoker) generatedKlass.getConstructors()[0].newInstance((Object[]) getters);
+        } catch (LinkageError e) {
+            // 字节码校验失败，或者 Action 引用的类在 ClassLoader 中不可见
+            log.warn("Cannot define ActionInvoker for " + method + ", use reflection instead.", e);
+            return null;
+        } catch (Exception e) {
+            // ASM 生成失败 (RuntimeException)，或者构造函数调用失败 (ReflectiveOperation)
+            log.warn("Cannot generate ActionInvoker for " + method + ", use reflection instead.", e);
+            return null;
+        }
+    }
+
+    private static byte[] build(String generatedKlassName, Class<?> declaringClass, Method method, int getterCount) {
+        ASMBuilder builder = new ASMBuilder(generatedKlassName, declaringClass.getName(), ActionInvoker.class);
+        String generatedKlassNameInternal = builder.getGeneratedKlassNameInternal();
+        String delegateKlassNameInternal = builder.getDelegateKlassNameInternal();
+
+        // public <init>(ArgumentGetter g0, ArgumentGetter g1, ...)
+        String[] fieldNames = new String[getterCount];
+        Class<?>[] fieldTypes = new Class<?>[getterCount];
+        for (int i = 0; i < getterCount; i++) {
+            fieldNames[i] = "g" + i;
+            fieldTypes[i] = ArgumentGetter.class;
+        }
+        builder.insertConstructor(fieldNames, fieldTypes);
+
+        // public Object invoke(Object action, RequestContext ctx)
+        MethodVisitor mv = builder.getClassWriter().visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "invoke", "(Ljava/lang/Object;" + REQUEST_CONTEXT_DESC + ")Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, delegateKlassNameInternal);
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, generatedKlassNameInternal, fieldNames[i], "L" + ARGUMENT_GETTER_NAME + ";");
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKEINTERFACE, ARGUMENT_GETTER_NAME, "get", "(" + REQUEST_CONTEXT_DESC + ")Ljava/lang/Object;", true);
+            if (parameterTypes[i].isPrimitive()) {
+                insertNullCheck(mv);
+            }
+            ASMBuilder.insertUnbox(mv, Type.getType(parameterTypes[i]));
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, delegateKlassNameInternal, method.getName(), Type.getMethodDescriptor(method), false);
+        ASMBuilder.insertBox(mv, Type.getType(method.getReturnType()));
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        return builder.asByteCode();
+    }
+
+    // 基本类型的参数为 null 的时候，和 Method.invoke() 一样抛出 IllegalArgumentException (而不是 unbox 时的 NullPointerException)
+    private static void insertNullCheck(MethodVisitor mv) {
+        Label notNull = new Label();
+        mv.visitInsn(DUP);
+        mv.visitJumpInsn(IFNONNULL, notNull);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "()V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(notNull);
+    }
+}
@@ -19,6 +19,7 @@
 package jetbrick.web.mvc.action;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
 import jetbrick.ioc.Ioc;
@@ -33,12 +34,13 @@ import jetbrick.web.mvc.config.WebConfig;
 final class ActionMethodInjector {
     private final Method method;
     private final ArgumentGetter<?>[] resolvers;
+    private final ActionInvoker invoker; // ASM 生成的调用器，为 null 的时候使用反射调用
 
     @SuppressWarnings("unchecked")
     public static ActionMethodInjector create(MethodInfo method, Class<?> declaringClass) {
         List<ParameterInfo> parameters = method.getParameters();
         if (parameters.size() == 0) {
-            return new ActionMethodInjector(method.getMethod(), ArgumentGetter.EMPTY_ARRAY);
+            return new ActionMethodInjector(declaringClass, method.getMethod(), ArgumentGetter.EMPTY_ARRAY);
         }
 
         Ioc ioc = WebConfig.getInstance().getIoc();
@@ -83,15 +85,29 @@ final class ActionMethodInjector {
             resolvers[i] = getter;
         }
 
-        return new ActionMethodInjector(method.getMethod(), resolvers);
+        return new ActionMethodInjector(declaringClass, method.getMethod(), resolvers);
     }
 
-    public ActionMethodInjector(Method method, ArgumentGetter<?>[] resolvers) {
+    public ActionMethodInjector(Class<?> declaringClass, Method method, ArgumentGetter<?>[] resolvers) {
+        this(method, resolvers, ActionInvokerBuilder.create(declaringClass, method, resolvers));
+    }
+
+    // invoker 为 null 的时候使用反射调用
+    ActionMethodInjector(Method method, ArgumentGetter<?>[] resolvers, ActionInvoker invoker) {
         this.method = method;
         this.resolvers = resolvers;
+        this.invoker = invoker;
+    }
+
+    boolean isGenerated() {
+        return invoker != null;
     }
 
     public Object invoke(Object action, RequestContext ctx) throws Exception {
+        if (invoker != null) {
+            return invoker.invoke(action, ctx);
+        }
+
         Object[] parameters = ArrayUtils.EMPTY_OBJECT_ARRAY;
         int length = resolvers.length;
         if (length > 0) {
@@ -100,6 +116,18 @@ final class ActionMethodInjector {
                 parameters[i] = resolvers[i].get(ctx);
             }
         }
-        return method.invoke(action, parameters);
+        try {
+            return method.invoke(action, parameters);
+        } catch (InvocationTargetException e) {
+            // 和 ActionInvoker 保持一致，抛出 Action 自己的异常
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
     }
 }
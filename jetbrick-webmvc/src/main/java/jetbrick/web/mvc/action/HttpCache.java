@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import java.lang.annotation.*;
+
+/**
+ * 声明 Action 的 HTTP 缓存策略 (需要配置 HttpCacheInterceptor).
+ * <p>
+ * 只对 GET/HEAD 请求有效：根据输出的内容计算 ETag，If-None-Match 匹配的时候返回 304.
+ * 如果 ttl() 大于 0 并且 shared() 为 true，那么在服务器端按照 URL 和 keyParams() 缓存输出的内容，缓存命中的时候不会再执行 Action.
+ *
+ * <pre>
+ * &#64;Action
+ * &#64;HttpCache(maxAge = 60, ttl = 300, keyParams = { "page" })
+ * public String list(RequestContext ctx) { ... }
+ * </pre>
+ *
+ * @see jetbrick.web.mvc.interceptor.HttpCacheInterceptor
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HttpCache {
+
+    /**
+     * Cache-Control 的 max-age (秒)，0 表示每次都需要验证 ETag.
+     */
+    int maxAge() default 0;
+
+    /**
+     * 是否允许代理服务器缓存 (Cache-Control: public)，默认为 private.
+     */
+    boolean shared() default false;
+
+    /**
+     * 服务器端缓存的时间 (秒)，0 表示不在服务器端缓存.
+     * 服务器端缓存的 key 不区分用户，所以只有 shared() 为 true 的时候有效.
+     */
+    int ttl() default 0;
+
+    /**
+     * 服务器端缓存的 key 中包含的请求参数 (URL 总是包含在 key 中).
+     */
+    String[] keyParams() default {};
+
+}
@@ -46,6 +46,16 @@ public final class PathVariables {
         size = 0;
     }
 
+    // 已经存放的变量个数
+    public int size() {
+        return size >> 1;
+    }
+
+    // 回退到指定的变量个数（用于匹配失败时的回溯）
+    public void rollback(int count) {
+        size = count << 1;
+    }
+
     public String getValue(String name) {
         for (int i = 0; i < size; i += 2) {
             if (items[i].equals(name)) {
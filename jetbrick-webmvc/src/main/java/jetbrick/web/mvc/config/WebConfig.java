@@ -56,9 +56,36 @@ public final class WebConfig {
     @Config(value = "web.http.cache", defaultValue = "false")
     private boolean httpCache;
 
+    @Config(value = "web.http.gzip", defaultValue = "false")
+    private boolean httpGzip;
+
+    @Config(value = "web.http.gzip.min.size", defaultValue = "1024")
+    private int httpGzipMinSize;
+
+    @Config(value = "web.http.gzip.level", defaultValue = "6")
+    private int httpGzipLevel;
+
+    @Config(value = "web.dispatch.lean", defaultValue = "false")
+    private boolean leanDispatch;
+
     @Config("web.upload.dir")
     private File uploaddir;
 
+    @Config(value = "web.upload.lazy", defaultValue = "false")
+    private boolean uploadLazy;
+
+    @Config(value = "web.upload.memory.threshold", defaultValue = "10240")
+    private int uploadMemoryThreshold;
+
+    @Config(value = "web.upload.max.size", defaultValue = "-1")
+    private long uploadMaxSize;
+
+    @Config(value = "web.upload.max.file.size", defaultValue = "-1")
+    private long uploadMaxFileSize;
+
+    @Config(value = "web.upload.max.parts", defaultValue = "-1")
+    private int uploadMaxParts;
+
     @Config("web.root")
     private File webroot;
 
@@ -105,10 +132,52 @@ public final class WebConfig {
         return httpCache;
     }
 
+    public boolean isHttpGzip() {
+        return httpGzip;
+    }
+
+    // 小于该值(bytes)的内容不压缩
+    public int getHttpGzipMinSize() {
+        return httpGzipMinSize;
+    }
+
+    public int getHttpGzipLevel() {
+        return httpGzipLevel;
+    }
+
+    public boolean isLeanDispatch() {
+        return leanDispatch;
+    }
+
     public File getUploaddir() {
         return uploaddir;
     }
 
+    // 是否在第一次访问参数/文件的时候才解析 multipart 请求
+    public boolean isUploadLazy() {
+        return uploadLazy;
+    }
+
+    // 小于等于该值(bytes)的文件保存在内存中，否则保存到 uploaddir
+    public int getUploadMemoryThreshold() {
+        return uploadMemoryThreshold;
+    }
+
+    // 整个请求的最大长度，-1 表示不限制
+    public long getUploadMaxSize() {
+        return uploadMaxSize;
+    }
+
+    // 单个文件的最大长度，-1 表示不限制
+    public long getUploadMaxFileSize() {
+        return uploadMaxFileSize;
+    }
+
+    // 最多允许的 part 个数 (包括普通的表单字段)，-1 表示不限制
+    public int getUploadMaxParts() {
+        return uploadMaxParts;
+    }
+
     public File getWebroot() {
         return webroot;
     }
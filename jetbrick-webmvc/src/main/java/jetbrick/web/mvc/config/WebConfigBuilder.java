@@ -76,6 +76,13 @@ public class WebConfigBuilder {
         ioc.addBean(ArgumentGetterResolver.class);
         ioc.load(new IocAnnotationLoader(componentKlasses));
         ioc.load(new IocPropertiesLoader(config));
+        ioc.freeze();
+
+        // 启动时并行初始化所有的 singleton (web.ioc.eager.threads=0 表示使用 CPU 核数)
+        Integer eagerThreads = config.asInt("web.ioc.eager.threads");
+        if (eagerThreads != null) {
+            ioc.initializeSingletons(eagerThreads);
+        }
 
         // put into servletContext
         sc.setAttribute(Ioc.class.getName(), ioc);
@@ -23,10 +23,12 @@ import jetbrick.web.mvc.config.WebConfig;
 
 /**
  * 实现类似于 AOP 风格的 Interceptor.
+ * <p>
+ * 对于异步的 Action，after() 会在异步处理成功完成之后调用.
  *
  * @author Guoqiang Chen
  */
-public abstract class AopInterceptor implements Interceptor {
+public abstract class AopInterceptor implements AsyncInterceptor {
 
     @Override
     public void init(WebConfig config) {
@@ -40,7 +42,16 @@ public abstract class AopInterceptor implements Interceptor {
     public void intercept(RequestContext ctx, InterceptorChain chain) throws Exception {
         before(ctx);
         chain.invoke();
-        after(ctx);
+        if (!ctx.isAsyncStarted()) {
+            after(ctx);
+        }
+    }
+
+    @Override
+    public void afterAsyncCompletion(RequestContext ctx, Throwable error) throws Exception {
+        if (error == null) {
+            after(ctx);
+        }
     }
 
     @Override
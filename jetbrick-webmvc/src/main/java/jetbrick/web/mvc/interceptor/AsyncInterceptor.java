@@ -0,0 +1,33 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.interceptor;
+
+import jetbrick.web.mvc.RequestContext;
+
+/**
+ * 支持异步 Action 的 Interceptor.
+ * <p>
+ * 对于异步的 Action，chain.invoke() 返回的时候请求还没有处理完成 (可以通过 ctx.isAsyncStarted() 判断)，
+ * 在异步处理完成之后 (包括出错和超时)，会在完成的线程中调用 afterAsyncCompletion().
+ */
+public interface AsyncInterceptor extends Interceptor {
+
+    public void afterAsyncCompletion(RequestContext ctx, Throwable error) throws Exception;
+
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.interceptor;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import jetbrick.collections.ConcurrentLruCache;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.RouteInfo;
+import jetbrick.web.mvc.action.*;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.mvc.results.GzipUtils;
+import jetbrick.web.servlet.ResponseUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 处理 {@link HttpCache} 标注的 Action：计算 ETag，返回 304，以及服务器端的缓存.
+ * <p>
+ * 服务器端缓存命中的时候，不会执行 Action 以及后面的 Interceptor，
+ * 并且只会恢复 Content-Type, Content-Encoding 和内容，因此需要配置在权限检查等 Interceptor 之后.
+ * 服务器端缓存的个数由 web.http.cache.server.size 配置 (默认 1024).
+ * <p>
+ * 服务器端缓存的 key 不包含用户信息，所以只缓存 shared() 的 Action；HEAD 请求不会写入缓存 (没有输出内容).
+ */
+public class HttpCacheInterceptor implements RenderInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(HttpCacheInterceptor.class);
+    private static final Policy NONE = new Policy((HttpCache) null, null);
+
+    private final ConcurrentHashMap<ActionInfo, Policy> policies = new ConcurrentHashMap<ActionInfo, Policy>();
+    private ConcurrentLruCache<String, CachedBody> cache;
+    private boolean gzip;
+
+    @Override
+    public void init(WebConfig config) {
+        int size = config.getIoc().getConfig("web.http.cache.server.size", Integer.class, "1024");
+        cache = new ConcurrentLruCache<String, CachedBody>(size);
+        gzip = config.isHttpGzip();
+    }
+
+    @Override
+    public void intercept(RequestContext ctx, InterceptorChain chain) throws Exception {
+        Policy policy = getPolicy(ctx);
+        if (policy == NONE) {
+            chain.invoke();
+            return;
+        }
+
+        String key = null;
+        if (policy.ttl > 0) { // 只有 shared 的时候才会大于 0
+            key = getCacheKey(ctx, policy);
+            CachedBody body = cache.get(key);
+            if (body != null) {
+                if (body.expires > System.currentTimeMillis()) {
+                    HttpServletResponse response = ctx.getResponse();
+                    response.setContentType(body.contentType);
+                    if (body.contentEncoding != null) {
+                        response.setHeader("Content-Encoding", body.contentEncoding);
+                        ResponseUtils.addVaryHeader(response, "Accept-Encoding");
+                    }
+                    send(ctx.getRequest(), response, policy, body.data, body.etag);
+                    return;
+                }
+                cache.remove(key);
+            }
+        }
+
+        HttpServletResponse response = ctx.getResponse();
+        if (ctx.getHttpMethod() == HttpMethod.HEAD) {
+            // HEAD 请求没有输出内容，无法计算 ETag，也不能写入缓存
+            response.setHeader("Cache-Control", policy.cacheControl);
+            chain.invoke();
+            return;
+        }
+        ctx.setResponse(new HttpCacheResponseWrapper(response));
+        ctx.getRequest().setAttribute(Policy.class.getName(), key == null ? policy : new Policy(policy, key));
+        chain.invoke();
+
+        if (ctx.isAsyncStarted()) {
+            // 异步请求不支持缓存
+            ctx.setResponse(response);
+        }
+    }
+
+    @Override
+    public void afterRender(RequestContext ctx, Throwable error) throws Exception {
+        if (!(ctx.getResponse() instanceof HttpCacheResponseWrapper)) {
+            return; // 包括 HEAD 请求 (不会包装 response)
+        }
+        HttpCacheResponseWrapper wrapper = (HttpCacheResponseWrapper) ctx.getResponse();
+        HttpServletResponse response = (HttpServletResponse) wrapper.getResponse();
+        ctx.setResponse(response);
+
+        if (error != null || wrapper.isPassthrough()) {
+            return; // 出错的时候，丢弃已经缓存的内容
+        }
+
+        byte[] data = wrapper.getBody();
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK) {
+            response.setContentLength(data.length);
+            response.getOutputStream().write(data);
+            return;
+        }
+
+        String etag = wrapper.getETag();
+        Policy policy = (Policy) ctx.getRequest().getAttribute(Policy.class.getName());
+        if (policy.key != null) {
+            long expires = System.currentTimeMillis() + policy.ttl * 1000L;
+            cache.put(policy.key, new CachedBody(data, etag, response.getContentType(), response.getHeader("Content-Encoding"), expires));
+        }
+        send(ctx.getRequest(), response, policy, data, etag);
+    }
+
+    @Override
+    public void destory() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, Policy policy, byte[] data, String etag) throws IOException {
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", policy.cacheControl);
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && matchesETag(ifNoneMatch, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentLength(data.length);
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(data);
+        }
+    }
+
+    private Policy getPolicy(RequestContext ctx) {
+        HttpMethod method = ctx.getHttpMethod();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return NONE;
+        }
+        RouteInfo route = ctx.getRouteInfo();
+        if (route == null || route == RouteInfo.NOT_FOUND) {
+            return NONE;
+        }
+
+        ActionInfo action = route.getAction();
+        Policy policy = policies.get(action);
+        if (policy == null) {
+            HttpCache annotation = action.getMethod().getAnnotation(HttpCache.class);
+            policy = (annotation == null) ? NONE : new Policy(annotation, action.getMethod().getMethod().toString());
+            policies.putIfAbsent(action, policy);
+        }
+        return policy;
+    }
+
+    // URL + keyParams (+ gzip)
+    private String getCacheKey(RequestContext ctx, Policy policy) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(ctx.getPathInfo());
+        for (String name : policy.keyParams) {
+            sb.append('\n').append(name).append('=');
+            String[] values = ctx.getParameterValues(name);
+            if (values != null) {
+                for (String value : values) {
+                    sb.append(value).append('\u0000');
+                }
+            }
+        }
+        if (gzip && GzipUtils.isAcceptGzip(ctx.getRequest())) {
+            sb.append("\ngzip");
+        }
+        return sb.toString();
+    }
+
+    private static boolean matchesETag(String header, String etag) {
+        for (String value : header.split(",")) {
+            value = value.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class Policy {
+        final String cacheControl;
+        final int ttl;
+        final String[] keyParams;
+        final String key; // 当前请求的缓存 key
+
+        Policy(HttpCache annotation, String action) {
+            if (annotation == null) {
+                this.cacheControl = null;
+                this.ttl = 0;
+                this.keyParams = null;
+            } else {
+                String scope = annotation.shared() ? "public" : "private";
+                if (annotation.maxAge() > 0) {
+                    this.cacheControl = scope + ", max-age=" + annotation.maxAge();
+                } else {
+                    this.cacheControl = scope + ", no-cache";
+                }
+                if (annotation.ttl() > 0 && !annotation.shared()) {
+                    // 服务器端缓存的 key 不区分用户，private 的内容不能缓存
+                    log.warn("@HttpCache(ttl = {}) is ignored for private action: {}, set shared = true to enable server cache.", annotation.ttl(), action);
+                    this.ttl = 0;
+                } else {
+                    this.ttl = annotation.ttl();
+                }
+                this.keyParams = annotation.keyParams();
+            }
+            this.key = null;
+        }
+
+        Policy(Policy policy, String key) {
+            this.cacheControl = policy.cacheControl;
+            this.ttl = policy.ttl;
+            this.keyParams = policy.keyParams;
+            this.key = key;
+        }
+    }
+
+    static final class CachedBody {
+        final byte[] data;
+        final String etag;
+        final String contentType;
+        final String contentEncoding;
+        final long expires;
+
+        CachedBody(byte[] data, String etag, String contentType, String contentEncoding, long expires) {
+            this.data = data;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.expires = expires;
+        }
+    }
+}
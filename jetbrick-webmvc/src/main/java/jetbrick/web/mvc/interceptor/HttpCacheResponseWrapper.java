@@ -0,0 +1,167 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.interceptor;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import jetbrick.io.streams.FastByteArrayOutputStream;
+import jetbrick.text.codec.HexUtils;
+
+/**
+ * 缓存输出的内容，并且在写入的同时计算 MD5 作为 ETag.
+ * <p>
+ * Header 直接设置到原始的 response 中，sendError()/sendRedirect() 之后不再缓存.
+ */
+final class HttpCacheResponseWrapper extends HttpServletResponseWrapper {
+    private final FastByteArrayOutputStream buffer = new FastByteArrayOutputStream();
+    private final MessageDigest digest;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private int status = SC_OK;
+    private boolean passthrough;
+
+    public HttpCacheResponseWrapper(HttpServletResponse response) {
+        super(response);
+        try {
+            this.digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        return getBufferStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            writer = new PrintWriter(new OutputStreamWriter(getBufferStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    private ServletOutputStream getBufferStream() {
+        if (outputStream == null) {
+            outputStream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    buffer.write(b);
+                    digest.update((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    buffer.write(b, off, len);
+                    digest.update(b, off, len);
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+        super.setStatus(sc);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setStatus(int sc, String sm) {
+        status = sc;
+        super.setStatus(sc, sm);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        passthrough = true;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        passthrough = true;
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        passthrough = true;
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        // 输出的时候再设置
+    }
+
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        buffer.reset();
+        digest.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        buffer.reset();
+        digest.reset();
+        status = SC_OK;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    // 是否调用了 sendError()/sendRedirect()
+    public boolean isPassthrough() {
+        return passthrough;
+    }
+
+    public byte[] getBody() {
+        flushBuffer();
+        return buffer.toByteArray();
+    }
+
+    // 只能在 getBody() 之后调用一次
+    public String getETag() {
+        return '"' + HexUtils.encodeHexString(digest.digest()) + '"';
+    }
+}
@@ -21,21 +21,35 @@ package jetbrick.web.mvc.interceptor;
 import java.util.List;
 import jetbrick.web.mvc.*;
 import jetbrick.web.mvc.action.ActionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * 依次执行所有的 Intercepter，完成后在执行 action
  */
 public class InterceptorChainImpl implements InterceptorChain {
+    private static final Logger log = LoggerFactory.getLogger(InterceptorChainImpl.class);
     private final List<Interceptor> interceptors;
-    private final RequestContext ctx;
+    private RequestContext ctx;
     private int currentIndex = 0;
-    private ResultInfo result;
+    private boolean executed;
+    private Class<?> resultClass;
+    private Object resultObject;
 
     public InterceptorChainImpl(List<Interceptor> interceptors, RequestContext ctx) {
         this.interceptors = interceptors;
         this.ctx = ctx;
     }
 
+    // 重置所有的状态，以便在同一个线程中复用
+    public void reset(RequestContext ctx) {
+        this.ctx = ctx;
+        this.currentIndex = 0;
+        this.executed = false;
+        this.resultClass = null;
+        this.resultObject = null;
+    }
+
     @Override
     public void invoke() throws Exception {
         if (currentIndex < interceptors.size()) {
@@ -46,8 +60,45 @@ public class InterceptorChainImpl implements InterceptorChain {
         }
     }
 
+    // 结果输出完成之后，按照相反的顺序调用已经执行过的 RenderInterceptor
+    public void afterRender() throws Exception {
+        for (int i = Math.min(currentIndex, interceptors.size()) - 1; i >= 0; i--) {
+            Interceptor interceptor = interceptors.get(i);
+            if (interceptor instanceof RenderInterceptor) {
+                ((RenderInterceptor) interceptor).afterRender(ctx, null);
+            }
+        }
+    }
+
+    // 出错的时候调用，RenderInterceptor 抛出的异常只记录日志
+    public void afterRender(Throwable error) {
+        for (int i = Math.min(currentIndex, interceptors.size()) - 1; i >= 0; i--) {
+            Interceptor interceptor = interceptors.get(i);
+            if (interceptor instanceof RenderInterceptor) {
+                try {
+                    ((RenderInterceptor) interceptor).afterRender(ctx, error);
+                } catch (Throwable e) {
+                    log.error("afterRender error: " + interceptor.getClass().getName(), e);
+                }
+            }
+        }
+    }
+
     public ResultInfo getResult() {
-        return result;
+        return executed ? new ResultInfo(resultClass, resultObject) : null;
+    }
+
+    // Action 是否已经被执行 (Interceptor 可能会中断执行)
+    public boolean isExecuted() {
+        return executed;
+    }
+
+    public Class<?> getResultClass() {
+        return resultClass;
+    }
+
+    public Object getResultObject() {
+        return resultObject;
     }
 
     private void executeAction(RequestContext ctx) throws Exception {
@@ -57,6 +108,12 @@ public class InterceptorChainImpl implements InterceptorChain {
         }
 
         ActionInfo action = route.getAction();
-        result = action.execute(ctx);
+        if (action.isAsync()) {
+            // 提前启动异步请求，以便 Interceptor 在 chain.invoke() 之后可以通过 ctx.isAsyncStarted() 判断
+            ctx.startAsync();
+        }
+        resultObject = action.invoke(ctx);
+        resultClass = action.getResultClass();
+        executed = true;
     }
 }
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.interceptor;
+
+import jetbrick.web.mvc.RequestContext;
+
+/**
+ * 需要在 ResultHandler 输出之后执行的 Interceptor (比如需要处理输出的内容).
+ * <p>
+ * 只有执行过 intercept() 的 Interceptor 才会被调用 (按照相反的顺序)，
+ * 出错的时候 error 不为 null，并且在 ExceptionHandler 之前调用.
+ */
+public interface RenderInterceptor extends Interceptor {
+
+    public void afterRender(RequestContext ctx, Throwable error) throws Exception;
+
+}
@@ -20,15 +20,20 @@ package jetbrick.web.mvc.multipart;
 
 import java.io.*;
 import jetbrick.io.*;
+import jetbrick.io.buffer.FastByteBuffer;
 import jetbrick.lang.builder.ToStringBuilder;
 
+/**
+ * 上传的文件，小文件保存在内存中 (FastByteBuffer)，大文件保存在 uploaddir 中.
+ */
 public final class FilePart {
     private static final String MESSAGE_FILE_MOVED = "File has been moved - cannot be read again";
 
     protected final String fieldName;
     protected final String originalFileName;
     protected final String originalFileExt;
-    protected final File diskFile;
+    protected File diskFile;
+    protected FastByteBuffer content;
     protected final long size;
 
     public FilePart(String fieldName, String originalFileName, File diskFile) {
@@ -39,6 +44,14 @@ public final class FilePart {
         this.size = diskFile.length();
     }
 
+    public FilePart(String fieldName, String originalFileName, FastByteBuffer content) {
+        this.fieldName = fieldName;
+        this.originalFileName = originalFileName;
+        this.originalFileExt = FilenameUtils.getFileExtension(originalFileName);
+        this.content = content;
+        this.size = content.size();
+    }
+
     public String getFieldName() {
         return fieldName;
     }
@@ -51,10 +64,22 @@ public final class FilePart {
         return originalFileExt;
     }
 
+    // 是否保存在内存中
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    // 如果文件保存在内存中，那么先写入到 uploaddir 中的临时文件
     public File getDiskFile() {
         if (!available()) {
             throw new IllegalStateException(MESSAGE_FILE_MOVED);
         }
+        if (content != null) {
+            File file = FileUploaderUtils.getTempFile(originalFileName);
+            writeTo(file);
+            diskFile = file;
+            content = null;
+        }
         return diskFile;
     }
 
@@ -66,13 +91,22 @@ public final class FilePart {
         if (!available()) {
             throw new IllegalStateException(MESSAGE_FILE_MOVED);
         }
-        diskFile.delete();
+        if (content != null) {
+            content = null;
+        } else {
+            diskFile.delete();
+        }
     }
 
     public void moveTo(File destFile) {
         if (!available()) {
             throw new IllegalStateException(MESSAGE_FILE_MOVED);
         }
+        if (content != null) {
+            writeTo(destFile);
+            content = null;
+            return;
+        }
         try {
             File dir = destFile.getParentFile();
             if (!dir.exists()) {
@@ -93,7 +127,16 @@ public final class FilePart {
             if (!dir.exists()) {
                 dir.mkdirs();
             }
-            FileCopyUtils.copyFile(diskFile, destFile);
+            if (content != null) {
+                OutputStream os = new FileOutputStream(destFile);
+                try {
+                    write(content, os);
+                } finally {
+                    IoUtils.closeQuietly(os);
+                }
+            } else {
+                FileCopyUtils.copyFile(diskFile, destFile);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -104,7 +147,11 @@ public final class FilePart {
             throw new IllegalStateException(MESSAGE_FILE_MOVED);
         }
         try {
-            IoUtils.copy(new FileInputStream(diskFile), os);
+            if (content != null) {
+                write(content, os);
+            } else {
+                IoUtils.copy(new FileInputStream(diskFile), os);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -114,6 +161,9 @@ public final class FilePart {
         if (!available()) {
             throw new IllegalStateException(MESSAGE_FILE_MOVED);
         }
+        if (content != null) {
+            return new ByteArrayInputStream(content.toArray());
+        }
         try {
             return new FileInputStream(diskFile);
         } catch (FileNotFoundException e) {
@@ -125,11 +175,33 @@ public final class FilePart {
         if (!available()) {
             throw new IllegalStateException(MESSAGE_FILE_MOVED);
         }
+        if (content != null) {
+            try {
+                return new String(content.toArray(), charset);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
         return IoUtils.toString(diskFile, charset);
     }
 
     private boolean available() {
-        return diskFile.exists() && diskFile.length() == size;
+        if (content != null) {
+            return true;
+        }
+        return diskFile != null && diskFile.exists() && diskFile.length() == size;
+    }
+
+    // 直接输出 FastByteBuffer 中的每一个 chunk，避免 toArray() 的复制
+    static void write(FastByteBuffer buffer, OutputStream os) throws IOException {
+        int index = buffer.index();
+        for (int i = 0; i < index; i++) {
+            byte[] chunk = buffer.array(i);
+            os.write(chunk, 0, chunk.length);
+        }
+        if (index >= 0) {
+            os.write(buffer.array(index), 0, buffer.offset());
+        }
     }
 
     @Override
@@ -20,19 +20,24 @@ package jetbrick.web.mvc.multipart;
 
 import java.io.*;
 import java.net.URLDecoder;
+import java.util.*;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import jetbrick.io.FilenameUtils;
 import jetbrick.io.IoUtils;
+import jetbrick.io.buffer.FastByteBuffer;
 import jetbrick.lang.RandomStringUtils;
 import jetbrick.lang.StringUtils;
 import jetbrick.web.mvc.config.WebConfig;
-import org.apache.commons.fileupload.FileItemIterator;
-import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.*;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.LimitedInputStream;
 import org.apache.commons.fileupload.util.Streams;
 
 public final class FileUploaderUtils {
+    private static final int BUFFER_SIZE = 4096;
 
     public static boolean supported(HttpServletRequest request) {
         return isMultipartContent(request) || isHtml5FileUploadContent(request);
@@ -51,9 +56,9 @@ public final class FileUploaderUtils {
     public static HttpServletRequest asRequest(HttpServletRequest request) {
         try {
             if (isMultipartContent(request)) {
-                return asMultipartRequest(request);
+                return WebConfig.getInstance().isUploadLazy() ? new LazyMultipartRequest(request, false) : asMultipartRequest(request);
             } else if (isHtml5FileUploadContent(request)) {
-                return asHtml5Request(request);
+                return WebConfig.getInstance().isUploadLazy() ? new LazyMultipartRequest(request, true) : asHtml5Request(request);
             }
             return request;
         } catch (RuntimeException e) {
@@ -65,44 +70,117 @@ public final class FileUploaderUtils {
 
     // multipart/form-data
     private static MultipartRequest asMultipartRequest(HttpServletRequest request) throws Exception {
-        String encoding = request.getCharacterEncoding();
+        MultipartRequest req = new MultipartRequest(request);
+        parseMultipartRequest(req, request);
+        return req;
+    }
 
+    // application/octet-stream
+    private static MultipartRequest asHtml5Request(HttpServletRequest request) throws Exception {
         MultipartRequest req = new MultipartRequest(request);
-        ServletFileUpload upload = new ServletFileUpload();
-        upload.setHeaderEncoding(encoding);
-        FileItemIterator it = upload.getItemIterator(request);
-
-        while (it.hasNext()) {
-            FileItemStream item = it.next();
-            String fieldName = item.getFieldName();
-            InputStream stream = item.openStream();
-            try {
-                if (item.isFormField()) {
-                    req.setParameter(fieldName, Streams.asString(stream, encoding));
-                } else {
-                    String originalFilename = item.getName();
-                    File diskFile = getTempFile(originalFilename);
-                    OutputStream fos = new FileOutputStream(diskFile);
-
-                    try {
-                        IoUtils.copy(stream, fos);
-                    } finally {
-                        IoUtils.closeQuietly(fos);
-                    }
+        parseHtml5Request(req, request);
+        return req;
+    }
+
+    static void parseMultipartRequest(MultipartRequest req, HttpServletRequest request) throws Exception {
+        String encoding = request.getCharacterEncoding();
+        int maxParts = WebConfig.getInstance().getUploadMaxParts();
 
-                    FilePart filePart = new FilePart(fieldName, originalFilename, diskFile);
-                    req.addFile(filePart);
+        try {
+            FileItemIterator it = createFileUpload(request).getItemIterator(request);
+            int count = 0;
+            while (it.hasNext()) {
+                FileItemStream item = it.next();
+                checkPartCount(++count, maxParts);
+
+                String fieldName = item.getFieldName();
+                InputStream stream = item.openStream();
+                try {
+                    if (item.isFormField()) {
+                        req.setParameter(fieldName, Streams.asString(stream, encoding));
+                    } else {
+                        req.addFile(readFilePart(fieldName, item.getName(), stream));
+                    }
+                } finally {
+                    IoUtils.closeQuietly(stream);
                 }
-            } finally {
-                IoUtils.closeQuietly(stream);
             }
+        } catch (Exception e) {
+            // 后面的 part 超出限制，删除前面已经写入磁盘的临时文件
+            req.discard();
+            throw e;
         }
+    }
 
-        return req;
+    static void parseHtml5Request(MultipartRequest req, HttpServletRequest request) throws Exception {
+        String originalFilename = getHtml5Filename(request);
+        InputStream stream = getHtml5Stream(request);
+        try {
+            req.addFile(readFilePart("file", originalFilename, stream));
+        } finally {
+            IoUtils.closeQuietly(stream);
+        }
     }
 
-    // application/octet-stream
-    private static MultipartRequest asHtml5Request(HttpServletRequest request) throws Exception {
+    // 直接从 request 中读取，不保存每一个 part
+    static Iterator<StreamingPart> getPartIterator(HttpServletRequest request, boolean html5) throws Exception {
+        if (html5) {
+            StreamingPart part = new StreamingPart("file", getHtml5Filename(request), request.getContentType(), false, getHtml5Stream(request));
+            return Collections.singletonList(part).iterator();
+        }
+
+        final FileItemIterator it = createFileUpload(request).getItemIterator(request);
+        final int maxParts = WebConfig.getInstance().getUploadMaxParts();
+        return new Iterator<StreamingPart>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    return it.hasNext();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public StreamingPart next() {
+                try {
+                    FileItemStream item = it.next();
+                    checkPartCount(++count, maxParts);
+                    return new StreamingPart(item.getFieldName(), item.getName(), item.getContentType(), item.isFormField(), item.openStream());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static ServletFileUpload createFileUpload(HttpServletRequest request) {
+        WebConfig config = WebConfig.getInstance();
+        ServletFileUpload upload = new ServletFileUpload();
+        upload.setHeaderEncoding(request.getCharacterEncoding());
+        upload.setSizeMax(config.getUploadMaxSize()); // 在读取的时候检查
+        upload.setFileSizeMax(config.getUploadMaxFileSize());
+        return upload;
+    }
+
+    private static void checkPartCount(int count, int maxParts) throws FileUploadException {
+        if (maxParts >= 0 && count > maxParts) {
+            throw new FileUploadException("The request was rejected because the number of parts exceeds the configured maximum (" + maxParts + ")");
+        }
+    }
+
+    private static String getHtml5Filename(HttpServletRequest request) throws Exception {
         String originalFilename = request.getHeader("content-disposition");
         if (originalFilename == null) {
             throw new ServletException("The request is not a html5 file upload request.");
@@ -111,25 +189,70 @@ public final class FileUploaderUtils {
         originalFilename = StringUtils.substringAfter(originalFilename, "; filename=");
         originalFilename = StringUtils.remove(originalFilename, "\"");
         originalFilename = URLDecoder.decode(originalFilename, "utf-8");
+        return originalFilename;
+    }
 
-        File diskFile = getTempFile(originalFilename);
+    // html5 上传的整个 body 就是一个文件，同时受 max.size 和 max.file.size 的限制
+    private static InputStream getHtml5Stream(HttpServletRequest request) throws IOException {
+        WebConfig config = WebConfig.getInstance();
+        long limit = config.getUploadMaxSize();
+        long fileLimit = config.getUploadMaxFileSize();
+        if (limit < 0 || (fileLimit >= 0 && fileLimit < limit)) {
+            limit = fileLimit;
+        }
 
-        InputStream fis = request.getInputStream();
-        OutputStream fos = new FileOutputStream(diskFile);
+        InputStream is = request.getInputStream();
+        if (limit < 0) {
+            return is;
+        }
+        return new LimitedInputStream(is, limit) {
+            @Override
+            protected void raiseError(long pSizeMax, long pCount) throws IOException {
+                String message = "The request was rejected because its size (" + pCount + ") exceeds the configured maximum (" + pSizeMax + ")";
+                throw new FileUploadIOException(new SizeLimitExceededException(message, pCount, pSizeMax));
+            }
+        };
+    }
+
+    // 小于等于 memory.threshold 的文件保存在内存中，超过之后再写入临时文件
+    private static FilePart readFilePart(String fieldName, String originalFilename, InputStream stream) throws IOException {
+        int threshold = WebConfig.getInstance().getUploadMemoryThreshold();
+        FastByteBuffer content = new FastByteBuffer();
+        File diskFile = null;
+        OutputStream fos = null;
         try {
-            IoUtils.copy(fis, fos);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                if (fos == null) {
+                    if (content.size() + n <= threshold) {
+                        content.append(buffer, 0, n);
+                        continue;
+                    }
+                    diskFile = getTempFile(originalFilename);
+                    fos = new FileOutputStream(diskFile);
+                    FilePart.write(content, fos);
+                    content = null;
+                }
+                fos.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            IoUtils.closeQuietly(fos);
+            if (diskFile != null) {
+                diskFile.delete();
+            }
+            throw e;
         } finally {
-            IoUtils.closeQuietly(fis);
             IoUtils.closeQuietly(fos);
         }
 
-        MultipartRequest req = new MultipartRequest(request);
-        FilePart filePart = new FilePart("file", originalFilename, diskFile);
-        req.addFile(filePart);
-        return req;
+        if (diskFile != null) {
+            return new FilePart(fieldName, originalFilename, diskFile);
+        }
+        return new FilePart(fieldName, originalFilename, content);
     }
 
-    private static File getTempFile(String originalFilename) {
+    static File getTempFile(String originalFilename) {
         String fileExt = FilenameUtils.getFileExtension(originalFilename);
         String fileName = RandomStringUtils.randomAlphanumeric(16);
         if (StringUtils.isNotEmpty(fileExt)) {
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.multipart;
+
+import java.util.Iterator;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * 延迟解析的 multipart 请求 (web.upload.lazy = true).
+ * <p>
+ * 第一次访问 getParameter()/getFile() 等方法的时候才会解析请求，
+ * 如果 Interceptor 拒绝了请求，那么上传的内容就不会被读取.
+ * 也可以调用 {@link #getPartIterator()} 直接从 request 中流式读取每一个 part.
+ */
+public class LazyMultipartRequest extends MultipartRequest {
+    private static final int STATE_NONE = 0;
+    private static final int STATE_PARSED = 1;
+    private static final int STATE_STREAMING = 2;
+    private static final int STATE_FAILED = 3;
+
+    private final boolean html5;
+    private int state = STATE_NONE;
+    private RuntimeException failure; // 解析失败的原因，之后每次访问都抛出同样的异常
+
+    public LazyMultipartRequest(HttpServletRequest request, boolean html5) {
+        super(request);
+        this.html5 = html5;
+    }
+
+    @Override
+    protected void prepare() {
+        if (state == STATE_FAILED) {
+            throw failure;
+        }
+        if (state != STATE_NONE) {
+            return;
+        }
+
+        HttpServletRequest request = (HttpServletRequest) getRequest();
+        try {
+            if (html5) {
+                FileUploaderUtils.parseHtml5Request(this, request);
+            } else {
+                FileUploaderUtils.parseMultipartRequest(this, request);
+            }
+            state = STATE_PARSED;
+        } catch (RuntimeException e) {
+            fail(e);
+        } catch (Exception e) {
+            fail(new RuntimeException(e));
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        discard();
+        state = STATE_FAILED;
+        failure = e;
+        throw e;
+    }
+
+    // 是否已经解析过了
+    public boolean isParsed() {
+        return state == STATE_PARSED;
+    }
+
+    /**
+     * 直接从 request 中流式读取每一个 part (包括普通的表单字段).
+     * <p>
+     * 只能在解析之前调用一次，调用之后，getParameter()/getFile() 就不能获取到 multipart 中的内容了.
+     */
+    public Iterator<StreamingPart> getPartIterator() {
+        if (state != STATE_NONE) {
+            throw new IllegalStateException("The multipart request has been already parsed or streamed.");
+        }
+        state = STATE_STREAMING;
+
+        try {
+            return FileUploaderUtils.getPartIterator((HttpServletRequest) getRequest(), html5);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
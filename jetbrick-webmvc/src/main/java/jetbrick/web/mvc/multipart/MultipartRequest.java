@@ -34,6 +34,13 @@ public class MultipartRequest extends HttpServletRequestWrapper {
         super(request);
     }
 
+    /**
+     * <p> Called before the parameters or files parsed from the multipart
+     * request are accessed. Subclasses may parse the request body lazily here. </p>
+     */
+    protected void prepare() {
+    }
+
     /**
      * <p> Sets a parameter for this request.  The parameter is actually
      * separate from the request parameters, but calling on the getParameter()
@@ -64,6 +71,7 @@ public class MultipartRequest extends HttpServletRequestWrapper {
         String value = getRequest().getParameter(name);
 
         if (value == null) {
+            prepare();
             String[] values = parameters.get(name);
             if ((values != null) && (values.length > 0)) {
                 value = values[0];
@@ -80,6 +88,7 @@ public class MultipartRequest extends HttpServletRequestWrapper {
      */
     @Override
     public Enumeration<String> getParameterNames() {
+        prepare();
         Enumeration<String> baseParams = getRequest().getParameterNames();
         List<String> list = new ArrayList<String>();
 
@@ -108,6 +117,7 @@ public class MultipartRequest extends HttpServletRequestWrapper {
         String[] values = getRequest().getParameterValues(name);
 
         if (values == null) {
+            prepare();
             values = parameters.get(name);
         }
 
@@ -121,6 +131,7 @@ public class MultipartRequest extends HttpServletRequestWrapper {
      */
     @Override
     public Map<String, String[]> getParameterMap() {
+        prepare();
         Map<String, String[]> map = new HashMap<String, String[]>(parameters);
         map.putAll(getRequest().getParameterMap());
         return map;
@@ -131,6 +142,7 @@ public class MultipartRequest extends HttpServletRequestWrapper {
     }
 
     public FilePart getFile(String name) {
+        prepare();
         for (FilePart file : files) {
             if (file.getFieldName().equals(name)) {
                 return file;
@@ -140,6 +152,16 @@ public class MultipartRequest extends HttpServletRequestWrapper {
     }
 
     public List<FilePart> getFiles() {
+        prepare();
         return Collections.unmodifiableList(files);
     }
+
+    // 解析失败的时候，删除已经保存的临时文件，并清除已经解析的内容
+    void discard() {
+        for (FilePart file : files) {
+            file.delete();
+        }
+        files.clear();
+        parameters.clear();
+    }
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.multipart;
+
+import java.io.InputStream;
+import jetbrick.io.IoUtils;
+
+/**
+ * 直接从 request 中读取的 part，不会保存到内存或者磁盘中.
+ * <p>
+ * 只能在遍历到该 part 的时候读取，调用 iterator.next() 之后，之前的 part 就不能再读取了.
+ *
+ * @see LazyMultipartRequest#getPartIterator()
+ */
+public final class StreamingPart {
+    private final String fieldName;
+    private final String originalFileName;
+    private final String contentType;
+    private final boolean formField;
+    private final InputStream stream;
+
+    public StreamingPart(String fieldName, String originalFileName, String contentType, boolean formField, InputStream stream) {
+        this.fieldName = fieldName;
+        this.originalFileName = originalFileName;
+        this.contentType = contentType;
+        this.formField = formField;
+        this.stream = stream;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public String getOriginalFileName() {
+        return originalFileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    // 是否为普通的表单字段
+    public boolean isFormField() {
+        return formField;
+    }
+
+    public InputStream openStream() {
+        return stream;
+    }
+
+    public String getString(String charset) {
+        return IoUtils.toString(stream, charset);
+    }
+}
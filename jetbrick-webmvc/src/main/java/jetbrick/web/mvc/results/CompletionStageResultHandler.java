@@ -0,0 +1,100 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import java.lang.reflect.*;
+import jetbrick.beans.ClassLoaderUtils;
+import jetbrick.ioc.annotations.Managed;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.WebException;
+
+/**
+ * 处理 JDK8 的 CompletionStage/CompletableFuture 返回值 (转换成 DeferredResult 处理).
+ *
+ * <p>本模块按照 JDK6 编译，所以这里不直接引用 JDK8 的类型，全部通过反射调用.
+ * 只有在 JDK8+ 上才会由 {@code ResultHandlerResolver} 按照类名注册.</p>
+ */
+@Managed
+public class CompletionStageResultHandler implements ResultHandler<Object> {
+    private static final Class<?> COMPLETION_STAGE_CLASS = ClassLoaderUtils.loadClass("java.util.concurrent.CompletionStage");
+    private static final Class<?> COMPLETION_EXCEPTION_CLASS = ClassLoaderUtils.loadClass("java.util.concurrent.CompletionException");
+    private static final Class<?> BI_CONSUMER_CLASS = ClassLoaderUtils.loadClass("java.util.function.BiConsumer");
+    private static final Method WHEN_COMPLETE_METHOD = getWhenCompleteMethod();
+
+    @Override
+    public void handle(RequestContext ctx, Object result) throws Exception {
+        if (WHEN_COMPLETE_METHOD == null) {
+            throw new IllegalStateException("CompletionStage is not supported in JDK " + System.getProperty("java.version"));
+        }
+        if (result == null) {
+            throw new WebException("Async action returns null for URL: " + ctx.getPathInfo());
+        }
+
+        final DeferredResult<Object> deferred = new DeferredResult<Object>();
+        DeferredResultHandler.start(ctx, deferred);
+
+        // 相当于 result.whenComplete((value, error) -> ...)
+        Object action = Proxy.newProxyInstance(BI_CONSUMER_CLASS.getClassLoader(), new Class<?>[] { BI_CONSUMER_CLASS }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getDeclaringClass() == Object.class) {
+                    return invokeObjectMethod(proxy, method, args);
+                }
+                Throwable error = (Throwable) args[1];
+                if (error == null) {
+                    deferred.setResult(args[0]);
+                } else {
+                    if (COMPLETION_EXCEPTION_CLASS.isInstance(error) && error.getCause() != null) {
+                        error = error.getCause();
+                    }
+                    deferred.setErrorResult(error);
+                }
+                return null;
+            }
+        });
+        try {
+            WHEN_COMPLETE_METHOD.invoke(result, action);
+        } catch (InvocationTargetException e) {
+            // DeferredResult 已经启动，交给它处理错误并结束异步请求
+            deferred.setErrorResult(e.getCause());
+        }
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        return "CompletionStageResultHandler$BiConsumer@" + Integer.toHexString(System.identityHashCode(proxy));
+    }
+
+    private static Method getWhenCompleteMethod() {
+        if (COMPLETION_STAGE_CLASS == null || BI_CONSUMER_CLASS == null) {
+            return null;
+        }
+        try {
+            return COMPLETION_STAGE_CLASS.getMethod("whenComplete", BI_CONSUMER_CLASS);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import jetbrick.ioc.annotations.ManagedWith;
+
+/**
+ * 异步 Action 的返回值，由其他线程调用 setResult() 或者 setErrorResult() 来完成请求.
+ * <p>
+ * 返回 DeferredResult 的时候，会启动 Servlet 3.0 的异步请求 (request.startAsync())，
+ * 因此需要在 web.xml 中为 DispatcherFilter 配置 <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code>.
+ * 结果会按照 {@code DeferredResult<T>} 中声明的 T 类型，交给对应的 ResultHandler 处理.
+ *
+ * <pre>
+ * &#64;Action
+ * public DeferredResult&lt;String&gt; query() {
+ *     final DeferredResult&lt;String&gt; result = new DeferredResult&lt;String&gt;(30000);
+ *     executor.execute(new Runnable() {
+ *         public void run() {
+ *             result.setResult("/query.jsp");
+ *         }
+ *     });
+ *     return result;
+ * }
+ * </pre>
+ */
+@ManagedWith(DeferredResultHandler.class)
+public class DeferredResult<T> {
+    private final long timeout;
+    private boolean completed;
+    private Object result;
+    private Throwable error;
+    private Listener listener;
+
+    public DeferredResult() {
+        this(0);
+    }
+
+    /**
+     * @param timeout 超时时间(ms)，0 表示使用 Servlet 容器的默认值.
+     */
+    public DeferredResult(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 设置返回结果，如果已经完成 (包括超时)，那么返回 false.
+     */
+    public boolean setResult(T result) {
+        return complete(result, null);
+    }
+
+    /**
+     * 设置异常结果，如果已经完成 (包括超时)，那么返回 false.
+     */
+    public boolean setErrorResult(Throwable error) {
+        if (error == null) {
+            throw new IllegalArgumentException("error must be not null");
+        }
+        return complete(null, error);
+    }
+
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    private boolean complete(Object result, Throwable error) {
+        Listener l;
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+            this.completed = true;
+            this.result = result;
+            this.error = error;
+            l = listener;
+        }
+        if (l != null) {
+            l.onComplete(result, error);
+        }
+        return true;
+    }
+
+    /**
+     * 由框架调用，设置完成后的回调 (如果已经完成，那么立即回调).
+     */
+    public void setListener(Listener listener) {
+        boolean done;
+        synchronized (this) {
+            this.listener = listener;
+            done = completed;
+        }
+        if (done) {
+            listener.onComplete(result, error);
+        }
+    }
+
+    public interface Listener {
+
+        public void onComplete(Object result, Throwable error);
+
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+import jetbrick.ioc.annotations.Managed;
+import jetbrick.web.mvc.*;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.mvc.interceptor.AsyncInterceptor;
+import jetbrick.web.mvc.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 处理异步的 Action 返回值.
+ * <ol>
+ *   <li>启动异步请求 (如果 InterceptorChain 中还没有启动的话)</li>
+ *   <li>DeferredResult 完成后，在完成的线程中绑定 RequestContext，并按照 T 的类型查找 ResultHandler 处理结果</li>
+ *   <li>依次调用 {@link AsyncInterceptor#afterAsyncCompletion}，最后结束异步请求</li>
+ * </ol>
+ */
+@Managed
+public class DeferredResultHandler implements ResultHandler<DeferredResult<?>> {
+    private static final Logger log = LoggerFactory.getLogger(DeferredResultHandler.class);
+
+    @Override
+    public void handle(RequestContext ctx, DeferredResult<?> result) {
+        if (result == null) {
+            throw new WebException("Async action returns null for URL: " + ctx.getPathInfo());
+        }
+        start(ctx, result);
+    }
+
+    public static void start(final RequestContext ctx, final DeferredResult<?> deferred) {
+        AsyncContext async = ctx.startAsync();
+        if (deferred.getTimeout() > 0) {
+            async.setTimeout(deferred.getTimeout());
+        }
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                deferred.setErrorResult(new AsyncTimeoutException("Async request timeout for URL: " + ctx.getPathInfo()));
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                deferred.setErrorResult(event.getThrowable());
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+        });
+
+        ctx.setAsyncHandled(); // 之后由 DeferredResult 负责结束异步请求
+        deferred.setListener(new DeferredResult.Listener() {
+            @Override
+            public void onComplete(final Object result, final Throwable error) {
+                ctx.dispatchAsync(new Runnable() {
+                    @Override
+                    public void run() {
+                        complete(ctx, result, error);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void complete(RequestContext ctx, Object result, Throwable error) {
+        WebConfig config = ctx.getWebConfig();
+        if (error == null) {
+            try {
+                ResultHandler<Object> handler = config.getResultHandlerResolver().lookup(getResultClass(ctx));
+                handler.handle(ctx, result);
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            handleError(ctx, config.getExceptionHandler(), error);
+        }
+
+        List<Interceptor> interceptors = config.getInterceptors();
+        for (int i = interceptors.size() - 1; i >= 0; i--) {
+            Interceptor interceptor = interceptors.get(i);
+            if (interceptor instanceof AsyncInterceptor) {
+                try {
+                    ((AsyncInterceptor) interceptor).afterAsyncCompletion(ctx, error);
+                } catch (Throwable e) {
+                    log.error("afterAsyncCompletion error: " + interceptor.getClass().getName(), e);
+                }
+            }
+        }
+    }
+
+    // 根据 DeferredResult<T> 中 T 的类型来查找 ResultHandler
+    private static Class<?> getResultClass(RequestContext ctx) {
+        Class<?> resultClass = ctx.getAction().getRawReturnComponentType(ctx.getController(), 0);
+        if (resultClass == null) {
+            return Object.class;
+        }
+        if (resultClass == Void.class) {
+            return Void.TYPE;
+        }
+        return resultClass;
+    }
+
+    private static void handleError(RequestContext ctx, ExceptionHandler exceptionHandler, Throwable error) {
+        ctx.getRequest().setAttribute(ExceptionHandler.KEY_IN_REQUEST, error);
+
+        if (exceptionHandler != null) {
+            try {
+                Exception e = (error instanceof Exception) ? (Exception) error : new WebException(error);
+                exceptionHandler.handleError(ctx, e);
+                return;
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+
+        log.error("Async request error for URL: " + ctx.getPathInfo(), error);
+        HttpServletResponse response = ctx.getResponse();
+        if (!response.isCommitted()) {
+            int status = (error instanceof AsyncTimeoutException) ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            try {
+                response.sendError(status);
+            } catch (IOException e) {
+                log.error("sendError failed", e);
+            }
+        }
+    }
+
+    /**
+     * 异步请求超时.
+     */
+    public static class AsyncTimeoutException extends WebException {
+        private static final long serialVersionUID = 1L;
+
+        public AsyncTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
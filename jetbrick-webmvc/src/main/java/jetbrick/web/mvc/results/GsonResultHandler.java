@@ -19,7 +19,6 @@
 package jetbrick.web.mvc.results;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.Enumeration;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
@@ -66,10 +65,8 @@ public class GsonResultHandler implements ResultHandler<JsonElement> {
         response.setCharacterEncoding(characterEncoding);
 
         String mimetype = MimetypeUtils.getJSON(request);
-        response.setContentType(mimetype + "; charset=" + characterEncoding);
+        response.setContentType(MimetypeUtils.getContentType(mimetype, characterEncoding));
 
-        PrintWriter out = response.getWriter();
-        out.write(result.toString());
-        out.flush();
+        GzipUtils.writeText(ctx, result.toString());
     }
 }
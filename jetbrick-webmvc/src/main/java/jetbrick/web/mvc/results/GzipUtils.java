@@ -0,0 +1,311 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import jetbrick.io.streams.UnsafeByteArrayOutputStream;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.servlet.ResponseUtils;
+
+/**
+ * 在 ResultHandler 中直接输出 gzip 压缩的内容 (web.http.gzip = true).
+ * <p>
+ * 边输出边压缩，不会缓存整个 response，Deflater 放在一个固定大小的池中复用 (池满的时候 end() 释放).
+ * 应用停止的时候需要调用 {@link #destroy()} 释放池中的 Deflater.
+ */
+public final class GzipUtils {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final AtomicReferenceArray<DeflaterHolder> pool = new AtomicReferenceArray<DeflaterHolder>(POOL_SIZE);
+
+    /**
+     * 是否需要压缩，length 为 -1 表示长度未知.
+     * <p>
+     * 对于可以压缩的类型，会同时设置 Vary: Accept-Encoding.
+     */
+    public static boolean shouldCompress(RequestContext ctx, String contentType, long length) {
+        WebConfig config = ctx.getWebConfig();
+        if (!config.isHttpGzip() || !isCompressible(contentType)) {
+            return false;
+        }
+        HttpServletResponse response = ctx.getResponse();
+        if (response.isCommitted() || response.containsHeader("Content-Encoding")) {
+            return false;
+        }
+        ResponseUtils.addVaryHeader(response, "Accept-Encoding");
+        if (length >= 0 && length < config.getHttpGzipMinSize()) {
+            return false;
+        }
+        return isAcceptGzip(ctx.getRequest());
+    }
+
+    /**
+     * 是否接受 gzip 编码，明确指定的 gzip (或者 x-gzip) 优先于 "*"，比如 "*;q=1, gzip;q=0" 不接受 gzip.
+     */
+    public static boolean isAcceptGzip(HttpServletRequest request) {
+        String header = request.getHeader("Accept-Encoding");
+        if (header == null || (header.indexOf("gzip") < 0 && header.indexOf('*') < 0)) {
+            return false;
+        }
+        double gzipQ = -1; // -1 表示没有指定
+        double anyQ = -1;
+        for (String value : header.split(",")) {
+            String coding = value;
+            double q = 1;
+            int ipos = value.indexOf(';');
+            if (ipos >= 0) {
+                coding = value.substring(0, ipos);
+                int qpos = value.indexOf("q=", ipos);
+                if (qpos > 0) {
+                    try {
+                        q = Double.parseDouble(value.substring(qpos + 2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            coding = coding.trim();
+            if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+                gzipQ = Math.max(gzipQ, q);
+            } else if ("*".equals(coding)) {
+                anyQ = Math.max(anyQ, q);
+            }
+        }
+        return gzipQ >= 0 ? gzipQ > 0 : anyQ > 0;
+    }
+
+    // 图片，视频，压缩包等已经压缩过的内容不需要再压缩
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int ipos = contentType.indexOf(';');
+        String mimetype = (ipos < 0) ? contentType : contentType.substring(0, ipos).trim();
+        if (mimetype.startsWith("text/")) {
+            return true;
+        }
+        if (mimetype.endsWith("+xml") || mimetype.endsWith("+json")) {
+            return true;
+        }
+        return "application/json".equals(mimetype) || "application/javascript".equals(mimetype) || "application/x-javascript".equals(mimetype) || "application/xml".equals(mimetype);
+    }
+
+    /**
+     * 输出文本，如果需要的话，进行压缩 (使用 response 已经设置的 contentType 和 characterEncoding).
+     */
+    public static void writeText(RequestContext ctx, String text) throws IOException {
+        HttpServletResponse response = ctx.getResponse();
+        // 字符数小于 min.size 的时候，字节数也不会太大，不需要先编码
+        if (shouldCompress(ctx, response.getContentType(), text.length())) {
+            byte[] data = text.getBytes(response.getCharacterEncoding());
+            OutputStream out = getOutputStream(ctx);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        } else {
+            PrintWriter out = response.getWriter();
+            out.write(text);
+            out.flush();
+        }
+    }
+
+    /**
+     * 设置 Content-Encoding，并返回一个压缩的输出流，使用完成后必须 close() (不会关闭 response 的输出流).
+     */
+    public static OutputStream getOutputStream(RequestContext ctx) throws IOException {
+        HttpServletResponse response = ctx.getResponse();
+        response.setHeader("Content-Encoding", "gzip");
+        return new GzipOutputStream(response.getOutputStream(), ctx.getWebConfig().getHttpGzipLevel());
+    }
+
+    public static byte[] compress(byte[] data, int level) {
+        UnsafeByteArrayOutputStream bytes = new UnsafeByteArrayOutputStream(data.length / 4 + 32);
+        GzipOutputStream out = new GzipOutputStream(bytes, level);
+        try {
+            out.write(data, 0, data.length);
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // 不会发生
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 释放池中所有的 Deflater (在 DispatcherFilter.destroy() 中调用).
+     * 正在使用的 Deflater 在使用完成后，如果没有放回池中，那么也会 end().
+     */
+    public static void destroy() {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            DeflaterHolder holder = pool.getAndSet(i, null);
+            if (holder != null) {
+                holder.deflater.end();
+            }
+        }
+    }
+
+    // 从池中获取一个 Deflater，没有的话新建一个
+    static DeflaterHolder acquire(int level) {
+        int start = (int) (Thread.currentThread().getId() % POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int index = (start + i) % POOL_SIZE;
+            if (pool.get(index) != null) {
+                DeflaterHolder holder = pool.getAndSet(index, null);
+                if (holder != null) {
+                    holder.deflater.setLevel(level);
+                    return holder;
+                }
+            }
+        }
+        return new DeflaterHolder(level);
+    }
+
+    // 放回池中，池满的时候直接 end()，释放 native 内存
+    static void release(DeflaterHolder holder) {
+        holder.deflater.reset();
+        int start = (int) (Thread.currentThread().getId() % POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.compareAndSet((start + i) % POOL_SIZE, null, holder)) {
+                return;
+            }
+        }
+        holder.deflater.end();
+    }
+
+    // 当前池中的 Deflater 数量
+    static int getPooledCount() {
+        int count = 0;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static final class DeflaterHolder {
+        final Deflater deflater;
+        final byte[] buffer;
+
+        DeflaterHolder(int level) {
+            this.deflater = new Deflater(level, true);
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * 和 GZIPOutputStream 一样的格式，但是 Deflater 和 buffer 从池中获取，close() 之后放回池中.
+     */
+    static final class GzipOutputStream extends OutputStream {
+        private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+        private final OutputStream out;
+        private final DeflaterHolder holder;
+        private final Deflater deflater;
+        private final byte[] buffer;
+        private final CRC32 crc = new CRC32();
+        private boolean headerWritten;
+        private boolean finished;
+
+        public GzipOutputStream(OutputStream out, int level) {
+            this.holder = acquire(level);
+            this.deflater = holder.deflater;
+            this.buffer = holder.buffer;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Stream has been finished");
+            }
+            if (len == 0) {
+                return;
+            }
+            writeHeader();
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        private void writeHeader() throws IOException {
+            if (!headerWritten) {
+                headerWritten = true;
+                out.write(HEADER);
+            }
+        }
+
+        private void deflate() throws IOException {
+            int n = deflater.deflate(buffer, 0, buffer.length);
+            if (n > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                writeHeader();
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                writeInt((int) crc.getValue());
+                writeInt((int) deflater.getBytesRead()); // ISIZE: 原始长度 mod 2^32
+            } finally {
+                release(holder);
+            }
+        }
+
+        private void writeInt(int v) throws IOException {
+            out.write(v & 0xff);
+            out.write((v >> 8) & 0xff);
+            out.write((v >> 16) & 0xff);
+            out.write((v >> 24) & 0xff);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.flush();
+        }
+    }
+}
@@ -18,9 +18,15 @@
  */
 package jetbrick.web.mvc.results;
 
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.http.HttpServletRequest;
 
 public class MimetypeUtils {
+    // 只缓存常用的 mimetype，以及有限个 encoding，避免被请求中的数据撑爆
+    private static final String[] KNOWN_MIMETYPES = { "text/html", "text/plain", "text/xml", "text/css", "application/json", "application/javascript", "application/xml" };
+    static final int MAX_CACHED_ENCODINGS = 16;
+    // encoding -> contentTypes (和 KNOWN_MIMETYPES 一一对应)，避免每次请求都拼接字符串
+    private static final ConcurrentHashMap<String, String[]> contentTypes = new ConcurrentHashMap<String, String[]>();
 
     // IE 10 以下的版本不支持 application/json
     public static String getJSON(HttpServletRequest request) {
@@ -32,19 +38,74 @@ public class MimetypeUtils {
         return isOldIEBrowser(request, 9) ? "text/html" : "application/javascript";
     }
 
-    private static boolean isOldIEBrowser(HttpServletRequest request, int expectedVersion) {
-        try {
-            String agent = request.getHeader("user-agent");
-            int ipos = agent.indexOf("MSIE");
-            if (ipos > 0) {
-                ipos = ipos + 4;
-                int jpos = agent.indexOf(';', ipos);
-                String version = agent.substring(ipos, jpos);
-                return Float.parseFloat(version) < expectedVersion;
+    // 返回 "mimetype; charset=encoding"
+    public static String getContentType(String mimetype, String encoding) {
+        int index = indexOfKnownMimetype(mimetype);
+        if (index < 0 || encoding == null) {
+            return mimetype + "; charset=" + encoding;
+        }
+        String[] cached = contentTypes.get(encoding);
+        if (cached == null) {
+            if (contentTypes.size() >= MAX_CACHED_ENCODINGS) {
+                return mimetype + "; charset=" + encoding;
+            }
+            cached = new String[KNOWN_MIMETYPES.length];
+            for (int i = 0; i < cached.length; i++) {
+                cached[i] = KNOWN_MIMETYPES[i] + "; charset=" + encoding;
             }
-        } catch (Exception e) {
+            String[] old = contentTypes.putIfAbsent(encoding, cached);
+            if (old != null) {
+                cached = old;
+            }
+        }
+        return cached[index];
+    }
+
+    private static int indexOfKnownMimetype(String mimetype) {
+        // 调用者一般传入的是字符串常量，先比较引用
+        for (int i = 0; i < KNOWN_MIMETYPES.length; i++) {
+            if (KNOWN_MIMETYPES[i] == mimetype) {
+                return i;
+            }
+        }
+        for (int i = 0; i < KNOWN_MIMETYPES.length; i++) {
+            if (KNOWN_MIMETYPES[i].equals(mimetype)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 已经缓存的 encoding 数量
+    static int getCachedEncodingCount() {
+        return contentTypes.size();
+    }
+
+    // 只解析 "MSIE" 后面的主版本号，不创建临时对象
+    private static boolean isOldIEBrowser(HttpServletRequest request, int expectedVersion) {
+        String agent = request.getHeader("user-agent");
+        if (agent == null) {
             return false;
         }
-        return false;
+        int ipos = agent.indexOf("MSIE");
+        if (ipos <= 0) {
+            return false;
+        }
+        ipos += 4;
+        int length = agent.length();
+        while (ipos < length && agent.charAt(ipos) == ' ') {
+            ipos++;
+        }
+        int version = 0;
+        int digits = 0;
+        while (ipos < length) {
+            char c = agent.charAt(ipos++);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            version = version * 10 + (c - '0');
+            digits++;
+        }
+        return digits > 0 && version < expectedVersion;
     }
 }
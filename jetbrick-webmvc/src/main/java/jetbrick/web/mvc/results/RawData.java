@@ -24,17 +24,22 @@ import jetbrick.ioc.annotations.ManagedWith;
 
 /**
  * 自定义输出二进制数据.
+ * <p>
+ * 使用 byte[] 构造的 RawData 可以重复输出 (比如保存在 static 变量中)，并且会缓存 gzip 压缩后的内容.
  *
  * @author Guoqiang Chen
  */
 @ManagedWith(RawDataResultHandler.class)
 public final class RawData {
     private final InputStream is;
+    private final byte[] data;
     private final String contentType;
-    private final int contentLength;
+    private final long contentLength;
+    private volatile byte[] gzipData;
 
     public RawData(InputStream is, String contentType) {
         this.is = is;
+        this.data = null;
         this.contentType = contentType;
         this.contentLength = 0;
     }
@@ -45,25 +50,48 @@ public final class RawData {
         } catch (FileNotFoundException e) {
             throw new RuntimeException(e);
         }
+        this.data = null;
         this.contentType = contentType;
-        this.contentLength = (int) file.length();
+        this.contentLength = file.length();
     }
 
     public RawData(byte[] data, String contentType) {
-        this.is = new UnsafeByteArrayInputStream(data);
+        this.is = null;
+        this.data = data;
         this.contentType = contentType;
         this.contentLength = data.length;
     }
 
     public InputStream getInputStream() {
+        if (data != null) {
+            return new UnsafeByteArrayInputStream(data);
+        }
         return is;
     }
 
+    // 使用 byte[] 构造的时候才有值
+    byte[] getData() {
+        return data;
+    }
+
+    byte[] getGzipData() {
+        return gzipData;
+    }
+
+    void setGzipData(byte[] gzipData) {
+        this.gzipData = gzipData;
+    }
+
     public String getContentType() {
         return contentType;
     }
 
+    // 超过 int 范围的时候返回 -1，请使用 getContentLengthLong()
     public int getContentLength() {
+        return contentLength > Integer.MAX_VALUE ? -1 : (int) contentLength;
+    }
+
+    public long getContentLengthLong() {
         return contentLength;
     }
 }
@@ -20,6 +20,7 @@ package jetbrick.web.mvc.results;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import jetbrick.io.IoUtils;
@@ -38,9 +39,44 @@ public class RawDataResultHandler implements ResultHandler<RawData> {
     public void handle(RequestContext ctx, RawData result) throws IOException {
         HttpServletResponse response = ctx.getResponse();
 
-        response.setContentType(result.getContentType());
-        if (result.getContentLength() > 0) {
-            response.setContentLength(result.getContentLength());
+        String contentType = result.getContentType();
+        response.setContentType(contentType);
+
+        byte[] data = result.getData();
+        if (data != null) {
+            if (GzipUtils.shouldCompress(ctx, contentType, data.length)) {
+                // 缓存压缩后的内容，同一个 RawData 重复输出的时候不需要再压缩
+                byte[] gzipData = result.getGzipData();
+                if (gzipData == null) {
+                    gzipData = GzipUtils.compress(data, ctx.getWebConfig().getHttpGzipLevel());
+                    result.setGzipData(gzipData);
+                }
+                response.setHeader("Content-Encoding", "gzip");
+                data = gzipData;
+            }
+            response.setContentLength(data.length);
+
+            ServletOutputStream out = response.getOutputStream();
+            out.write(data);
+            out.flush();
+            return;
+        }
+
+        long length = result.getContentLengthLong();
+        if (GzipUtils.shouldCompress(ctx, contentType, length > 0 ? length : -1)) {
+            OutputStream out = GzipUtils.getOutputStream(ctx);
+            InputStream is = result.getInputStream();
+            try {
+                IoUtils.copy(is, out);
+            } finally {
+                IoUtils.closeQuietly(is);
+                out.close();
+            }
+            return;
+        }
+
+        if (length > 0) {
+            response.setHeader("Content-Length", Long.toString(length)); // setContentLength(int) 不支持超过 2G 的文件
         }
 
         ServletOutputStream out = response.getOutputStream();
@@ -52,5 +88,4 @@ public class RawDataResultHandler implements ResultHandler<RawData> {
         }
         out.flush();
     }
-
 }
@@ -24,6 +24,8 @@ import jetbrick.ioc.annotations.ManagedWith;
 
 /**
  * 负责文件下载.
+ * <p>
+ * 使用 File 构造的下载支持 Range/If-None-Match/If-Modified-Since，并且使用 FileChannel.transferTo() 输出.
  *
  * @author Guoqiang Chen
  */
@@ -32,16 +34,18 @@ public final class RawDownload {
     public static final String MIME_APPLICATION_X_DOWNLOAD = "application/x-download";
     public static final String MIME_APPLICATION_OCTET_STREAM = "application/octet-stream";
 
-    private final InputStream is;
+    private final File file;
+    private InputStream is;
     private final String fileName;
     private final String contentType;
-    private final int contentLength;
+    private final long contentLength;
 
     public RawDownload(InputStream is, String fileName) {
         this(is, fileName, MIME_APPLICATION_OCTET_STREAM);
     }
 
     public RawDownload(InputStream is, String fileName, String contentType) {
+        this.file = null;
         this.is = is;
         this.fileName = fileName;
         this.contentType = contentType;
@@ -53,17 +57,17 @@ public final class RawDownload {
     }
 
     public RawDownload(File file, String fileName, String contentType) {
-        try {
-            this.is = new FileInputStream(file);
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
+        if (!file.isFile()) {
+            throw new RuntimeException(new FileNotFoundException(file.getAbsolutePath()));
         }
+        this.file = file; // 输出的时候才打开文件
         this.fileName = fileName;
         this.contentType = contentType;
-        this.contentLength = (int) file.length();
+        this.contentLength = file.length();
     }
 
     public RawDownload(byte[] data, String fileName, String contentType) {
+        this.file = null;
         this.is = new UnsafeByteArrayInputStream(data);
         this.fileName = fileName;
         this.contentType = contentType;
@@ -71,9 +75,21 @@ public final class RawDownload {
     }
 
     public InputStream getInputStream() {
+        if (is == null && file != null) {
+            try {
+                is = new FileInputStream(file);
+            } catch (FileNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
         return is;
     }
 
+    // 使用 File 构造的时候才有值
+    public File getFile() {
+        return file;
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -82,7 +98,12 @@ public final class RawDownload {
         return contentType;
     }
 
+    // 超过 int 范围的时候返回 -1，请使用 getContentLengthLong()
     public int getContentLength() {
+        return contentLength > Integer.MAX_VALUE ? -1 : (int) contentLength;
+    }
+
+    public long getContentLengthLong() {
         return contentLength;
     }
 }
@@ -19,19 +19,37 @@
 package jetbrick.web.mvc.results;
 
 import java.io.*;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import jetbrick.io.IoUtils;
 import jetbrick.ioc.annotations.Managed;
+import jetbrick.lang.RandomStringUtils;
 import jetbrick.web.mvc.RequestContext;
 
 /**
  * 负责文件下载.
+ * <p>
+ * 对于 File 构造的 RawDownload：
+ * <ul>
+ *   <li>输出 Content-Length, ETag (强校验，由文件长度和修改时间组成), Last-Modified</li>
+ *   <li>If-None-Match/If-Modified-Since 命中的时候，直接返回 304，不会打开文件</li>
+ *   <li>支持 Range (包括 multipart/byteranges) 和 If-Range</li>
+ *   <li>如果容器支持 sendfile (Tomcat NIO/APR)，那么由容器直接发送文件，否则使用 FileChannel.transferTo() 输出</li>
+ * </ul>
  *
  * @author Guoqiang Chen
  */
 @Managed
 public class RawDownloadResultHandler implements ResultHandler<RawDownload> {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final int MAX_RANGES = 32; // 超过的话，忽略 Range，直接返回整个文件
 
     @Override
     public void handle(RequestContext ctx, RawDownload result) throws IOException {
@@ -46,6 +64,15 @@ public class RawDownloadResultHandler implements ResultHandler<RawDownload> {
         } catch (UnsupportedEncodingException e) {
         }
 
+        if (result.getFile() != null) {
+            sendFile(ctx.getRequest(), response, result);
+            return;
+        }
+
+        if (result.getContentLengthLong() > 0) {
+            response.setHeader("Content-Length", Long.toString(result.getContentLengthLong()));
+        }
+
         ServletOutputStream out = response.getOutputStream();
         InputStream is = result.getInputStream();
         try {
@@ -56,4 +83,231 @@ public class RawDownloadResultHandler implements ResultHandler<RawDownload> {
         out.flush();
     }
 
+    private void sendFile(HttpServletRequest request, HttpServletResponse response, RawDownload result) throws IOException {
+        File file = result.getFile();
+        long length = result.getContentLengthLong();
+        long lastModified = file.lastModified();
+        String etag = "\"" + length + "-" + lastModified + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<Range> ranges = null;
+        String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null && isIfRangeMatched(request, etag, lastModified)) {
+            ranges = parseRanges(rangeHeader, length);
+            if (ranges != null && ranges.isEmpty()) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+        }
+
+        boolean head = "HEAD".equals(request.getMethod());
+
+        if (ranges == null || ranges.size() == 1) {
+            long start = 0;
+            long end = length - 1;
+            if (ranges != null) {
+                Range range = ranges.get(0);
+                start = range.start;
+                end = range.end;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", range.toContentRange(length));
+            }
+            response.setHeader("Content-Length", Long.toString(end - start + 1));
+            if (head || length == 0) {
+                return;
+            }
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // 由容器使用 sendfile 发送，end 不包含在内
+                request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+                request.setAttribute(SENDFILE_START, Long.valueOf(start));
+                request.setAttribute(SENDFILE_END, Long.valueOf(end + 1));
+                return;
+            }
+
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                ServletOutputStream out = response.getOutputStream();
+                transfer(fis.getChannel(), start, end - start + 1, Channels.newChannel(out));
+                out.flush();
+            } finally {
+                IoUtils.closeQuietly(fis);
+            }
+            return;
+        }
+
+        // multipart/byteranges
+        String boundary = RandomStringUtils.randomAlphanumeric(24);
+        String contentType = result.getContentType();
+        byte[][] partHeaders = new byte[ranges.size()][];
+        byte[] partEnd = ("\r\n--" + boundary + "--\r\n").getBytes("ISO8859-1");
+        long contentLength = partEnd.length;
+        for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("\r\n--").append(boundary).append("\r\n");
+            if (contentType != null) {
+                sb.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            sb.append("Content-Range: ").append(range.toContentRange(length)).append("\r\n\r\n");
+            partHeaders[i] = sb.toString().getBytes("ISO8859-1");
+            contentLength += partHeaders[i].length + (range.end - range.start + 1);
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setHeader("Content-Length", Long.toString(contentLength));
+        if (head) {
+            return;
+        }
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            ServletOutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            for (int i = 0; i < ranges.size(); i++) {
+                Range range = ranges.get(i);
+                out.write(partHeaders[i]);
+                transfer(channel, range.start, range.end - range.start + 1, target);
+            }
+            out.write(partEnd);
+            out.flush();
+        } finally {
+            IoUtils.closeQuietly(fis);
+        }
+    }
+
+    // transferTo() 一次可能不能传输全部的数据
+    private static void transfer(FileChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        while (count > 0) {
+            long n = channel.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of file at position " + position);
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesETag(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+        if (ifModifiedSince != -1) {
+            return lastModified / 1000 <= ifModifiedSince / 1000; // HTTP 日期只精确到秒
+        }
+        return false;
+    }
+
+    private static boolean isIfRangeMatched(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("W/")) {
+            return false; // If-Range 必须使用强比较 (RFC 7233)，弱 ETag 永远不匹配，返回整个文件
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        long date = getDateHeader(request, "If-Range");
+        return date != -1 && lastModified / 1000 == date / 1000;
+    }
+
+    private static boolean matchesETag(String header, String etag) {
+        for (String value : header.split(",")) {
+            value = value.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2); // If-None-Match 使用弱比较
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析 Range 头.
+     *
+     * @return null 表示忽略 Range (格式错误或者太多)，空的 List 表示无法满足 (416).
+     */
+    private static List<Range> parseRanges(String header, long length) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<Range> ranges = new ArrayList<Range>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long start, end;
+            try {
+                if (dash == 0) {
+                    // 最后的 N 个字节
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    end = (dash == spec.length() - 1) ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+                    if (end < start) {
+                        return null;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (start < length) {
+                ranges.add(new Range(start, end));
+            }
+        }
+        return ranges;
+    }
+
+    static final class Range {
+        final long start;
+        final long end; // 包含在内
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        String toContentRange(long length) {
+            return "bytes " + start + "-" + end + "/" + length;
+        }
+    }
 }
@@ -19,7 +19,6 @@
 package jetbrick.web.mvc.results;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import javax.servlet.http.HttpServletResponse;
 import jetbrick.ioc.annotations.Managed;
 import jetbrick.web.mvc.RequestContext;
@@ -36,12 +35,10 @@ public class RawTextResultHandler implements ResultHandler<RawText> {
     public void handle(RequestContext ctx, RawText result) throws IOException {
         HttpServletResponse response = ctx.getResponse();
 
-        String contentType = result.getMimetype() + "; charset=" + response.getCharacterEncoding();
+        String contentType = MimetypeUtils.getContentType(result.getMimetype(), response.getCharacterEncoding());
         response.setContentType(contentType);
 
-        PrintWriter out = response.getWriter();
-        out.write(result.getText());
-        out.flush();
+        GzipUtils.writeText(ctx, result.getText());
     }
 
 }
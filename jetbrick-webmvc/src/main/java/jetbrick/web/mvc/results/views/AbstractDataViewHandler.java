@@ -19,10 +19,11 @@
 package jetbrick.web.mvc.results.views;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.results.GzipUtils;
+import jetbrick.web.mvc.results.MimetypeUtils;
 
 // 所有子类都是单例
 public abstract class AbstractDataViewHandler implements ViewHandler {
@@ -41,11 +42,9 @@ public abstract class AbstractDataViewHandler implements ViewHandler {
 
         String characterEncoding = request.getCharacterEncoding();
         response.setCharacterEncoding(characterEncoding);
-        response.setContentType(getMimetype(request) + "; charset=" + characterEncoding);
+        response.setContentType(MimetypeUtils.getContentType(getMimetype(request), characterEncoding));
 
-        PrintWriter out = response.getWriter();
-        out.write(value);
-        out.flush();
+        GzipUtils.writeText(ctx, value);
     }
 
 }
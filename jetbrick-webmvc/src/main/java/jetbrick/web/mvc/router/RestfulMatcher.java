@@ -19,7 +19,7 @@
 package jetbrick.web.mvc.router;
 
 import java.util.*;
-import jetbrick.collections.SoftHashMap;
+import jetbrick.collections.ConcurrentLruCache;
 import jetbrick.collections.multimap.MultiValueHashMap;
 import jetbrick.collections.multimap.MultiValueMap;
 import jetbrick.lang.StringUtils;
@@ -31,16 +31,22 @@ import jetbrick.web.mvc.action.PathVariables;
  * <h2>分组匹配算法</h2>
  * <ol>
  *   <li>按照 HttpMethod 分组</li>
- *   <li>按照静态/动态 URL 分组(cache)</li>
+ *   <li>按照静态/动态 URL 分组(动态 URL 使用有容量上限的 LRU cache)</li>
  *   <li>动态 URL 先按照 path 长度分组，再按照 group 分组</li>
  * </ol>
  */
 final class RestfulMatcher {
     private static final int MAX_PATH_PARTS = 20;
 
-    private Map<String, RouteInfo> staticUrls = new HashMap<String, RouteInfo>(128);
-    private Map<String, RouteInfo> cachedUrls = new SoftHashMap<String, RouteInfo>(256);
-    private OneByOneMatcher[] matchers = new OneByOneMatcher[MAX_PATH_PARTS]; // 按照长度分组
+    private final Map<String, RouteInfo> staticUrls = new HashMap<String, RouteInfo>(128);
+    private final ConcurrentLruCache<String, RouteInfo> cachedUrls; // null 表示不使用 cache
+    private final boolean cacheNotFound;
+    private final OneByOneMatcher[] matchers = new OneByOneMatcher[MAX_PATH_PARTS]; // 按照长度分组
+
+    public RestfulMatcher(int cacheSize, boolean cacheNotFound) {
+        this.cachedUrls = (cacheSize > 0) ? new ConcurrentLruCache<String, RouteInfo>(cacheSize) : null;
+        this.cacheNotFound = cacheNotFound;
+    }
 
     public void register(ActionInfo action, String url) {
         if (url.indexOf('{') == -1) {
@@ -65,9 +71,11 @@ final class RestfulMatcher {
         if (info != null) return info;
 
         // 2. 查询动态路由缓存
-        info = cachedUrls.get(url);
-        if (info != null) {
-            return info;
+        if (cachedUrls != null) {
+            info = cachedUrls.get(url);
+            if (info != null) {
+                return info;
+            }
         }
 
         // 3. 开始执行动态路由匹配 (分组匹配)
@@ -80,16 +88,23 @@ final class RestfulMatcher {
             info = matcher.lookup(urlSegments);
         }
 
-        // 4. 加入缓存
+        // 4. 加入缓存 (默认不缓存 NOT_FOUND，避免被大量的非法 URL 挤占)
         if (info == null) {
             info = RouteInfo.NOT_FOUND;
         }
-        cachedUrls.put(url, info);
+        if (cachedUrls != null && (info != RouteInfo.NOT_FOUND || cacheNotFound)) {
+            cachedUrls.put(url, info);
+        }
 
         // 5. 返回
         return info;
     }
 
+    // 动态路由的缓存，没有使用 cache 的时候返回 null
+    public ConcurrentLruCache<String, RouteInfo> getCache() {
+        return cachedUrls;
+    }
+
     // 动态路由匹配(逐个匹配)
     static final class OneByOneMatcher {
         private final MultiValueMap<String, ActionInfo> groups = new MultiValueHashMap<String, ActionInfo>(256);
@@ -19,75 +19,40 @@
 package jetbrick.web.mvc.router;
 
 import javax.servlet.http.HttpServletRequest;
-import jetbrick.lang.*;
-import jetbrick.lang.annotations.ValueConstants;
-import jetbrick.reflect.KlassInfo;
-import jetbrick.reflect.MethodInfo;
-import jetbrick.web.mvc.*;
-import jetbrick.web.mvc.action.*;
-import jetbrick.web.mvc.config.WebConfig;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import jetbrick.collections.ConcurrentLruCache;
+import jetbrick.ioc.annotations.Config;
+import jetbrick.web.mvc.RouteInfo;
+import jetbrick.web.mvc.action.ActionInfo;
+import jetbrick.web.mvc.action.HttpMethod;
 
 /**
- * <h2>URL 映射规则：</h2>
- * <ul>
- *   <li>/users + (null)  == /users/(method)</li>
- *   <li>/users + (empty) == /users/(method)</li>
- *   <li>/users + /       == /users/</li>
- *   <li>/users + /add    == /users/add</li>
- * </ul>
+ * 按照 URL 长度和第一个 segment 分组，然后逐个进行匹配的 Router.
+ * <p>
+ * 动态 URL 的匹配结果存放在有容量上限的 LRU cache 中：
+ * <pre>
+ * web.urls.router.cache.size = 1024      # 每个 HttpMethod 的 cache 容量，0 表示不使用 cache
+ * web.urls.router.cache.notfound = false # 是否缓存没有匹配的 URL
+ * </pre>
+ *
+ * @see AbstractRouter
  */
-public final class RestfulRouter implements Router {
-    private final Logger log = LoggerFactory.getLogger(RestfulRouter.class);
+public final class RestfulRouter extends AbstractRouter {
     private final RestfulMatcher[] matchers = new RestfulMatcher[HttpMethod.METHOD_LENGTH];
 
-    /**
-     * 根据 annotation，获取所有的 Action
-     */
-    @Override
-    public void registerController(Class<?> clazz) {
-        Controller controller = clazz.getAnnotation(Controller.class);
-        Validate.notNull(controller);
-
-        String ctrlPath = ValueConstants.trimToEmpty(controller.value());
-        ControllerInfo ctrlInfo = new ControllerInfo(clazz, controller);
-
-        ResultHandlerResolver resultHandlerResolver = WebConfig.getInstance().getResultHandlerResolver();
-        KlassInfo klass = KlassInfo.create(clazz);
-        for (MethodInfo actionMethod : klass.getMethods()) {
-            if (!klass.isPublic() || actionMethod.isStatic()) {
-                continue;
-            }
-            Action action = actionMethod.getAnnotation(Action.class);
-            if (action == null) {
-                continue;
-            }
-            String actionPath = ValueConstants.defaultValue(action.value(), actionMethod.getName());
-            String url = StringUtils.removeEnd(ctrlPath, "/") + StringUtils.prefix(actionPath, "/");
-
-            // validate the action result type
-            Class<?> returnClass = actionMethod.getRawReturnType(clazz);
-            if (!resultHandlerResolver.validate(returnClass)) {
-                throw new IllegalStateException("Unsupported result class: " + returnClass.getName() + " of " + actionMethod);
-            }
+    @Config(value = "web.urls.router.cache.size", defaultValue = "1024")
+    private int cacheSize;
 
-            HttpMethod[] httpMethods = action.method();
-            Validate.isTrue(httpMethods.length > 0);
+    @Config(value = "web.urls.router.cache.notfound", defaultValue = "false")
+    private boolean cacheNotFound;
 
-            if (log.isDebugEnabled()) {
-                log.debug("found action: {} {}", ArrayUtils.toString(httpMethods), url);
-            }
-            ActionInfo actionInfo = new ActionInfo(ctrlInfo, actionMethod, url);
-            for (HttpMethod method : httpMethods) {
-                RestfulMatcher matcher = matchers[method.getIndex()];
-                if (matcher == null) {
-                    matcher = new RestfulMatcher();
-                    matchers[method.getIndex()] = matcher;
-                }
-                matcher.register(actionInfo, url);
-            }
+    @Override
+    protected void register(HttpMethod method, ActionInfo action, String url) {
+        RestfulMatcher matcher = matchers[method.getIndex()];
+        if (matcher == null) {
+            matcher = new RestfulMatcher(cacheSize, cacheNotFound);
+            matchers[method.getIndex()] = matcher;
         }
+        matcher.register(action, url);
     }
 
     @Override
@@ -98,4 +63,41 @@ public final class RestfulRouter implements Router {
         }
         return RouteInfo.NOT_FOUND;
     }
+
+    //---- cache statistics ------------------------------------------
+    public long getCacheHitCount() {
+        long count = 0;
+        for (RestfulMatcher matcher : matchers) {
+            ConcurrentLruCache<String, RouteInfo> cache = (matcher == null) ? null : matcher.getCache();
+            if (cache != null) count += cache.getHitCount();
+        }
+        return count;
+    }
+
+    public long getCacheMissCount() {
+        long count = 0;
+        for (RestfulMatcher matcher : matchers) {
+            ConcurrentLruCache<String, RouteInfo> cache = (matcher == null) ? null : matcher.getCache();
+            if (cache != null) count += cache.getMissCount();
+        }
+        return count;
+    }
+
+    public long getCacheEvictionCount() {
+        long count = 0;
+        for (RestfulMatcher matcher : matchers) {
+            ConcurrentLruCache<String, RouteInfo> cache = (matcher == null) ? null : matcher.getCache();
+            if (cache != null) count += cache.getEvictionCount();
+        }
+        return count;
+    }
+
+    public int getCacheSize() {
+        int size = 0;
+        for (RestfulMatcher matcher : matchers) {
+            ConcurrentLruCache<String, RouteInfo> cache = (matcher == null) ? null : matcher.getCache();
+            if (cache != null) size += cache.size();
+        }
+        return size;
+    }
 }
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import java.util.*;
+import jetbrick.web.mvc.RouteInfo;
+import jetbrick.web.mvc.action.ActionInfo;
+import jetbrick.web.mvc.action.PathVariables;
+import jetbrick.web.mvc.router.UrlSegmentMatcher.EqualsUrlSegmentMatcher;
+
+/*
+ * <h2>前缀树匹配算法</h2>
+ * <ol>
+ *   <li>按照 HttpMethod 分组</li>
+ *   <li>静态 URL 直接使用 Map 查找</li>
+ *   <li>动态 URL 按照 segment 构造一棵前缀树，每一层中静态 segment 优先，动态 segment 按照注册顺序匹配</li>
+ * </ol>
+ * 查找的时候不需要对 URL 进行 split (直接按照 offset 进行匹配)，沿着前缀树逐层向下匹配，只有在匹配失败的情况下才会回溯.
+ * <p>
+ * 同一层的动态 segment 互不重叠 (比如 {id:\d+} 和 {name:[a-z]+}) 的时候，最多只有一个分支能匹配成功，
+ * 查找的时间复杂度为 O(URL 长度)；如果有重叠 (比如 {id} 和 {name}，或者静态 segment 也能被 {var} 匹配)，
+ * 那么子树匹配失败之后需要回溯到其他分支，最坏情况下和所有重叠分支的个数相关.
+ * <p>
+ * 重复注册相同的 URL 时 (静态或者动态)，后注册的 Action 覆盖前面的.
+ */
+final class TrieMatcher {
+    private final Map<String, RouteInfo> staticUrls = new HashMap<String, RouteInfo>(128);
+    private final Node root = new Node(null, null);
+
+    public void register(ActionInfo action, String url) {
+        if (url.indexOf('{') == -1) {
+            staticUrls.put(url, new RouteInfo(action));
+            return;
+        }
+
+        Node node = root;
+        int start = 1;
+        while (true) {
+            int end = url.indexOf('/', start);
+            String segment = (end == -1) ? url.substring(start) : url.substring(start, end);
+            node = node.addChild(segment);
+            if (end == -1) {
+                break;
+            }
+            start = end + 1;
+        }
+        node.action = action; // 和静态 URL 一样，后注册的覆盖前面的
+    }
+
+    public RouteInfo lookup(String url) {
+        // 1. 查询静态路由
+        RouteInfo info = staticUrls.get(url);
+        if (info != null) return info;
+
+        // 2. 查询动态路由
+        PathVariables pathVariables = new PathVariables();
+        ActionInfo action = root.lookup(url, 1, pathVariables);
+        if (action == null) {
+            return RouteInfo.NOT_FOUND;
+        }
+        return new RouteInfo(action, pathVariables);
+    }
+
+    // 前缀树中的一个节点，代表 URL 中的一个 segment
+    static final class Node {
+        private static final Node[] EMPTY_ARRAY = new Node[0];
+
+        private final String segment;
+        private final UrlSegmentMatcher matcher; // 静态 segment 或者 root 为 null
+        private SegmentTable staticChildren;
+        private Node[] dynamicChildren = EMPTY_ARRAY;
+        private ActionInfo action;
+
+        public Node(String segment, UrlSegmentMatcher matcher) {
+            this.segment = segment;
+            this.matcher = matcher;
+        }
+
+        public Node addChild(String segment) {
+            UrlSegmentMatcher m = UrlSegmentMatcher.create(segment);
+            if (m instanceof EqualsUrlSegmentMatcher) {
+                if (staticChildren == null) {
+                    staticChildren = new SegmentTable();
+                }
+                Node child = staticChildren.get(segment, 0, segment.length());
+                if (child == null) {
+                    child = new Node(segment, null);
+                    staticChildren.put(segment, child);
+                }
+                return child;
+            }
+
+            for (Node child : dynamicChildren) {
+                if (child.segment.equals(segment)) {
+                    return child;
+                }
+            }
+            Node child = new Node(segment, m);
+            dynamicChildren = Arrays.copyOf(dynamicChildren, dynamicChildren.length + 1);
+            dynamicChildren[dynamicChildren.length - 1] = child;
+            return child;
+        }
+
+        // 从 url 的 start 位置开始匹配子节点
+        public ActionInfo lookup(String url, int start, PathVariables pathVariables) {
+            int end = url.indexOf('/', start);
+            int segmentEnd = (end == -1) ? url.length() : end;
+
+            // 1. 静态 segment 优先
+            if (staticChildren != null) {
+                Node child = staticChildren.get(url, start, segmentEnd);
+                if (child != null) {
+                    ActionInfo found = child.next(url, end, pathVariables);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+
+            // 2. 按照注册顺序匹配动态 segment
+            for (Node child : dynamicChildren) {
+                int mark = pathVariables.size();
+                if (child.matcher.match(url, start, segmentEnd, pathVariables)) {
+                    ActionInfo found = child.next(url, end, pathVariables);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+                pathVariables.rollback(mark); // 回溯：只清除本节点及其子节点添加的内容
+            }
+            return null;
+        }
+
+        private ActionInfo next(String url, int end, PathVariables pathVariables) {
+            if (end == -1) {
+                return action;
+            }
+            return lookup(url, end + 1, pathVariables);
+        }
+    }
+
+    // 静态 segment 的 hash 表 (开放寻址)，可以直接使用 url 中的一个区间进行查找
+    static final class SegmentTable {
+        private String[] keys = new String[8];
+        private Node[] values = new Node[8];
+        private int size;
+
+        public Node get(String url, int start, int end) {
+            int length = end - start;
+            int mask = keys.length - 1;
+            int i = hash(url, start, end) & mask;
+            while (true) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (key.length() == length && url.regionMatches(start, key, 0, length)) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        public void put(String key, Node value) {
+            if ((size + 1) * 2 > keys.length) {
+                String[] oldKeys = keys;
+                Node[] oldValues = values;
+                keys = new String[oldKeys.length * 2];
+                values = new Node[oldValues.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        insert(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            insert(key, value);
+            size++;
+        }
+
+        private void insert(String key, Node value) {
+            int mask = keys.length - 1;
+            int i = hash(key, 0, key.length()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        // 和 String.hashCode() 算法一致
+        private static int hash(String s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + s.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import javax.servlet.http.HttpServletRequest;
+import jetbrick.web.mvc.RouteInfo;
+import jetbrick.web.mvc.action.ActionInfo;
+import jetbrick.web.mvc.action.HttpMethod;
+
+/**
+ * 基于前缀树的 Router，动态 segment 互不重叠的时候，查找的时间复杂度只和 URL 的长度相关，和 Action 的数量无关
+ * (有重叠的时候需要回溯，见 {@link TrieMatcher}).
+ *
+ * <pre>
+ * web.urls.router = jetbrick.web.mvc.router.TrieRouter
+ * </pre>
+ *
+ * @see AbstractRouter
+ */
+public final class TrieRouter extends AbstractRouter {
+    private final TrieMatcher[] matchers = new TrieMatcher[HttpMethod.METHOD_LENGTH];
+
+    @Override
+    protected void register(HttpMethod method, ActionInfo action, String url) {
+        TrieMatcher matcher = matchers[method.getIndex()];
+        if (matcher == null) {
+            matcher = new TrieMatcher();
+            matchers[method.getIndex()] = matcher;
+        }
+        matcher.register(action, url);
+    }
+
+    @Override
+    public RouteInfo lookup(HttpServletRequest request, String path, HttpMethod method) {
+        TrieMatcher matcher = matchers[method.getIndex()];
+        if (matcher != null) {
+            return matcher.lookup(path);
+        }
+        return RouteInfo.NOT_FOUND;
+    }
+}
@@ -32,6 +32,11 @@ public abstract class UrlSegmentMatcher {
 
     public abstract boolean match(String urlSegment, PathVariables pathVariables);
 
+    // 和 url 中 [start, end) 之间的 segment 进行匹配，子类可以覆盖以避免创建 segment 字符串
+    public boolean match(String url, int start, int end, PathVariables pathVariables) {
+        return match(url.substring(start, end), pathVariables);
+    }
+
     public static UrlSegmentMatcher create(String urlSegment) {
         UrlSegmentMatcher matcher = cache.get(urlSegment);
         if (matcher == null) {
@@ -77,6 +82,12 @@ public abstract class UrlSegmentMatcher {
         public boolean match(String urlSegment, PathVariables pathVariables) {
             return pattern.equals(urlSegment);
         }
+
+        @Override
+        public boolean match(String url, int start, int end, PathVariables pathVariables) {
+            int length = pattern.length();
+            return (end - start == length) && url.regionMatches(start, pattern, 0, length);
+        }
     }
 
     // 任意匹配 (*)
@@ -92,6 +103,12 @@ public abstract class UrlSegmentMatcher {
             pathVariables.add(name, urlSegment);
             return true;
         }
+
+        @Override
+        public boolean match(String url, int start, int end, PathVariables pathVariables) {
+            pathVariables.add(name, url.substring(start, end));
+            return true;
+        }
     }
 
     // 通配符匹配
@@ -110,7 +127,7 @@ public abstract class UrlSegmentMatcher {
 
     // 正则表达式匹配
     static abstract class RegexUrlSegmentMatcher extends UrlSegmentMatcher {
-        private static final Pattern PATH_PARAM_PATTERN = Pattern.compile("\\{[^}]+\\}");
+        private static final Pattern PATH_PARAM_PATTERN = Pattern.compile("\\{([^}]+)\\}");
 
         public static RegexUrlSegmentMatcher create(String urlSegment) {
             if (JdkVersion.IS_AT_LEAST_JAVA_7) {
@@ -139,7 +156,7 @@ public abstract class UrlSegmentMatcher {
                 if (namedGroupList != null) {
                     namedGroupList.add(name);
                 }
-                lastpos = m.end() + 1;
+                lastpos = m.end();
             }
             if (lastpos < urlSegment.length()) {
                 String s = urlSegment.substring(lastpos);
@@ -183,7 +200,12 @@ public abstract class UrlSegmentMatcher {
 
         @Override
         public boolean match(String urlSegment, PathVariables pathVariables) {
-            Matcher matcher = pattern.matcher(urlSegment);
+            return match(urlSegment, 0, urlSegment.length(), pathVariables);
+        }
+
+        @Override
+        public boolean match(String url, int start, int end, PathVariables pathVariables) {
+            Matcher matcher = pattern.matcher(url).region(start, end);
             if (matcher.matches()) {
                 for (String name : namedGroupList) {
                     String value = matcher.group(name);
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import jetbrick.web.mvc.action.Action;
+import jetbrick.web.mvc.action.Controller;
+import jetbrick.web.mvc.results.DeferredResult;
+import jetbrick.web.mvc.router.TrieRouter;
+import org.junit.Assert;
+import org.junit.Test;
+
+// 异步 Action 出错的时候，DispatcherFilter 必须结束异步请求，否则请求会一直挂起直到超时
+public class AsyncDispatchTest {
+
+    @Controller("/async")
+    public static class AsyncController {
+        static DeferredResult<String> deferred;
+
+        @Action("fail")
+        public DeferredResult<String> fail() {
+            throw new IllegalStateException("boom");
+        }
+
+        @Action("null")
+        public DeferredResult<String> returnNull() {
+            return null;
+        }
+
+        @Action("ok")
+        public DeferredResult<String> ok() {
+            deferred = new DeferredResult<String>();
+            return deferred;
+        }
+    }
+
+    @Test
+    public void testActionThrows() throws Exception {
+        for (boolean lean : new boolean[] { false, true }) {
+            MockAsyncContext async = dispatch("/async/fail", lean, true);
+            Assert.assertEquals(1, async.completed);
+        }
+    }
+
+    @Test
+    public void testActionReturnsNull() throws Exception {
+        for (boolean lean : new boolean[] { false, true }) {
+            MockAsyncContext async = dispatch("/async/null", lean, true);
+            Assert.assertEquals(1, async.completed);
+        }
+    }
+
+    @Test
+    public void testDeferredResult() throws Exception {
+        for (boolean lean : new boolean[] { false, true }) {
+            MockAsyncContext async = dispatch("/async/ok", lean, false);
+            Assert.assertEquals(0, async.completed); // 由 DeferredResult 负责结束
+
+            AsyncController.deferred.setResult(null);
+            Assert.assertEquals(1, async.completed);
+        }
+    }
+
+    private MockAsyncContext dispatch(String path, boolean leanDispatch, boolean error) throws Exception {
+        TrieRouter router = new TrieRouter();
+        WebTestUtils.getWebConfig();
+        router.registerController(AsyncController.class);
+        DispatcherFilter filter = WebTestUtils.createDispatcherFilter(router, leanDispatch);
+
+        MockAsyncContext async = new MockAsyncContext();
+        MockRequest request = new MockRequest();
+        request.requestURI = path;
+        request.asyncContext = async.get();
+        try {
+            filter.doFilter(request.get(), new MockResponse().get(), null);
+            Assert.assertFalse(path, error);
+        } catch (ServletException e) {
+            Assert.assertTrue(path, error);
+        }
+        return async;
+    }
+
+    static class MockAsyncContext implements InvocationHandler {
+        final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+        int completed;
+
+        AsyncContext get() {
+            return (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("addListener".equals(name)) {
+                listeners.add((AsyncListener) args[0]);
+            } else if ("complete".equals(name)) {
+                completed++;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+import java.lang.reflect.*;
+import java.util.*;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import jetbrick.web.mvc.DispatcherFilter.DispatchState;
+import jetbrick.web.mvc.action.*;
+import jetbrick.web.mvc.action.annotations.PathVariable;
+import jetbrick.web.mvc.interceptor.Interceptor;
+import jetbrick.web.mvc.interceptor.InterceptorChainImpl;
+import jetbrick.web.mvc.router.RestfulRouter;
+import jetbrick.web.mvc.router.TrieRouter;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class DispatchStateTest {
+    private static final List<Interceptor> NO_INTERCEPTORS = Collections.emptyList();
+
+    @Test
+    public void testReuse() {
+        DispatchState state = new DispatchState(NO_INTERCEPTORS);
+        RequestContext ctx = state.ctx;
+        InterceptorChainImpl chain = state.chain;
+
+        Assert.assertTrue(state.acquire());
+        Assert.assertFalse(state.acquire()); // 嵌套调用不能复用
+        state.ctx.initialize(new MockRequest().get(), new MockResponse().get(), "/a", HttpMethod.GET, RouteInfo.NOT_FOUND);
+        state.release();
+
+        Assert.assertSame(ctx, state.ctx);
+        Assert.assertSame(chain, state.chain);
+        Assert.assertNull(ctx.getRequest()); // 已经释放了引用
+        Assert.assertTrue(state.acquire());
+    }
+
+    @Test
+    public void testAsyncCompletedAfterRelease() throws Exception {
+        DispatchState state = new DispatchState(NO_INTERCEPTORS);
+        List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+        RequestContext asyncCtx = startAsync(state, listeners);
+
+        state.release();
+        Assert.assertNotSame(asyncCtx, state.ctx);
+        Assert.assertNotNull(asyncCtx.getRequest()); // 异步请求还在使用
+
+        listeners.get(0).onComplete(null);
+        Assert.assertNull(asyncCtx.getRequest());
+
+        // 下一个异步请求释放的时候，使用交还回来的 RequestContext
+        startAsync(state, new ArrayList<AsyncListener>());
+        state.release();
+        Assert.assertSame(asyncCtx, state.ctx);
+    }
+
+    @Test
+    public void testAsyncCompletedBeforeRelease() throws Exception {
+        DispatchState state = new DispatchState(NO_INTERCEPTORS);
+        List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+        RequestContext asyncCtx = startAsync(state, listeners);
+
+        listeners.get(0).onComplete(null);
+        Assert.assertNotNull(asyncCtx.getRequest()); // 还没有 release
+
+        state.release();
+        Assert.assertSame(asyncCtx, state.ctx); // 已经完成，直接复用
+        Assert.assertNull(asyncCtx.getRequest());
+    }
+
+    @Controller("/users")
+    public static class UserController {
+        @Action("{id}")
+        public void show(@PathVariable("id") String id) {
+        }
+    }
+
+    // 通过 DispatcherFilter.doFilter() 执行整个请求 (路由、PathVariables、参数数组、ResultHandler)，每个请求分配的内存.
+    // 使用 4096 个不同的 URL (/users/{id})，超过 RestfulRouter 的 cache 容量.
+    @Test
+    public void testAllocationProfile() throws Exception {
+        Assume.assumeTrue(WebTestUtils.getThreadAllocatedBytes() >= 0);
+
+        RestfulRouter restfulRouter = new RestfulRouter();
+        WebTestUtils.setField(restfulRouter, "cacheSize", 1024);
+        long baseline = measureDispatch(restfulRouter, false);
+        long trie = measureDispatch(new TrieRouter(), false);
+        long lean = measureDispatch(new TrieRouter(), true);
+
+        // MockRequest/MockResponse 的动态代理本身也会分配内存 (两种方式相同)，所以只比较差值
+        String message = "RestfulRouter = " + baseline + ", TrieRouter = " + trie + ", TrieRouter + lean = " + lean + " bytes/request";
+        Assert.assertTrue(message, baseline - trie >= 100); // 不再 split URL
+        Assert.assertTrue(message, trie - lean >= 40); // 不再为每个请求创建 RequestContext 和 InterceptorChain
+    }
+
+    private long measureDispatch(Router router, boolean leanDispatch) throws Exception {
+        WebTestUtils.getWebConfig();
+        router.registerController(UserController.class);
+        DispatcherFilter filter = WebTestUtils.createDispatcherFilter(router, leanDispatch);
+
+        String[] paths = new String[4096];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = "/users/" + i;
+        }
+        MockRequest request = new MockRequest();
+        HttpServletRequest req = request.get();
+        HttpServletResponse resp = new MockResponse().get();
+
+        int n = 100000;
+        long bytes = 0;
+        for (int round = 0; round < 3; round++) { // 第一轮用于预热
+            long start = WebTestUtils.getThreadAllocatedBytes();
+            for (int i = 0; i < n; i++) {
+                request.requestURI = paths[i & (paths.length - 1)];
+                filter.doFilter(req, resp, null);
+            }
+            bytes = (WebTestUtils.getThreadAllocatedBytes() - start) / n;
+        }
+        return bytes;
+    }
+
+    private RequestContext startAsync(DispatchState state, final List<AsyncListener> listeners) {
+        MockRequest request = new MockRequest();
+        request.asyncContext = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("addListener".equals(method.getName())) {
+                    listeners.add((AsyncListener) args[0]);
+                }
+                return null;
+            }
+        });
+        Assert.assertTrue(state.acquire());
+        RequestContext ctx = state.ctx;
+        ctx.initialize(request.get(), new MockResponse().get(), "/async", HttpMethod.GET, RouteInfo.NOT_FOUND);
+        ctx.startAsync();
+        return ctx;
+    }
+}
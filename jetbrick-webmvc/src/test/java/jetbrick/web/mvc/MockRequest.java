@@ -0,0 +1,155 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.*;
+import java.util.*;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+// 测试用的 HttpServletRequest，没有模拟的方法返回 null/0/false
+public final class MockRequest implements InvocationHandler {
+    public String method = "GET";
+    public String requestURI = "/";
+    public String queryString;
+    public final Map<String, String> headers = new LinkedHashMap<String, String>();
+    public final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+    public final Map<String, Object> attributes = new HashMap<String, Object>();
+    public AsyncContext asyncContext;
+    public String characterEncoding = "utf-8";
+    public byte[] body = new byte[0];
+
+    private final HttpServletRequest proxy = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletRequest.class }, this);
+
+    public HttpServletRequest get() {
+        return proxy;
+    }
+
+    public MockRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public MockRequest parameter(String name, String... values) {
+        parameters.put(name, values);
+        return this;
+    }
+
+    @Override
+    public Object invoke(Object obj, Method m, Object[] args) throws Throwable {
+        String name = m.getName();
+        if ("getMethod".equals(name)) {
+            return method;
+        }
+        if ("getRequestURI".equals(name) || "getServletPath".equals(name)) {
+            return requestURI;
+        }
+        if ("getQueryString".equals(name)) {
+            return queryString;
+        }
+        if ("getHeader".equals(name)) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase((String) args[0])) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+        if ("getDateHeader".equals(name)) {
+            Object value = invoke(obj, HttpServletRequest.class.getMethod("getHeader", String.class), args);
+            return value == null ? -1L : Long.parseLong((String) value);
+        }
+        if ("getParameter".equals(name)) {
+            String[] values = parameters.get(args[0]);
+            return values == null ? null : values[0];
+        }
+        if ("getParameterValues".equals(name)) {
+            return parameters.get(args[0]);
+        }
+        if ("getParameterMap".equals(name)) {
+            return parameters;
+        }
+        if ("getParameterNames".equals(name)) {
+            return Collections.enumeration(parameters.keySet());
+        }
+        if ("getAttribute".equals(name)) {
+            return attributes.get(args[0]);
+        }
+        if ("setAttribute".equals(name)) {
+            attributes.put((String) args[0], args[1]);
+            return null;
+        }
+        if ("removeAttribute".equals(name)) {
+            attributes.remove(args[0]);
+            return null;
+        }
+        if ("startAsync".equals(name)) {
+            return asyncContext;
+        }
+        if ("isAsyncStarted".equals(name)) {
+            return asyncContext != null;
+        }
+        if ("getCharacterEncoding".equals(name)) {
+            return characterEncoding;
+        }
+        if ("getContentType".equals(name)) {
+            return headers.get("Content-Type");
+        }
+        if ("getContentLength".equals(name)) {
+            return body.length;
+        }
+        if ("getInputStream".equals(name)) {
+            final ByteArrayInputStream is = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return is.read();
+                }
+            };
+        }
+        if ("getContextPath".equals(name)) {
+            return "";
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(obj);
+        }
+        if ("equals".equals(name)) {
+            return obj == args[0];
+        }
+        if ("toString".equals(name)) {
+            return "MockRequest " + method + " " + requestURI;
+        }
+        return defaultValue(m.getReturnType());
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == Boolean.TYPE) {
+            return false;
+        }
+        if (type == Integer.TYPE) {
+            return 0;
+        }
+        if (type == Long.TYPE) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+// 测试用的 HttpServletResponse，记录 status/header 和输出的内容
+public final class MockResponse implements InvocationHandler {
+    public int status = 200;
+    public String contentType;
+    public String characterEncoding = "utf-8";
+    public final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+    public final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    public boolean committed;
+
+    private final HttpServletResponse proxy = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, this);
+    private PrintWriter writer;
+    private final ServletOutputStream out = new ServletOutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            committed = true;
+            body.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            committed = true;
+            body.write(b, off, len);
+        }
+    };
+
+    public HttpServletResponse get() {
+        return proxy;
+    }
+
+    public String getHeader(String name) {
+        List<String> values = getHeaders(name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    public List<String> getHeaders(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    public String getBodyAsString() throws UnsupportedEncodingException {
+        if (writer != null) {
+            writer.flush();
+        }
+        return body.toString(characterEncoding);
+    }
+
+    private void setHeader(String name, String value) {
+        for (Iterator<String> it = headers.keySet().iterator(); it.hasNext();) {
+            if (it.next().equalsIgnoreCase(name)) {
+                it.remove();
+            }
+        }
+        addHeader(name, value);
+    }
+
+    private void addHeader(String name, String value) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                entry.getValue().add(value);
+                return;
+            }
+        }
+        List<String> values = new ArrayList<String>(2);
+        values.add(value);
+        headers.put(name, values);
+    }
+
+    @Override
+    public Object invoke(Object obj, Method m, Object[] args) throws Throwable {
+        String name = m.getName();
+        if ("setStatus".equals(name) || "sendError".equals(name)) {
+            status = (Integer) args[0];
+            return null;
+        }
+        if ("getStatus".equals(name)) {
+            return status;
+        }
+        if ("setHeader".equals(name) || "setDateHeader".equals(name) || "setIntHeader".equals(name)) {
+            setHeader((String) args[0], String.valueOf(args[1]));
+            return null;
+        }
+        if ("addHeader".equals(name) || "addDateHeader".equals(name) || "addIntHeader".equals(name)) {
+            addHeader((String) args[0], String.valueOf(args[1]));
+            return null;
+        }
+        if ("getHeader".equals(name)) {
+            return getHeader((String) args[0]);
+        }
+        if ("getHeaders".equals(name)) {
+            return new ArrayList<String>(getHeaders((String) args[0]));
+        }
+        if ("containsHeader".equals(name)) {
+            return !getHeaders((String) args[0]).isEmpty();
+        }
+        if ("setContentLength".equals(name)) {
+            setHeader("Content-Length", String.valueOf(args[0]));
+            return null;
+        }
+        if ("setContentType".equals(name)) {
+            contentType = (String) args[0];
+            return null;
+        }
+        if ("getContentType".equals(name)) {
+            return contentType;
+        }
+        if ("setCharacterEncoding".equals(name)) {
+            characterEncoding = (String) args[0];
+            return null;
+        }
+        if ("getCharacterEncoding".equals(name)) {
+            return characterEncoding;
+        }
+        if ("getOutputStream".equals(name)) {
+            return out;
+        }
+        if ("getWriter".equals(name)) {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(out, characterEncoding));
+            }
+            return writer;
+        }
+        if ("isCommitted".equals(name)) {
+            return committed;
+        }
+        if ("flushBuffer".equals(name)) {
+            if (writer != null) {
+                writer.flush();
+            }
+            committed = true;
+            return null;
+        }
+        if ("resetBuffer".equals(name) || "reset".equals(name)) {
+            body.reset();
+            return null;
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(obj);
+        }
+        if ("equals".equals(name)) {
+            return obj == args[0];
+        }
+        if ("toString".equals(name)) {
+            return "MockResponse " + status;
+        }
+        return MockRequest.defaultValue(m.getReturnType());
+    }
+}
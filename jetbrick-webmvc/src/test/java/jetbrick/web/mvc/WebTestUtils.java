@@ -0,0 +1,105 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import jetbrick.ioc.Ioc;
+import jetbrick.ioc.MutableIoc;
+import jetbrick.web.mvc.action.ArgumentGetterResolver;
+import jetbrick.web.mvc.action.HttpMethod;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.mvc.interceptor.Interceptor;
+
+public final class WebTestUtils {
+
+    // 创建一个只有 Ioc 和默认组件的 WebConfig (WebConfig 是单例，只会创建一次)
+    public static synchronized WebConfig getWebConfig() {
+        WebConfig config = WebConfig.getInstance();
+        if (config == null) {
+            try {
+                Constructor<WebConfig> ctor = WebConfig.class.getDeclaredConstructor();
+                ctor.setAccessible(true);
+                config = ctor.newInstance();
+
+                // 和 WebConfigBuilder 一样注册默认组件
+                MutableIoc ioc = new MutableIoc();
+                ioc.addBean(Ioc.class.getName(), ioc);
+                ioc.addConfig("web.view.default", "jsp"); // 测试的时候没有 jetbrick-template
+                ioc.addBean(ResultHandlerResolver.class);
+                ioc.addBean(ViewHandlerResolver.class);
+                ioc.addBean(ArgumentGetterResolver.class);
+                setField(config, "ioc", ioc);
+                setField(config, "httpEncoding", "utf-8");
+                setField(config, "interceptors", Collections.<Interceptor> emptyList());
+                setField(config, "resultHandlerResolver", ioc.getBean(ResultHandlerResolver.class));
+                setField(config, "viewHandlerResolver", ioc.getBean(ViewHandlerResolver.class));
+                setField(config, "argumentGetterResolver", ioc.getBean(ArgumentGetterResolver.class));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return config;
+    }
+
+    // 使用指定的 Router 创建一个 DispatcherFilter (不经过 init())
+    public static DispatcherFilter createDispatcherFilter(Router router, boolean leanDispatch) {
+        WebConfig config = getWebConfig();
+        synchronized (WebTestUtils.class) {
+            setField(config, "router", router);
+            setField(config, "leanDispatch", leanDispatch);
+            DispatcherFilter filter = new DispatcherFilter();
+            filter.initialize(config);
+            return filter;
+        }
+    }
+
+    public static RequestContext createRequestContext(MockRequest request, MockResponse response) {
+        return createRequestContext(request, response, RouteInfo.NOT_FOUND);
+    }
+
+    public static RequestContext createRequestContext(MockRequest request, MockResponse response, RouteInfo route) {
+        HttpMethod method = HttpMethod.valueOf(request.method);
+        return new RequestContext(request.get(), response.get(), request.requestURI, method, route);
+    }
+
+    public static void setField(Object object, String name, Object value) {
+        try {
+            Field field = object.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(object, value);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 当前线程已经分配的内存，JVM 不支持的时候返回 -1
+    public static long getThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
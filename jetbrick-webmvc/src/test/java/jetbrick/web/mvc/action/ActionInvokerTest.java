@@ -0,0 +1,159 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.action.annotations.ArgumentGetter;
+import org.junit.Assert;
+import org.junit.Test;
+
+// ASM 生成的 ActionInvoker 和反射调用的行为必须一致
+public class ActionInvokerTest {
+
+    public static class SampleController {
+        public String concat(String a, int b, long c, boolean d, double e, char f) {
+            return a + b + c + d + e + f;
+        }
+
+        public int sum(int a, Integer b) {
+            return a + b;
+        }
+
+        public void empty() {
+        }
+
+        public long echo(Long value) {
+            return value;
+        }
+
+        public String nullable(Integer value) {
+            return String.valueOf(value);
+        }
+
+        public String throwChecked(String message) throws IOException {
+            throw new IOException(message);
+        }
+
+        public String throwUnchecked(String message) {
+            throw new IllegalArgumentException(message);
+        }
+
+        public String throwError(String message) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static class HiddenController {
+        public String hello() {
+            return "hello";
+        }
+    }
+
+    private final SampleController controller = new SampleController();
+
+    @Test
+    public void testArguments() throws Exception {
+        Object[] args = { "x", 1, 2L, true, 3.5d, 'c' };
+        assertSameResult("concat", args, "x12true3.5c");
+        assertSameResult("sum", new Object[] { 1, 2 }, 3);
+        assertSameResult("echo", new Object[] { Long.MAX_VALUE }, Long.MAX_VALUE);
+        assertSameResult("empty", new Object[0], null);
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        assertSameException("throwChecked", IOException.class);
+        assertSameException("throwUnchecked", IllegalArgumentException.class);
+        assertSameException("throwError", AssertionError.class);
+    }
+
+    @Test
+    public void testNullToPrimitive() throws Exception {
+        // 基本类型的参数为 null 的时候，两种方式都抛出 IllegalArgumentException
+        for (ActionMethodInjector injector : injectors(SampleController.class, "sum", new Object[] { null, 1 })) {
+            try {
+                injector.invoke(controller, null);
+                Assert.fail("generated=" + injector.isGenerated());
+            } catch (RuntimeException e) {
+                Assert.assertSame("generated=" + injector.isGenerated(), IllegalArgumentException.class, e.getClass());
+            }
+        }
+        // 包装类型的参数可以为 null
+        assertSameResult("nullable", new Object[] { null }, "null");
+    }
+
+    @Test
+    public void testNonPublicFallback() throws Exception {
+        Method method = HiddenController.class.getMethod("hello");
+        ActionMethodInjector injector = new ActionMethodInjector(HiddenController.class, method, ArgumentGetter.EMPTY_ARRAY);
+        Assert.assertFalse(injector.isGenerated());
+        Assert.assertEquals("hello", injector.invoke(new HiddenController(), null));
+    }
+
+    private void assertSameResult(String name, Object[] args, Object expected) throws Exception {
+        ActionMethodInjector[] injectors = injectors(SampleController.class, name, args);
+        Assert.assertTrue(injectors[0].isGenerated());
+        Assert.assertFalse(injectors[1].isGenerated());
+        Assert.assertEquals(expected, injectors[0].invoke(controller, null));
+        Assert.assertEquals(expected, injectors[1].invoke(controller, null));
+    }
+
+    private void assertSameException(String name, Class<? extends Throwable> expected) throws Exception {
+        for (ActionMethodInjector injector : injectors(SampleController.class, name, new Object[] { "boom" })) {
+            try {
+                injector.invoke(controller, null);
+                Assert.fail("generated=" + injector.isGenerated());
+            } catch (Throwable e) {
+                Assert.assertSame("generated=" + injector.isGenerated(), expected, e.getClass());
+                Assert.assertEquals("boom", e.getMessage());
+            }
+        }
+    }
+
+    // 返回 [generated, reflection]
+    private static ActionMethodInjector[] injectors(Class<?> type, String name, Object[] args) {
+        Method method = null;
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(name)) {
+                method = m;
+            }
+        }
+        ArgumentGetter<?>[] getters = new ArgumentGetter[args.length];
+        for (int i = 0; i < args.length; i++) {
+            getters[i] = new ConstantArgumentGetter(args[i]);
+        }
+        ActionInvoker invoker = ActionInvokerBuilder.create(type, method, getters);
+        return new ActionMethodInjector[] { new ActionMethodInjector(method, getters, invoker), new ActionMethodInjector(method, getters, null) };
+    }
+
+    static class ConstantArgumentGetter implements ArgumentGetter<Object> {
+        private final Object value;
+
+        ConstantArgumentGetter(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object get(RequestContext ctx) {
+            return value;
+        }
+    }
+}
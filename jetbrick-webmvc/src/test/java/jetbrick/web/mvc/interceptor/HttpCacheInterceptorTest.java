@@ -0,0 +1,132 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.interceptor;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.web.mvc.*;
+import jetbrick.web.mvc.action.*;
+import jetbrick.web.mvc.config.WebConfig;
+import org.junit.*;
+
+public class HttpCacheInterceptorTest {
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    @Controller
+    public static class CacheController {
+        @HttpCache(shared = true, maxAge = 60, ttl = 300)
+        public String shared() {
+            return "shared";
+        }
+
+        @HttpCache(maxAge = 60, ttl = 300)
+        public String personal() {
+            return "personal";
+        }
+    }
+
+    private HttpCacheInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        WebConfig config = WebTestUtils.getWebConfig();
+        interceptor = new HttpCacheInterceptor();
+        interceptor.init(config);
+        counter.set(0);
+    }
+
+    @Test
+    public void testSharedServerCache() throws Exception {
+        MockResponse response = request("GET", "shared");
+        Assert.assertEquals("shared", response.getBodyAsString());
+        Assert.assertEquals("public, max-age=60", response.getHeader("Cache-Control"));
+
+        response = request("GET", "shared");
+        Assert.assertEquals("shared", response.getBodyAsString());
+        Assert.assertEquals(1, counter.get()); // 第二次从缓存中获取
+
+        // HEAD 可以使用已经缓存的内容，但是不输出内容
+        response = request("HEAD", "shared");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("6", response.getHeader("Content-Length"));
+        Assert.assertEquals("", response.getBodyAsString());
+        Assert.assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testPrivateNotCachedOnServer() throws Exception {
+        Assert.assertEquals("personal", request("GET", "personal").getBodyAsString());
+        MockResponse response = request("GET", "personal");
+        Assert.assertEquals("personal", response.getBodyAsString());
+        Assert.assertEquals("private, max-age=60", response.getHeader("Cache-Control"));
+        Assert.assertEquals(2, counter.get()); // 每个用户的内容可能不同，不能在服务器端缓存
+    }
+
+    @Test
+    public void testHeadNotStored() throws Exception {
+        MockResponse response = request("HEAD", "shared");
+        Assert.assertEquals("public, max-age=60", response.getHeader("Cache-Control"));
+        Assert.assertEquals(1, counter.get());
+
+        // HEAD 没有写入缓存，GET 需要重新执行，并且返回完整的内容
+        response = request("GET", "shared");
+        Assert.assertEquals("shared", response.getBodyAsString());
+        Assert.assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        String etag = request("GET", "shared").getHeader("ETag");
+        MockRequest request = new MockRequest().header("If-None-Match", etag);
+        MockResponse response = execute(request, "shared");
+        Assert.assertEquals(304, response.status);
+        Assert.assertEquals("", response.getBodyAsString());
+    }
+
+    private MockResponse request(String method, String action) throws Exception {
+        MockRequest request = new MockRequest();
+        request.method = method;
+        return execute(request, action);
+    }
+
+    private MockResponse execute(MockRequest request, final String action) throws Exception {
+        request.requestURI = "/cache/" + action;
+        MockResponse response = new MockResponse();
+        ControllerInfo controller = new ControllerInfo(CacheController.class, CacheController.class.getAnnotation(Controller.class));
+        ActionInfo actionInfo = new ActionInfo(controller, KlassInfo.create(CacheController.class).getDeclaredMethod(action), request.requestURI);
+
+        final RequestContext ctx = WebTestUtils.createRequestContext(request, response, new RouteInfo(actionInfo));
+        interceptor.intercept(ctx, new InterceptorChain() {
+            @Override
+            public void invoke() throws Exception {
+                // 模拟 Action 的执行和 StringResultHandler 的输出
+                counter.incrementAndGet();
+                ctx.getResponse().setContentType("text/plain");
+                if (!"HEAD".equals(ctx.getRequest().getMethod())) {
+                    PrintWriter out = ctx.getResponse().getWriter();
+                    out.write(action);
+                    out.flush();
+                }
+            }
+        });
+        interceptor.afterRender(ctx, null);
+        return response;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.multipart;
+
+import java.io.File;
+import javax.servlet.http.HttpServletRequest;
+import jetbrick.io.FileDeleteUtils;
+import jetbrick.web.mvc.MockRequest;
+import jetbrick.web.mvc.WebTestUtils;
+import jetbrick.web.mvc.config.WebConfig;
+import org.junit.*;
+
+public class LazyMultipartRequestTest {
+    private static final String BOUNDARY = "----jetbrick";
+    private File uploaddir;
+
+    @Before
+    public void setUp() {
+        uploaddir = new File(System.getProperty("java.io.tmpdir"), "jetbrick-upload-" + System.nanoTime());
+        uploaddir.mkdirs();
+
+        WebConfig config = WebTestUtils.getWebConfig();
+        WebTestUtils.setField(config, "uploaddir", uploaddir);
+        WebTestUtils.setField(config, "uploadMemoryThreshold", 10);
+        WebTestUtils.setField(config, "uploadMaxSize", -1L);
+        WebTestUtils.setField(config, "uploadMaxFileSize", 100L);
+        WebTestUtils.setField(config, "uploadMaxParts", -1);
+    }
+
+    @After
+    public void tearDown() {
+        FileDeleteUtils.deleteQuietly(uploaddir);
+    }
+
+    @Test
+    public void testParsed() {
+        LazyMultipartRequest request = new LazyMultipartRequest(multipart("a.txt", 50, "b.txt", 5), false);
+        Assert.assertFalse(request.isParsed());
+        Assert.assertEquals("value", request.getParameter("name"));
+        Assert.assertTrue(request.isParsed());
+        Assert.assertEquals(50, request.getFile("file1").getSize());
+        Assert.assertFalse(request.getFile("file1").isInMemory());
+        Assert.assertTrue(request.getFile("file2").isInMemory());
+        Assert.assertEquals(1, uploaddir.list().length);
+    }
+
+    @Test
+    public void testFailedPartDeletesSpilledFiles() {
+        // 第一个文件写入了磁盘，第二个文件超出了 max.file.size
+        LazyMultipartRequest request = new LazyMultipartRequest(multipart("a.txt", 50, "b.txt", 200), false);
+
+        RuntimeException failure = null;
+        try {
+            request.getFiles();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        Assert.assertFalse(request.isParsed());
+        Assert.assertEquals(0, uploaddir.list().length);
+
+        // 之后的每次访问都抛出同样的异常，而不是返回空的结果
+        try {
+            request.getParameter("name");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertSame(failure, e);
+        }
+        try {
+            request.getPartIterator();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // already parsed
+        }
+    }
+
+    private static HttpServletRequest multipart(String filename1, int size1, String filename2, int size2) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--").append(BOUNDARY).append("\r\n");
+        sb.append("Content-Disposition: form-data; name=\"name\"\r\n\r\n");
+        sb.append("value\r\n");
+        appendFile(sb, "file1", filename1, size1);
+        appendFile(sb, "file2", filename2, size2);
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+
+        MockRequest request = new MockRequest();
+        request.method = "POST";
+        request.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        request.body = sb.toString().getBytes();
+        return request.get();
+    }
+
+    private static void appendFile(StringBuilder sb, String field, String filename, int size) {
+        sb.append("--").append(BOUNDARY).append("\r\n");
+        sb.append("Content-Disposition: form-data; name=\"").append(field).append("\"; filename=\"").append(filename).append("\"\r\n");
+        sb.append("Content-Type: text/plain\r\n\r\n");
+        for (int i = 0; i < size; i++) {
+            sb.append('x');
+        }
+        sb.append("\r\n");
+    }
+}
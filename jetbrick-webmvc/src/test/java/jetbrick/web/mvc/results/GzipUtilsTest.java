@@ -0,0 +1,126 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+import jetbrick.io.IoUtils;
+import jetbrick.web.mvc.MockRequest;
+import jetbrick.web.mvc.MockResponse;
+import jetbrick.web.servlet.ResponseUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GzipUtilsTest {
+
+    @Test
+    public void testAcceptGzip() {
+        Assert.assertTrue(accept("gzip, deflate"));
+        Assert.assertTrue(accept("deflate, x-gzip"));
+        Assert.assertTrue(accept("*"));
+        Assert.assertTrue(accept("gzip;q=0.5, *;q=0"));
+        Assert.assertFalse(accept(null));
+        Assert.assertFalse(accept("deflate"));
+        Assert.assertFalse(accept("gzip;q=0"));
+        Assert.assertFalse(accept("*;q=0"));
+        // 明确指定的 gzip;q=0 优先于 *
+        Assert.assertFalse(accept("*;q=1, gzip;q=0"));
+        Assert.assertFalse(accept("gzip;q=0, *"));
+        Assert.assertFalse(accept("gzip;q=0.0, identity"));
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        byte[] data = "jetbrick-webmvc gzip test, jetbrick-webmvc gzip test".getBytes("utf-8");
+        Assert.assertArrayEquals(data, decompress(GzipUtils.compress(data, 6)));
+        Assert.assertArrayEquals(new byte[0], decompress(GzipUtils.compress(new byte[0], 6)));
+    }
+
+    @Test
+    public void testNestedStreams() throws Exception {
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        GzipUtils.GzipOutputStream gzip1 = new GzipUtils.GzipOutputStream(out1, 6);
+        GzipUtils.GzipOutputStream gzip2 = new GzipUtils.GzipOutputStream(out2, 1);
+        gzip1.write("first".getBytes());
+        gzip2.write("second".getBytes());
+        gzip2.close();
+        gzip1.close();
+        Assert.assertEquals("first", new String(decompress(out1.toByteArray())));
+        Assert.assertEquals("second", new String(decompress(out2.toByteArray())));
+    }
+
+    @Test
+    public void testPoolBoundedAndDestroy() throws Exception {
+        GzipUtils.GzipOutputStream[] streams = new GzipUtils.GzipOutputStream[100];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = new GzipUtils.GzipOutputStream(new ByteArrayOutputStream(), 6);
+        }
+        for (GzipUtils.GzipOutputStream stream : streams) {
+            stream.close(); // 池满之后的 Deflater 直接 end()
+        }
+        int pooled = GzipUtils.getPooledCount();
+        Assert.assertTrue(pooled > 0 && pooled < streams.length);
+
+        GzipUtils.destroy();
+        Assert.assertEquals(0, GzipUtils.getPooledCount());
+
+        // destroy 之后仍然可以使用
+        Assert.assertArrayEquals("abc".getBytes(), decompress(GzipUtils.compress("abc".getBytes(), 6)));
+    }
+
+    @Test
+    public void testVaryHeader() {
+        MockResponse response = new MockResponse();
+        ResponseUtils.addVaryHeader(response.get(), "Accept-Encoding");
+        ResponseUtils.addVaryHeader(response.get(), "accept-encoding");
+        Assert.assertEquals(1, response.getHeaders("Vary").size());
+
+        ResponseUtils.addVaryHeader(response.get(), "Cookie");
+        Assert.assertEquals(2, response.getHeaders("Vary").size());
+
+        response = new MockResponse();
+        response.get().setHeader("Vary", "Cookie, Accept-Encoding");
+        ResponseUtils.addVaryHeader(response.get(), "Accept-Encoding");
+        Assert.assertEquals(1, response.getHeaders("Vary").size());
+
+        response = new MockResponse();
+        response.get().setHeader("Vary", "*");
+        ResponseUtils.addVaryHeader(response.get(), "Accept-Encoding");
+        Assert.assertEquals("*", response.getHeader("Vary"));
+    }
+
+    private static boolean accept(String header) {
+        MockRequest request = new MockRequest();
+        if (header != null) {
+            request.header("Accept-Encoding", header);
+        }
+        return GzipUtils.isAcceptGzip(request.get());
+    }
+
+    private static byte[] decompress(byte[] data) throws Exception {
+        GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(data));
+        try {
+            return IoUtils.toByteArray(is);
+        } finally {
+            is.close();
+        }
+    }
+}
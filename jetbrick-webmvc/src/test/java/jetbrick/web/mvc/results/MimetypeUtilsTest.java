@@ -0,0 +1,46 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MimetypeUtilsTest {
+
+    @Test
+    public void testContentType() {
+        Assert.assertEquals("text/html; charset=utf-8", MimetypeUtils.getContentType("text/html", "utf-8"));
+        Assert.assertEquals("application/json; charset=GBK", MimetypeUtils.getContentType("application/json", "GBK"));
+        Assert.assertEquals("image/svg+xml; charset=utf-8", MimetypeUtils.getContentType("image/svg+xml", "utf-8"));
+        Assert.assertEquals("text/html; charset=null", MimetypeUtils.getContentType("text/html", null));
+
+        // 常用的 mimetype 直接返回缓存的字符串
+        Assert.assertSame(MimetypeUtils.getContentType("text/html", "utf-8"), MimetypeUtils.getContentType("text/html", "utf-8"));
+    }
+
+    @Test
+    public void testBounded() {
+        // 未知的 mimetype 和 encoding 都来自请求的时候，缓存的大小也是有限的
+        for (int i = 0; i < 1000; i++) {
+            String mimetype = (i % 2 == 0) ? "text/html" : "x-custom/type-" + i;
+            Assert.assertEquals(mimetype + "; charset=enc-" + i, MimetypeUtils.getContentType(mimetype, "enc-" + i));
+        }
+        Assert.assertTrue(MimetypeUtils.getCachedEncodingCount() <= MimetypeUtils.MAX_CACHED_ENCODINGS);
+    }
+}
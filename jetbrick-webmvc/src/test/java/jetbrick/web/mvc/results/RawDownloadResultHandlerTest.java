@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.results;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import jetbrick.io.FileDeleteUtils;
+import jetbrick.web.mvc.*;
+import org.junit.*;
+
+public class RawDownloadResultHandlerTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("jetbrick-download", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("0123456789".getBytes());
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        FileDeleteUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testStrongETag() throws Exception {
+        MockResponse response = download(new MockRequest());
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("\"10-" + file.lastModified() + "\"", response.getHeader("ETag"));
+        Assert.assertEquals("10", response.getHeader("Content-Length"));
+        Assert.assertEquals("0123456789", response.getBodyAsString());
+    }
+
+    @Test
+    public void testIfNoneMatchWeakComparison() throws Exception {
+        String etag = download(new MockRequest()).getHeader("ETag");
+        Assert.assertEquals(304, download(new MockRequest().header("If-None-Match", etag)).status);
+        Assert.assertEquals(304, download(new MockRequest().header("If-None-Match", "W/" + etag)).status);
+        Assert.assertEquals(200, download(new MockRequest().header("If-None-Match", "\"other\"")).status);
+    }
+
+    @Test
+    public void testIfRangeStrongComparison() throws Exception {
+        String etag = download(new MockRequest()).getHeader("ETag");
+
+        MockResponse response = download(new MockRequest().header("Range", "bytes=2-4").header("If-Range", etag));
+        Assert.assertEquals(206, response.status);
+        Assert.assertEquals("bytes 2-4/10", response.getHeader("Content-Range"));
+        Assert.assertEquals("234", response.getBodyAsString());
+
+        // 弱 ETag 不能用于 If-Range，返回整个文件
+        response = download(new MockRequest().header("Range", "bytes=2-4").header("If-Range", "W/" + etag));
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("0123456789", response.getBodyAsString());
+
+        response = download(new MockRequest().header("Range", "bytes=2-4").header("If-Range", "\"other\""));
+        Assert.assertEquals(200, response.status);
+    }
+
+    private MockResponse download(MockRequest request) throws Exception {
+        MockResponse response = new MockResponse();
+        RequestContext ctx = WebTestUtils.createRequestContext(request, response);
+        new RawDownloadResultHandler().handle(ctx, new RawDownload(file, "a.txt"));
+        return response;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import java.util.HashMap;
+import java.util.Map;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.web.mvc.RouteInfo;
+import jetbrick.web.mvc.WebTestUtils;
+import jetbrick.web.mvc.action.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+// TrieRouter 和 RestfulRouter 的匹配结果必须一致
+public class TrieRouterTest {
+
+    @Controller
+    public static class SampleController {
+        public void a() {
+        }
+
+        public void b() {
+        }
+
+        public void c() {
+        }
+
+        public void d() {
+        }
+    }
+
+    private final Map<String, ActionInfo> actions = new HashMap<String, ActionInfo>();
+
+    private ActionInfo action(String name, String url) {
+        WebTestUtils.getWebConfig();
+        ControllerInfo ctrl = new ControllerInfo(SampleController.class, SampleController.class.getAnnotation(Controller.class));
+        ActionInfo action = new ActionInfo(ctrl, KlassInfo.create(SampleController.class).getDeclaredMethod(name), url);
+        actions.put(url, action);
+        return action;
+    }
+
+    // 返回 [TrieRouter, RestfulRouter]
+    private AbstractRouter[] routers(Object... routes) {
+        AbstractRouter[] routers = { new TrieRouter(), new RestfulRouter() };
+        for (int i = 0; i < routes.length; i += 3) {
+            ActionInfo action = action((String) routes[i + 2], (String) routes[i + 1]);
+            for (AbstractRouter router : routers) {
+                router.register((HttpMethod) routes[i], action, (String) routes[i + 1]);
+            }
+        }
+        return routers;
+    }
+
+    // 两个 Router 都匹配到 url 对应的 Action，返回 TrieRouter 的结果
+    private RouteInfo assertRoute(AbstractRouter[] routers, HttpMethod method, String path, String url) {
+        RouteInfo trie = routers[0].lookup(null, path, method);
+        RouteInfo restful = routers[1].lookup(null, path, method);
+        Assert.assertSame(path, actions.get(url), trie.getAction());
+        Assert.assertSame(path, actions.get(url), restful.getAction());
+        return trie;
+    }
+
+    private void assertNotFound(AbstractRouter[] routers, HttpMethod method, String path) {
+        for (AbstractRouter router : routers) {
+            Assert.assertSame(path, RouteInfo.NOT_FOUND, router.lookup(null, path, method));
+        }
+    }
+
+    @Test
+    public void staticPriority() {
+        AbstractRouter[] routers = routers( //
+            HttpMethod.GET, "/users/{id}", "a", //
+            HttpMethod.GET, "/users/new", "b", //
+            HttpMethod.GET, "/users/{id}/edit", "c");
+
+        assertRoute(routers, HttpMethod.GET, "/users/new", "/users/new");
+        RouteInfo route = assertRoute(routers, HttpMethod.GET, "/users/123", "/users/{id}");
+        Assert.assertEquals("123", route.getPathVariable("id"));
+        route = assertRoute(routers, HttpMethod.GET, "/users/new/edit", "/users/{id}/edit");
+        Assert.assertEquals("new", route.getPathVariable("id"));
+    }
+
+    @Test
+    public void regexSegments() {
+        AbstractRouter[] routers = routers( //
+            HttpMethod.GET, "/files/{id:\\d+}", "a", //
+            HttpMethod.GET, "/files/{name}.json", "b", //
+            HttpMethod.GET, "/files/{name:[a-z]+}", "c");
+
+        RouteInfo route = assertRoute(routers, HttpMethod.GET, "/files/42", "/files/{id:\\d+}");
+        Assert.assertEquals("42", route.getPathVariable("id"));
+        route = assertRoute(routers, HttpMethod.GET, "/files/abc.json", "/files/{name}.json");
+        Assert.assertEquals("abc", route.getPathVariable("name"));
+        route = assertRoute(routers, HttpMethod.GET, "/files/abc", "/files/{name:[a-z]+}");
+        Assert.assertEquals("abc", route.getPathVariable("name"));
+        assertNotFound(routers, HttpMethod.GET, "/files/ABC");
+    }
+
+    @Test
+    public void backtracking() {
+        AbstractRouter[] routers = routers( //
+            HttpMethod.GET, "/a/{x:\\d+}/b", "a", //
+            HttpMethod.GET, "/a/{y}/c", "b", //
+            HttpMethod.GET, "/a/new/{z}/d", "c");
+
+        // {x} 匹配成功但是子树失败，回溯之后 x 不能残留在 PathVariables 中
+        RouteInfo route = assertRoute(routers, HttpMethod.GET, "/a/1/c", "/a/{y}/c");
+        Assert.assertEquals("1", route.getPathVariable("y"));
+        Assert.assertNull(route.getPathVariable("x"));
+
+        // 静态 segment 的子树失败之后，回溯到动态 segment
+        route = assertRoute(routers, HttpMethod.GET, "/a/new/c", "/a/{y}/c");
+        Assert.assertEquals("new", route.getPathVariable("y"));
+        Assert.assertNull(route.getPathVariable("z"));
+
+        route = assertRoute(routers, HttpMethod.GET, "/a/new/1/d", "/a/new/{z}/d");
+        Assert.assertEquals("1", route.getPathVariable("z"));
+    }
+
+    @Test
+    public void httpMethods() {
+        AbstractRouter[] routers = routers( //
+            HttpMethod.GET, "/items/{id}", "a", //
+            HttpMethod.POST, "/items/{id}/save", "b", //
+            HttpMethod.DELETE, "/items", "c");
+
+        assertRoute(routers, HttpMethod.GET, "/items/1", "/items/{id}");
+        assertRoute(routers, HttpMethod.POST, "/items/1/save", "/items/{id}/save");
+        assertRoute(routers, HttpMethod.DELETE, "/items", "/items");
+        assertNotFound(routers, HttpMethod.POST, "/items/1");
+        assertNotFound(routers, HttpMethod.GET, "/items/1/save");
+        assertNotFound(routers, HttpMethod.GET, "/items");
+        assertNotFound(routers, HttpMethod.PUT, "/items/1");
+    }
+
+    @Test
+    public void notFound() {
+        AbstractRouter[] routers = routers( //
+            HttpMethod.GET, "/users/{id}", "a", //
+            HttpMethod.GET, "/users/list", "b");
+
+        assertNotFound(routers, HttpMethod.GET, "/users");
+        assertNotFound(routers, HttpMethod.GET, "/users/1/2");
+        assertNotFound(routers, HttpMethod.GET, "/groups/1");
+        assertNotFound(routers, HttpMethod.GET, "/");
+    }
+
+    @Test
+    public void duplicateUrls() {
+        TrieRouter router = new TrieRouter();
+        ActionInfo first = action("a", "/dup");
+        ActionInfo second = action("b", "/dup");
+        router.register(HttpMethod.GET, first, "/dup");
+        router.register(HttpMethod.GET, second, "/dup");
+        Assert.assertSame(second, router.lookup(null, "/dup", HttpMethod.GET).getAction());
+
+        // 动态 URL 和静态 URL 的规则一致：后注册的覆盖前面的
+        first = action("c", "/dup/{id}");
+        second = action("d", "/dup/{id}");
+        router.register(HttpMethod.GET, first, "/dup/{id}");
+        router.register(HttpMethod.GET, second, "/dup/{id}");
+        Assert.assertSame(second, router.lookup(null, "/dup/1", HttpMethod.GET).getAction());
+    }
+}